@@ -119,7 +119,6 @@ public class ATN {
         //define objects to track species' contributions
         double[][][] contribs = new double[timesteps][speciesCnt][speciesCnt];
         double[][] calcBiomass = new double[timesteps][speciesCnt];
-        double[][] contribsT; //current timestep
 
         //note: WebServices ATN Model uses B0 with default = 0.5.  This presumes
         //that biomasses are small, i.e. < 1.0.  Division by biomassScale
@@ -142,14 +141,12 @@ public class ATN {
 
         //create integration object
         boolean isTest = false;
+        ATNSystem atnSystem = new ATNSystem(new CompiledATNModel(speciesID,
+                sztArray, ecosysRelationships, lPs));
         BulirschStoerIntegration bsi = new BulirschStoerIntegration(
                 timeIntvl,
-                speciesID,
-                sztArray,
-                ecosysRelationships,
-                lPs,
-                maxBSIErr,
-                equationSet
+                atnSystem,
+                maxBSIErr
         );
 
         //calculate delta-biomass and biomass "contributions" from each related
@@ -164,10 +161,8 @@ public class ATN {
             currBiomass = bsi.getYNew();
             System.arraycopy(currBiomass, 0, calcBiomass[t], 0, speciesCnt);
 
-            contribsT = bsi.getContribs();
-            for (int i = 0; i < speciesCnt; i++) {
-                System.arraycopy(contribsT[i], 0, contribs[t - 1][i], 0, speciesCnt);
-            }
+            atnSystem.computeContributions(calcBiomass[t - 1], calcBiomass[t],
+                    timeIntvl, contribs[t - 1]);
 
         }  //timestep loop
 
@@ -251,12 +246,8 @@ public class ATN {
         //create integration object
         BulirschStoerIntegration bsi = new BulirschStoerIntegration(
                 timeIntvl,
-                new int[1],  //needed to calc number of elements
-                null,
-                null,
-                null,
-                maxBSIErr,
-                equationSet
+                new TestOdeSystem(equationSet, 1),
+                maxBSIErr
         );
 
         //calculate integration solution
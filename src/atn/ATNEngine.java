@@ -10,6 +10,7 @@ Relies on WoB_Server source code for objects that store simulation timesteps and
 species information.
 */
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -48,7 +49,6 @@ import simulation.SpeciesZoneType;
 import simulation.SpeciesZoneType.SpeciesTypeEnum;
 import simulation.config.ManipulatingParameterName;
 import simulation.config.ManipulationActionType;
-import simulation.simjob.ConsumeMap;
 import simulation.simjob.EcosystemTimesteps;
 import simulation.simjob.NodeTimesteps;
 import simulation.simjob.PathTable;
@@ -67,7 +67,7 @@ import db.EcoSpeciesDAO;
 public class ATNEngine {
 
    private static UserInput userInput;
-   public static Properties propertiesConfig;
+   public static volatile Properties propertiesConfig;
    private PrintStream psATN = null;
    /*
     The first two timesteps values produced by WebServices do not
@@ -86,10 +86,11 @@ public class ATNEngine {
 	private int status = Constants.STATUS_FAILURE;
 
    public ATNEngine() {
-       //load properties file containing ATN model parameter values
-       propertiesConfig = new Properties();
+       //load properties file containing ATN model parameter values; published
+       //only once loaded, as engines may be created while others are running
+       Properties props = new Properties();
        try {
-           propertiesConfig.load(new FileInputStream(
+           props.load(new FileInputStream(
                    "src/atn/SimJobConfig.properties"));
        } catch (FileNotFoundException ex) {
            Logger.getLogger(ATNEngine.class.getName()).log(
@@ -98,6 +99,7 @@ public class ATNEngine {
            Logger.getLogger(ATNEngine.class.getName()).log(
                    Level.SEVERE, null, ex);
        }
+       propertiesConfig = props;
 
        /* 
         Read in non-std variables used for running sim jobs
@@ -108,6 +110,11 @@ public class ATNEngine {
 	       SpeciesType.loadSimTestLinkParams(Constants.ECOSYSTEM_TYPE);
        }
        //Above is not needed SimJobManager does this
+
+       String cacheSize = propertiesConfig.getProperty(TopologyCache.SIZE_PROPERTY);
+       if (cacheSize != null) {
+           TopologyCache.getInstance().setCapacity(Integer.valueOf(cacheSize.trim()));
+       }
    }
    
 	public void setSimJob(SimJob job) {
@@ -139,10 +146,7 @@ public class ATNEngine {
            spNum++;
        }
 
-       //define objects to track species' contributions
-       double[][][] contribs = new double[timesteps][speciesCnt][speciesCnt];
        double[][] calcBiomass = new double[timesteps][speciesCnt];
-       double[][] contribsT; //current timestep
 
        //note: WebServices ATN Model uses B0 with default = 0.5.  This presumes
        //that biomasses are small, i.e. < 1.0.  Division by biomassScale
@@ -159,36 +163,48 @@ public class ATNEngine {
     	   calcBiomass[0][i] =  currBiomass[i];
        }
 
-       //create integration object
-       boolean isTest = false;
-       BulirschStoerIntegration bsi = new BulirschStoerIntegration(
-               timeIntvl,
-               speciesID,
-               sztArray,
-               ecosysRelationships,
-               lPs,
-               maxBSIErr,
-               equationSet
-       );
+       //compile model parameters/relationships once for this job
+       ATNSystem atnSystem = new ATNSystem(new CompiledATNModel(speciesID,
+               sztArray, ecosysRelationships, lPs));
+
+       //create integration object; solver per job, else per config
+       OdeSolverType solverType = getSolverType(job);
+       OdeSolver solver = solverType.create(timeIntvl, atnSystem, maxBSIErr);
+
+       //track species' contributions only if asked to (per job, else config)
+       ContributionTracker tracker = new ContributionTracker(
+               ContributionTracker.Mode.fromName(
+                       job.getContribTracking() != null ? job.getContribTracking()
+                               : propertiesConfig.getProperty(
+                                       ContributionTracker.Mode.PROPERTY)),
+               atnSystem, speciesID, biomassScale,
+               new File(Constants.ATN_CSV_SAVE_PATH, String.format(
+                       "contribs_%d_%d.csv", job.getJob_Id(),
+                       System.currentTimeMillis())));
 
        //calculate delta-biomass and biomass "contributions" from each related
        //species
-       for (int t = initTimeIdx + 1; t < timesteps; t++) {
-           boolean success = bsi.performIntegration(time(initTime, t), currBiomass);
-           if (!success) {
-               //System.out.printf("Integration failed to converge, t = %d\n", t);
-               //System.out.print(bsi.extrapArrayToString(biomassScale));
-               break;
-           }
-           currBiomass = bsi.getYNew();
-           System.arraycopy(currBiomass, 0, calcBiomass[t], 0, speciesCnt);
+       try {
+           for (int t = initTimeIdx + 1; t < timesteps; t++) {
+               boolean success = solver.performIntegration(time(initTime, t), currBiomass);
+               if (!success) {
+                   //step size collapsed; remaining timesteps cannot be trusted
+                   Log.printf_e("Integration failed to converge, t = %d", t);
+                   break;
+               }
+               solver.getYNew(currBiomass);
+               System.arraycopy(currBiomass, 0, calcBiomass[t], 0, speciesCnt);
 
-           contribsT = bsi.getContribs();
-           for (int i = 0; i < speciesCnt; i++) {
-               System.arraycopy(contribsT[i], 0, contribs[t - 1][i], 0, speciesCnt);
-           }
+               tracker.record(t, calcBiomass[t - 1], calcBiomass[t], timeIntvl);
 
-       }  //timestep loop
+           }  //timestep loop
+       } finally {
+           tracker.close();
+       }
+       Log.printf("Integration (%s): %d accepted steps, %d rejected steps, "
+               + "%d RHS evaluations", solverType.getName(),
+               solver.getAcceptedSteps(), solver.getRejectedSteps(),
+               solver.getRhsEvals());
 
 	   double[][] webServicesData = new double[speciesCnt][timesteps];
        if(Constants.useSimEngine){		//We need the webServicesData only for marginOfErrorCalculation
@@ -246,14 +262,8 @@ public class ATNEngine {
            }
            psATN.println();
 
-//           //C. print individual biomass contributions from other species
-//           for (int j = 0; j < speciesCnt; j++) {
-//               psATN.printf("i.%d.j.%d.", speciesID[i], speciesID[j]);
-//               for (int t = 0; t < timesteps; t++) {
-//                   psATN.printf(",%9.0f", contribs[t][i][j] * biomassScale);
-//               }
-//               psATN.println();
-//           }
+           //C. print total biomass contributions from other species
+           tracker.printSummary(psATN, i);
 
            float extinction = 1.E-15f;          
        	   SimJobSZT sjSzt = job.getSpeciesZoneByNodeId(speciesID[i]);
@@ -288,13 +298,8 @@ public class ATNEngine {
 
        }
        
-       biomassCSV += "\n\n";
-       
-       biomassCSV += job.getConsumeMap().toString() + "\n\n" ;
-       
-       biomassCSV += job.getPathTable().toString();
-       
-       job.setBiomassCsv(biomassCSV);
+       //consume map and path table sections are rendered only if requested
+       job.setBiomassCsvWithTables(biomassCSV);
        
        //System.out.println(biomassCSV);
        return mSpecies;
@@ -342,12 +347,8 @@ public class ATNEngine {
        //create integration object
        BulirschStoerIntegration bsi = new BulirschStoerIntegration(
                timeIntvl,
-               new int[1],  //needed to calc number of elements
-               null,
-               null,
-               null,
-               maxBSIErr,
-               equationSet
+               new TestOdeSystem(equationSet, 1),
+               maxBSIErr
        );
 
        //calculate integration solution
@@ -408,8 +409,32 @@ public class ATNEngine {
        //init ecosystem data sets
        EcosystemTimesteps ecosysTimesteps = new EcosystemTimesteps();
        Map<Integer, NodeRelationships> ecosysRelationships = new HashMap<>();
-       NodeTimesteps nodeTimesteps;
        initOutputStreams();
+       HashMap<Integer, SpeciesZoneType> mSpecies;
+       long start;
+       try {
+           initEcosystem(job, ecosysTimesteps, ecosysRelationships);
+
+           start = System.nanoTime();
+
+           //generate data for current job
+           mSpecies = genSpeciesDataset(job, ecosysTimesteps, ecosysRelationships);
+       } finally {
+           if (psATN != null) {
+               psATN.close();
+               psATN = null;
+           }
+       }
+
+       System.out.printf("\nTime... %d seconds\n\n", (System.nanoTime() - start)
+               / (long) Math.pow(10, 9));
+       return mSpecies;
+	}
+
+   //initial biomass, consume map, path table and relationships for a job
+   private void initEcosystem(SimJob job, EcosystemTimesteps ecosysTimesteps,
+           Map<Integer, NodeRelationships> ecosysRelationships) throws SQLException {
+       NodeTimesteps nodeTimesteps;
        int[] nodeListArray = job.getSpeciesNodeList();
        List<SpeciesZoneType> speciesZoneList = job.getSpeciesZoneList();
        
@@ -424,28 +449,117 @@ public class ATNEngine {
 	       	ecosysTimesteps.putNodeTimesteps(nodeId, nodeTimesteps);
        }
        
-       ConsumeMap consumeMap = new ConsumeMap(job.getSpeciesNodeList(),
-               Constants.ECOSYSTEM_TYPE);
-       PathTable pathTable = new PathTable(consumeMap, 
-               job.getSpeciesNodeList(), !PathTable.PP_ONLY);
-//       Log.consoleln("consumeMap " + consumeMap.toString());
-//       Log.consoleln("pathTable " + pathTable.toString());
+       //topology is shared with other jobs on the same node set: read only
+       //depth only affects the reported paths; the model uses direct links
+       TopologyCache.Topology topology = TopologyCache.getInstance().get(
+               job.getSpeciesNodeList(), Constants.ECOSYSTEM_TYPE,
+               getPathTableMaxDepth());
+//       Log.consoleln("consumeMap " + topology.getConsumeMap().toString());
+//       Log.consoleln("pathTable " + topology.getPathTable().toString());
        status = Constants.STATUS_SUCCESS;
-       job.setConsumeMap(consumeMap);
-       job.setPathTable(pathTable);
-       
-       createEcoSysRelationships(ecosysTimesteps, ecosysRelationships, pathTable.toString());
+       job.setConsumeMap(topology.getConsumeMap());
+       job.setPathTable(topology.getPathTable());
        
-       long start = System.nanoTime();
+       ecosysRelationships.putAll(topology.getRelationships());
+   }
 
-       //generate data for current job
-       HashMap<Integer, SpeciesZoneType> mSpecies = genSpeciesDataset(job, ecosysTimesteps, ecosysRelationships);
+   /*
+    Path table depth from config, else PathTable.DFLT_MAX_DEPTH; used by
+    every caller of TopologyCache so one job never mixes depths.
+    */
+   public static int getPathTableMaxDepth() {
+       Properties props = propertiesConfig;
+       String maxDepth = props == null ? null
+               : props.getProperty(PathTable.MAX_DEPTH_PROPERTY);
+       return maxDepth == null ? PathTable.DFLT_MAX_DEPTH
+               : Integer.valueOf(maxDepth.trim());
+   }
 
-       System.out.printf("\nTime... %d seconds\n\n", (System.nanoTime() - start)
-               / (long) Math.pow(10, 9));
-       return mSpecies;
-	}
+   //solver per job, else per config
+   private OdeSolverType getSolverType(SimJob job) {
+       return OdeSolverType.fromName(
+               job.getOdeSolver() != null ? job.getOdeSolver()
+                       : propertiesConfig.getProperty(OdeSolverType.PROPERTY));
+   }
+
+   /*
+    Compile a job's species into a prediction state; biomass is read from
+    ZoneNodes on the first syncBiomass().  Species are ordered as in
+    genSpeciesDataset.
+    */
+   private ATNPredictionState createPredictionState(SimJob job, double[] signature)
+           throws SQLException {
+       job.setTimesteps(1);
+       int[] speciesID = new int[job.getSpeciesNodeList().length];
+       ATNSystem atnSystem = new ATNSystem(compileModel(job, speciesID, null));
+       OdeSolverType solverType = getSolverType(job);
+       return new ATNPredictionState(signature, speciesID,
+               createSolver(job, atnSystem), solverType.getName(), biomassScale);
+   }
+
+   /*
+    Compile a job's species, ordered as in genSpeciesDataset.  speciesID
+    receives the node IDs and, if not null, initBiomass the normalized
+    initial biomass; both job.getSpeciesNodeList().length long.
+    */
+   CompiledATNModel compileModel(SimJob job, int[] speciesID, double[] initBiomass)
+           throws SQLException {
+       EcosystemTimesteps ecosysTimesteps = new EcosystemTimesteps();
+       Map<Integer, NodeRelationships> ecosysRelationships = new HashMap<>();
+       initEcosystem(job, ecosysTimesteps, ecosysRelationships);
+
+       int speciesCnt = ecosysTimesteps.getNodeList().size();
+       SimJobSZT[] sztArray = new SimJobSZT[speciesCnt];
+       int spNum = 0;
+       for (NodeTimesteps nodeTimesteps : ecosysTimesteps.getTimestepMapValues()) {
+           SimJobSZT sjSzt = job.getSpeciesZoneByNodeId(nodeTimesteps.getNodeId());
+           sztArray[spNum] = sjSzt;
+           speciesID[spNum] = sjSzt.getNodeIndex();
+           if (initBiomass != null) {
+               initBiomass[spNum] = nodeTimesteps.getBiomass(initTimeIdx) / biomassScale;
+           }
+           spNum++;
+       }
+       return new CompiledATNModel(speciesID, sztArray, ecosysRelationships,
+               new LinkParams(propertiesConfig));
+   }
+
+   //solver as used for the job's own run; one per thread
+   OdeSolver createSolver(SimJob job, ATNSystem atnSystem) {
+       return getSolverType(job).create(timeIntvl, atnSystem, maxBSIErr);
+   }
+
+   //time between timesteps, in integrator units
+   double getTimeIntvl() {
+       return timeIntvl;
+   }
+
+   static int getBiomassScale() {
+       return biomassScale;
+   }
 	
+   /*
+    Relationships read straight from the path table's matrices (no CSV round
+    trip).  Columns are matched by node ID, so the table's node order need
+    not be sorted.
+    */
+   public static void createEcoSysRelationships(
+           Map<Integer, NodeRelationships> ecosysRelationships,
+           PathTable pathTable) {
+       int[] nodes = pathTable.getNodeArray();
+       String[][] minPath = pathTable.getMinPathMatrix();
+       int[][] minDist = pathTable.getMinDistMatrix();
+       int[][] pathCnt = pathTable.getPathCntMatrix();
+       for (int i = 0; i < nodes.length; i++) {
+           NodeRelationships nodeRelns = new NodeRelationships(nodes[i]);
+           for (int j = 0; j < nodes.length; j++) {
+               nodeRelns.addRelationship(nodes[j], minPath[i][j],
+                       minDist[i][j], pathCnt[i][j]);
+           }
+           ecosysRelationships.put(nodes[i], nodeRelns);
+       }
+   }
+
    public void createEcoSysRelationships(
 		   EcosystemTimesteps ecosysTimesteps,
            Map<Integer, NodeRelationships> ecosysRelationships,
@@ -584,7 +698,6 @@ public class ATNEngine {
       HashMap<Integer, SpeciesZoneType> mUpdateParams = new HashMap<Integer, SpeciesZoneType>();
 
       SpeciesZoneType szt;
-      String nodeConfig = null;
       SimJob job = new SimJob();
 //{70=2494, 5=2000, 42=240, 14=1752, 31=1415}
       for (int node_id : addSpeciesNodeList.keySet()) {
@@ -621,76 +734,60 @@ public class ATNEngine {
       if (!mNewSpecies.isEmpty()) {
           zoneNodes.addNodes(mNewSpecies);
       }
-      try {
-    	  nodeConfig = addMultipleSpeciesType(
-                  mNewSpecies,
-                  masterSpeciesList,
-                  startTimestep,
-                  false,
-                  networkOrManipulationId
-          );
-      } catch (Exception ex) {
-          Log.println_e(ex.getMessage());
+
+      //resume from the integrator state left by the last prediction, so only
+      //the new months are integrated; recompile only if species or parameters
+      //(including carrying capacity) have changed since
+      ATNPredictionState state = zoneNodes.getPredictionState();
+      double[] signature = ATNPredictionState.signature(masterSpeciesList);
+      if (state != null && !state.matches(signature)) {
+          Log.println("Species or parameters changed; recompiling ATN model");
+          state = null;
+      }
+      if (state == null && !masterSpeciesList.isEmpty()) {
+          try {
+              //build job inputs directly; no node_config round trip
+              job.setJob_Descript("ATN");
+              job.setSpeciesZones(masterSpeciesList.values());
+              state = createPredictionState(job, signature);
+          } catch (Exception ex) {
+              Log.println_e(ex.getMessage());
+              return null;
+          }
+      }
+      zoneNodes.setPredictionState(state);
+      if (state == null) {
+          //nothing to integrate; same species as zoneNodes
+          return masterSpeciesList;
       }
-//      // Update biomass changes to existing species using web services
-//      if (!mUpdateBiomass.isEmpty()) {
-//          List<NodeBiomass> lNodeBiomass = new ArrayList<NodeBiomass>();
-//          for (SpeciesZoneType s : mUpdateBiomass.values()) {
-//              Log.printf("Updating Biomass: [%d] %s %f\n", s.getNodeIndex(), s.getName(),
-//                      s.getCurrentBiomass() / Constants.BIOMASS_SCALE);
-//              lNodeBiomass.add(new NodeBiomass(
-//                      s.getCurrentBiomass() / Constants.BIOMASS_SCALE, s.getNodeIndex()));
-//          }
-//          try {
-////              updateBiomass(networkOrManipulationId, lNodeBiomass, startTimestep);
-//          } catch (Exception ex) {
-//              Log.println_e(ex.getMessage());
-//          }
-//      }
 
-//      // JTC Update changes to existing species parameters using web services (also
-//      // resubmits biomass, but couldn't find a way to do params w/o biomass
-//      if (!mUpdateParams.isEmpty()) {
-//          try {
-////              increaseMultipleSpeciesType(
-////                      mUpdateBiomass,
-////                      masterSpeciesList,
-////                      startTimestep,
-////                      false,
-////                      networkOrManipulationId
-////              );
-//          } catch (Exception ex) {
-//              Log.println_e(ex.getMessage());
-//          }
-//      }
+      //pick up biomass changes made outside the model (player manipulations,
+      //added biomass) since the last prediction
+      int resynced = state.syncBiomass(masterSpeciesList);
+      if (resynced > 0) {
+          Log.printf("Biomass reset from ZoneNodes for %d species", resynced);
+      }
 
-//      run(startTimestep, runTimestep, networkOrManipulationId);
-
-      // get new predicted biomass
-      try {
-          //JTC - changed variable from "mSpecies = " to "mUpdateBiomass = "
-          //mUpdateBiomass = getBiomass(networkOrManipulationId, 0, startTimestep + runTimestep);
-    	  if(!masterSpeciesList.isEmpty() || !mNewSpecies.isEmpty()){
-    		  mUpdateBiomass = submitManipRequest("ATN", nodeConfig, startTimestep + runTimestep, false, null);
-    	  }
-      } catch (Exception ex) {
-          Log.println_e(ex.getMessage());
-          return null;
+      OdeSolver solver = state.getSolver();
+      solver.resetCounters();
+      if (!state.advance(runTimestep, initTime, timeIntvl)) {
+          //step size collapsed; keep the last good biomass, rebuild next time
+          Log.printf_e("Integration failed to converge, t = %d", state.getTimestep());
+          zoneNodes.setPredictionState(null);
       }
-//      getBiomassInfo(networkOrManipulationId);
+      Log.printf("Integration (%s): %d timesteps to t = %d, %d accepted steps, "
+              + "%d rejected steps, %d RHS evaluations", state.getSolverName(),
+              runTimestep, state.getTimestep(), solver.getAcceptedSteps(),
+              solver.getRejectedSteps(), solver.getRhsEvals());
 
       //JTC - add loop to update persistent player species biomass information
-      SpeciesZoneType updS;
-      for (SpeciesZoneType priorS : masterSpeciesList.values()) {
-    	  System.out.println("priorS.nodeIndex " + priorS.nodeIndex);
-          updS = mUpdateBiomass.get(priorS.nodeIndex);
-          if (updS != null && updS.currentBiomass != 0) {
-              masterSpeciesList.get(priorS.nodeIndex).setCurrentBiomass(Math.ceil(updS.getCurrentBiomass()));
-          } 
-//          else {
-//              zoneNodes.removeNode(priorS.nodeIndex);
-//          }
+      for (int nodeID : state.getSpeciesID()) {
+          double biomass = state.getBiomass(nodeID);
+          if (biomass != 0) {
+              masterSpeciesList.get(nodeID).setCurrentBiomass(Math.ceil(biomass));
+          }
       }
+      state.publish(masterSpeciesList);
 
       Log.printf("Total Time (Get Prediction): %.2f seconds",
               Math.round((System.currentTimeMillis() - milliseconds) / 10.0) / 100.0);
@@ -732,11 +829,6 @@ public class ATNEngine {
 	        StringBuilder builder = new StringBuilder();
 	        builder.append(fullSpeciesMap.size()).append(",");
 	        for (SpeciesZoneType species : fullSpeciesMap.values()) {
-	            System.out.printf("In addMultipleSpeciesType: node [%d], "
-	                    + "biomass %d, K = %d, R = %6.4f, X = %6.4f\n", species.getNodeIndex(),
-	                    +(int) species.getCurrentBiomass(), (int) species.getParamK(),
-	                    species.getParamR(), species.getParamX());
-	            
 	        	builder.append("[").append(species.getNodeIndex()).append("]").append(",");
 	        	builder.append((int) species.getCurrentBiomass()).append(",");
 	        	builder.append(roundToThreeDigits(species.getPerSpeciesBiomass())).append(",");
@@ -746,7 +838,6 @@ public class ATNEngine {
 	                    fullSpeciesMap,
 	                    timestep);
 	        	builder.append(systemParam);
-	        	System.out.println(builder);
 	        }
 	        String node_config = builder.substring(0, builder.length()-1);
 	        //call processsim job here
@@ -900,7 +991,6 @@ public class ATNEngine {
 			            	builder.append(sParams.get(i));
 			            	builder.append(",");
 			            }
-			            System.out.println(builder);
 		            }
 		      }
 		      return builder.toString();
@@ -0,0 +1,154 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import simulation.SpeciesZoneType;
+
+/**
+ * Integrator state kept between predictions for one player's ecosystem (held
+ * by ZoneNodes), so that each monthly prediction advances only the months
+ * that are new instead of re-integrating from timestep 0.  Holds the compiled
+ * system, its solver (with its carried-over step size) and the unrounded
+ * biomass vector.
+ *
+ * The state is only valid for the species/parameter set it was compiled
+ * from; ATNEngine compares signature() of the current ZoneNodes against
+ * matches() and rebuilds on any difference (species added or removed, X, R
+ * or K changed, e.g. by a change in carrying capacity).  Biomass changes
+ * made outside the model (player manipulations, added biomass) are picked up
+ * by syncBiomass(), which compares each species' biomass against the value
+ * last published to ZoneNodes.
+ */
+public class ATNPredictionState {
+
+    private final double[] signature;
+    private final int[] speciesID;          //node IDs, in system order
+    private final Map<Integer, Integer> speciesIdx;
+    private final OdeSolver solver;
+    private final String solverName;
+    private final double scale;
+    private final double[] biomass;         //current biomass / scale
+    private final double[] published;       //ZoneNodes biomass after last prediction
+    private int timestep = 0;               //intervals integrated so far
+
+    /**
+     * @param signature signature() of the nodes the model was compiled from
+     * @param speciesID node IDs, in system order
+     * @param solver solver for the compiled system
+     * @param solverName solver name, for logging
+     * @param scale biomass scale (ZoneNodes biomass / model biomass)
+     */
+    ATNPredictionState(double[] signature, int[] speciesID, OdeSolver solver,
+            String solverName, double scale) {
+        this.signature = signature;
+        this.speciesID = speciesID;
+        this.solver = solver;
+        this.solverName = solverName;
+        this.scale = scale;
+        biomass = new double[speciesID.length];
+        published = new double[speciesID.length];
+        //forces initial biomass to be read from ZoneNodes
+        Arrays.fill(published, Double.NaN);
+        speciesIdx = new HashMap<Integer, Integer>();
+        for (int i = 0; i < speciesID.length; i++) {
+            speciesIdx.put(speciesID[i], i);
+        }
+    }
+
+    /*
+     Everything the compiled model depends on, in node ID order: node ID, type,
+     and the X, R, K and per-unit biomass parameters.  Biomass is deliberately
+     excluded (see syncBiomass).
+     */
+    static double[] signature(Map<Integer, SpeciesZoneType> nodes) {
+        Integer[] nodeIDs = nodes.keySet().toArray(new Integer[nodes.size()]);
+        Arrays.sort(nodeIDs);
+        double[] sig = new double[nodeIDs.length * 6];
+        int k = 0;
+        for (Integer nodeID : nodeIDs) {
+            SpeciesZoneType szt = nodes.get(nodeID);
+            sig[k++] = nodeID;
+            sig[k++] = szt.getType() == null ? -1 : szt.getType().ordinal();
+            sig[k++] = szt.getParamX();
+            sig[k++] = szt.getParamR();
+            sig[k++] = szt.getParamK();
+            sig[k++] = szt.getPerSpeciesBiomass();
+        }
+        return sig;
+    }
+
+    boolean matches(double[] signature) {
+        return Arrays.equals(this.signature, signature);
+    }
+
+    /**
+     * Reset the biomass of every species whose ZoneNodes biomass no longer
+     * matches the value published after the last prediction.
+     *
+     * @return number of species reset
+     */
+    int syncBiomass(Map<Integer, SpeciesZoneType> nodes) {
+        int cnt = 0;
+        for (int i = 0; i < speciesID.length; i++) {
+            double current = nodes.get(speciesID[i]).getCurrentBiomass();
+            if (current != published[i]) {
+                biomass[i] = current / scale;
+                cnt++;
+            }
+        }
+        return cnt;
+    }
+
+    /**
+     * Integrate the given number of timesteps from the current biomass.  On
+     * failure biomass is left at the last completed timestep.
+     *
+     * @return false if the solver could not complete a timestep
+     */
+    boolean advance(int timesteps, double initTime, double timeIntvl) {
+        for (int t = 0; t < timesteps; t++) {
+            if (!solver.performIntegration(
+                    initTime + (double) timestep * timeIntvl, biomass)) {
+                return false;
+            }
+            solver.getYNew(biomass);
+            timestep++;
+        }
+        return true;
+    }
+
+    //record ZoneNodes biomass as set from this state, for syncBiomass()
+    void publish(Map<Integer, SpeciesZoneType> nodes) {
+        for (int i = 0; i < speciesID.length; i++) {
+            published[i] = nodes.get(speciesID[i]).getCurrentBiomass();
+        }
+    }
+
+    int[] getSpeciesID() {
+        return speciesID;
+    }
+
+    //current biomass of node, in ZoneNodes units
+    double getBiomass(int nodeID) {
+        return biomass[speciesIdx.get(nodeID)] * scale;
+    }
+
+    int getTimestep() {
+        return timestep;
+    }
+
+    OdeSolver getSolver() {
+        return solver;
+    }
+
+    String getSolverName() {
+        return solverName;
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.util.Arrays;
+
+/**
+ * The ATN model as an OdeSystem.  The state is the normalized biomass of each
+ * species, in the order of the speciesID array the model was compiled with.
+ *
+ * Contributions of each species to another's change in biomass are not part
+ * of the integration; computeContributions() estimates them for an interval
+ * from the states at its start and end, independent of the solver used.
+ *
+ * The analytic Jacobian follows from writing the consumption of prey m by
+ * predator p (the getJContribAsPrey/Pred terms of ATNModel) as
+ *   C_pm = omega_p * x_p * y * B_p * B_m^h / D_p,
+ *   D_p = b0^h + d * B_p * b0^h + omega_p * sum(B_q^h, q prey of p),
+ * which adds C_pm to f_p and subtracts C_pm / e_m from f_m.  C_pm depends on
+ * B_p and on the biomass of every prey of p, so row i of the Jacobian has
+ * entries for i itself, its prey, its predators and the prey of its
+ * predators; the metabolic loss/logistic growth term only adds to the
+ * diagonal.  The model must not be changed once wrapped by an ATNSystem.
+ */
+public class ATNSystem implements OdeSystem, OdeJacobian {
+
+    //species present at the start of a step never fall below this biomass
+    static final double MIN_BIOMASS = 0.000001;
+
+    private final CompiledATNModel model;
+    private final int speciesCnt;
+
+    //evaluation workspace
+    private final double[] bmPowH;
+    private final double[] preyBM;
+    private final double[] yDelta;
+    private final double[] contribsStart;
+    private final double[] contribsEnd;
+    private final double[] dBmPowH;     //h * B^(h-1)
+    private final double[] dDenom;      //dD_p/dB_q for q in jacQ row p
+
+    //Jacobian pattern (CSR), shared; see JacobianPattern
+    private final int[] jacPtr;
+    private final int[] jacIdx;
+    private final int[] jacDiag;        //position of entry (i, i)
+    /*
+     per predator p: jacQ row p lists {p} + prey of p (ascending), with
+     jacQPrey set for the prey entries; jacQPos gives the position of
+     (p, q) and jacPreyPos of (m, q) for each prey m of p (in prey index
+     order) and each q in jacQ row p, starting at jacPreyOff[p].
+     */
+    private final int[] jacQPtr;
+    private final int[] jacQIdx;
+    private final boolean[] jacQPrey;
+    private final int[] jacQPos;
+    private final int[] jacPreyOff;
+    private final int[] jacPreyPos;
+
+    public ATNSystem(CompiledATNModel model) {
+        this.model = model;
+        speciesCnt = model.getSpeciesCnt();
+        bmPowH = new double[speciesCnt];
+        preyBM = new double[speciesCnt];
+        yDelta = new double[speciesCnt];
+        contribsStart = new double[model.getLinkCnt()];
+        contribsEnd = new double[model.getLinkCnt()];
+        dBmPowH = new double[speciesCnt];
+
+        JacobianPattern pattern = model.getJacobianPattern();
+        jacPtr = pattern.jacPtr;
+        jacIdx = pattern.jacIdx;
+        jacDiag = pattern.jacDiag;
+        jacQPtr = pattern.jacQPtr;
+        jacQIdx = pattern.jacQIdx;
+        jacQPrey = pattern.jacQPrey;
+        jacQPos = pattern.jacQPos;
+        jacPreyOff = pattern.jacPreyOff;
+        jacPreyPos = pattern.jacPreyPos;
+        dDenom = new double[pattern.maxQ];
+    }
+
+    /**
+     * Jacobian pattern (CSR) and update positions of a model's links.  Depends
+     * only on the links, so it is built once per model and shared by every
+     * ATNSystem of that model and of its parameter variants (see
+     * CompiledATNModel.getJacobianPattern()).
+     */
+    static final class JacobianPattern {
+
+        final int[] jacPtr;
+        final int[] jacIdx;
+        final int[] jacDiag;
+        final int[] jacQPtr;
+        final int[] jacQIdx;
+        final boolean[] jacQPrey;
+        final int[] jacQPos;
+        final int[] jacPreyOff;
+        final int[] jacPreyPos;
+        final int maxQ;         //longest jacQ row
+
+        JacobianPattern(CompiledATNModel model) {
+            final int n = model.getSpeciesCnt();
+            final int[] preyPtr = model.preyPtr;
+            final int[] preyIdx = model.preyIdx;
+            final int[] predPtr = model.predPtr;
+            final int[] predIdx = model.predIdx;
+
+            //pattern: row i = i, prey of i, predators of i, prey of predators of i
+            int[] mark = new int[n];
+            Arrays.fill(mark, -1);
+            int[] rowCols = new int[n];
+            jacPtr = new int[n + 1];
+            int[] cols = new int[n];
+            int nnz = 0;
+            for (int i = 0; i < n; i++) {
+                int cnt = 0;
+                rowCols[cnt++] = i;
+                mark[i] = i;
+                for (int k = preyPtr[i]; k < preyPtr[i + 1]; k++) {
+                    cnt = addCol(preyIdx[k], i, mark, rowCols, cnt);
+                }
+                for (int k = predPtr[i]; k < predPtr[i + 1]; k++) {
+                    int pred = predIdx[k];
+                    cnt = addCol(pred, i, mark, rowCols, cnt);
+                    for (int l = preyPtr[pred]; l < preyPtr[pred + 1]; l++) {
+                        cnt = addCol(preyIdx[l], i, mark, rowCols, cnt);
+                    }
+                }
+                Arrays.sort(rowCols, 0, cnt);
+                if (nnz + cnt > cols.length) {
+                    cols = Arrays.copyOf(cols, Math.max(nnz + cnt, 2 * cols.length));
+                }
+                System.arraycopy(rowCols, 0, cols, nnz, cnt);
+                nnz += cnt;
+                jacPtr[i + 1] = nnz;
+            }
+            jacIdx = Arrays.copyOf(cols, nnz);
+            jacDiag = new int[n];
+            for (int i = 0; i < n; i++) {
+                jacDiag[i] = jacPos(i, i);
+            }
+
+            //per predator: q = p + prey of p, and positions of updated entries
+            jacQPtr = new int[n + 1];
+            jacPreyOff = new int[n + 1];
+            for (int p = 0; p < n; p++) {
+                int preyCnt = preyPtr[p + 1] - preyPtr[p];
+                int qCnt = preyCnt == 0 ? 0
+                        : (model.reln[p * n + p] & CompiledATNModel.RELN_PRED) != 0
+                        ? preyCnt : preyCnt + 1;
+                jacQPtr[p + 1] = jacQPtr[p] + qCnt;
+                jacPreyOff[p + 1] = jacPreyOff[p] + preyCnt * qCnt;
+            }
+            jacQIdx = new int[jacQPtr[n]];
+            jacQPrey = new boolean[jacQPtr[n]];
+            jacQPos = new int[jacQPtr[n]];
+            jacPreyPos = new int[jacPreyOff[n]];
+            int maxQ = 0;
+            for (int p = 0; p < n; p++) {
+                int qk = jacQPtr[p];
+                if (qk == jacQPtr[p + 1]) {
+                    continue;
+                }
+                maxQ = Math.max(maxQ, jacQPtr[p + 1] - qk);
+                boolean selfAdded = false;
+                for (int k = preyPtr[p]; k < preyPtr[p + 1]; k++) {
+                    int prey = preyIdx[k];
+                    if (!selfAdded && prey >= p) {
+                        if (prey > p) {
+                            jacQIdx[qk++] = p;
+                        }
+                        selfAdded = true;
+                    }
+                    jacQPrey[qk] = true;
+                    jacQIdx[qk++] = prey;
+                }
+                if (!selfAdded) {
+                    jacQIdx[qk++] = p;
+                }
+                int t = jacPreyOff[p];
+                for (qk = jacQPtr[p]; qk < jacQPtr[p + 1]; qk++) {
+                    jacQPos[qk] = jacPos(p, jacQIdx[qk]);
+                }
+                for (int k = preyPtr[p]; k < preyPtr[p + 1]; k++) {
+                    for (qk = jacQPtr[p]; qk < jacQPtr[p + 1]; qk++) {
+                        jacPreyPos[t++] = jacPos(preyIdx[k], jacQIdx[qk]);
+                    }
+                }
+            }
+            this.maxQ = maxQ;
+        }
+
+        private static int addCol(int col, int row, int[] mark, int[] rowCols, int cnt) {
+            if (mark[col] != row) {
+                mark[col] = row;
+                rowCols[cnt++] = col;
+            }
+            return cnt;
+        }
+
+        //position of (i, j) in the Jacobian pattern
+        private int jacPos(int i, int j) {
+            return Arrays.binarySearch(jacIdx, jacPtr[i], jacPtr[i + 1], j);
+        }
+    }
+
+    public CompiledATNModel getModel() {
+        return model;
+    }
+
+    @Override
+    public int getDimension() {
+        return speciesCnt;
+    }
+
+    @Override
+    public boolean isAutonomous() {
+        return true;
+    }
+
+    @Override
+    public void computeDerivatives(double x, double[] y, double[] yDot) {
+        model.calcYDelta(y, 1.0, null, yDot, bmPowH, preyBM);
+    }
+
+    @Override
+    public int[] getJacobianRowPtr() {
+        return jacPtr;
+    }
+
+    @Override
+    public int[] getJacobianColIdx() {
+        return jacIdx;
+    }
+
+    @Override
+    public void computeJacobian(double x, double[] bm, double[] jac) {
+        final CompiledATNModel m = model;
+        final int n = speciesCnt;
+        final double h = m.h;
+        Arrays.fill(jac, 0, jacPtr[n], 0.0);
+
+        for (int j = 0; j < n; j++) {
+            bmPowH[j] = Math.pow(bm[j], h);
+            dBmPowH[j] = h * Math.pow(bm[j], h - 1);
+        }
+
+        //metabolic loss (all species) and logistic growth (plants)
+        for (int i = 0; i < n; i++) {
+            double val = -m.x[i];
+            if (m.isPlant[i]) {
+                val += m.r[i] * (1.0 - 2.0 * bm[i] / m.kNorm[i]);
+            }
+            jac[jacDiag[i]] += val;
+        }
+
+        //consumption of each prey m by each predator p
+        for (int p = 0; p < n; p++) {
+            int qStart = jacQPtr[p];
+            int qEnd = jacQPtr[p + 1];
+            if (qStart == qEnd) {
+                continue;
+            }
+            double preyBMP = 0;
+            for (int k = m.preyPtr[p]; k < m.preyPtr[p + 1]; k++) {
+                preyBMP = preyBMP + bmPowH[m.preyIdx[k]];
+            }
+            double omega = m.omega[p];
+            double bmP = bm[p];
+            double denom = m.b0PowH + m.d * bmP * m.b0PowH + omega * preyBMP;
+            //C_pm = coef * B_p * B_m^h
+            double coef = omega * m.x[p] * m.y / denom;
+            for (int qk = qStart; qk < qEnd; qk++) {
+                int q = jacQIdx[qk];
+                double dD = q == p ? m.d * m.b0PowH : 0;
+                if (jacQPrey[qk]) {
+                    dD += omega * dBmPowH[q];
+                }
+                dDenom[qk - qStart] = dD / denom;
+            }
+
+            int t = jacPreyOff[p];
+            for (int k = m.preyPtr[p]; k < m.preyPtr[p + 1]; k++) {
+                int prey = m.preyIdx[k];
+                double consumed = coef * bmP * bmPowH[prey];
+                double invE = 1.0 / m.ePrey[prey];
+                for (int qk = qStart; qk < qEnd; qk++) {
+                    int q = jacQIdx[qk];
+                    double dC = -consumed * dDenom[qk - qStart];
+                    if (q == p) {
+                        dC += coef * bmPowH[prey];
+                    }
+                    if (q == prey) {
+                        dC += coef * bmP * dBmPowH[prey];
+                    }
+                    jac[jacQPos[qk]] += dC;
+                    jac[jacPreyPos[t++]] -= dC * invE;
+                }
+            }
+        }
+    }
+
+    //extinct species stay extinct; others don't let bm fall below 0
+    @Override
+    public boolean constrainState(double[] yStart, double[] y) {
+        boolean changed = false;
+        for (int j = 0; j < speciesCnt; j++) {
+            if (yStart[j] == 0) {
+                if (y[j] != 0) {
+                    y[j] = 0;
+                    changed = true;
+                }
+            } else if (y[j] < MIN_BIOMASS) {
+                y[j] = MIN_BIOMASS;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    //contribution pattern (CSR): entry k of row i is the contribution of
+    //species getContribColIdx()[k] to species i
+    public int[] getContribRowPtr() {
+        return model.getLinkPtr();
+    }
+
+    public int[] getContribColIdx() {
+        return model.getLinkIdx();
+    }
+
+    /**
+     * Estimate the contribution of each linked species j to the change in
+     * biomass of species i over an interval of length dT (trapezoid rule on
+     * the start and end states).
+     *
+     * @param yStart biomass at the start of the interval
+     * @param yEnd biomass at the end of the interval
+     * @param dT interval length
+     * @param dest receives contributions in getContribRowPtr() order
+     */
+    public void computeContributions(double[] yStart, double[] yEnd, double dT,
+            double[] dest) {
+        model.calcYDelta(yStart, dT, contribsStart, yDelta, bmPowH, preyBM);
+        model.calcYDelta(yEnd, dT, contribsEnd, yDelta, bmPowH, preyBM);
+        for (int k = 0; k < contribsStart.length; k++) {
+            dest[k] = 0.5 * (contribsStart[k] + contribsEnd[k]);
+        }
+    }
+
+    /**
+     * As above, into a dense matrix: contribution of j to i in dest[i][j].
+     */
+    public void computeContributions(double[] yStart, double[] yEnd, double dT,
+            double[][] dest) {
+        model.calcYDelta(yStart, dT, contribsStart, yDelta, bmPowH, preyBM);
+        model.calcYDelta(yEnd, dT, contribsEnd, yDelta, bmPowH, preyBM);
+        int[] linkPtr = model.getLinkPtr();
+        int[] linkIdx = model.getLinkIdx();
+        for (int i = 0; i < speciesCnt; i++) {
+            double[] destI = dest[i];
+            Arrays.fill(destI, 0.0);
+            for (int k = linkPtr[i]; k < linkPtr[i + 1]; k++) {
+                destI[linkIdx[k]] = 0.5 * (contribsStart[k] + contribsEnd[k]);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+/**
+ * Common driver for the error-controlled solvers.  An output interval (hOrig)
+ * is covered by as many internal substeps as needed; subclasses implement a
+ * single substep attempt, which either accepts (estimate in yNew) or rejects,
+ * and in both cases proposes the step size for the next attempt in hNext.
+ * The proposed step carries over between calls, so smooth phases take steps
+ * longer than the output interval (clipped at the interval end) and fast
+ * transients are subdivided rather than abandoned.
+ */
+abstract class AdaptiveOdeSolver implements OdeSolver {
+
+    //give up on an interval if the step collapses or never completes
+    static final double MIN_STEP_FRAC = 1.0E-12;
+    static final int MAX_SUBSTEPS = 100000;
+
+    final OdeSystem system;
+    final int speciesCnt;    //state dimension
+    double hOrig;            //output interval
+    double maxErr;           //max absolute error per step, any variable
+    double xOrig;
+    double[] yOrig;          //state at the start of the current substep
+    double[] yNew;           //substep estimate; result once interval is done
+
+    //step size proposed for the next attempt, carried between calls
+    double hNext;
+
+    //counters since construction or last resetCounters()
+    long acceptedSteps = 0;
+    long rejectedSteps = 0;
+    long rhsEvals = 0;
+
+    AdaptiveOdeSolver(double hOrig, OdeSystem system, double maxErr) {
+        this.hOrig = hOrig;
+        this.system = system;
+        this.maxErr = maxErr;
+        speciesCnt = system.getDimension();
+        yOrig = new double[speciesCnt];
+        yNew = new double[speciesCnt];
+        hNext = hOrig;
+    }
+
+    /*
+     Attempt a single substep of size h from (x, yOrig).  Returns true if the
+     step is accepted, with the estimate in yNew; sets hNext either way.
+     */
+    abstract boolean trySubstep(double x, double h);
+
+    //called when the system adjusted an accepted estimate (see constrainState)
+    void stateConstrained() {
+    }
+
+    @Override
+    public boolean performIntegration(double xOrig, double[] yOrig) {
+        this.xOrig = xOrig;
+        System.arraycopy(yOrig, 0, this.yOrig, 0, speciesCnt);
+
+        double x = xOrig;
+        double xEnd = xOrig + hOrig;
+        double hMin = hOrig * MIN_STEP_FRAC;
+        int substeps = 0;
+
+        while (xEnd - x > hMin) {
+            if (++substeps > MAX_SUBSTEPS || hNext < hMin) {
+                return false;
+            }
+            //clip to the end of the output interval
+            double h = Math.min(hNext, xEnd - x);
+            if (trySubstep(x, h)) {
+                acceptedSteps++;
+                x = (h == xEnd - x) ? xEnd : x + h;
+                if (system.constrainState(this.yOrig, yNew)) {
+                    stateConstrained();
+                }
+                //accepted estimate becomes the start of the next substep
+                System.arraycopy(yNew, 0, this.yOrig, 0, speciesCnt);
+            } else {
+                rejectedSteps++;
+            }
+        }
+        System.arraycopy(this.yOrig, 0, yNew, 0, speciesCnt);
+
+        return true;
+    }
+
+    //evaluate the system, counting the evaluation
+    final void computeDerivatives(double x, double[] y, double[] yDot) {
+        rhsEvals++;
+        system.computeDerivatives(x, y, yDot);
+    }
+
+    //max over variables of |err| / maxErr; infinite if any entry is NaN/Inf
+    final double errorNorm(double[] err) {
+        double norm = 0;
+        for (int j = 0; j < speciesCnt; j++) {
+            double e = Math.abs(err[j]);
+            if (!(e <= Double.MAX_VALUE)) {
+                return Double.POSITIVE_INFINITY;
+            }
+            norm = Math.max(norm, e / maxErr);
+        }
+        return norm;
+    }
+
+    public double[] getYNew() {
+        double[] rtn = new double[speciesCnt];
+        System.arraycopy(yNew, 0, rtn, 0, speciesCnt);
+        return rtn;
+    }
+
+    @Override
+    public void getYNew(double[] dest) {
+        System.arraycopy(yNew, 0, dest, 0, speciesCnt);
+    }
+
+    @Override
+    public long getAcceptedSteps() {
+        return acceptedSteps;
+    }
+
+    @Override
+    public long getRejectedSteps() {
+        return rejectedSteps;
+    }
+
+    @Override
+    public long getRhsEvals() {
+        return rhsEvals;
+    }
+
+    @Override
+    public void resetCounters() {
+        acceptedSteps = 0;
+        rejectedSteps = 0;
+        rhsEvals = 0;
+    }
+}
@@ -5,11 +5,6 @@
  */
 package atn;
 
-import java.util.Arrays;
-import java.util.Map;
-import metadata.Constants;
-import simulation.simjob.SimJobSZT;
-
 /**
  *
  * @author justinacotter
@@ -22,132 +17,166 @@ import simulation.simjob.SimJobSZT;
  *
  * Based on method description at
  * http://apps.nrbook.com/empanel/index.html#pg=921
+ *
+ * Each substep (see AdaptiveOdeSolver) uses the order (number of
+ * extrapolation columns) and step size predicted by the previous one, is
+ * rejected and retried with a smaller step if the extrapolation error exceeds
+ * maxErr, and proposes the order/step size for the next substep from the work
+ * per unit step of each column (order and step size control after Hairer,
+ * Norsett & Wanner, "Solving Ordinary Differential Equations I", section II.9).
  */
-public class BulirschStoerIntegration {
+public class BulirschStoerIntegration extends AdaptiveOdeSolver {
 
     static final int stepCnt[] = {2, 4, 6, 8, 10, 12, 14, 16, 18};
     static final int attemptCnt = stepCnt.length;
+    static final int maxCol = attemptCnt - 1;  //highest extrapolation column
+
+    //step size control: safety factors and limits on change per substep
+    static final double SAFE1 = 0.94;
+    static final double SAFE2 = 0.65;
+    static final double FAC_MIN = 0.02;
+    static final double FAC_MAX = 4.0;
+    //order control: relative work needed to change order
+    static final double ORDER_DEC = 0.8;
+    static final double ORDER_INC = 0.9;
 
-    double[] yNew;
-    double xOrig;
-    double hOrig;
-    double hNew;
-    double maxErr;
-    double[] yOrig;
-    double[][] contribs;
-    Map<Integer, NodeRelationships> ecosysRelationships;
-    final int speciesCnt;
-    int[] speciesID;
-    SimJobSZT[] sztArray;
-    LinkParams lPs;
-    ATNModel[][] atnModel;
     int err = 0;
     int debugIdx = 0;
     double[][] extrapArray;
     int attempts = 0;
-    int equationSet;
 
+    //order for the next attempt, carried between calls
+    int kOpt;
+
+    /*
+     integration workspace; allocated once per integrator (i.e. once per job)
+     and reused by every call to performIntegration() so that the integration
+     loop itself does not allocate.
+     */
+    private final double[] stepSize;
+    private final double[] y0;
+    private final double[] y1;
+    private final double[] yDelta;
+    private final double[][] priorRow;
+    private final double[] colWork;     //RHS evaluations to build columns 0..k
+    private final double[] colStep;     //optimal step size predicted by column k
+    private final double[] colCost;     //work per unit step of column k
+
+    /**
+     * Create integrator for a system of ODEs.
+     *
+     * @param hOrig output interval
+     * @param system equations to integrate
+     * @param maxErr max absolute error per step, any variable
+     */
     public BulirschStoerIntegration(
             double hOrig,
-            int[] speciesID,
-            SimJobSZT[] sztArray,
-            Map<Integer, NodeRelationships> ecosysRelationships,
-            LinkParams lPs,
-            double maxErr,
-            int equationSet
+            OdeSystem system,
+            double maxErr
     ) {
-        this.hOrig = hOrig;
-        this.maxErr = maxErr;
-        speciesCnt = speciesID.length;
-        this.speciesID = speciesID;  //note: shallow copy
-        this.sztArray = sztArray;  //note: shallow copy
-        this.yOrig = new double[speciesCnt];
-        this.ecosysRelationships = ecosysRelationships;
-        this.lPs = lPs;
-        this.equationSet = equationSet;
-
-        atnModel = new ATNModel[speciesCnt][speciesCnt];
-        yNew = new double[speciesCnt];
-        contribs = new double[speciesCnt][speciesCnt];
+        super(hOrig, system, maxErr);
 
-    }
+        stepSize = new double[attemptCnt];
+        y0 = new double[speciesCnt];
+        y1 = new double[speciesCnt];
+        yDelta = new double[speciesCnt];
+        priorRow = new double[speciesCnt][attemptCnt + 1];
+        extrapArray = new double[speciesCnt][attemptCnt + 1];
 
-    public boolean performIntegration(double xOrig, double[] yOrig) {
-        this.xOrig = xOrig;
-        System.arraycopy(yOrig, 0, this.yOrig, 0, speciesCnt);
+        colWork = new double[attemptCnt];
+        colStep = new double[attemptCnt];
+        colCost = new double[attemptCnt];
+        colWork[0] = stepCnt[0] + 1;
+        for (int k = 1; k < attemptCnt; k++) {
+            colWork[k] = colWork[k - 1] + stepCnt[k];
+        }
+        kOpt = Math.min(3, maxCol - 1);
+    }
 
-        double[] stepSize = new double[attemptCnt];
-        double[] yOld = new double[speciesCnt];
-        boolean estWithinErr = true;
-        extrapArray = new double[speciesCnt][attemptCnt + 1];
+    /*
+     trySubstep() -
+     Attempt a single Bulirsch-Stoer step of size h from (x, yOrig), building
+     extrapolation columns until the error estimate of a column around the
+     current target order (kOpt) is acceptable, or until convergence within
+     the window kOpt-1..kOpt+1 can no longer be expected.  Sets hNext/kOpt for
+     the following attempt either way; returns true if the step is accepted
+     (estimate in yNew).
+     */
+    @Override
+    boolean trySubstep(double x, double h) {
+        for (int k = 0; k <= maxCol; k++) {
+            attempts = k;
+            stepSize[k] = h / (double) stepCnt[k];
+            modMidpointEst(x, stepCnt[k], stepSize[k], yNew);
+            extrapolate(extrapArray, stepSize, k);
+            if (k == 0) {
+                continue;
+            }
 
-        /* 
-         Perform the first estimate of y(x+h), store the step size which
-         was used plus the estimate; for subsequent call to the
-         polynomial extrapolation function for the value of y(x+h)      
-         */
-        stepSize[0] = hOrig / (double) stepCnt[0];
-        yNew = modMidpointEst(xOrig, stepCnt[0], stepSize[0]);
-//        System.out.printf("after 1st midpt, yOrig[debugIdx]=%9.2f, stepCnt=%d, "
-//                + "yNew[debugIdx]=%9.2f\n",
-//                yOrig[debugIdx], stepCnt[0], yNew[debugIdx]);
-
-        extrapolate(extrapArray, stepSize, 0);
-//        System.out.printf("after extrap, i=%d, yNew=%9.2f, stepSize=%9.6f\n",
-//                0, yNew[debugIdx], stepSize[0]);
-
-        /* 
-         Repeat with smaller step sizes, until error is small enough
-         or extrapolation fails             
-         */
-        for (int i = 1; i < attemptCnt; i++) {
-            attempts = i;
-            System.arraycopy(yNew, 0, yOld, 0, speciesCnt);
-
-            //get next estimate
-            stepSize[i] = hOrig / (double) stepCnt[i];
-            yNew = modMidpointEst(xOrig, stepCnt[i], stepSize[i]);
-//            System.out.printf("after midpt, i=%d, stepCnt=%d, yNew[debugIdx]=%9.2f\n",
-//                    i, stepCnt[i], yNew[debugIdx]);
-
-            //perform polynomial extrapolation
-            extrapolate(extrapArray, stepSize, i);
-//            System.out.printf("after extrap, i=%d, yNew[0]=%9.2f, "
-//                    + "stepSize=%9.6f\n",
-//                    i, yNew[debugIdx], stepSize[i]);
-
-            //evaluate error for each species - difference between two highest
-            //degree estimates in current row.
-            estWithinErr = true;
+            //error - difference between two highest degree estimates in
+            //current row, relative to maxErr (worst species)
+            double err = 0;
             for (int j = 0; j < speciesCnt; j++) {
-                estWithinErr = estWithinErr
-                        && (Math.abs(extrapArray[j][i] - extrapArray[j][i - 1])
-                        < maxErr);
+                double diff = Math.abs(extrapArray[j][k] - extrapArray[j][k - 1]);
+                if (!(diff <= Double.MAX_VALUE)) {  //NaN or infinite
+                    err = Double.POSITIVE_INFINITY;
+                    break;
+                }
+                err = Math.max(err, diff / maxErr);
             }
-
-            //exit if error is acceptable
-            if (estWithinErr) {
-                break;
+            if (err == Double.POSITIVE_INFINITY) {
+                hNext = h * FAC_MIN;
+                kOpt = Math.max(1, Math.min(kOpt, k));
+                return false;
             }
 
-        }
-//        System.out.printf("*** yNew[debugIdx]=%9.2f\n", yNew[debugIdx]);
+            //optimal step size for this column; error is O(h^(2k+1))
+            double fac = err == 0 ? FAC_MAX
+                    : SAFE1 * Math.pow(SAFE2 / err, 1.0 / (2 * k + 1));
+            colStep[k] = h * Math.max(FAC_MIN, Math.min(FAC_MAX, fac));
+            colCost[k] = colWork[k] / colStep[k];
 
-        return estWithinErr;
-    }
-
-    public double[] getYNew() {
-        double[] rtn = new double[speciesCnt];
-        System.arraycopy(yNew, 0, rtn, 0, speciesCnt);
-        return rtn;
+            if (k < kOpt - 1) {
+                continue;
+            }
+            if (err <= 1.0) {
+                selectNext(k, true);
+                return true;
+            }
+            //convergence monitor: reject early if convergence is not
+            //expected by column kOpt+1
+            double ratio;
+            if (k == kOpt - 1) {
+                ratio = (double) stepCnt[kOpt] * stepCnt[kOpt + 1]
+                        / ((double) stepCnt[0] * stepCnt[0]);
+            } else if (k == kOpt) {
+                ratio = (double) stepCnt[kOpt + 1] / stepCnt[0];
+            } else {
+                ratio = 1.0;
+            }
+            if (err > ratio * ratio || k == maxCol) {
+                selectNext(k, false);
+                return false;
+            }
+        }
+        return false;  //not reached; column maxCol always decides
     }
 
-    public double[][] getContribs() {
-        double[][] rtn = new double[speciesCnt][speciesCnt];
-        for (int i = 0; i < speciesCnt; i++) {
-            System.arraycopy(contribs[i], 0, rtn[i], 0, speciesCnt);
+    //choose order and step size for the next attempt, based on column k
+    private void selectNext(int k, boolean accepted) {
+        int kNew = k;
+        if (k >= 2 && colCost[k - 1] < ORDER_DEC * colCost[k]) {
+            kNew = k - 1;
+        }
+        double hNew = colStep[kNew];
+        if (accepted && kNew == k && k + 1 < maxCol
+                && (k == 1 || colCost[k] < ORDER_INC * colCost[k - 1])) {
+            //converging cheaply: try a higher order with a longer step
+            kNew = k + 1;
+            hNew = colStep[k] * colWork[k + 1] / colWork[k];
         }
-        return rtn;
+        kOpt = Math.max(1, Math.min(kNew, maxCol - 1));
+        hNext = hNew;
     }
 
     public int getErr() {
@@ -167,34 +196,21 @@ public class BulirschStoerIntegration {
      average of prior two estimates plus (h x slope of prior)
      final estimate = 1/2 [ y(n) + y(n-1) + h * f(x(n),y(n) ]
      */
-    private double[] modMidpointEst(double x, int steps, double h) {
-
-        //rolling contribution (delta) and y (biomass) info to hold current and
-        //two prior values
-        double[][] contribs0 = new double[speciesCnt][speciesCnt];
-        double[][] contribs1 = new double[speciesCnt][speciesCnt];
-        double[][] contribs2 = new double[speciesCnt][speciesCnt];
-        double[] y0 = new double[speciesCnt];
-        double[] y1 = new double[speciesCnt];
-        double[] y2 = new double[speciesCnt];
+    private void modMidpointEst(double x, int steps, double h, double[] y2) {
+
+        //rolling y (biomass) info to hold current and two prior values
+        //(workspace arrays; y2 receives the final estimate)
         double x0 = x;
         double x1;
         double x2 = 0.0;
 
-        double[] yDelta = new double[speciesCnt];
-
         //step=1: solve equation w/ orig data
         System.arraycopy(yOrig, 0, y0, 0, speciesCnt);
 //        System.out.printf("in ModMid, start,\t\t (x0, y0)=(%9.2f, %9.2f)\n",
 //                x0, y0[debugIdx]);
-        yDelta = calcYDelta(x0, y0, h, contribs1);
+        calcYDelta(x0, y0, h, yDelta);
         for (int j = 0; j < speciesCnt; j++) {
-            if (yOrig[j] == 0) {
-                yDelta[j] = 0;
-                continue;
-            }
             y1[j] = y0[j] + yDelta[j];
-            Arrays.fill(contribs0[j], 0.0f);
         }
         x1 = x0 + h;
 //        System.out.printf("in ModMid, i = %d+1 of %d,\t (x1, y1)=(%9.2f, %9.2f) yDelta = %9.2f\n",
@@ -202,18 +218,9 @@ public class BulirschStoerIntegration {
 
         //make weighted estimates for intermediate steps (steps-1)
         for (int i = 1; i < steps; i++) {
-            yDelta = calcYDelta(x1, y1, h, contribs2);
+            calcYDelta(x1, y1, h, yDelta);
             for (int j = 0; j < speciesCnt; j++) {
-                if (yOrig[j] == 0) {
-                    yDelta[j] = 0;
-                    continue;
-                }
                 y2[j] = y0[j] + 2 * yDelta[j];
-                for (int k = 0; k < speciesCnt; k++) {
-                    contribs2[j][k] = contribs0[j][k] + 2 * contribs2[j][k];
-                }
-                System.arraycopy(contribs1[j], 0, contribs0[j], 0, speciesCnt);
-                System.arraycopy(contribs2[j], 0, contribs1[j], 0, speciesCnt);
             }
             x2 = x1 + h;
             System.arraycopy(y1, 0, y0, 0, speciesCnt);
@@ -222,39 +229,22 @@ public class BulirschStoerIntegration {
             x1 = x2;
 //            System.out.printf("in ModMid, i = %d+1 of %d,\t (x2, y2)=(%9.2f, %9.2f) yDelta = %9.2f\n",
 //                    i, steps, x2, y2[debugIdx], yDelta[0]);
-//            System.out.printf("in ModMid, \t\t\t (x0, y0)=(%9.2f, %9.2f)\n",
-//                    x0, y0[debugIdx]);
-//            System.out.printf("in ModMid, \t\t\t (x1, y1)=(%9.2f, %9.2f)\n",
-//                    x1, y1[debugIdx]);
         }
 
         //final estimate
-        yDelta = calcYDelta(x1, y1, h, contribs2);
+        calcYDelta(x1, y1, h, yDelta);
         for (int j = 0; j < speciesCnt; j++) {
-            if (yOrig[j] == 0) {
-                yDelta[j] = 0;
-                continue;
-            }
             //v1
             y2[j] = 0.5 * (y0[j] + y1[j] + yDelta[j]);
-            
+
             //v2 (same as v1)
             //y2[j] = y0[j] + 2 * yDelta[j];
             //y2[j] = 0.25 * (y0[j] + 2 * y1[j] + y2[j]);
-            if (equationSet == 0) {  //ATN: don't let bm fall below 0
-                y2[j] = Math.max(y2[j], 0.000001);  
-            }
-            for (int k = 0; k < speciesCnt; k++) {
-                contribs2[j][k] = 0.5 * (contribs0[j][k] + contribs1[j][k] + contribs2[j][k]);
-            }
-
-            //copy final contrib info to object array for later reference
-            System.arraycopy(contribs2[j], 0, contribs[j], 0, speciesCnt);
         }
+        //e.g. ATN: don't let bm fall below 0
+        system.constrainState(yOrig, y2);
 //        System.out.printf("in ModMid, end,\t\t\t (x2, y2)=(%9.2f, %9.2f) yDelta = %9.2f\n",
 //                x2, y2[debugIdx], yDelta[0]);
-
-        return y2;  //return final estimate
     }
 
     /* 
@@ -271,7 +261,6 @@ public class BulirschStoerIntegration {
             double[] stepSize, int stepIdx) {
 
         int degrees = stepIdx + 1;
-        double[][] priorRow = new double[speciesCnt][degrees];
 
         //first row has single element
         if (stepIdx == 0) {
@@ -313,122 +302,23 @@ public class BulirschStoerIntegration {
 
     }
 
-    //calc ATN model terms; relative contrib of each species to each species biomass 
-    private void calcATNTerms(double stepSize, double[] preyBM, int speciesIdx) {
-
-        for (int j = 0; j < speciesCnt; j++) {
-            NodeRelationships relnsI = ecosysRelationships.get(speciesID[speciesIdx]);
-            NodeRelationships relnsJ = ecosysRelationships.get(speciesID[j]);
-            int preyCntI = relnsI.getPreyCnt();
-            int preyCntJ = relnsJ.getPreyCnt();
-            //get reln FROM i TO j
-            String relnIJ = relnsI.getReln(speciesID[j]);
-            //(reln FROM i TO j)
-            switch (relnIJ) {
-                case "d":  //i predator of j
-                    atnModel[speciesIdx][j].setFuncRespIJ(preyBM[speciesIdx], preyCntI);
-                    break;
-                case "y":  //i prey of j
-                    atnModel[speciesIdx][j].setFuncRespJI(preyBM[j], preyCntJ);
-                    break;
-                case "b":  //i and j predate on each other
-                    atnModel[speciesIdx][j].setFuncRespIJ(preyBM[speciesIdx], preyCntI);
-                    atnModel[speciesIdx][j].setFuncRespJI(preyBM[j], preyCntJ);
-                    break;
-                case "c":  //i==j (cannibal)
-                    atnModel[speciesIdx][j].setFuncRespIJ(preyBM[speciesIdx], preyCntI);
-                    atnModel[speciesIdx][j].setFuncRespJI(preyBM[j], preyCntJ);
-                    break;
-            }
-            atnModel[speciesIdx][j].setJContrib(speciesIdx == j, stepSize);
-        }   //j
-
-    }
-
-    private void calcPreyBM(double[] bm, double[] preyBM) {
-
-        for (int i = 0; i < speciesCnt; i++) {
-
-            for (int j = 0; j < speciesCnt; j++) {  //note: j >= i
-                atnModel[i][j] = new ATNModel(sztArray[i], sztArray[j], bm[i], bm[j], lPs);
-                //get reln FROM i TO j
-                String relnIJ = ecosysRelationships.get(speciesID[i]).
-                        getReln(speciesID[j]);
-                //reln FROM i TO j;  note: only prey info is stored -
-                switch (relnIJ) {
-                    case "d":  //i predator of j
-                    case "b":  //species both predate each other
-                        preyBM[i] = preyBM[i]
-                                + atnModel[i][j].getPreyBMCalcDouble(bm[j]);
-                        break;
-                    case "c":  //cannibal
-                        preyBM[i] = preyBM[i]
-                                + atnModel[i][j].getPreyBMCalcDouble(bm[j]);
-                        break;
-                    case "y":
-                    default:
-                        break;
-                }
-            }
-        }
-    }
-
-    private double[] calcYDelta(
+    //change in y over stepSize, from the slope at (x, y)
+    private void calcYDelta(
             double x,
             double[] y,
             double stepSize,
-            double[][] contribs
+            double[] yDelta
     ) {
-        //calc prey bm
-        double[] preyBM = new double[speciesCnt];
-
-        if (equationSet == 0) {
-            //prey calculations have to be performed prior to contrib calcs
-            calcPreyBM(y, preyBM);
-        }
-
-        double[] yDelta = new double[speciesCnt];
-
-        //sum contributions from each species
+        computeDerivatives(x, y, yDelta);
         for (int i = 0; i < speciesCnt; i++) {
-            if (equationSet == 0) {
-                calcATNTerms(stepSize, preyBM, i);
-            }
-
-            for (int j = 0; j < speciesCnt; j++) {
-                double contrib;
-                switch (equationSet) {
-                    case 0:
-                        contrib = atnModel[i][j].getJContrib();
-                        break;
-                    case 1:
-                        contrib = stepSize * ((-y[j] * Math.sin(x)) + (2.0 * Math.tan(x))) * y[j];
-                        break;
-                    case 2:
-                        contrib = stepSize * ((-200.0) * x * Math.pow(y[j],2.0));
-                        break;
-                    default:
-                        contrib = 0.0;
-                        break;
-                }
-                //track total change for species i
-                yDelta[i] += contrib;
-                if (yDelta[i] > 40.0) {
-                    boolean dummy = true;
-                }
-                //track change for this species combo
-                contribs[i][j] = contrib;
-            }
+            yDelta[i] *= stepSize;
         }
-        //System.out.printf("in calcYDelta, yDelta[debugIdx]=%9.2f\n", yDelta[debugIdx]);
-
-        return yDelta;
     }
 
     public String extrapArrayToString(int scale) {
         String arrayStr = "";
         for (int i = 0; i < speciesCnt; i++) {
-            arrayStr += String.format("node %2d", speciesID[i]);
+            arrayStr += String.format("var %2d", i);
             for (int j = 0; j < attempts; j++) {
                 arrayStr += String.format(", %9.2f",
                         extrapArray[i][j] * scale);
@@ -0,0 +1,409 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.util.Map;
+import metadata.Constants;
+import simulation.SpeciesZoneType.NodeParam;
+import simulation.simjob.SimJobSZT;
+
+/**
+ * "Compiled" form of the ATN model for one simulation job.
+ *
+ * ATNModel holds the parameters for a single species pair and re-reads them
+ * from SimJobSZT/LinkParams every time it is constructed.  None of those values
+ * change within a job, so this class reads them once into flat primitive arrays
+ * (indexed the same way as the speciesID array handed to the integrator) and
+ * evaluates the ATN right-hand side directly from them.  The formulae are the
+ * same as ATNModel.setFuncRespIJ/JI and getJContribAsPrey/Pred/Self, evaluated
+ * in the same order, so results are unchanged.
+ *
+ * Link parameters are currently global (LinkParams), so the "per link" values
+ * reduce to scalars plus the assimilation efficiency of each prey species.
+ *
+ * Trophic links are indexed in compressed sparse row (CSR) form: for species i,
+ * entries ptr[i] .. ptr[i+1]-1 of the matching idx array list the species j
+ * (ascending) that i eats (prey index), that eat i (predator index), or that
+ * i interacts with at all, plus i itself (link index).  The right-hand side
+ * iterates only over these entries, so its cost scales with the number of
+ * links rather than speciesCnt^2.  Contributions are likewise reported per
+ * link index entry; every other species pair contributes nothing.
+ *
+ * Parameter variants of one food web (see ParamSweep) are created with the
+ * copy constructor, which shares the links and their indices with the
+ * original and copies only the node parameters.
+ */
+public class CompiledATNModel {
+
+    //relationship flags FROM i TO j (see NodeRelationships/PathTable)
+    static final byte RELN_NONE = 0;
+    static final byte RELN_PRED = 1;   //i predator of j ("d")
+    static final byte RELN_PREY = 2;   //i prey of j ("y")
+    static final byte RELN_BOTH = RELN_PRED | RELN_PREY;  //"b" or "c"
+
+    final int speciesCnt;
+
+    //node parameters
+    final double[] x;          //metabolic rate
+    final double[] r;          //growth rate
+    final double[] kNorm;      //carrying capacity / BIOMASS_SCALE
+    final boolean[] isPlant;
+    final double[] ePrey;      //assimilation efficiency when eaten (by prey type)
+    final int[] omega;         //prey count of each species (as predator)
+
+    //link parameters
+    final double h;            //1 + q
+    final double b0PowH;       //b0^h
+    final double d;            //predator interference
+    final double y;            //max ingestion rate
+
+    final byte[] reln;         //speciesCnt x speciesCnt, row major (build only)
+
+    //CSR link indices, (re)built from reln by buildIndex()
+    private boolean indexed = false;
+    int[] preyPtr;             //i -> prey of i
+    int[] preyIdx;
+    int[] predPtr;             //i -> predators of i
+    int[] predIdx;
+    int[] linkPtr;             //i -> prey, predators and i itself
+    int[] linkIdx;
+    byte[] linkReln;           //relationship FROM i TO linkIdx[k]
+
+    //links are shared with a variant or the model it was copied from
+    private boolean linksShared = false;
+    private ATNSystem.JacobianPattern jacPattern = null;
+
+    /**
+     * Compile the model for the species of a job.
+     *
+     * @param speciesID node IDs, in integrator order
+     * @param sztArray species for each entry of speciesID
+     * @param ecosysRelationships relationships keyed by node ID
+     * @param lPs link parameters
+     */
+    public CompiledATNModel(
+            int[] speciesID,
+            SimJobSZT[] sztArray,
+            Map<Integer, NodeRelationships> ecosysRelationships,
+            LinkParams lPs
+    ) {
+        this(speciesID.length, lPs.getParamQ(), lPs.getParamB0(),
+                lPs.getParamD(), lPs.getParamY());
+
+        for (int i = 0; i < speciesCnt; i++) {
+            SimJobSZT szt = sztArray[i];
+            boolean plant = szt.getSpeciesType().getOrganismType()
+                    == Constants.ORGANISM_TYPE_PLANT;
+            setNodeParams(i, szt.getParamX(), szt.getParamR(), szt.getParamK(),
+                    plant, plant ? lPs.getParamEPlant() : lPs.getParamEAnimal());
+
+            NodeRelationships relnsI = ecosysRelationships.get(speciesID[i]);
+            for (int j = 0; j < speciesCnt; j++) {
+                //get reln FROM i TO j
+                switch (relnsI.getReln(speciesID[j])) {
+                    case "d":  //i predator of j
+                        setReln(i, j, RELN_PRED);
+                        break;
+                    case "y":  //i prey of j
+                        setReln(i, j, RELN_PREY);
+                        break;
+                    case "b":  //i and j predate on each other
+                    case "c":  //i==j (cannibal)
+                        setReln(i, j, RELN_BOTH);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        buildIndex();
+    }
+
+    /**
+     * Create an empty model (no species parameters or links set); used with
+     * setNodeParams() and addLink() to build a model without a SimJob.
+     *
+     * @param speciesCnt number of species
+     * @param q functional response control parameter
+     * @param b0 half saturation density
+     * @param d predator interference
+     * @param y maximum ingestion rate
+     */
+    public CompiledATNModel(int speciesCnt, double q, double b0, double d, double y) {
+        this.speciesCnt = speciesCnt;
+        x = new double[speciesCnt];
+        r = new double[speciesCnt];
+        kNorm = new double[speciesCnt];
+        isPlant = new boolean[speciesCnt];
+        ePrey = new double[speciesCnt];
+        omega = new int[speciesCnt];
+        reln = new byte[speciesCnt * speciesCnt];
+
+        this.h = 1 + q;
+        this.b0PowH = Math.pow(b0, h);
+        this.d = d;
+        this.y = y;
+    }
+
+    /**
+     * Create a variant of a model: same species, links and link parameters,
+     * with a copy of its node parameters to be changed with setNodeParam().
+     * The link indices and Jacobian pattern are shared rather than rebuilt,
+     * so links can no longer be changed on either model.
+     *
+     * @param topology model to copy
+     */
+    public CompiledATNModel(CompiledATNModel topology) {
+        ATNSystem.JacobianPattern pattern;
+        //variants may be created from several threads
+        synchronized (topology) {
+            pattern = topology.getJacobianPattern();
+            topology.linksShared = true;
+        }
+        speciesCnt = topology.speciesCnt;
+        x = topology.x.clone();
+        r = topology.r.clone();
+        kNorm = topology.kNorm.clone();
+        isPlant = topology.isPlant.clone();
+        ePrey = topology.ePrey.clone();
+        omega = topology.omega;
+        reln = topology.reln;
+
+        h = topology.h;
+        b0PowH = topology.b0PowH;
+        d = topology.d;
+        y = topology.y;
+
+        preyPtr = topology.preyPtr;
+        preyIdx = topology.preyIdx;
+        predPtr = topology.predPtr;
+        predIdx = topology.predIdx;
+        linkPtr = topology.linkPtr;
+        linkIdx = topology.linkIdx;
+        linkReln = topology.linkReln;
+        indexed = true;
+        linksShared = true;
+        jacPattern = pattern;
+    }
+
+    public final void setNodeParams(int i, double x, double r, double k,
+            boolean isPlant, double ePrey) {
+        this.x[i] = x;
+        this.r[i] = r;
+        this.kNorm[i] = k / Constants.BIOMASS_SCALE;
+        this.isPlant[i] = isPlant;
+        this.ePrey[i] = ePrey;
+    }
+
+    //change one node parameter of species i (K as in SimJobSZT, not normalized)
+    public final void setNodeParam(int i, NodeParam param, double value) {
+        switch (param) {
+            case K:
+                kNorm[i] = value / Constants.BIOMASS_SCALE;
+                break;
+            case R:
+                r[i] = value;
+                break;
+            case X:
+                x[i] = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown node parameter " + param);
+        }
+    }
+
+    //add predator -> prey link (pred == prey for a cannibal)
+    public final void addLink(int pred, int prey) {
+        setReln(pred, prey, (byte) (reln[pred * speciesCnt + prey] | RELN_PRED));
+        setReln(prey, pred, (byte) (reln[prey * speciesCnt + pred] | RELN_PREY));
+    }
+
+    //set relationship FROM i TO j; prey counts (omega) follow
+    final void setReln(int i, int j, byte relnIJ) {
+        if (linksShared) {
+            throw new IllegalStateException("Links are shared with a model variant");
+        }
+        byte prior = reln[i * speciesCnt + j];
+        if ((prior & RELN_PRED) != 0) {
+            omega[i]--;
+        }
+        reln[i * speciesCnt + j] = relnIJ;
+        if ((relnIJ & RELN_PRED) != 0) {
+            omega[i]++;
+        }
+        indexed = false;
+        jacPattern = null;
+    }
+
+    public int getSpeciesCnt() {
+        return speciesCnt;
+    }
+
+    //number of link index entries (trophic links in either direction + self)
+    public int getLinkCnt() {
+        buildIndex();
+        return linkPtr[speciesCnt];
+    }
+
+    //CSR row pointers of the link index; contributions are reported in this order
+    int[] getLinkPtr() {
+        buildIndex();
+        return linkPtr;
+    }
+
+    int[] getLinkIdx() {
+        buildIndex();
+        return linkIdx;
+    }
+
+    //Jacobian pattern of the current links, built on first use
+    synchronized ATNSystem.JacobianPattern getJacobianPattern() {
+        buildIndex();
+        if (jacPattern == null) {
+            jacPattern = new ATNSystem.JacobianPattern(this);
+        }
+        return jacPattern;
+    }
+
+    //build the CSR indices from the relationship matrix (no-op if current)
+    final void buildIndex() {
+        if (indexed) {
+            return;
+        }
+        final int n = speciesCnt;
+        int preyCnt = 0;
+        int predCnt = 0;
+        int linkCnt = 0;
+        for (int i = 0; i < n; i++) {
+            int row = i * n;
+            for (int j = 0; j < n; j++) {
+                byte relnIJ = reln[row + j];
+                if ((relnIJ & RELN_PRED) != 0) {
+                    preyCnt++;
+                }
+                if ((relnIJ & RELN_PREY) != 0) {
+                    predCnt++;
+                }
+                if (relnIJ != RELN_NONE || i == j) {
+                    linkCnt++;
+                }
+            }
+        }
+
+        preyPtr = new int[n + 1];
+        preyIdx = new int[preyCnt];
+        predPtr = new int[n + 1];
+        predIdx = new int[predCnt];
+        linkPtr = new int[n + 1];
+        linkIdx = new int[linkCnt];
+        linkReln = new byte[linkCnt];
+        preyCnt = 0;
+        predCnt = 0;
+        linkCnt = 0;
+        for (int i = 0; i < n; i++) {
+            int row = i * n;
+            for (int j = 0; j < n; j++) {
+                byte relnIJ = reln[row + j];
+                if ((relnIJ & RELN_PRED) != 0) {
+                    preyIdx[preyCnt++] = j;
+                }
+                if ((relnIJ & RELN_PREY) != 0) {
+                    predIdx[predCnt++] = j;
+                }
+                if (relnIJ != RELN_NONE || i == j) {
+                    linkIdx[linkCnt] = j;
+                    linkReln[linkCnt] = relnIJ;
+                    linkCnt++;
+                }
+            }
+            preyPtr[i + 1] = preyCnt;
+            predPtr[i + 1] = predCnt;
+            linkPtr[i + 1] = linkCnt;
+        }
+        indexed = true;
+    }
+
+    /**
+     * Calculate the change in biomass of every species over dT, recording the
+     * contribution of species linkIdx[k] to species i in contribs[k] for each
+     * link index entry k of row i (see getLinkPtr/getLinkIdx).
+     *
+     * @param bm current biomass of each species
+     * @param dT step size
+     * @param contribs receives per-link contributions, getLinkCnt() long;
+     * may be null if only yDelta is needed
+     * @param yDelta receives total change per species
+     * @param bmPowH workspace, speciesCnt long
+     * @param preyBM workspace, speciesCnt long
+     */
+    public void calcYDelta(double[] bm, double dT, double[] contribs,
+            double[] yDelta, double[] bmPowH, double[] preyBM) {
+        final int n = speciesCnt;
+        buildIndex();
+
+        //prey calculations have to be performed prior to contrib calcs
+        for (int j = 0; j < n; j++) {
+            bmPowH[j] = Math.pow(bm[j], h);
+        }
+        for (int i = 0; i < n; i++) {
+            double sum = 0;
+            for (int k = preyPtr[i]; k < preyPtr[i + 1]; k++) {
+                sum = sum + bmPowH[preyIdx[k]];
+            }
+            preyBM[i] = sum;
+        }
+
+        //sum contributions from each linked species
+        for (int i = 0; i < n; i++) {
+            double bmI = bm[i];
+            double delta = 0;
+            for (int k = linkPtr[i]; k < linkPtr[i + 1]; k++) {
+                int j = linkIdx[k];
+                double bmJ = bm[j];
+                double contrib = 0;
+                if (bmI != 0 && bmJ != 0) {
+                    byte relnIJ = linkReln[k];
+                    if ((relnIJ & RELN_PRED) != 0) {
+                        //i eats j: prey contribution is proportionate to the
+                        //biomass * met rate of the *predator* (i)
+                        double funcRespIJ = (omega[i] * bmPowH[j])
+                                / (b0PowH + d * bmI * b0PowH + omega[i] * preyBM[i]);
+                        contrib = x[i] * bmI * funcRespIJ * y * dT;
+                    }
+                    if ((relnIJ & RELN_PREY) != 0) {
+                        //j eats i: predator contribution is negative
+                        double funcRespJI = (omega[j] * bmPowH[i])
+                                / (b0PowH + d * bmJ * b0PowH + omega[j] * preyBM[j]);
+                        contrib += -(x[j] * bmJ * funcRespJI * y * dT / ePrey[i]);
+                    }
+                    if (i == j) {
+                        contrib += selfContrib(i, bmI, dT);
+                    }
+                }
+                //track total change for species i
+                delta += contrib;
+                //track change for this species combo
+                if (contribs != null) {
+                    contribs[k] = contrib;
+                }
+            }
+            yDelta[i] = delta;
+        }
+    }
+
+    //metabolic loss (all species) and logistic growth (plants)
+    double selfContrib(int i, double bmI, double dT) {
+        double val = 0;
+        //species lose mass via metabolism
+        val -= x[i] * bmI;
+        if (isPlant[i]) {
+            //plant species gain mass from implicit resources up to limiting
+            //factor based on param K (note; must be normalized - same as biomass)
+            val += r[i] * bmI * (1.0 - bmI / kNorm[i]);
+        }
+        return val * dT;
+    }
+}
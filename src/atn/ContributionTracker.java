@@ -0,0 +1,151 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Optional tracking of the contribution of each species to the change in
+ * biomass of each other species during an ATN run.  Contributions are
+ * computed per trophic link (see ATNSystem.computeContributions), so memory
+ * is O(links) regardless of run length:
+ *
+ * OFF - nothing is computed (the default; predictions never need them).
+ * SUMMARY - totals over the run are kept, for printSummary().
+ * FULL - every timestep is streamed to a CSV file (timestep, i, j,
+ * contribution) as it is computed; totals are kept as for SUMMARY.
+ */
+public class ContributionTracker {
+
+    public enum Mode {
+
+        OFF, SUMMARY, FULL;
+
+        public static final String PROPERTY = "contribTracking";
+
+        //case-insensitive; null or empty selects OFF
+        public static Mode fromName(String name) {
+            if (name == null || name.trim().isEmpty()) {
+                return OFF;
+            }
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    private final Mode mode;
+    private final ATNSystem system;
+    private final int[] speciesID;
+    private final double scale;
+    private final int[] rowPtr;
+    private final int[] colIdx;
+    private final double[] stepContribs;
+    private final double[] totalContribs;
+    private PrintStream out = null;
+
+    /**
+     * @param mode tracking mode; OFF makes every method a no-op
+     * @param system ATN system being integrated
+     * @param speciesID node IDs, in system order
+     * @param scale multiplier applied to reported values (e.g. biomass scale)
+     * @param fullFile destination for FULL mode; ignored otherwise
+     */
+    public ContributionTracker(Mode mode, ATNSystem system, int[] speciesID,
+            double scale, File fullFile) {
+        this.mode = mode;
+        this.system = system;
+        this.speciesID = speciesID;
+        this.scale = scale;
+        if (mode == Mode.OFF) {
+            rowPtr = null;
+            colIdx = null;
+            stepContribs = null;
+            totalContribs = null;
+            return;
+        }
+        rowPtr = system.getContribRowPtr();
+        colIdx = system.getContribColIdx();
+        stepContribs = new double[rowPtr[speciesID.length]];
+        totalContribs = new double[rowPtr[speciesID.length]];
+
+        if (mode == Mode.FULL) {
+            try {
+                fullFile.getParentFile().mkdirs();
+                out = new PrintStream(new BufferedOutputStream(
+                        new FileOutputStream(fullFile), 1 << 16));
+                out.println("timestep,i,j,contribution");
+            } catch (FileNotFoundException ex) {
+                throw new IllegalArgumentException(
+                        "Cannot write contributions to " + fullFile, ex);
+            }
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Record contributions for the interval ending at timestep t.
+     *
+     * @param yStart biomass at the start of the interval
+     * @param yEnd biomass at the end of the interval
+     * @param dT interval length
+     */
+    public void record(int t, double[] yStart, double[] yEnd, double dT) {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        system.computeContributions(yStart, yEnd, dT, stepContribs);
+        for (int k = 0; k < stepContribs.length; k++) {
+            totalContribs[k] += stepContribs[k];
+        }
+        if (out != null) {
+            for (int i = 0; i < speciesID.length; i++) {
+                for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                    out.printf("%d,%d,%d,%.6g\n", t, speciesID[i],
+                            speciesID[colIdx[k]], stepContribs[k] * scale);
+                }
+            }
+        }
+    }
+
+    /**
+     * Print total contributions to species i (system order) from each linked
+     * species, one row per contributor: i.[id].j.[id].total,[value]
+     */
+    public void printSummary(PrintStream ps, int i) {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+            ps.printf("i.%d.j.%d.total,%9.0f\n", speciesID[i],
+                    speciesID[colIdx[k]], totalContribs[k] * scale);
+        }
+    }
+
+    //totals for species i (system order) into a dense row, indexed like speciesID
+    public void getTotals(int i, double[] dest) {
+        Arrays.fill(dest, 0.0);
+        if (mode == Mode.OFF) {
+            return;
+        }
+        for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+            dest[colIdx[k]] = totalContribs[k] * scale;
+        }
+    }
+
+    public void close() {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+}
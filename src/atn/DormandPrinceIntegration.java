@@ -0,0 +1,163 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+/**
+ * Explicit Runge-Kutta 5(4) integration (Dormand-Prince, as in DOPRI5).  The
+ * 5th order solution is propagated; the embedded 4th order solution provides
+ * the error estimate for step size control.  The last stage is evaluated at
+ * the new state, so it is reused as the first stage of the next step (FSAL)
+ * unless the system had to constrain that state.
+ *
+ * Cheap per step (6 RHS evaluations) and a good fit for non-stiff webs; for
+ * stiff webs the stable step size stays small no matter how smooth the
+ * solution is, see RosenbrockIntegration.
+ *
+ * Coefficients from Hairer, Norsett & Wanner, "Solving Ordinary Differential
+ * Equations I", table II.5.2.
+ */
+public class DormandPrinceIntegration extends AdaptiveOdeSolver {
+
+    static final double C2 = 1.0 / 5.0;
+    static final double C3 = 3.0 / 10.0;
+    static final double C4 = 4.0 / 5.0;
+    static final double C5 = 8.0 / 9.0;
+
+    static final double A21 = 1.0 / 5.0;
+    static final double A31 = 3.0 / 40.0;
+    static final double A32 = 9.0 / 40.0;
+    static final double A41 = 44.0 / 45.0;
+    static final double A42 = -56.0 / 15.0;
+    static final double A43 = 32.0 / 9.0;
+    static final double A51 = 19372.0 / 6561.0;
+    static final double A52 = -25360.0 / 2187.0;
+    static final double A53 = 64448.0 / 6561.0;
+    static final double A54 = -212.0 / 729.0;
+    static final double A61 = 9017.0 / 3168.0;
+    static final double A62 = -355.0 / 33.0;
+    static final double A63 = 46732.0 / 5247.0;
+    static final double A64 = 49.0 / 176.0;
+    static final double A65 = -5103.0 / 18656.0;
+    //5th order weights (also the last row of A)
+    static final double B1 = 35.0 / 384.0;
+    static final double B3 = 500.0 / 1113.0;
+    static final double B4 = 125.0 / 192.0;
+    static final double B5 = -2187.0 / 6784.0;
+    static final double B6 = 11.0 / 84.0;
+    //difference between 5th and 4th order weights
+    static final double E1 = 71.0 / 57600.0;
+    static final double E3 = -71.0 / 16695.0;
+    static final double E4 = 71.0 / 1920.0;
+    static final double E5 = -17253.0 / 339200.0;
+    static final double E6 = 22.0 / 525.0;
+    static final double E7 = -1.0 / 40.0;
+
+    //step size control; error is O(h^5)
+    static final double SAFE = 0.9;
+    static final double FAC_MIN = 0.2;
+    static final double FAC_MAX = 5.0;
+
+    //stage workspace
+    private final double[] k1;
+    private final double[] k2;
+    private final double[] k3;
+    private final double[] k4;
+    private final double[] k5;
+    private final double[] k6;
+    private final double[] k7;
+    private final double[] yStage;
+    private final double[] yErr;
+
+    //k1 holds f(yOrig) from the last accepted step
+    private boolean fsalValid = false;
+    private boolean lastRejected = false;
+
+    /**
+     * @param hOrig output interval
+     * @param system equations to integrate
+     * @param maxErr max absolute error per step, any variable
+     */
+    public DormandPrinceIntegration(double hOrig, OdeSystem system, double maxErr) {
+        super(hOrig, system, maxErr);
+        k1 = new double[speciesCnt];
+        k2 = new double[speciesCnt];
+        k3 = new double[speciesCnt];
+        k4 = new double[speciesCnt];
+        k5 = new double[speciesCnt];
+        k6 = new double[speciesCnt];
+        k7 = new double[speciesCnt];
+        yStage = new double[speciesCnt];
+        yErr = new double[speciesCnt];
+    }
+
+    @Override
+    public boolean performIntegration(double xOrig, double[] yOrig) {
+        //caller may hand in a different state than the one we finished with
+        fsalValid = false;
+        return super.performIntegration(xOrig, yOrig);
+    }
+
+    @Override
+    boolean trySubstep(double x, double h) {
+        final int n = speciesCnt;
+        if (!fsalValid) {
+            computeDerivatives(x, yOrig, k1);
+            fsalValid = true;
+        }
+
+        for (int j = 0; j < n; j++) {
+            yStage[j] = yOrig[j] + h * A21 * k1[j];
+        }
+        computeDerivatives(x + C2 * h, yStage, k2);
+        for (int j = 0; j < n; j++) {
+            yStage[j] = yOrig[j] + h * (A31 * k1[j] + A32 * k2[j]);
+        }
+        computeDerivatives(x + C3 * h, yStage, k3);
+        for (int j = 0; j < n; j++) {
+            yStage[j] = yOrig[j] + h * (A41 * k1[j] + A42 * k2[j] + A43 * k3[j]);
+        }
+        computeDerivatives(x + C4 * h, yStage, k4);
+        for (int j = 0; j < n; j++) {
+            yStage[j] = yOrig[j] + h * (A51 * k1[j] + A52 * k2[j] + A53 * k3[j]
+                    + A54 * k4[j]);
+        }
+        computeDerivatives(x + C5 * h, yStage, k5);
+        for (int j = 0; j < n; j++) {
+            yStage[j] = yOrig[j] + h * (A61 * k1[j] + A62 * k2[j] + A63 * k3[j]
+                    + A64 * k4[j] + A65 * k5[j]);
+        }
+        computeDerivatives(x + h, yStage, k6);
+        for (int j = 0; j < n; j++) {
+            yNew[j] = yOrig[j] + h * (B1 * k1[j] + B3 * k3[j] + B4 * k4[j]
+                    + B5 * k5[j] + B6 * k6[j]);
+        }
+        computeDerivatives(x + h, yNew, k7);
+        for (int j = 0; j < n; j++) {
+            yErr[j] = h * (E1 * k1[j] + E3 * k3[j] + E4 * k4[j] + E5 * k5[j]
+                    + E6 * k6[j] + E7 * k7[j]);
+        }
+
+        double err = errorNorm(yErr);
+        double fac = err == 0 ? FAC_MAX : SAFE * Math.pow(1.0 / err, 0.2);
+        fac = Math.max(FAC_MIN, Math.min(FAC_MAX, fac));
+        if (err <= 1.0) {
+            //don't grow straight after a rejection
+            hNext = h * (lastRejected ? Math.min(1.0, fac) : fac);
+            lastRejected = false;
+            //FSAL: f at the new state is the first stage of the next step
+            System.arraycopy(k7, 0, k1, 0, n);
+            return true;
+        }
+        hNext = h * Math.min(1.0, fac);
+        lastRejected = true;
+        return false;
+    }
+
+    @Override
+    void stateConstrained() {
+        fsalValid = false;
+    }
+}
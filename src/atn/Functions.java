@@ -231,7 +231,8 @@ public class Functions {
     }
 
     //open printstream
-    public static PrintStream getPrintStream(
+    //synchronized: picks the next unused file number, then creates the file
+    public static synchronized PrintStream getPrintStream(
             String filename, 
             String destDir
     ) {
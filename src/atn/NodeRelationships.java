@@ -52,7 +52,8 @@ public class NodeRelationships {
         relationships = new HashMap<>();
     }
 
-    public void addRelationship(int nodeB, String reln, int distance, int pathCnt) {
+    //package private: relationships may be shared through TopologyCache
+    void addRelationship(int nodeB, String reln, int distance, int pathCnt) {
         Relationship rs = new Relationship(this.nodeA, nodeB, reln, distance, pathCnt);
         relationships.put(nodeB, rs);
         switch (reln) {
@@ -0,0 +1,27 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+/**
+ * Optional capability of an OdeSystem: an analytic Jacobian, df/dy, stored in
+ * compressed sparse row (CSR) form.  Row i covers entries rowPtr[i] ..
+ * rowPtr[i+1]-1; entry k is df_i/dy_colIdx[k].  The sparsity pattern is fixed
+ * for the life of the system, so callers may cache it.
+ */
+public interface OdeJacobian {
+
+    int[] getJacobianRowPtr();
+
+    int[] getJacobianColIdx();
+
+    /**
+     * Evaluate the Jacobian at (x, y).
+     *
+     * @param values receives the entries in pattern order,
+     * getJacobianRowPtr()[getDimension()] long
+     */
+    void computeJacobian(double x, double[] y, double[] values);
+}
@@ -0,0 +1,37 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+/**
+ * Integrator for an OdeSystem.  Each call to performIntegration() advances
+ * the solution by one output interval, fixed when the solver is created;
+ * solvers are free to take as many internal steps as they need to get there.
+ * See OdeSolverType for the available implementations.
+ */
+public interface OdeSolver {
+
+    /**
+     * Advance yOrig (at xOrig) by one output interval.  The result is
+     * available from getYNew().
+     *
+     * @return false if the solver could not complete the interval
+     */
+    boolean performIntegration(double xOrig, double[] yOrig);
+
+    //copy latest estimate into caller-supplied array (no allocation)
+    void getYNew(double[] dest);
+
+    //accepted internal steps since creation (or last resetCounters)
+    long getAcceptedSteps();
+
+    //rejected internal steps since creation (or last resetCounters)
+    long getRejectedSteps();
+
+    //right-hand side evaluations since creation (or last resetCounters)
+    long getRhsEvals();
+
+    void resetCounters();
+}
@@ -0,0 +1,69 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+/**
+ * Available OdeSolver implementations, by the name used to select them in
+ * SimJobConfig.properties ("odeSolver") or per job (SimJob.setOdeSolver).
+ */
+public enum OdeSolverType {
+
+    BULIRSCH_STOER("bs"),
+    DORMAND_PRINCE("rk45"),
+    ROSENBROCK("rosenbrock");
+
+    public static final String PROPERTY = "odeSolver";
+    public static final OdeSolverType DFLT = BULIRSCH_STOER;
+
+    private final String name;
+
+    private OdeSolverType(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Look up solver by name (case-insensitive; enum constant names are also
+     * accepted).  Null or empty selects the default.
+     *
+     * @throws IllegalArgumentException if no solver has that name
+     */
+    public static OdeSolverType fromName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return DFLT;
+        }
+        name = name.trim();
+        for (OdeSolverType type : values()) {
+            if (type.name.equalsIgnoreCase(name)
+                    || type.name().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown ODE solver: " + name);
+    }
+
+    /**
+     * Create a solver of this type.
+     *
+     * @param hOrig output interval
+     * @param system equations to integrate
+     * @param maxErr max absolute error per step, any variable
+     */
+    public OdeSolver create(double hOrig, OdeSystem system, double maxErr) {
+        switch (this) {
+            case DORMAND_PRINCE:
+                return new DormandPrinceIntegration(hOrig, system, maxErr);
+            case ROSENBROCK:
+                return new RosenbrockIntegration(hOrig, system, maxErr);
+            case BULIRSCH_STOER:
+            default:
+                return new BulirschStoerIntegration(hOrig, system, maxErr);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+/**
+ * System of first order ODEs, y'(x) = f(x, y), to be advanced by an OdeSolver.
+ *
+ * Implementations may keep evaluation workspace, so a system should only be
+ * used by one solver at a time.
+ */
+public interface OdeSystem {
+
+    //number of state variables
+    int getDimension();
+
+    //true if f does not depend on x (lets solvers skip df/dx)
+    boolean isAutonomous();
+
+    /**
+     * Evaluate the right-hand side.
+     *
+     * @param x independent variable (time)
+     * @param y state, getDimension() long
+     * @param yDot receives f(x, y), getDimension() long
+     */
+    void computeDerivatives(double x, double[] y, double[] yDot);
+
+    /**
+     * Apply the system's constraints to the state at the end of a step, e.g.
+     * keeping biomass non-negative.
+     *
+     * @param yStart state at the start of the step
+     * @param y state at the end of the step; adjusted in place
+     * @return true if y was changed
+     */
+    boolean constrainState(double[] yStart, double[] y);
+}
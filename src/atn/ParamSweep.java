@@ -0,0 +1,665 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import simulation.SpeciesZoneType.NodeParam;
+import simulation.simjob.EcosystemTimesteps;
+import simulation.simjob.NodeTimesteps;
+import simulation.simjob.SimJob;
+import simulation.simjob.SimJobSZT;
+
+/**
+ * Runs parameter variants of a simulation job in memory and in parallel,
+ * rather than saving one sim_job per variant to be run later (as
+ * FormParamAnalSim does).  The job's model is compiled once; each variant is
+ * a CompiledATNModel copy with its own node parameters that shares the links
+ * and Jacobian pattern of the original, and is integrated over the job's
+ * timesteps as ATNEngine would (same initial biomass, interval and solver).
+ *
+ * A sweep has one dimension per swept node parameter (node, parameter, min,
+ * max, interval); variants are chosen by:
+ *   GRID             every combination of min, min + interval, ... up to max
+ *   ONE_AT_A_TIME    each dimension from min to max by interval, the others at
+ *                    their source job values (FormParamAnalSim's jobs)
+ *   RANDOM           uniform samples within [min, max]
+ *   LATIN_HYPERCUBE  samples in which each dimension's range is split into as
+ *                    many equal strata as samples, each used once
+ * Values are rounded to three decimals, as node_config stores them, so that
+ * a saved variant runs exactly as it did in the sweep.
+ *
+ * One CSV row per variant is written to the results file as soon as it
+ * finishes: swept values, status, total and per-species final biomass,
+ * extinctions, and the average biomass percentile rank
+ * (EcosystemTimesteps.avgBiomassPercentile) of each swept node.  Only the
+ * aggregated Summary is kept; saveSummaryJob() stores it as a single sim_job.
+ */
+public class ParamSweep {
+
+    public static final int DFLT_SAMPLES = 100;
+    //GRID sweeps beyond this are rejected rather than started
+    public static final int MAX_VARIANTS = 1000000;
+
+    public enum Sampling {
+
+        GRID, ONE_AT_A_TIME, RANDOM, LATIN_HYPERCUBE;
+
+        //case-insensitive; '-' or ' ' may stand for '_'
+        public static Sampling fromName(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_').replace(' ', '_'));
+        }
+    }
+
+    /**
+     * One swept node parameter.
+     */
+    public static final class Dimension {
+
+        private final int nodeId;
+        private final NodeParam param;
+        private final double min;
+        private final double max;
+        private final double intvl;
+
+        private Dimension(int nodeId, NodeParam param, double min, double max,
+                double intvl) {
+            this.nodeId = nodeId;
+            this.param = param;
+            this.min = min;
+            this.max = max;
+            this.intvl = intvl;
+        }
+
+        public int getNodeId() {
+            return nodeId;
+        }
+
+        public NodeParam getParam() {
+            return param;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getIntvl() {
+            return intvl;
+        }
+
+        //min, min + intvl, ... <= max
+        double[] gridValues() {
+            int cnt = 0;
+            while (cnt < MAX_VARIANTS && round(min + cnt * intvl) <= max) {
+                cnt++;
+            }
+            double[] values = new double[cnt];
+            for (int k = 0; k < cnt; k++) {
+                values[k] = round(min + k * intvl);
+            }
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return nodeId + "." + param;
+        }
+    }
+
+    /**
+     * Aggregated results of a sweep.
+     */
+    public static final class Summary {
+
+        private final Sampling sampling;
+        private final long seed;
+        private final List<Dimension> dimensions;
+        private final File resultsFile;
+        private int variants = 0;
+        private int failed = 0;
+        private int minExtinctions = Integer.MAX_VALUE;
+        private int maxExtinctions = 0;
+        private long extinctions = 0;
+        private double totalBiomass = 0;
+        private int bestVariant = -1;
+        private double[] bestValues = null;
+        private int bestExtinctions = Integer.MAX_VALUE;
+        private double bestBiomass = 0;
+        private long elapsedMillis = 0;
+
+        private Summary(Sampling sampling, long seed, List<Dimension> dimensions,
+                File resultsFile) {
+            this.sampling = sampling;
+            this.seed = seed;
+            this.dimensions = dimensions;
+            this.resultsFile = resultsFile;
+        }
+
+        //completed variants; fewest extinctions, then most biomass, is best
+        private void add(int variant, double[] values, int extinct, double biomass) {
+            variants++;
+            minExtinctions = Math.min(minExtinctions, extinct);
+            maxExtinctions = Math.max(maxExtinctions, extinct);
+            extinctions += extinct;
+            totalBiomass += biomass;
+            if (extinct < bestExtinctions
+                    || (extinct == bestExtinctions && biomass > bestBiomass)) {
+                bestVariant = variant;
+                bestValues = values;
+                bestExtinctions = extinct;
+                bestBiomass = biomass;
+            }
+        }
+
+        private void addFailed() {
+            variants++;
+            failed++;
+        }
+
+        public Sampling getSampling() {
+            return sampling;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public List<Dimension> getDimensions() {
+            return dimensions;
+        }
+
+        public File getResultsFile() {
+            return resultsFile;
+        }
+
+        public int getVariants() {
+            return variants;
+        }
+
+        //integration failed to converge, or variant could not be run
+        public int getFailed() {
+            return failed;
+        }
+
+        public int getMinExtinctions() {
+            return variants > failed ? minExtinctions : 0;
+        }
+
+        public int getMaxExtinctions() {
+            return maxExtinctions;
+        }
+
+        public double getMeanExtinctions() {
+            return variants > failed ? (double) extinctions / (variants - failed) : 0;
+        }
+
+        public double getMeanBiomass() {
+            return variants > failed ? totalBiomass / (variants - failed) : 0;
+        }
+
+        //-1 if no variant completed
+        public int getBestVariant() {
+            return bestVariant;
+        }
+
+        //swept values of the best variant, by dimension; NaN = source value
+        public double[] getBestValues() {
+            return bestValues == null ? null : bestValues.clone();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s sweep: %d variants (%d failed) in %.1f s; "
+                    + "extinctions %d-%d (mean %.2f), mean final biomass %.0f, "
+                    + "best variant %d", sampling, variants, failed,
+                    elapsedMillis / 1000.0, getMinExtinctions(), maxExtinctions,
+                    getMeanExtinctions(), getMeanBiomass(), bestVariant);
+        }
+    }
+
+    private final Sampling sampling;
+    private final List<Dimension> dimensions = new ArrayList<Dimension>();
+    private int samples = DFLT_SAMPLES;
+    private long seed = System.currentTimeMillis();
+    private final int threads;
+
+    /**
+     * @param sampling how variants are chosen
+     * @param threads number of worker threads; 0 for one per processor
+     */
+    public ParamSweep(Sampling sampling, int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Negative thread count " + threads);
+        }
+        this.sampling = sampling;
+        this.threads = threads == 0
+                ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    /**
+     * Sweep a node parameter of one species.
+     *
+     * @param intvl step for GRID and ONE_AT_A_TIME; ignored otherwise
+     * @return this
+     */
+    public ParamSweep addDimension(int nodeId, NodeParam param, double min,
+            double max, double intvl) {
+        if (max < min) {
+            throw new IllegalArgumentException(String.format(
+                    "Empty range %.3f-%.3f for %d.%s", min, max, nodeId, param));
+        }
+        if (intvl <= 0 && (sampling == Sampling.GRID
+                || sampling == Sampling.ONE_AT_A_TIME)) {
+            throw new IllegalArgumentException(String.format(
+                    "Interval must be positive for %d.%s", nodeId, param));
+        }
+        dimensions.add(new Dimension(nodeId, param, min, max, intvl));
+        return this;
+    }
+
+    public List<Dimension> getDimensions() {
+        return Collections.unmodifiableList(dimensions);
+    }
+
+    public Sampling getSampling() {
+        return sampling;
+    }
+
+    //number of variants for RANDOM and LATIN_HYPERCUBE
+    public void setSamples(int samples) {
+        this.samples = samples;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Parameter values of each variant: one row per variant, one column per
+     * dimension (NaN leaves the source job's value).
+     */
+    public double[][] variants() {
+        final int dims = dimensions.size();
+        Random rand = new Random(seed);
+        double[][] variants;
+        switch (sampling) {
+            case GRID: {
+                double[][] values = new double[dims][];
+                long cnt = dims == 0 ? 0 : 1;
+                for (int d = 0; d < dims; d++) {
+                    values[d] = dimensions.get(d).gridValues();
+                    cnt *= values[d].length;
+                    checkVariantCnt(cnt);
+                }
+                variants = new double[(int) cnt][dims];
+                //last dimension varies fastest
+                for (int v = 0; v < cnt; v++) {
+                    int rest = v;
+                    for (int d = dims - 1; d >= 0; d--) {
+                        variants[v][d] = values[d][rest % values[d].length];
+                        rest /= values[d].length;
+                    }
+                }
+                break;
+            }
+            case ONE_AT_A_TIME: {
+                List<double[]> rows = new ArrayList<double[]>();
+                for (int d = 0; d < dims; d++) {
+                    for (double val : dimensions.get(d).gridValues()) {
+                        double[] row = new double[dims];
+                        Arrays.fill(row, Double.NaN);
+                        row[d] = val;
+                        rows.add(row);
+                        checkVariantCnt(rows.size());
+                    }
+                }
+                variants = rows.toArray(new double[rows.size()][]);
+                break;
+            }
+            case RANDOM:
+                checkVariantCnt(samples);
+                variants = new double[samples][dims];
+                for (int v = 0; v < samples; v++) {
+                    for (int d = 0; d < dims; d++) {
+                        variants[v][d] = sample(dimensions.get(d), rand.nextDouble());
+                    }
+                }
+                break;
+            case LATIN_HYPERCUBE:
+                checkVariantCnt(samples);
+                variants = new double[samples][dims];
+                int[] strata = new int[samples];
+                for (int d = 0; d < dims; d++) {
+                    //random permutation of strata (Fisher-Yates)
+                    for (int k = 0; k < samples; k++) {
+                        strata[k] = k;
+                    }
+                    for (int k = samples - 1; k > 0; k--) {
+                        int j = rand.nextInt(k + 1);
+                        int tmp = strata[k];
+                        strata[k] = strata[j];
+                        strata[j] = tmp;
+                    }
+                    for (int v = 0; v < samples; v++) {
+                        variants[v][d] = sample(dimensions.get(d),
+                                (strata[v] + rand.nextDouble()) / samples);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown sampling " + sampling);
+        }
+        return variants;
+    }
+
+    private static void checkVariantCnt(long cnt) {
+        if (cnt > MAX_VARIANTS) {
+            throw new IllegalArgumentException(String.format(
+                    "Sweep exceeds %d variants", MAX_VARIANTS));
+        }
+    }
+
+    //value at fraction u of the dimension's range
+    private static double sample(Dimension dim, double u) {
+        return Math.min(dim.max, Math.max(dim.min,
+                round(dim.min + u * (dim.max - dim.min))));
+    }
+
+    private static double round(double val) {
+        return Math.round(val * 1000.0) / 1000.0;
+    }
+
+    /**
+     * Run every variant of sourceJob and wait for them to finish.
+     *
+     * @param sourceJob job whose species, initial biomass, timesteps and
+     * solver are used
+     * @param resultsFile receives one CSV row per variant
+     * @return Summary
+     * @throws SQLException topology could not be loaded
+     */
+    public Summary run(SimJob sourceJob, File resultsFile) throws SQLException {
+        long start = System.currentTimeMillis();
+        ATNEngine engine = new ATNEngine();
+        int speciesCnt = sourceJob.getSpeciesNodeList().length;
+        int[] speciesID = new int[speciesCnt];
+        double[] initBiomass = new double[speciesCnt];
+        CompiledATNModel base = engine.compileModel(sourceJob, speciesID,
+                initBiomass);
+        return run(start, sourceJob, engine, base, speciesID, initBiomass,
+                resultsFile);
+    }
+
+    /**
+     * Run every variant of an already compiled model and wait for them to
+     * finish; no database access is needed.
+     *
+     * @param sourceJob job whose timesteps and solver are used
+     * @param base model to vary, which is not changed
+     * @param speciesID node ID of each of base's species
+     * @param initBiomass normalized initial biomass of each of base's species
+     * @param resultsFile receives one CSV row per variant
+     * @return Summary
+     */
+    public Summary run(SimJob sourceJob, CompiledATNModel base, int[] speciesID,
+            double[] initBiomass, File resultsFile) {
+        if (speciesID.length != base.getSpeciesCnt()
+                || initBiomass.length != base.getSpeciesCnt()) {
+            throw new IllegalArgumentException(String.format(
+                    "Model has %d species; %d IDs and %d biomass values given",
+                    base.getSpeciesCnt(), speciesID.length, initBiomass.length));
+        }
+        return run(System.currentTimeMillis(), sourceJob, new ATNEngine(), base,
+                speciesID, initBiomass, resultsFile);
+    }
+
+    private Summary run(long start, final SimJob sourceJob, final ATNEngine engine,
+            final CompiledATNModel base, final int[] speciesID,
+            final double[] initBiomass, File resultsFile) {
+        final double[][] variants = variants();
+        final int speciesCnt = speciesID.length;
+
+        //species index of each dimension, and of each distinct swept node
+        final int[] dimIdx = new int[dimensions.size()];
+        final List<Integer> sweptNodes = new ArrayList<Integer>();
+        for (int d = 0; d < dimIdx.length; d++) {
+            int nodeId = dimensions.get(d).nodeId;
+            dimIdx[d] = indexOf(speciesID, nodeId);
+            if (dimIdx[d] < 0) {
+                throw new IllegalArgumentException("Node " + nodeId
+                        + " is not part of job " + sourceJob.getJob_Id());
+            }
+            if (!sweptNodes.contains(nodeId)) {
+                sweptNodes.add(nodeId);
+            }
+        }
+
+        final Summary summary = new Summary(sampling, seed,
+                Collections.unmodifiableList(new ArrayList<Dimension>(dimensions)),
+                resultsFile);
+        final PrintStream out;
+        try {
+            if (resultsFile.getParentFile() != null) {
+                resultsFile.getParentFile().mkdirs();
+            }
+            out = new PrintStream(new BufferedOutputStream(
+                    new FileOutputStream(resultsFile), 1 << 16));
+        } catch (FileNotFoundException ex) {
+            throw new IllegalArgumentException("Cannot write sweep results to "
+                    + resultsFile, ex);
+        }
+        out.print("variant");
+        for (Dimension dim : dimensions) {
+            out.print("," + dim);
+        }
+        out.print(",status,timesteps,totalBiomass,extinctions");
+        for (int i = 0; i < speciesCnt; i++) {
+            out.print(",bm." + speciesID[i]);
+        }
+        for (int nodeId : sweptNodes) {
+            out.print(",pct." + nodeId);
+        }
+        out.println();
+
+        System.out.printf("Parameter sweep (%s): %d variants, %d species, %d threads\n",
+                sampling, variants.length, speciesCnt, threads);
+        final AtomicInteger next = new AtomicInteger(0);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int w = 0; w < threads; w++) {
+                futures.add(workers.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        int v;
+                        while ((v = next.getAndIncrement()) < variants.length) {
+                            runVariant(v, variants[v], sourceJob, engine, base,
+                                    speciesID, initBiomass, dimIdx, sweptNodes,
+                                    out, summary);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            Logger.getLogger(ParamSweep.class.getName()).log(Level.WARNING,
+                    "Parameter sweep interrupted", ex);
+        } catch (ExecutionException ex) {
+            Logger.getLogger(ParamSweep.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            workers.shutdownNow();
+            synchronized (summary) {
+                out.close();
+                summary.elapsedMillis = System.currentTimeMillis() - start;
+            }
+        }
+        System.out.println(summary);
+        return summary;
+    }
+
+    private static int indexOf(int[] speciesID, int nodeId) {
+        for (int i = 0; i < speciesID.length; i++) {
+            if (speciesID[i] == nodeId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //integrate one variant and report it; failures are reported, not thrown
+    private void runVariant(int v, double[] values, SimJob job, ATNEngine engine,
+            CompiledATNModel base, int[] speciesID, double[] initBiomass,
+            int[] dimIdx, List<Integer> sweptNodes, PrintStream out,
+            Summary summary) {
+        final int speciesCnt = speciesID.length;
+        final int timesteps = job.getTimesteps();
+        final double scale = ATNEngine.getBiomassScale();
+        double[] bm = initBiomass.clone();
+        EcosystemTimesteps ecosysTimesteps = new EcosystemTimesteps();
+        String status = "ok";
+        int t = 1;
+        try {
+            CompiledATNModel model = new CompiledATNModel(base);
+            for (int d = 0; d < values.length; d++) {
+                if (!Double.isNaN(values[d])) {
+                    model.setNodeParam(dimIdx[d], dimensions.get(d).param, values[d]);
+                }
+            }
+            OdeSolver solver = engine.createSolver(job, new ATNSystem(model));
+
+            NodeTimesteps[] nodeTimesteps = new NodeTimesteps[speciesCnt];
+            for (int i = 0; i < speciesCnt; i++) {
+                nodeTimesteps[i] = new NodeTimesteps(speciesID[i], timesteps);
+                nodeTimesteps[i].setBiomass(0, bm[i] * scale);
+                ecosysTimesteps.putNodeTimesteps(speciesID[i], nodeTimesteps[i]);
+            }
+            for (; t < timesteps; t++) {
+                if (!solver.performIntegration(t * engine.getTimeIntvl(), bm)) {
+                    //remaining timesteps stay 0, as in ATNEngine
+                    status = "failed";
+                    break;
+                }
+                solver.getYNew(bm);
+                for (int i = 0; i < speciesCnt; i++) {
+                    nodeTimesteps[i].setBiomass(t, bm[i] * scale);
+                }
+            }
+        } catch (RuntimeException ex) {
+            Logger.getLogger(ParamSweep.class.getName()).log(Level.SEVERE,
+                    "Parameter sweep variant " + v, ex);
+            status = "error";
+        }
+
+        //species present at the start that ended on the biomass floor
+        int extinct = 0;
+        double totalBiomass = 0;
+        for (int i = 0; i < speciesCnt; i++) {
+            if (initBiomass[i] > 0 && bm[i] <= ATNSystem.MIN_BIOMASS) {
+                extinct++;
+            }
+            totalBiomass += bm[i] * scale;
+        }
+
+        StringBuilder row = new StringBuilder(32 + 16 * (values.length + speciesCnt));
+        row.append(v);
+        for (double val : values) {
+            row.append(',');
+            if (!Double.isNaN(val)) {
+                row.append(String.format(Locale.ROOT, "%.3f", val));
+            }
+        }
+        row.append(',').append(status).append(',').append(t)
+                .append(String.format(Locale.ROOT, ",%.6g,%d", totalBiomass, extinct));
+        for (int i = 0; i < speciesCnt; i++) {
+            row.append(String.format(Locale.ROOT, ",%.6g", bm[i] * scale));
+        }
+        for (int nodeId : sweptNodes) {
+            row.append(',');
+            if (!status.equals("error")) {
+                row.append(String.format(Locale.ROOT, "%.3f",
+                        ecosysTimesteps.avgBiomassPercentile(nodeId)));
+            }
+        }
+
+        synchronized (summary) {
+            out.println(row);
+            if (status.equals("ok")) {
+                summary.add(v, values, extinct, totalBiomass);
+            } else {
+                summary.addFailed();
+            }
+        }
+    }
+
+    /**
+     * Save the sweep as one sim_job: the source job with the best variant's
+     * parameter values, described as
+     *   descript,sweep,sampling,variants,failed,min extinctions,
+     *   mean extinctions,max extinctions,best variant,seed,results file
+     *
+     * @return job ID, or SimJob.NO_ID if no variant completed
+     */
+    public static int saveSummaryJob(SimJob sourceJob, Summary summary)
+            throws SQLException {
+        if (summary.getBestVariant() < 0) {
+            return SimJob.NO_ID;
+        }
+        SimJob job = new SimJob(sourceJob);
+        double[] best = summary.getBestValues();
+        for (int d = 0; d < best.length; d++) {
+            if (!Double.isNaN(best[d])) {
+                Dimension dim = summary.getDimensions().get(d);
+                SimJobSZT szt = job.getSpeciesZoneByNodeId(dim.nodeId);
+                szt.setParam(dim.param, best[d]);
+            }
+        }
+        job.setJob_Descript(summaryDescript(sourceJob, summary));
+        job.buildNodeConfig();
+        return job.saveJob();
+    }
+
+    //job_descript of the job saved by saveSummaryJob()
+    public static String summaryDescript(SimJob sourceJob, Summary summary) {
+        return String.format(Locale.ROOT, "%s,sweep,%s,%d,%d,%d,%.3f,%d,%d,%d,%s",
+                sourceJob.getJob_Descript(), summary.getSampling(),
+                summary.getVariants(), summary.getFailed(),
+                summary.getMinExtinctions(), summary.getMeanExtinctions(),
+                summary.getMaxExtinctions(), summary.getBestVariant(),
+                summary.getSeed(), summary.getResultsFile().getName());
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.util.Arrays;
+
+/**
+ * Linearly implicit Rosenbrock 2(3) integration (the L-stable pair of
+ * Shampine & Reichelt, "The MATLAB ODE Suite", as used by ode23s).  Each step
+ * solves three linear systems with the single matrix W = I - h*d*J, so no
+ * Newton iteration is needed; stability does not limit the step size, which
+ * suits stiff webs (e.g. heavily predated species with fast dynamics next to
+ * slow ones).  The price per step is one Jacobian and one LU factorization.
+ *
+ * The Jacobian comes from the system if it implements OdeJacobian (e.g.
+ * ATNSystem); otherwise it is estimated by forward differences, at the cost
+ * of one RHS evaluation per variable.  Either way it is reused while a step
+ * is retried.
+ */
+public class RosenbrockIntegration extends AdaptiveOdeSolver {
+
+    static final double D = 1.0 / (2.0 + Math.sqrt(2.0));
+    static final double E32 = 6.0 + Math.sqrt(2.0);
+
+    //step size control; error is O(h^3)
+    static final double SAFE = 0.9;
+    static final double FAC_MIN = 0.2;
+    static final double FAC_MAX = 5.0;
+
+    //difference step for the Jacobian: SQRT_EPS * max(|y|, DELTA_SCALE_MIN)
+    static final double SQRT_EPS = Math.sqrt(Math.ulp(1.0));
+    static final double DELTA_SCALE_MIN = 1.0E-8;
+
+    //workspace
+    private final double[][] jac;     //df/dy at (x, yOrig)
+    private final double[][] w;       //LU factors of I - h*d*J
+    private final int[] pivot;
+    private final double[] f0;
+    private final double[] f1;
+    private final double[] f2;
+    private final double[] fx;        //df/dx (non-autonomous systems only)
+    private final double[] k1;
+    private final double[] k2;
+    private final double[] k3;
+    private final double[] yStage;
+    private final double[] yErr;
+    private final OdeJacobian analyticJac;  //null: use finite differences
+    private final double[] jacValues;       //analytic entries, CSR
+
+    //jac/f0/fx hold values for the current yOrig
+    private boolean jacValid = false;
+    private boolean lastRejected = false;
+
+    /**
+     * @param hOrig output interval
+     * @param system equations to integrate
+     * @param maxErr max absolute error per step, any variable
+     */
+    public RosenbrockIntegration(double hOrig, OdeSystem system, double maxErr) {
+        super(hOrig, system, maxErr);
+        jac = new double[speciesCnt][speciesCnt];
+        w = new double[speciesCnt][speciesCnt];
+        pivot = new int[speciesCnt];
+        f0 = new double[speciesCnt];
+        f1 = new double[speciesCnt];
+        f2 = new double[speciesCnt];
+        fx = new double[speciesCnt];
+        k1 = new double[speciesCnt];
+        k2 = new double[speciesCnt];
+        k3 = new double[speciesCnt];
+        yStage = new double[speciesCnt];
+        yErr = new double[speciesCnt];
+        if (system instanceof OdeJacobian) {
+            analyticJac = (OdeJacobian) system;
+            jacValues = new double[analyticJac.getJacobianRowPtr()[speciesCnt]];
+        } else {
+            analyticJac = null;
+            jacValues = null;
+        }
+    }
+
+    @Override
+    public boolean performIntegration(double xOrig, double[] yOrig) {
+        jacValid = false;
+        return super.performIntegration(xOrig, yOrig);
+    }
+
+    @Override
+    boolean trySubstep(double x, double h) {
+        final int n = speciesCnt;
+        if (!jacValid) {
+            computeDerivatives(x, yOrig, f0);
+            computeJacobian(x, yOrig, f0, jac);
+            if (system.isAutonomous()) {
+                Arrays.fill(fx, 0.0);
+            } else {
+                //forward difference in x
+                double dx = SQRT_EPS * Math.max(Math.abs(x), 1.0);
+                computeDerivatives(x + dx, yOrig, fx);
+                for (int j = 0; j < n; j++) {
+                    fx[j] = (fx[j] - f0[j]) / dx;
+                }
+            }
+            jacValid = true;
+        }
+
+        //W = I - h*d*J
+        double hd = h * D;
+        for (int i = 0; i < n; i++) {
+            double[] wI = w[i];
+            double[] jacI = jac[i];
+            for (int j = 0; j < n; j++) {
+                wI[j] = -hd * jacI[j];
+            }
+            wI[i] += 1.0;
+        }
+        if (!decompose(w, pivot)) {
+            hNext = h * FAC_MIN;
+            lastRejected = true;
+            return false;
+        }
+
+        //k1 = W \ (f0 + h*d*fx)
+        for (int j = 0; j < n; j++) {
+            k1[j] = f0[j] + hd * fx[j];
+        }
+        solve(w, pivot, k1);
+
+        //k2 = W \ (f1 - k1) + k1
+        for (int j = 0; j < n; j++) {
+            yStage[j] = yOrig[j] + 0.5 * h * k1[j];
+        }
+        computeDerivatives(x + 0.5 * h, yStage, f1);
+        for (int j = 0; j < n; j++) {
+            k2[j] = f1[j] - k1[j];
+        }
+        solve(w, pivot, k2);
+        for (int j = 0; j < n; j++) {
+            k2[j] += k1[j];
+            yNew[j] = yOrig[j] + h * k2[j];
+        }
+
+        //k3 = W \ (f2 - e32*(k2 - f1) - 2*(k1 - f0) + h*d*fx)
+        computeDerivatives(x + h, yNew, f2);
+        for (int j = 0; j < n; j++) {
+            k3[j] = f2[j] - E32 * (k2[j] - f1[j]) - 2.0 * (k1[j] - f0[j])
+                    + hd * fx[j];
+        }
+        solve(w, pivot, k3);
+        for (int j = 0; j < n; j++) {
+            yErr[j] = h / 6.0 * (k1[j] - 2.0 * k2[j] + k3[j]);
+        }
+
+        double err = errorNorm(yErr);
+        double fac = err == 0 ? FAC_MAX : SAFE * Math.pow(1.0 / err, 1.0 / 3.0);
+        fac = Math.max(FAC_MIN, Math.min(FAC_MAX, fac));
+        if (err <= 1.0) {
+            //don't grow straight after a rejection
+            hNext = h * (lastRejected ? Math.min(1.0, fac) : fac);
+            lastRejected = false;
+            jacValid = false;
+            return true;
+        }
+        hNext = h * Math.min(1.0, fac);
+        lastRejected = true;
+        return false;
+    }
+
+    //analytic Jacobian if available, else forward differences
+    void computeJacobian(double x, double[] y, double[] f, double[][] dest) {
+        final int n = speciesCnt;
+        if (analyticJac != null) {
+            analyticJac.computeJacobian(x, y, jacValues);
+            int[] rowPtr = analyticJac.getJacobianRowPtr();
+            int[] colIdx = analyticJac.getJacobianColIdx();
+            for (int i = 0; i < n; i++) {
+                double[] destI = dest[i];
+                Arrays.fill(destI, 0.0);
+                for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                    destI[colIdx[k]] = jacValues[k];
+                }
+            }
+            return;
+        }
+
+        //forward differences, one column per variable
+        System.arraycopy(y, 0, yStage, 0, n);
+        for (int j = 0; j < n; j++) {
+            double yJ = y[j];
+            double delta = SQRT_EPS * Math.max(Math.abs(yJ), DELTA_SCALE_MIN);
+            yStage[j] = yJ + delta;
+            //actual step, after rounding
+            delta = yStage[j] - yJ;
+            computeDerivatives(x, yStage, f1);
+            for (int i = 0; i < n; i++) {
+                dest[i][j] = (f1[i] - f[i]) / delta;
+            }
+            yStage[j] = yJ;
+        }
+    }
+
+    //in-place LU decomposition with partial pivoting; false if singular
+    static boolean decompose(double[][] a, int[] pivot) {
+        final int n = pivot.length;
+        for (int k = 0; k < n; k++) {
+            int p = k;
+            double max = Math.abs(a[k][k]);
+            for (int i = k + 1; i < n; i++) {
+                double v = Math.abs(a[i][k]);
+                if (v > max) {
+                    max = v;
+                    p = i;
+                }
+            }
+            if (!(max > 0) || max == Double.POSITIVE_INFINITY) {
+                return false;
+            }
+            pivot[k] = p;
+            if (p != k) {
+                double[] tmp = a[p];
+                a[p] = a[k];
+                a[k] = tmp;
+            }
+            double[] aK = a[k];
+            double inv = 1.0 / aK[k];
+            for (int i = k + 1; i < n; i++) {
+                double[] aI = a[i];
+                double m = aI[k] * inv;
+                aI[k] = m;
+                if (m != 0) {
+                    for (int j = k + 1; j < n; j++) {
+                        aI[j] -= m * aK[j];
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    //solve LU x = b in place, using factors from decompose()
+    static void solve(double[][] lu, int[] pivot, double[] b) {
+        final int n = pivot.length;
+        for (int k = 0; k < n; k++) {
+            int p = pivot[k];
+            if (p != k) {
+                double tmp = b[p];
+                b[p] = b[k];
+                b[k] = tmp;
+            }
+        }
+        for (int i = 1; i < n; i++) {
+            double[] luI = lu[i];
+            double sum = b[i];
+            for (int j = 0; j < i; j++) {
+                sum -= luI[j] * b[j];
+            }
+            b[i] = sum;
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            double[] luI = lu[i];
+            double sum = b[i];
+            for (int j = i + 1; j < n; j++) {
+                sum -= luI[j] * b[j];
+            }
+            b[i] = sum / luI[i];
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+/**
+ * ODEs with known solutions, used to test the solvers (see
+ * ATNEngine.genODETestDataset).  Each variable's slope is the sum of the
+ * slopes of all variables:
+ *
+ * equationSet 1: y' = (-y sin x + 2 tan x) y; exact solution y(x) = 1 / cos x
+ * for y(pi/6) = 2 / sqrt(3)
+ *
+ * equationSet 2: y' = -200x * y^2; exact solution y(x) = 1 / (1 + 100x^2) for
+ * y(0) = 1
+ */
+public class TestOdeSystem implements OdeSystem {
+
+    private final int equationSet;
+    private final int dimension;
+
+    public TestOdeSystem(int equationSet, int dimension) {
+        this.equationSet = equationSet;
+        this.dimension = dimension;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public boolean isAutonomous() {
+        return false;
+    }
+
+    @Override
+    public void computeDerivatives(double x, double[] y, double[] yDot) {
+        double sum = 0;
+        for (int j = 0; j < dimension; j++) {
+            switch (equationSet) {
+                case 1:
+                    sum += ((-y[j] * Math.sin(x)) + (2.0 * Math.tan(x))) * y[j];
+                    break;
+                case 2:
+                    sum += (-200.0) * x * Math.pow(y[j], 2.0);
+                    break;
+                default:
+                    break;
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            yDot[i] = sum;
+        }
+    }
+
+    //variables that start at 0 stay at 0
+    @Override
+    public boolean constrainState(double[] yStart, double[] y) {
+        boolean changed = false;
+        for (int j = 0; j < dimension; j++) {
+            if (yStart[j] == 0 && y[j] != 0) {
+                y[j] = 0;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
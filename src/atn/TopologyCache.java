@@ -0,0 +1,291 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import simulation.simjob.ConsumeMap;
+import simulation.simjob.FoodWebGraph;
+import simulation.simjob.PathTable;
+
+/**
+ * Bounded LRU cache of the topology derived from a node set: consume map,
+ * path table and node relationships.  None of these depend on biomass or
+ * node/link parameters, so jobs that resubmit the same species (converge
+ * attempts, repeated predictions, batch runs) share one copy.
+ *
+ * Entries are keyed by eco_type, path table depth and the sorted node IDs,
+ * and are built from the sorted node list, so the tables of a cached
+ * topology list nodes in ID order whatever the order of the request.  A
+ * Topology's path table is read only (PathTable.setReadOnly) and its
+ * relationships unmodifiable, so callers cannot change an entry other jobs
+ * share.  Entries built on a FoodWebGraph that has since been reloaded are
+ * discarded on lookup.
+ *
+ * A missing topology that differs from a cached one by a single node (a
+ * species bought or lost) is derived from it with PathTable.addNode or
+ * removeNode on a copy, which only recomputes the rows that can change.
+ *
+ * Thread safe; a topology missing from the cache is built outside the lock,
+ * so two threads may occasionally build the same one (the first stored wins).
+ */
+public class TopologyCache {
+
+    public static final String SIZE_PROPERTY = "topologyCacheSize";
+    public static final int DFLT_SIZE = 64;
+
+    private static TopologyCache instance = null;
+
+    /**
+     * Immutable topology of one node set.
+     */
+    public static final class Topology {
+
+        private final int[] nodes;      //sorted
+        private final ConsumeMap consumeMap;
+        private final PathTable pathTable;
+        private final Map<Integer, NodeRelationships> relationships;
+
+        private Topology(int[] nodes, ConsumeMap consumeMap, PathTable pathTable,
+                Map<Integer, NodeRelationships> relationships) {
+            this.nodes = nodes;
+            this.consumeMap = consumeMap;
+            this.pathTable = pathTable;
+            this.relationships = Collections.unmodifiableMap(relationships);
+        }
+
+        public int[] getNodes() {
+            return Arrays.copyOf(nodes, nodes.length);
+        }
+
+        public ConsumeMap getConsumeMap() {
+            return consumeMap;
+        }
+
+        //read only; copy it to update
+        public PathTable getPathTable() {
+            return pathTable;
+        }
+
+        //keyed by node ID
+        public Map<Integer, NodeRelationships> getRelationships() {
+            return relationships;
+        }
+    }
+
+    private static final class Key {
+
+        private final int ecoType;
+        private final int maxDepth;
+        private final int[] nodes;      //sorted
+        private final int hash;
+
+        Key(int ecoType, int maxDepth, int[] nodes) {
+            this.ecoType = ecoType;
+            this.maxDepth = maxDepth;
+            this.nodes = nodes;
+            hash = 31 * (31 * ecoType + maxDepth) + Arrays.hashCode(nodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return ecoType == other.ecoType && maxDepth == other.maxDepth
+                    && Arrays.equals(nodes, other.nodes);
+        }
+    }
+
+    private int capacity;
+    private final LinkedHashMap<Key, Topology> entries;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long derived = 0;       //misses derived from a neighbouring entry
+
+    /**
+     * @param capacity max number of topologies kept; 0 disables caching
+     */
+    public TopologyCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity " + capacity);
+        }
+        this.capacity = capacity;
+        //access order, eldest = least recently used
+        entries = new LinkedHashMap<Key, Topology>(16, 0.75f, true);
+    }
+
+    //process-wide cache, DFLT_SIZE until resized (see ATNEngine)
+    public static synchronized TopologyCache getInstance() {
+        if (instance == null) {
+            instance = new TopologyCache(DFLT_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * Topology of the given nodes, from the cache if present.
+     *
+     * @param nodeList node IDs, in any order
+     * @param ecoType eco_type of the food web
+     * @param maxDepth path table depth (see PathTable)
+     * @return Topology
+     * @throws SQLException if the food web has to be loaded and cannot be
+     */
+    public Topology get(int[] nodeList, int ecoType, int maxDepth) throws SQLException {
+        int[] nodes = Arrays.copyOf(nodeList, nodeList.length);
+        Arrays.sort(nodes);
+        Key key = new Key(ecoType, maxDepth, nodes);
+        FoodWebGraph graph = FoodWebGraph.get(ecoType);
+
+        Topology neighbour = null;
+        synchronized (this) {
+            Topology topology = entries.get(key);
+            if (topology != null && topology.consumeMap.getGraph() == graph) {
+                hits++;
+                return topology;
+            }
+            misses++;
+            neighbour = findNeighbour(key, graph);
+            if (neighbour != null) {
+                derived++;
+            }
+        }
+
+        ConsumeMap consumeMap = new ConsumeMap(nodes, graph);
+        PathTable pathTable;
+        if (neighbour == null) {
+            pathTable = new PathTable(consumeMap, nodes, !PathTable.PP_ONLY, maxDepth);
+        } else {
+            pathTable = new PathTable(neighbour.pathTable);
+            if (neighbour.nodes.length < nodes.length) {
+                int nodeId = extraNode(nodes, neighbour.nodes);
+                pathTable.addNode(nodeId, Arrays.binarySearch(nodes, nodeId));
+            } else {
+                pathTable.removeNode(extraNode(neighbour.nodes, nodes));
+            }
+        }
+        Map<Integer, NodeRelationships> relationships = new HashMap<>();
+        ATNEngine.createEcoSysRelationships(relationships, pathTable);
+        pathTable.setReadOnly();
+        Topology topology = new Topology(nodes, consumeMap, pathTable, relationships);
+
+        synchronized (this) {
+            Topology current = entries.get(key);
+            if (current != null && current.consumeMap.getGraph() == graph) {
+                return current;
+            }
+            if (capacity > 0) {
+                entries.put(key, topology);
+                trim();
+            }
+        }
+        return topology;
+    }
+
+    //most recently used entry with one node more or less than key, if any
+    private Topology findNeighbour(Key key, FoodWebGraph graph) {
+        Topology neighbour = null;
+        for (Map.Entry<Key, Topology> entry : entries.entrySet()) {
+            Key other = entry.getKey();
+            if (other.ecoType != key.ecoType || other.maxDepth != key.maxDepth
+                    || entry.getValue().consumeMap.getGraph() != graph) {
+                continue;
+            }
+            int diff = other.nodes.length - key.nodes.length;
+            if ((diff == 1 && extraNode(other.nodes, key.nodes) != null)
+                    || (diff == -1 && extraNode(key.nodes, other.nodes) != null)) {
+                neighbour = entry.getValue();
+            }
+        }
+        return neighbour;
+    }
+
+    /*
+     The node in sorted array larger that is missing from sorted array
+     smaller, if smaller is larger less one node; otherwise null.
+     */
+    private static Integer extraNode(int[] larger, int[] smaller) {
+        Integer extra = null;
+        int j = 0;
+        for (int i = 0; i < larger.length; i++) {
+            if (j < smaller.length && larger[i] == smaller[j]) {
+                j++;
+            } else if (extra == null) {
+                extra = larger[i];
+            } else {
+                return null;
+            }
+        }
+        return j == smaller.length ? extra : null;
+    }
+
+    //drop least recently used entries beyond capacity
+    private void trim() {
+        Iterator<Topology> it = entries.values().iterator();
+        while (entries.size() > capacity && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity " + capacity);
+        }
+        this.capacity = capacity;
+        trim();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getDerived() {
+        return derived;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("topology cache: %d/%d entries, %d hits, %d misses "
+                + "(%d derived), %d evictions", entries.size(), capacity, hits,
+                misses, derived, evictions);
+    }
+}
@@ -0,0 +1,118 @@
+package atn.test;
+
+import java.util.Random;
+
+import atn.ATNSystem;
+import atn.CompiledATNModel;
+
+/*
+ * Verifies ATNSystem.computeJacobian against central finite differences of
+ * ATNSystem.computeDerivatives, on random food webs (including cannibals and
+ * mutual predation) with a range of functional response parameters, and
+ * checks that every non-zero finite difference entry lies inside the sparse
+ * pattern.
+ *
+ * Run main(); exits with status 1 on any mismatch.
+ */
+public class ATNJacobianTest {
+
+    private static final int WEBS = 40;
+    private static final double CONNECTANCE = 0.15;
+    private static final double REL_TOL = 1.0E-5;
+    private static final double ABS_TOL = 1.0E-7;
+    //finite difference step, relative to biomass
+    private static final double FD_STEP = 1.0E-4;
+    //allowance for rounding error in f, in ulps (scaled by 1 / step)
+    private static final double FD_ULPS = 100;
+
+    public static void main(String[] args) {
+        Random rand = new Random(7);
+        double worst = 0;
+        int failures = 0;
+
+        for (int web = 0; web < WEBS; web++) {
+            int speciesCnt = 5 + rand.nextInt(40);
+            int plantCnt = 1 + rand.nextInt(Math.max(1, speciesCnt / 5));
+            //q in [0, 1], d in {0, [0, 2]}
+            double q = rand.nextDouble();
+            double d = rand.nextBoolean() ? 0 : 2 * rand.nextDouble();
+            CompiledATNModel model = RandomFoodWeb.build(rand, speciesCnt, plantCnt,
+                    q, 0.1 + rand.nextDouble(), d, 1 + 9 * rand.nextDouble(),
+                    CONNECTANCE);
+            ATNSystem system = new ATNSystem(model);
+
+            double[] y = new double[speciesCnt];
+            for (int i = 0; i < speciesCnt; i++) {
+                y[i] = Math.pow(10.0, -3 + 3.5 * rand.nextDouble());
+            }
+
+            int[] rowPtr = system.getJacobianRowPtr();
+            int[] colIdx = system.getJacobianColIdx();
+            double[] values = new double[rowPtr[speciesCnt]];
+            system.computeJacobian(0, y, values);
+            double[][] analytic = new double[speciesCnt][speciesCnt];
+            boolean[][] inPattern = new boolean[speciesCnt][speciesCnt];
+            for (int i = 0; i < speciesCnt; i++) {
+                for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                    analytic[i][colIdx[k]] = values[k];
+                    inPattern[i][colIdx[k]] = true;
+                }
+            }
+
+            double[][] numeric = finiteDifference(system, y);
+            double[] f = new double[speciesCnt];
+            system.computeDerivatives(0, y, f);
+            for (int i = 0; i < speciesCnt; i++) {
+                for (int j = 0; j < speciesCnt; j++) {
+                    double diff = Math.abs(analytic[i][j] - numeric[i][j]);
+                    double scale = Math.abs(numeric[i][j]);
+                    //finite differences lose accuracy when f_i is large
+                    double noise = FD_ULPS * Math.ulp(f[i]) / (FD_STEP * y[j]);
+                    double tol = REL_TOL * scale + ABS_TOL + noise;
+                    worst = Math.max(worst, diff / tol);
+                    boolean bad = diff > tol;
+                    if (!inPattern[i][j] && Math.abs(numeric[i][j]) > ABS_TOL) {
+                        System.out.printf("web %d: entry (%d, %d) = %g outside pattern\n",
+                                web, i, j, numeric[i][j]);
+                        bad = true;
+                    } else if (bad) {
+                        System.out.printf("web %d: entry (%d, %d) analytic %g, "
+                                + "finite difference %g\n",
+                                web, i, j, analytic[i][j], numeric[i][j]);
+                    }
+                    if (bad) {
+                        failures++;
+                    }
+                }
+            }
+        }
+
+        System.out.printf("webs=%d, worst difference=%.3f x tolerance\n", WEBS, worst);
+        if (failures > 0) {
+            System.out.printf("FAILED: %d mismatched entries\n", failures);
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    //central differences, one column per species
+    private static double[][] finiteDifference(ATNSystem system, double[] y) {
+        int n = y.length;
+        double[][] jac = new double[n][n];
+        double[] yPert = y.clone();
+        double[] fPlus = new double[n];
+        double[] fMinus = new double[n];
+        for (int j = 0; j < n; j++) {
+            double delta = FD_STEP * y[j];
+            yPert[j] = y[j] + delta;
+            system.computeDerivatives(0, yPert, fPlus);
+            yPert[j] = y[j] - delta;
+            system.computeDerivatives(0, yPert, fMinus);
+            yPert[j] = y[j];
+            for (int i = 0; i < n; i++) {
+                jac[i][j] = (fPlus[i] - fMinus[i]) / (2 * delta);
+            }
+        }
+        return jac;
+    }
+}
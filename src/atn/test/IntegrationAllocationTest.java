@@ -0,0 +1,87 @@
+package atn.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import atn.ATNSystem;
+import atn.BulirschStoerIntegration;
+import atn.CompiledATNModel;
+
+/*
+ * Allocation-rate regression check for BulirschStoerIntegration.  The
+ * integrator preallocates its workspace once per job; after warm-up, repeated
+ * calls to performIntegration() (and the no-copy getYNew variant, plus
+ * ATNSystem.computeContributions) must not allocate.  Uses a synthetic food
+ * web compiled directly into a CompiledATNModel so that no species/database
+ * information is needed.
+ *
+ * Run main(); exits with status 1 if the steady-state loop allocates.
+ */
+public class IntegrationAllocationTest {
+
+    private static final int SPECIES_CNT = 60;
+    private static final int PLANT_CNT = 6;
+    private static final double CONNECTANCE = 0.1;
+    private static final int WARMUP_CALLS = 2000;
+    private static final int MEASURED_CALLS = 2000;
+    //small allowance for measurement noise (e.g. JIT/safepoint bookkeeping)
+    private static final long MAX_BYTES_PER_CALL = 16;
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threadBean
+                = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        ATNSystem system = new ATNSystem(buildModel(new Random(1)));
+        BulirschStoerIntegration bsi = new BulirschStoerIntegration(
+                0.1,
+                system,
+                1.0E-3
+        );
+        double[] y = new double[SPECIES_CNT];
+        double[] yPrior = new double[SPECIES_CNT];
+        double[][] contribs = new double[SPECIES_CNT][SPECIES_CNT];
+
+        run(bsi, system, y, yPrior, contribs, WARMUP_CALLS);
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        run(bsi, system, y, yPrior, contribs, MEASURED_CALLS);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        double perCall = (double) allocated / MEASURED_CALLS;
+        System.out.printf("species=%d, calls=%d, allocated=%d bytes (%.2f bytes/call)\n",
+                SPECIES_CNT, MEASURED_CALLS, allocated, perCall);
+        if (perCall > MAX_BYTES_PER_CALL) {
+            System.out.println("FAILED: integration loop allocates");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    //identical plants, animals differing only in metabolic rate
+    static CompiledATNModel buildModel(Random rand) {
+        CompiledATNModel model = new CompiledATNModel(SPECIES_CNT, 0, 0.5, 0, 6);
+        for (int i = 0; i < SPECIES_CNT; i++) {
+            boolean plant = i < PLANT_CNT;
+            model.setNodeParams(i, 0.1 + 0.5 * rand.nextDouble(), plant ? 1.0 : -1.0,
+                    plant ? 2000.0 : -1.0, plant, 1.0);
+        }
+        RandomFoodWeb.addLinks(model, rand, SPECIES_CNT, PLANT_CNT, CONNECTANCE, 0);
+        return model;
+    }
+
+    private static void run(BulirschStoerIntegration bsi, ATNSystem system,
+            double[] y, double[] yPrior, double[][] contribs, int calls) {
+        for (int t = 0; t < calls; t++) {
+            if (t % 100 == 0) {
+                for (int i = 0; i < y.length; i++) {
+                    y[i] = i < PLANT_CNT ? 1.0 : 0.2;
+                }
+            }
+            bsi.performIntegration(t * 0.1, y);
+            System.arraycopy(y, 0, yPrior, 0, y.length);
+            bsi.getYNew(y);
+            system.computeContributions(yPrior, y, 0.1, contribs);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package atn.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import db.SimJobDAO;
+import simulation.simjob.NodeConfigReader;
+import simulation.simjob.NodeConfigWriter;
+
+/*
+ * Times node_config parsing and building: the previous substring parser
+ * (trim()/endIndex() with Double.valueOf on each cut token) and
+ * String.format/concat builder against NodeConfigReader and
+ * NodeConfigWriter.  Uses the node_configs stored in sim_job if the database
+ * is reachable, otherwise synthetic configs of 10 to 400 nodes.  Both
+ * parsers must read the same values, and both builders must produce the
+ * same strings.
+ *
+ * Run main(); optional args: max sim_job rows (default 5000), passes
+ * (default 20).  Exits with status 1 on any mismatch.
+ */
+public class NodeConfigBenchmark {
+
+    private static final int[] SYNTHETIC_NODE_CNTS = {10, 50, 100, 400};
+    private static final int SYNTHETIC_PER_SIZE = 250;
+
+    public static void main(String[] args) {
+        int maxJobs = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        List<String> configs;
+        String source;
+        try {
+            configs = SimJobDAO.getNodeConfigs(maxJobs);
+            source = "sim_job";
+        } catch (Exception ex) {
+            //no database; SQLException or configuration errors
+            configs = syntheticConfigs(new Random(17));
+            source = "synthetic (sim_job unavailable: " + ex.getClass().getSimpleName() + ")";
+        }
+        long chars = 0;
+        for (String config : configs) {
+            chars += config.length();
+        }
+        System.out.printf("%d configs from %s, %d chars\n", configs.size(), source,
+                chars);
+
+        //same values from both parsers; events are rebuilt with both builders
+        List<List<Object[]>> parsed = new ArrayList<List<Object[]>>();
+        boolean failed = false;
+        for (String config : configs) {
+            Recorder oldEvents = new Recorder();
+            Recorder newEvents = new Recorder();
+            oldParse(config, oldEvents);
+            new NodeConfigReader(config).parse(newEvents);
+            if (!oldEvents.toString().equals(newEvents.toString())) {
+                System.out.printf("parsers differ on %s\n", config);
+                failed = true;
+            }
+            String oldBuilt = oldBuild(newEvents.nodes);
+            String newBuilt = newBuild(newEvents.nodes);
+            if (!oldBuilt.equals(newBuilt)) {
+                System.out.printf("builders differ:\n%s\n%s\n", oldBuilt, newBuilt);
+                failed = true;
+            }
+            parsed.add(newEvents.nodes);
+        }
+
+        System.out.printf("%-10s %12s %12s %8s\n", "", "old ms", "new ms", "speedup");
+        long sink = 0;
+        double[] oldMs = new double[2];
+        double[] newMs = new double[2];
+        //first pass is warm-up
+        for (int pass = 0; pass <= passes; pass++) {
+            long t0 = System.nanoTime();
+            for (String config : configs) {
+                Recorder r = new Recorder(false);
+                oldParse(config, r);
+                sink += r.cnt;
+            }
+            long t1 = System.nanoTime();
+            for (String config : configs) {
+                Recorder r = new Recorder(false);
+                new NodeConfigReader(config).parse(r);
+                sink += r.cnt;
+            }
+            long t2 = System.nanoTime();
+            for (List<Object[]> nodes : parsed) {
+                sink += oldBuild(nodes).length();
+            }
+            long t3 = System.nanoTime();
+            for (List<Object[]> nodes : parsed) {
+                sink += newBuild(nodes).length();
+            }
+            long t4 = System.nanoTime();
+            if (pass > 0) {
+                oldMs[0] += (t1 - t0) / 1.0E6;
+                newMs[0] += (t2 - t1) / 1.0E6;
+                oldMs[1] += (t3 - t2) / 1.0E6;
+                newMs[1] += (t4 - t3) / 1.0E6;
+            }
+        }
+        String[] names = {"parse", "build"};
+        for (int i = 0; i < names.length; i++) {
+            System.out.printf("%-10s %12.1f %12.1f %7.1fx\n", names[i],
+                    oldMs[i] / passes, newMs[i] / passes, oldMs[i] / newMs[i]);
+        }
+        System.out.printf("(checksum %d)\n", sink);
+
+        if (failed) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+    }
+
+    /*
+     Records what was read; per node {nodeId, biomass, perUnitBiomass,
+     node params, link params}.  Without detail only counts values.
+     */
+    private static class Recorder implements NodeConfigReader.Handler {
+
+        private final boolean detail;
+        private final List<Object[]> nodes = new ArrayList<Object[]>();
+        private List<Object[]> nodeParams;
+        private List<Object[]> linkParams;
+        private long cnt = 0;
+
+        Recorder() {
+            this(true);
+        }
+
+        Recorder(boolean detail) {
+            this.detail = detail;
+        }
+
+        @Override
+        public void node(int nodeId, double biomass, double perUnitBiomass) {
+            cnt++;
+            if (detail) {
+                nodeParams = new ArrayList<Object[]>();
+                linkParams = new ArrayList<Object[]>();
+                nodes.add(new Object[]{nodeId, biomass, perUnitBiomass,
+                    nodeParams, linkParams});
+            }
+        }
+
+        @Override
+        public void nodeParam(String paramID, double value) {
+            cnt++;
+            if (detail) {
+                nodeParams.add(new Object[]{paramID, value});
+            }
+        }
+
+        @Override
+        public void linkParam(int preyId, String paramID, double value) {
+            cnt++;
+            if (detail) {
+                linkParams.add(new Object[]{preyId, paramID, value});
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (Object[] node : nodes) {
+                sb.append(node[0]).append(' ').append(node[1]).append(' ')
+                        .append(node[2]);
+                for (Object[] p : (List<Object[]>) node[3]) {
+                    sb.append(' ').append(p[0]).append('=').append(p[1]);
+                }
+                for (Object[] p : (List<Object[]>) node[4]) {
+                    sb.append(' ').append(p[0]).append(':').append(p[1])
+                            .append('=').append(p[2]);
+                }
+                sb.append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    //the substring parser SimJob used before NodeConfigReader
+    private static void oldParse(String config, NodeConfigReader.Handler handler) {
+        String remainder = config;
+        int nodeCnt = 0;
+        if (!remainder.isEmpty()) {
+            nodeCnt = Integer.valueOf(remainder.substring(0, remainder.indexOf(",")));
+        }
+        for (int i = 0; i < nodeCnt; i++) {
+            remainder = trim(remainder, "[");
+            int nodeId = Integer.valueOf(remainder.substring(0, remainder.indexOf("]")));
+            remainder = trim(remainder, ",");
+            double biomass = Double.valueOf(remainder.substring(0, endIndex(remainder, ",")));
+            remainder = trim(remainder, ",");
+            double perUnitBiomass = Double.valueOf(remainder.substring(0,
+                    endIndex(remainder, ",")));
+            remainder = trim(remainder, ",");
+            handler.node(nodeId, biomass, perUnitBiomass);
+            if (remainder.isEmpty()) {
+                break;
+            }
+            int paramCnt = Integer.valueOf(remainder.substring(0, remainder.indexOf(",")));
+            for (int j = 0; j < paramCnt; j++) {
+                remainder = trim(remainder, ",");
+                String paramID = remainder.substring(0, remainder.indexOf("=")).toUpperCase();
+                remainder = trim(remainder, "=");
+                handler.nodeParam(paramID, Double.valueOf(remainder.substring(0,
+                        endIndex(remainder, ","))));
+            }
+            remainder = trim(remainder, ",");
+
+            int linkParamCnt = 0;
+            if (remainder.indexOf(",") != -1) {
+                linkParamCnt = Integer.valueOf(remainder.substring(0, remainder.indexOf(",")));
+            }
+            for (int j = 0; j < linkParamCnt; j++) {
+                remainder = trim(remainder, "[");
+                int preyId = Integer.valueOf(remainder.substring(0, remainder.indexOf("]")));
+                remainder = trim(remainder, ",");
+                String paramID = remainder.substring(0, remainder.indexOf("=")).toUpperCase();
+                remainder = trim(remainder, "=");
+                handler.linkParam(preyId, paramID, Double.valueOf(remainder.substring(0,
+                        endIndex(remainder, ","))));
+            }
+            remainder = remainder.indexOf(",") == -1 ? "" : trim(remainder, ",");
+        }
+    }
+
+    private static String trim(String superString, String cutoff) {
+        int idx = superString.indexOf(cutoff);
+        if (idx < 0) {
+            return "";
+        }
+        return superString.substring(idx + 1);
+    }
+
+    private static int endIndex(String superString, String cutoff) {
+        int idx = superString.indexOf(cutoff);
+        return idx < 0 ? superString.length() : idx;
+    }
+
+    //the String.format/concat builder SimJob used before NodeConfigWriter
+    @SuppressWarnings("unchecked")
+    private static String oldBuild(List<Object[]> nodes) {
+        String configStr = String.format("%d,", nodes.size());
+        for (Object[] node : nodes) {
+            configStr = configStr.concat(String.format("[%d],", node[0]));
+            configStr = configStr.concat(String.format("%.0f,", node[1]));
+            configStr = configStr.concat(String.format("%.3f,", node[2]));
+            List<Object[]> nodeParams = (List<Object[]>) node[3];
+            configStr = configStr.concat(String.format("%d,", nodeParams.size()));
+            for (Object[] p : nodeParams) {
+                configStr = configStr.concat(p[0] + "=");
+                configStr = configStr.concat(String.format("%.3f,", p[1]));
+            }
+            List<Object[]> linkParams = (List<Object[]>) node[4];
+            configStr = configStr.concat(String.format("%d,", linkParams.size()));
+            for (Object[] p : linkParams) {
+                configStr = configStr.concat(String.format("[%d],", p[0]));
+                configStr = configStr.concat(p[1] + "=");
+                configStr = configStr.concat(String.format("%.3f,", p[2]));
+            }
+        }
+        return configStr.substring(0, configStr.length() - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String newBuild(List<Object[]> nodes) {
+        NodeConfigWriter out = new NodeConfigWriter();
+        out.count(nodes.size());
+        for (Object[] node : nodes) {
+            out.node((Integer) node[0], (Double) node[1], (Double) node[2]);
+            List<Object[]> nodeParams = (List<Object[]>) node[3];
+            out.count(nodeParams.size());
+            for (Object[] p : nodeParams) {
+                out.nodeParam((String) p[0], (Double) p[1]);
+            }
+            List<Object[]> linkParams = (List<Object[]>) node[4];
+            out.count(linkParams.size());
+            for (Object[] p : linkParams) {
+                out.linkParam((Integer) p[0], (String) p[1], (Double) p[2]);
+            }
+        }
+        return out.toString();
+    }
+
+    //configs shaped like those built by SimJob, with a few link parameters
+    private static List<String> syntheticConfigs(Random rand) {
+        String[] nodeIDs = {"K", "R", "X"};
+        String[] linkIDs = {"A", "E", "D", "Q", "Y"};
+        List<String> configs = new ArrayList<String>();
+        for (int nodeCnt : SYNTHETIC_NODE_CNTS) {
+            for (int c = 0; c < SYNTHETIC_PER_SIZE; c++) {
+                StringBuilder sb = new StringBuilder();
+                sb.append(nodeCnt).append(',');
+                for (int i = 0; i < nodeCnt; i++) {
+                    sb.append(String.format(Locale.ROOT, "[%d],%.0f,%.3f,",
+                            1 + rand.nextInt(1000), Math.ceil(rand.nextDouble() * 1.0E6),
+                            round3(rand.nextDouble() * 50)));
+                    int paramCnt = 1 + rand.nextInt(nodeIDs.length);
+                    sb.append(paramCnt).append(',');
+                    for (int j = 0; j < paramCnt; j++) {
+                        sb.append(String.format(Locale.ROOT, "%s=%.3f,", nodeIDs[j],
+                                round3(rand.nextDouble() * 2000)));
+                    }
+                    int linkCnt = rand.nextInt(4) == 0 ? 1 + rand.nextInt(4) : 0;
+                    sb.append(linkCnt).append(',');
+                    for (int j = 0; j < linkCnt; j++) {
+                        sb.append(String.format(Locale.ROOT, "[%d],%s=%.3f,",
+                                1 + rand.nextInt(1000), linkIDs[rand.nextInt(linkIDs.length)],
+                                round3(rand.nextDouble() * 10)));
+                    }
+                }
+                configs.add(sb.substring(0, sb.length() - 1));
+            }
+        }
+        return configs;
+    }
+
+    //as SimJob.roundToThreeDigits
+    private static double round3(double val) {
+        val = Math.round(1000 * val) / 1000.0;
+        return val == 0 ? 0.001 : val;
+    }
+}
@@ -0,0 +1,368 @@
+package atn.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import simulation.simjob.NodeConfigReader;
+import simulation.simjob.NodeConfigWriter;
+
+/*
+ * Fuzz test for NodeConfigReader/NodeConfigWriter:
+ *
+ * - NodeConfigWriter.appendFixed against String.format("%.0f"/"%.3f") for
+ *   rounded, unrounded, negative, huge and non-finite values;
+ * - NodeConfigReader.nextDouble/nextInt against Double.valueOf/Integer.valueOf
+ *   (same bits, or both throwing) for random plain, signed, exponent,
+ *   overlong and malformed tokens;
+ * - random node_configs, formatted as SimJob.buildNodeConfig used to with
+ *   String.format, are read and written back to the identical string, and
+ *   each value read equals Double.valueOf of its token; lower case parameter
+ *   IDs and configs truncated after a node's per-unit biomass read as before.
+ *
+ * Run main(); exits with status 1 on any mismatch.
+ */
+public class NodeConfigFuzzTest {
+
+    private static final int VALUES = 200000;
+    private static final int TOKENS = 200000;
+    private static final int CONFIGS = 5000;
+    private static final String[] NODE_IDS = {"K", "R", "X"};
+    private static final String[] LINK_IDS = {"A", "E", "D", "Q", "Y"};
+
+    private static int checks = 0;
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        Random rand = new Random(17);
+        testFixed(rand);
+        testTokens(rand);
+        testConfigs(rand);
+
+        System.out.printf("checks=%d\n", checks);
+        if (failures > 0) {
+            System.out.printf("FAILED: %d mismatches\n", failures);
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    private static void testFixed(Random rand) {
+        double[] special = {0.0, -0.0, 0.0005, -0.0005, 0.001, 0.0015, 0.9995,
+            1.0E9, -1.0E9, 999999999.999, 1.0E15, 1.0E300, Double.MIN_VALUE,
+            Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY};
+        for (double v : special) {
+            checkFixed(v, 0);
+            checkFixed(v, 3);
+        }
+        for (int i = 0; i < VALUES; i++) {
+            double v = randomValue(rand);
+            checkFixed(v, 0);
+            checkFixed(v, 3);
+            checkFixed(Math.ceil(v), 0);
+            checkFixed(Math.round(1000 * v) / 1000.0, 3);
+        }
+    }
+
+    private static void checkFixed(double v, int decimals) {
+        String expected = String.format(Locale.ROOT, "%." + decimals + "f", v);
+        String actual = NodeConfigWriter.appendFixed(new StringBuilder(), v,
+                decimals).toString();
+        checks++;
+        if (!actual.equals(expected)) {
+            System.out.printf("appendFixed(%s, %d) = %s, expected %s\n",
+                    Double.toString(v), decimals, actual, expected);
+            failures++;
+        }
+    }
+
+    //wide spread of magnitudes, both signs
+    private static double randomValue(Random rand) {
+        switch (rand.nextInt(5)) {
+            case 0:
+                return rand.nextDouble();
+            case 1:
+                return (rand.nextDouble() - 0.5) * 20000;
+            case 2:
+                return rand.nextInt(100000) / 1000.0;
+            case 3:
+                return Math.pow(10, rand.nextInt(40) - 20) * rand.nextGaussian();
+            default:
+                return Double.longBitsToDouble(rand.nextLong());
+        }
+    }
+
+    //as randomValue, excluding NaN and infinities
+    private static double finiteValue(Random rand) {
+        double v;
+        do {
+            v = randomValue(rand);
+        } while (Double.isNaN(v) || Double.isInfinite(v));
+        return v;
+    }
+
+    private static void testTokens(Random rand) {
+        String[] special = {"", "-", "+", ".", "-.", "1.", ".5", "-0", "-0.000",
+            "+1.5", "00000000000000000000001.5", "0.00000000000000000000000001",
+            "1e3", "1E-3", "NaN", "Infinity", "-Infinity", " 1.5", "1.5 ", "1..5",
+            "1.5d", "0x10", "2147483647", "2147483648", "-2147483648",
+            "9007199254740993", "123456789012345.6", "1234567890123456.7"};
+        for (String token : special) {
+            checkDouble(token);
+            checkInt(token);
+        }
+        for (int i = 0; i < TOKENS; i++) {
+            String token = randomToken(rand);
+            checkDouble(token);
+            checkInt(token);
+        }
+    }
+
+    private static String randomToken(Random rand) {
+        StringBuilder sb = new StringBuilder();
+        int sign = rand.nextInt(6);
+        if (sign == 0) {
+            sb.append('-');
+        } else if (sign == 1) {
+            sb.append('+');
+        }
+        int intDigits = rand.nextInt(rand.nextInt(4) == 0 ? 22 : 10);
+        for (int i = 0; i < intDigits; i++) {
+            sb.append((char) ('0' + rand.nextInt(10)));
+        }
+        if (rand.nextBoolean()) {
+            sb.append('.');
+            int fracDigits = rand.nextInt(rand.nextInt(4) == 0 ? 30 : 6);
+            for (int i = 0; i < fracDigits; i++) {
+                sb.append((char) ('0' + rand.nextInt(10)));
+            }
+        }
+        int extra = rand.nextInt(20);
+        if (extra == 0) {
+            sb.append('e').append(rand.nextInt(40) - 20);
+        } else if (extra == 1) {
+            sb.insert(rand.nextInt(sb.length() + 1), "x.-+ ".charAt(rand.nextInt(5)));
+        }
+        return sb.toString();
+    }
+
+    private static void checkDouble(String token) {
+        String expected;
+        try {
+            expected = Long.toString(Double.doubleToLongBits(Double.valueOf(token)));
+        } catch (NumberFormatException ex) {
+            expected = "NumberFormatException";
+        }
+        String actual;
+        try {
+            NodeConfigReader in = new NodeConfigReader(token + ",");
+            actual = Long.toString(Double.doubleToLongBits(in.nextDouble()));
+            if (in.hasMore()) {
+                actual = "comma not consumed";
+            }
+        } catch (NumberFormatException ex) {
+            actual = "NumberFormatException";
+        }
+        checks++;
+        if (!actual.equals(expected)) {
+            System.out.printf("nextDouble(\"%s\") = %s, expected %s\n", token,
+                    actual, expected);
+            failures++;
+        }
+    }
+
+    private static void checkInt(String token) {
+        String expected;
+        try {
+            expected = Integer.toString(Integer.valueOf(token));
+        } catch (NumberFormatException ex) {
+            expected = "NumberFormatException";
+        }
+        String actual;
+        try {
+            actual = Integer.toString(new NodeConfigReader(token).nextInt());
+        } catch (NumberFormatException ex) {
+            actual = "NumberFormatException";
+        }
+        checks++;
+        if (!actual.equals(expected)) {
+            System.out.printf("nextInt(\"%s\") = %s, expected %s\n", token,
+                    actual, expected);
+            failures++;
+        }
+    }
+
+    private static void testConfigs(Random rand) {
+        for (int c = 0; c < CONFIGS; c++) {
+            String config = randomConfig(rand);
+            List<String> expected = tokenValues(config);
+
+            //read and write back
+            final List<String> values = new ArrayList<String>();
+            final NodeConfigWriter out = new NodeConfigWriter();
+            final List<Object[]> nodes = new ArrayList<Object[]>();
+            new NodeConfigReader(config).parse(recorder(values, nodes));
+            out.count(nodes.size());
+            for (Object[] node : nodes) {
+                write(out, node);
+            }
+            check(c, "round trip", config, out.toString());
+            check(c, "values", expected.toString(), values.toString());
+
+            //lower case parameter IDs
+            List<String> lower = new ArrayList<String>();
+            new NodeConfigReader(config.toLowerCase()).parse(
+                    recorder(lower, new ArrayList<Object[]>()));
+            check(c, "lower case IDs", values.toString(), lower.toString());
+
+            //truncated after the first node's per-unit biomass
+            if (!nodes.isEmpty()) {
+                int end = nthIndexOf(config, ',', 4);
+                if (end > 0) {
+                    List<String> truncated = new ArrayList<String>();
+                    int cnt = new NodeConfigReader(config.substring(0, end)).parse(
+                            recorder(truncated, new ArrayList<Object[]>()));
+                    check(c, "truncated", values.subList(0, 3).toString(),
+                            truncated.toString() + (cnt == 1 ? "" : " cnt " + cnt));
+                }
+            }
+        }
+    }
+
+    /*
+     Records every value as it is read (node ID, biomass, per-unit biomass,
+     then ID=value per parameter) and, per node, its node and link parameters
+     for writing back.
+     */
+    private static NodeConfigReader.Handler recorder(final List<String> values,
+            final List<Object[]> nodes) {
+        return new NodeConfigReader.Handler() {
+            List<Object[]> nodeParams;
+            List<Object[]> linkParams;
+
+            @Override
+            public void node(int nodeId, double biomass, double perUnitBiomass) {
+                values.add(Integer.toString(nodeId));
+                values.add(Double.toString(biomass));
+                values.add(Double.toString(perUnitBiomass));
+                nodeParams = new ArrayList<Object[]>();
+                linkParams = new ArrayList<Object[]>();
+                nodes.add(new Object[]{nodeId, biomass, perUnitBiomass,
+                    nodeParams, linkParams});
+            }
+
+            @Override
+            public void nodeParam(String paramID, double value) {
+                values.add(paramID + "=" + value);
+                nodeParams.add(new Object[]{paramID, value});
+            }
+
+            @Override
+            public void linkParam(int preyId, String paramID, double value) {
+                values.add(preyId + ":" + paramID + "=" + value);
+                linkParams.add(new Object[]{preyId, paramID, value});
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void write(NodeConfigWriter out, Object[] node) {
+        out.node((Integer) node[0], (Double) node[1], (Double) node[2]);
+        List<Object[]> nodeParams = (List<Object[]>) node[3];
+        out.count(nodeParams.size());
+        for (Object[] p : nodeParams) {
+            out.nodeParam((String) p[0], (Double) p[1]);
+        }
+        List<Object[]> linkParams = (List<Object[]>) node[4];
+        out.count(linkParams.size());
+        for (Object[] p : linkParams) {
+            out.linkParam((Integer) p[0], (String) p[1], (Double) p[2]);
+        }
+    }
+
+    //node_config as formatted by SimJob.buildNodeConfig with String.format
+    private static String randomConfig(Random rand) {
+        int nodeCnt = rand.nextInt(40);
+        String config = String.format(Locale.ROOT, "%d,", nodeCnt);
+        for (int i = 0; i < nodeCnt; i++) {
+            config += String.format(Locale.ROOT, "[%d],", 1 + rand.nextInt(1000));
+            config += String.format(Locale.ROOT, "%.0f,",
+                    Math.ceil(Math.abs(finiteValue(rand)) % 1.0E7));
+            config += String.format(Locale.ROOT, "%.3f,", round3(rand.nextDouble() * 50));
+            int paramCnt = rand.nextInt(NODE_IDS.length + 1);
+            config += String.format(Locale.ROOT, "%d,", paramCnt);
+            for (int j = 0; j < paramCnt; j++) {
+                config += NODE_IDS[j] + "=";
+                config += String.format(Locale.ROOT, "%.3f,", round3(finiteValue(rand) % 1.0E6));
+            }
+            int linkCnt = rand.nextInt(4) == 0 ? rand.nextInt(8) : 0;
+            config += String.format(Locale.ROOT, "%d,", linkCnt);
+            for (int j = 0; j < linkCnt; j++) {
+                config += String.format(Locale.ROOT, "[%d],", 1 + rand.nextInt(1000));
+                config += LINK_IDS[rand.nextInt(LINK_IDS.length)] + "=";
+                config += String.format(Locale.ROOT, "%.3f,", round3(rand.nextDouble() * 10));
+            }
+        }
+        return config.substring(0, config.length() - 1);
+    }
+
+    //as SimJob.roundToThreeDigits
+    private static double round3(double val) {
+        val = Math.round(1000 * val) / 1000.0;
+        return val == 0 ? 0.001 : val;
+    }
+
+    /*
+     Values of a well-formed config, taken token by token with Double.valueOf
+     and Integer.valueOf, in the order recorder() lists them.
+     */
+    private static List<String> tokenValues(String config) {
+        List<String> values = new ArrayList<String>();
+        String[] tokens = config.split(",");
+        int t = 0;
+        int nodeCnt = Integer.valueOf(tokens[t++]);
+        for (int i = 0; i < nodeCnt; i++) {
+            values.add(Integer.valueOf(unbracket(tokens[t++])).toString());
+            values.add(Double.valueOf(tokens[t++]).toString());
+            values.add(Double.valueOf(tokens[t++]).toString());
+            int paramCnt = Integer.valueOf(tokens[t++]);
+            for (int j = 0; j < paramCnt; j++) {
+                String[] p = tokens[t++].split("=");
+                values.add(p[0] + "=" + Double.valueOf(p[1]));
+            }
+            int linkCnt = Integer.valueOf(tokens[t++]);
+            for (int j = 0; j < linkCnt; j++) {
+                String prey = Integer.valueOf(unbracket(tokens[t++])).toString();
+                String[] p = tokens[t++].split("=");
+                values.add(prey + ":" + p[0] + "=" + Double.valueOf(p[1]));
+            }
+        }
+        return values;
+    }
+
+    private static String unbracket(String token) {
+        return token.substring(1, token.length() - 1);
+    }
+
+    private static int nthIndexOf(String str, char c, int n) {
+        int idx = -1;
+        for (int i = 0; i < n; i++) {
+            idx = str.indexOf(c, idx + 1);
+            if (idx < 0) {
+                return -1;
+            }
+        }
+        return idx;
+    }
+
+    private static void check(int config, String what, String expected, String actual) {
+        checks++;
+        if (!actual.equals(expected)) {
+            System.out.printf("config %d, %s:\n%s\nexpected\n%s\n", config, what,
+                    actual, expected);
+            failures++;
+        }
+    }
+}
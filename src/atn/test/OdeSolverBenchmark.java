@@ -0,0 +1,123 @@
+package atn.test;
+
+import java.util.Random;
+
+import atn.ATNSystem;
+import atn.BulirschStoerIntegration;
+import atn.CompiledATNModel;
+import atn.OdeSolver;
+import atn.OdeSolverType;
+
+/*
+ * Runs every OdeSolverType on the same set of synthetic food webs and reports
+ * cost (accepted/rejected steps, RHS evaluations, run time) and accuracy (max
+ * biomass difference vs. a tight-tolerance Bulirsch-Stoer reference).  The
+ * "stiff" webs mix slow plants with consumers whose metabolic rates are up to
+ * two orders of magnitude faster.
+ *
+ * Run main(); optional args: timesteps (default 500), maxErr (default 1e-3).
+ * Exits with status 1 if a solver fails or strays far from the reference.
+ */
+public class OdeSolverBenchmark {
+
+    private static final double TIME_INTVL = 0.1;
+    private static final double REF_ERR = 1.0E-9;
+    //allowed deviation from the reference, in units of maxErr per timestep
+    private static final double MAX_DRIFT = 10.0;
+
+    private static final int[] SPECIES_CNTS = {20, 60, 120};
+    private static final double CONNECTANCE = 0.1;
+
+    public static void main(String[] args) {
+        int timesteps = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        double maxErr = args.length > 1 ? Double.parseDouble(args[1]) : 1.0E-3;
+        boolean failed = false;
+
+        System.out.printf("%-6s %5s %-11s %9s %9s %11s %9s %11s\n", "web",
+                "n", "solver", "accepted", "rejected", "rhs evals", "ms",
+                "max diff");
+        for (boolean stiff : new boolean[]{false, true}) {
+            for (int speciesCnt : SPECIES_CNTS) {
+                CompiledATNModel model = buildModel(new Random(speciesCnt),
+                        speciesCnt, Math.max(2, speciesCnt / 10), stiff);
+                double[] init = initBiomass(new Random(speciesCnt + 1),
+                        speciesCnt, Math.max(2, speciesCnt / 10));
+
+                double[][] ref = run(new BulirschStoerIntegration(TIME_INTVL,
+                        new ATNSystem(model), REF_ERR), init, timesteps);
+                for (OdeSolverType type : OdeSolverType.values()) {
+                    OdeSolver solver = type.create(TIME_INTVL,
+                            new ATNSystem(model), maxErr);
+                    long start = System.nanoTime();
+                    double[][] result = run(solver, init, timesteps);
+                    double ms = (System.nanoTime() - start) / 1.0E6;
+
+                    double diff = result == null ? Double.NaN : maxDiff(result, ref);
+                    System.out.printf("%-6s %5d %-11s %9d %9d %11d %9.1f %11.3e\n",
+                            stiff ? "stiff" : "normal", speciesCnt, type.getName(),
+                            solver.getAcceptedSteps(), solver.getRejectedSteps(),
+                            solver.getRhsEvals(), ms, diff);
+                    if (!(diff <= MAX_DRIFT * maxErr * timesteps)) {
+                        System.out.println("FAILED: " + type.getName());
+                        failed = true;
+                    }
+                }
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    //biomass at every timestep; null if the solver gave up
+    private static double[][] run(OdeSolver solver, double[] init, int timesteps) {
+        double[][] bm = new double[timesteps][];
+        double[] y = init.clone();
+        bm[0] = y.clone();
+        for (int t = 1; t < timesteps; t++) {
+            if (!solver.performIntegration(t * TIME_INTVL, y)) {
+                return null;
+            }
+            solver.getYNew(y);
+            bm[t] = y.clone();
+        }
+        return bm;
+    }
+
+    private static double maxDiff(double[][] a, double[][] b) {
+        double max = 0;
+        for (int t = 0; t < a.length; t++) {
+            for (int i = 0; i < a[t].length; i++) {
+                max = Math.max(max, Math.abs(a[t][i] - b[t][i]));
+            }
+        }
+        return max;
+    }
+
+    private static double[] initBiomass(Random rand, int speciesCnt, int plantCnt) {
+        double[] y = new double[speciesCnt];
+        for (int i = 0; i < speciesCnt; i++) {
+            y[i] = i < plantCnt ? 0.5 + rand.nextDouble()
+                    : 0.05 + 0.2 * rand.nextDouble();
+        }
+        return y;
+    }
+
+    //identical plants, animals differing only in metabolic rate
+    static CompiledATNModel buildModel(Random rand, int speciesCnt, int plantCnt,
+            boolean stiff) {
+        CompiledATNModel model = new CompiledATNModel(speciesCnt, 0.2, 0.5, 0.5, 6);
+        for (int i = 0; i < speciesCnt; i++) {
+            boolean plant = i < plantCnt;
+            double x = 0.1 + 0.5 * rand.nextDouble();
+            if (stiff && !plant) {
+                x *= Math.pow(10.0, 2.0 * rand.nextDouble());
+            }
+            model.setNodeParams(i, x, plant ? 1.0 : -1.0,
+                    plant ? 2000.0 : -1.0, plant, plant ? 0.45 : 0.85);
+        }
+        RandomFoodWeb.addLinks(model, rand, speciesCnt, plantCnt, CONNECTANCE, 0);
+        return model;
+    }
+}
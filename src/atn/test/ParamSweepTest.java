@@ -0,0 +1,422 @@
+package atn.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import atn.ATNSystem;
+import atn.CompiledATNModel;
+import atn.ParamSweep;
+import simulation.SpeciesZoneType.NodeParam;
+import simulation.simjob.SimJob;
+
+/*
+ * Checks the parts of ParamSweep that need no database:
+ *  - a variant made with the CompiledATNModel copy constructor gives the same
+ *    derivatives and Jacobian as a model compiled from scratch with the same
+ *    parameters, leaves the original unchanged, and shares its link indices
+ *    and Jacobian pattern; links can no longer be changed on either model
+ *  - each sampling produces the expected variants (grid size, one at a time,
+ *    ranges, one sample per Latin hypercube stratum) and is repeatable for a
+ *    given seed
+ *  - a sweep of a synthetic web run on several threads (under a locale with
+ *    a decimal comma) writes one well-formed CSV row per variant, the same
+ *    rows as on one thread; extinctions and the Summary agree with the rows,
+ *    and the summary job's description reports the Summary.
+ *
+ * Run main(); exits with status 1 on any failure.
+ */
+public class ParamSweepTest {
+
+    private static final int WEBS = 30;
+    private static final double CONNECTANCE = 0.15;
+    //ATNSystem.MIN_BIOMASS times ATNEngine's biomass scale, as in the CSV
+    private static final double EXTINCT_BIOMASS = 0.001;
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        checkVariants();
+        checkSampling();
+        checkRun();
+        if (failures > 0) {
+            System.out.printf("FAILED: %d checks\n", failures);
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    private static void checkVariants() {
+        Random rand = new Random(11);
+        NodeParam[] params = NodeParam.values();
+        for (int web = 0; web < WEBS; web++) {
+            long seed = rand.nextLong();
+            int speciesCnt = 5 + rand.nextInt(40);
+            CompiledATNModel base = buildModel(new Random(seed), speciesCnt);
+            CompiledATNModel pristine = buildModel(new Random(seed), speciesCnt);
+            CompiledATNModel fresh = buildModel(new Random(seed), speciesCnt);
+            CompiledATNModel variant = new CompiledATNModel(base);
+            for (int c = 0; c < 1 + speciesCnt / 3; c++) {
+                int i = rand.nextInt(speciesCnt);
+                NodeParam param = params[rand.nextInt(params.length)];
+                double value = param == NodeParam.K ? 500.0 + 2000.0 * rand.nextDouble()
+                        : 0.05 + rand.nextDouble();
+                variant.setNodeParam(i, param, value);
+                fresh.setNodeParam(i, param, value);
+            }
+
+            double[] y = new double[speciesCnt];
+            for (int i = 0; i < speciesCnt; i++) {
+                y[i] = Math.pow(10.0, -3 + 3.5 * rand.nextDouble());
+            }
+            ATNSystem variantSystem = new ATNSystem(variant);
+            ATNSystem freshSystem = new ATNSystem(fresh);
+            ATNSystem baseSystem = new ATNSystem(base);
+            check(Arrays.equals(derivatives(variantSystem, y), derivatives(freshSystem, y)),
+                    "web %d: variant derivatives differ from fresh model", web);
+            check(Arrays.equals(jacobian(variantSystem, y), jacobian(freshSystem, y)),
+                    "web %d: variant Jacobian differs from fresh model", web);
+            check(Arrays.equals(derivatives(baseSystem, y),
+                    derivatives(new ATNSystem(pristine), y)),
+                    "web %d: variant changed the original model", web);
+            check(variantSystem.getJacobianRowPtr() == baseSystem.getJacobianRowPtr()
+                    && variantSystem.getJacobianColIdx() == baseSystem.getJacobianColIdx()
+                    && variantSystem.getContribRowPtr() == baseSystem.getContribRowPtr(),
+                    "web %d: variant does not share the original's indices", web);
+
+            for (CompiledATNModel shared : new CompiledATNModel[]{base, variant}) {
+                try {
+                    shared.addLink(speciesCnt - 1, 0);
+                    check(false, "web %d: link added to a shared model", web);
+                } catch (IllegalStateException ex) {
+                    //expected
+                }
+            }
+        }
+    }
+
+    private static void checkSampling() {
+        ParamSweep grid = sweep(ParamSweep.Sampling.GRID);
+        double[][] variants = grid.variants();
+        //0.1 .. 1.0 by 0.1, 1000 .. 5000 by 1000, 0.5 .. 0.7 by 0.1
+        check(variants.length == 10 * 5 * 3, "GRID: %d variants", variants.length);
+        check(variants[0][0] == 0.1 && variants[0][1] == 1000 && variants[0][2] == 0.5
+                && variants[variants.length - 1][0] == 1.0
+                && variants[variants.length - 1][1] == 5000
+                && variants[variants.length - 1][2] == 0.7, "GRID: bounds");
+        check(distinct(variants) == variants.length, "GRID: duplicate variants");
+
+        variants = sweep(ParamSweep.Sampling.ONE_AT_A_TIME).variants();
+        check(variants.length == 10 + 5 + 3, "ONE_AT_A_TIME: %d variants",
+                variants.length);
+        for (double[] variant : variants) {
+            int set = 0;
+            for (double val : variant) {
+                set += Double.isNaN(val) ? 0 : 1;
+            }
+            check(set == 1, "ONE_AT_A_TIME: %d values set", set);
+        }
+
+        for (ParamSweep.Sampling sampling : new ParamSweep.Sampling[]{
+            ParamSweep.Sampling.RANDOM, ParamSweep.Sampling.LATIN_HYPERCUBE}) {
+            ParamSweep sweep = sweep(sampling);
+            sweep.setSamples(40);
+            sweep.setSeed(5);
+            variants = sweep.variants();
+            check(variants.length == 40, "%s: %d variants", sampling, variants.length);
+            check(Arrays.deepEquals(variants, sweep.variants()),
+                    "%s: not repeatable for a seed", sampling);
+            for (int d = 0; d < sweep.getDimensions().size(); d++) {
+                ParamSweep.Dimension dim = sweep.getDimensions().get(d);
+                double width = (dim.getMax() - dim.getMin()) / variants.length;
+                int[] hits = new int[variants.length];
+                for (double[] variant : variants) {
+                    check(variant[d] >= dim.getMin() && variant[d] <= dim.getMax()
+                            && variant[d] == Math.round(variant[d] * 1000) / 1000.0,
+                            "%s: %s value %f", sampling, dim, variant[d]);
+                    int stratum = (int) ((variant[d] - dim.getMin()) / width);
+                    hits[Math.min(stratum, hits.length - 1)]++;
+                }
+                //rounding to 3 decimals may move a value across a stratum
+                //boundary, so only wide strata are checked
+                if (sampling == ParamSweep.Sampling.LATIN_HYPERCUBE && width >= 0.01) {
+                    int empty = 0;
+                    for (int hit : hits) {
+                        empty += hit == 0 ? 1 : 0;
+                    }
+                    check(empty <= 2, "LATIN_HYPERCUBE: %s leaves %d strata empty",
+                            dim, empty);
+                }
+            }
+        }
+
+        check(ParamSweep.Sampling.fromName("latin-hypercube")
+                == ParamSweep.Sampling.LATIN_HYPERCUBE, "Sampling.fromName");
+        try {
+            new ParamSweep(ParamSweep.Sampling.GRID, 1)
+                    .addDimension(1, NodeParam.X, 0, 1, 1.0E-4)
+                    .addDimension(2, NodeParam.X, 0, 1, 1.0E-4)
+                    .variants();
+            check(false, "GRID: oversized sweep accepted");
+        } catch (IllegalArgumentException ex) {
+            //expected
+        }
+    }
+
+    private static void checkRun() throws IOException {
+        final int speciesCnt = 12;
+        final int plantCnt = 3;
+        CompiledATNModel base = RandomFoodWeb.build(new Random(3), speciesCnt,
+                plantCnt, 0.2, 0.5, 0.5, 6, CONNECTANCE);
+        int[] speciesID = new int[speciesCnt];
+        double[] initBiomass = new double[speciesCnt];
+        Random rand = new Random(4);
+        for (int i = 0; i < speciesCnt; i++) {
+            speciesID[i] = 100 + 7 * i;
+            initBiomass[i] = i < plantCnt ? 0.5 + rand.nextDouble()
+                    : 0.05 + 0.2 * rand.nextDouble();
+        }
+        //absent from the start, so never counted as extinct
+        initBiomass[speciesCnt - 1] = 0;
+        SimJob job = new SimJob();
+        job.setTimesteps(60);
+        job.setJob_Descript("synthetic");
+        int animal = speciesID[plantCnt + 1];
+        int plant = speciesID[0];
+
+        File parallelFile = File.createTempFile("sweep", ".csv");
+        File serialFile = File.createTempFile("sweep", ".csv");
+        parallelFile.deleteOnExit();
+        serialFile.deleteOnExit();
+        Locale locale = Locale.getDefault();
+        ParamSweep parallel = runSweep(4, animal, plant);
+        ParamSweep.Summary summary;
+        try {
+            Locale.setDefault(Locale.GERMANY);
+            summary = parallel.run(job, base, speciesID, initBiomass, parallelFile);
+        } finally {
+            Locale.setDefault(locale);
+        }
+        runSweep(1, animal, plant).run(job, base, speciesID, initBiomass, serialFile);
+
+        double[][] variants = parallel.variants();
+        List<String> lines = readLines(parallelFile);
+        String expected = "variant," + parallel.getDimensions().get(0) + ","
+                + parallel.getDimensions().get(1) + ","
+                + parallel.getDimensions().get(2)
+                + ",status,timesteps,totalBiomass,extinctions";
+        for (int id : speciesID) {
+            expected += ",bm." + id;
+        }
+        expected += ",pct." + animal + ",pct." + plant;
+        check(!lines.isEmpty() && lines.get(0).equals(expected),
+                "run: header %s", lines.isEmpty() ? "missing" : lines.get(0));
+        check(lines.size() == variants.length + 1, "run: %d rows for %d variants",
+                lines.size() - 1, variants.length);
+        List<String> serialLines = readLines(serialFile);
+        List<String> rows = new ArrayList<String>(lines.subList(1, lines.size()));
+        List<String> serialRows = new ArrayList<String>(
+                serialLines.subList(1, serialLines.size()));
+        Collections.sort(rows);
+        Collections.sort(serialRows);
+        check(rows.equals(serialRows), "run: rows differ between 4 threads and 1");
+
+        int columns = expected.split(",").length;
+        boolean[] seen = new boolean[variants.length];
+        int minExtinct = Integer.MAX_VALUE;
+        int maxExtinct = 0;
+        int totalExtinct = 0;
+        int best = -1;
+        int bestExtinct = 0;
+        double bestBiomass = 0;
+        for (String line : rows) {
+            String[] cols = line.split(",", -1);
+            if (cols.length != columns) {
+                check(false, "run: %d columns in %s", cols.length, line);
+                continue;
+            }
+            int v = Integer.parseInt(cols[0]);
+            check(!seen[v], "run: variant %d written twice", v);
+            seen[v] = true;
+            for (int d = 0; d < 3; d++) {
+                check(Double.parseDouble(cols[1 + d]) == variants[v][d],
+                        "run: variant %d value %s", v, cols[1 + d]);
+            }
+            check(cols[4].equals("ok") && cols[5].equals("60"),
+                    "run: variant %d status %s at %s", v, cols[4], cols[5]);
+            double total = 0;
+            int extinct = 0;
+            for (int i = 0; i < speciesCnt; i++) {
+                double bm = Double.parseDouble(cols[8 + i]);
+                total += bm;
+                if (initBiomass[i] > 0 && bm <= EXTINCT_BIOMASS * (1 + 1.0E-9)) {
+                    extinct++;
+                }
+            }
+            check(Double.parseDouble(cols[8 + speciesCnt - 1]) == 0,
+                    "run: absent species grew");
+            check(Math.abs(total - Double.parseDouble(cols[6])) <= 1.0E-5 * total,
+                    "run: variant %d total %s, species sum %f", v, cols[6], total);
+            check(Integer.parseInt(cols[7]) == extinct,
+                    "run: variant %d %s extinctions, %d on the floor", v, cols[7],
+                    extinct);
+            for (int k = 8 + speciesCnt; k < columns; k++) {
+                double pct = Double.parseDouble(cols[k]);
+                check(pct >= 0 && pct <= 100, "run: variant %d percentile %s",
+                        v, cols[k]);
+            }
+            minExtinct = Math.min(minExtinct, extinct);
+            maxExtinct = Math.max(maxExtinct, extinct);
+            totalExtinct += extinct;
+            if (best < 0 || extinct < bestExtinct
+                    || (extinct == bestExtinct && total > bestBiomass)) {
+                best = v;
+                bestExtinct = extinct;
+                bestBiomass = total;
+            }
+        }
+        check(maxExtinct > minExtinct, "run: extinctions %d-%d do not vary",
+                minExtinct, maxExtinct);
+
+        check(summary.getVariants() == variants.length && summary.getFailed() == 0,
+                "run: summary of %d variants, %d failed", summary.getVariants(),
+                summary.getFailed());
+        check(summary.getMinExtinctions() == minExtinct
+                && summary.getMaxExtinctions() == maxExtinct
+                && Math.abs(summary.getMeanExtinctions()
+                        - (double) totalExtinct / variants.length) < 1.0E-12,
+                "run: summary extinctions %d-%d (mean %f)",
+                summary.getMinExtinctions(), summary.getMaxExtinctions(),
+                summary.getMeanExtinctions());
+        //rows round biomass to 6 digits, so a near tie may pick either
+        int summaryBest = summary.getBestVariant();
+        String bestRow = null;
+        for (String line : rows) {
+            if (line.startsWith(summaryBest + ",")) {
+                bestRow = line;
+            }
+        }
+        check(summaryBest == best || (bestRow != null
+                && Integer.parseInt(bestRow.split(",")[7]) == bestExtinct
+                && Double.parseDouble(bestRow.split(",")[6])
+                >= bestBiomass * (1 - 1.0E-5)),
+                "run: best variant %d, expected %d", summaryBest, best);
+        check(summaryBest >= 0 && summaryBest < variants.length
+                && Arrays.equals(summary.getBestValues(), variants[summaryBest]),
+                "run: best values %s", Arrays.toString(summary.getBestValues()));
+        String descript = ParamSweep.summaryDescript(job, summary);
+        String expectedDescript = String.format(Locale.ROOT,
+                "synthetic,sweep,GRID,%d,0,%d,%.3f,%d,%d,%d,%s", variants.length,
+                minExtinct, (double) totalExtinct / variants.length, maxExtinct,
+                summaryBest, summary.getSeed(), parallelFile.getName());
+        check(descript.equals(expectedDescript), "run: summary description %s",
+                descript);
+
+        //nothing to save when no variant completed; no database is touched
+        ParamSweep empty = new ParamSweep(ParamSweep.Sampling.RANDOM, 2)
+                .addDimension(animal, NodeParam.X, 0.1, 1.0, 0);
+        empty.setSamples(0);
+        ParamSweep.Summary emptySummary = empty.run(job, base, speciesID,
+                initBiomass, serialFile);
+        check(readLines(serialFile).size() == 1 && emptySummary.getVariants() == 0
+                && emptySummary.getBestVariant() == -1,
+                "run: empty sweep wrote rows or found a best variant");
+        try {
+            check(ParamSweep.saveSummaryJob(job, emptySummary) == SimJob.NO_ID,
+                    "run: empty sweep saved a job");
+        } catch (SQLException ex) {
+            check(false, "run: empty sweep tried to save a job");
+        }
+
+        try {
+            runSweep(1, animal, plant).run(job, base, speciesID,
+                    Arrays.copyOf(initBiomass, speciesCnt - 1), serialFile);
+            check(false, "run: short biomass array accepted");
+        } catch (IllegalArgumentException ex) {
+            //expected
+        }
+        try {
+            new ParamSweep(ParamSweep.Sampling.GRID, 1)
+                    .addDimension(99, NodeParam.X, 0.1, 0.2, 0.1)
+                    .run(job, base, speciesID, initBiomass, serialFile);
+            check(false, "run: node outside the job accepted");
+        } catch (IllegalArgumentException ex) {
+            //expected
+        }
+    }
+
+    //animal metabolic rate from harmless to starving, over plant K and R
+    private static ParamSweep runSweep(int threads, int animal, int plant) {
+        ParamSweep sweep = new ParamSweep(ParamSweep.Sampling.GRID, threads)
+                .addDimension(animal, NodeParam.X, 0.1, 20.1, 5.0)
+                .addDimension(plant, NodeParam.K, 500, 2500, 1000)
+                .addDimension(plant, NodeParam.R, 0.5, 1.5, 1.0);
+        sweep.setSeed(9);
+        return sweep;
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            in.close();
+        }
+        return lines;
+    }
+
+    private static ParamSweep sweep(ParamSweep.Sampling sampling) {
+        return new ParamSweep(sampling, 1)
+                .addDimension(5, NodeParam.X, 0.1, 1.0, 0.1)
+                .addDimension(1, NodeParam.K, 1000, 5000, 1000)
+                .addDimension(1, NodeParam.R, 0.5, 0.7, 0.1);
+    }
+
+    private static int distinct(double[][] variants) {
+        Set<String> seen = new HashSet<String>();
+        for (double[] variant : variants) {
+            seen.add(Arrays.toString(variant));
+        }
+        return seen.size();
+    }
+
+    private static double[] derivatives(ATNSystem system, double[] y) {
+        double[] f = new double[y.length];
+        system.computeDerivatives(0, y, f);
+        return f;
+    }
+
+    private static double[] jacobian(ATNSystem system, double[] y) {
+        double[] jac = new double[system.getJacobianRowPtr()[y.length]];
+        system.computeJacobian(0, y, jac);
+        return jac;
+    }
+
+    private static void check(boolean ok, String format, Object... args) {
+        if (!ok) {
+            System.out.printf(format + "\n", args);
+            failures++;
+        }
+    }
+
+    //functional response parameters drawn per web, as in ATNJacobianTest
+    private static CompiledATNModel buildModel(Random rand, int speciesCnt) {
+        int plantCnt = 1 + rand.nextInt(Math.max(1, speciesCnt / 5));
+        return RandomFoodWeb.build(rand, speciesCnt, plantCnt, rand.nextDouble(),
+                0.1 + rand.nextDouble(), 2 * rand.nextDouble(),
+                1 + 9 * rand.nextDouble(), CONNECTANCE);
+    }
+}
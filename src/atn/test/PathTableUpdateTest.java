@@ -0,0 +1,239 @@
+package atn.test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import metadata.Constants;
+import simulation.simjob.ConsumeMap;
+import simulation.simjob.FoodWebGraph;
+import simulation.simjob.PathTable;
+
+/*
+ * Property test for PathTable.addNode/removeNode: on random food webs, applies
+ * random sequences of species additions (at random rows) and removals to a
+ * table and, after every step, compares it (toString(), i.e. every min path,
+ * distance, path count and link count) with a table built from scratch for
+ * the same node list.  Covers depths 1 to 5, primary-producer-only tables,
+ * cannibals and asymmetric prey/predator tables, and checks that updating a
+ * copy leaves the original untouched and that a read-only table refuses
+ * updates.  The path counts of each web's first
+ * table are also checked against a brute-force count of the paths that
+ * visit no node twice.
+ *
+ * Run main(); exits with status 1 on any mismatch.
+ */
+public class PathTableUpdateTest {
+
+    private static final int WEBS = 200;
+    private static final int STEPS = 25;
+    private static final int POOL = 40;
+    private static final int NO_LINKS_ID = 2000;
+
+    public static void main(String[] args) throws SQLException {
+        Random rand = new Random(11);
+        int checks = 0;
+        int failures = 0;
+
+        for (int web = 0; web < WEBS; web++) {
+            FoodWebGraph graph = buildGraph(rand);
+            int maxDepth = 1 + rand.nextInt(5);
+            boolean ppOnly = rand.nextInt(4) == 0;
+
+            List<Integer> pool = new ArrayList<Integer>();
+            for (int nodeId : graph.getNodeIds()) {
+                pool.add(nodeId);
+            }
+            //species with no links in the consume table
+            pool.add(NO_LINKS_ID);
+            pool.add(NO_LINKS_ID + 1);
+            List<Integer> nodes = new ArrayList<Integer>();
+            for (Integer nodeId : pool) {
+                if (rand.nextInt(3) == 0) {
+                    nodes.add(nodeId);
+                }
+            }
+            PathTable table = build(graph, nodes, ppOnly, maxDepth);
+            checks++;
+            int wrongCnts = checkPathCounts(graph, nodes, table, ppOnly, maxDepth);
+            if (wrongCnts > 0) {
+                System.out.printf("web %d (depth %d%s): %d path counts differ from "
+                        + "brute force\n", web, maxDepth, ppOnly ? ", pp only" : "",
+                        wrongCnts);
+                failures++;
+            }
+
+            for (int step = 0; step < STEPS; step++) {
+                boolean add = nodes.isEmpty()
+                        || (nodes.size() < pool.size() && rand.nextBoolean());
+                String op;
+                if (add) {
+                    int nodeId;
+                    do {
+                        nodeId = pool.get(rand.nextInt(pool.size()));
+                    } while (nodes.contains(nodeId));
+                    if (rand.nextBoolean()) {
+                        nodes.add(nodeId);
+                        table.addNode(nodeId);
+                    } else {
+                        int index = rand.nextInt(nodes.size() + 1);
+                        nodes.add(index, nodeId);
+                        table.addNode(nodeId, index);
+                    }
+                    op = "add " + nodeId;
+                } else {
+                    Integer nodeId = nodes.remove(rand.nextInt(nodes.size()));
+                    if (rand.nextInt(4) == 0) {
+                        //update a copy of a read-only table (as TopologyCache
+                        //does); the original must not change
+                        String before = table.toString();
+                        table.setReadOnly();
+                        PathTable copy = new PathTable(table);
+                        copy.removeNode(nodeId);
+                        checks++;
+                        if (!table.toString().equals(before)) {
+                            System.out.printf("web %d step %d: copy update changed original\n",
+                                    web, step);
+                            failures++;
+                        }
+                        checks++;
+                        try {
+                            table.removeNode(nodeId);
+                            System.out.printf("web %d step %d: read-only table updated\n",
+                                    web, step);
+                            failures++;
+                        } catch (UnsupportedOperationException ex) {
+                            //expected
+                        }
+                        table = copy;
+                    } else {
+                        table.removeNode(nodeId);
+                    }
+                    op = "remove " + nodeId;
+                }
+
+                String expected = build(graph, nodes, ppOnly, maxDepth).toString();
+                checks++;
+                if (!table.toString().equals(expected)) {
+                    System.out.printf("web %d step %d (%s, depth %d%s): table differs "
+                            + "from rebuild\n%s\nexpected\n%s\n", web, step, op, maxDepth,
+                            ppOnly ? ", pp only" : "", table, expected);
+                    failures++;
+                }
+            }
+        }
+
+        System.out.printf("webs=%d, checks=%d\n", WEBS, checks);
+        if (failures > 0) {
+            System.out.printf("FAILED: %d mismatches\n", failures);
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    private static PathTable build(FoodWebGraph graph, List<Integer> nodes,
+            boolean ppOnly, int maxDepth) throws SQLException {
+        int[] nodeArray = toArray(nodes);
+        return new PathTable(new ConsumeMap(nodeArray, graph), nodeArray, ppOnly,
+                maxDepth);
+    }
+
+    private static int[] toArray(List<Integer> nodes) {
+        int[] nodeArray = new int[nodes.size()];
+        for (int i = 0; i < nodeArray.length; i++) {
+            nodeArray[i] = nodes.get(i);
+        }
+        return nodeArray;
+    }
+
+    //number of cells whose path count is not the brute-force count
+    private static int checkPathCounts(FoodWebGraph graph, List<Integer> nodes,
+            PathTable table, boolean ppOnly, int maxDepth) {
+        ConsumeMap consumeMap = new ConsumeMap(toArray(nodes), graph);
+        int wrong = 0;
+        for (Integer root : nodes) {
+            if (ppOnly && root != Constants.PP_NODE_ID) {
+                continue;
+            }
+            Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+            //empty path, plus the cannibal link
+            counts.put(root, consumeMap.getPreyList(root).contains(root) ? 2 : 1);
+            List<Integer> path = new ArrayList<Integer>();
+            path.add(root);
+            enumeratePaths(consumeMap, path, maxDepth, counts);
+            for (Integer nodeId : nodes) {
+                Integer expected = counts.get(nodeId);
+                if (table.getPathCntIJ(root, nodeId) != (expected == null ? 0 : expected)) {
+                    wrong++;
+                }
+            }
+        }
+        return wrong;
+    }
+
+    //every one-link extension of path (prey links, then predator links)
+    private static void enumeratePaths(ConsumeMap consumeMap, List<Integer> path,
+            int maxDepth, Map<Integer, Integer> counts) {
+        Integer last = path.get(path.size() - 1);
+        List<Integer> next = new ArrayList<Integer>(consumeMap.getPreyList(last));
+        next.addAll(consumeMap.getPredList(last));
+        for (Integer nodeId : next) {
+            if (path.contains(nodeId)) {
+                continue;
+            }
+            Integer cnt = counts.get(nodeId);
+            counts.put(nodeId, cnt == null ? 1 : cnt + 1);
+            if (path.size() < maxDepth) {
+                path.add(nodeId);
+                enumeratePaths(consumeMap, path, maxDepth, counts);
+                path.remove(path.size() - 1);
+            }
+        }
+    }
+
+    /*
+     Random node IDs (always including the primary producer), each predator
+     eating a few others, sometimes itself.  Prey and predator tables are
+     generated separately, so they need not mirror each other.
+     */
+    private static FoodWebGraph buildGraph(Random rand) {
+        TreeSet<Integer> ids = new TreeSet<Integer>();
+        ids.add(Constants.PP_NODE_ID);
+        while (ids.size() < POOL) {
+            ids.add(1 + rand.nextInt(1000));
+        }
+        List<Integer> idList = new ArrayList<Integer>(ids);
+        double connectance = 0.02 + 0.1 * rand.nextDouble();
+        Map<Integer, List<Integer>> predToPrey = new HashMap<Integer, List<Integer>>();
+        Map<Integer, List<Integer>> preyToPred = new HashMap<Integer, List<Integer>>();
+        for (Integer pred : idList) {
+            for (Integer prey : idList) {
+                double p = pred.equals(prey) ? connectance / 2 : connectance;
+                boolean inPreyTable = rand.nextDouble() < p;
+                //mostly, but not always, in both tables
+                boolean inPredTable = rand.nextInt(10) == 0 ? !inPreyTable : inPreyTable;
+                if (inPreyTable) {
+                    addLink(predToPrey, pred, prey);
+                }
+                if (inPredTable) {
+                    addLink(preyToPred, prey, pred);
+                }
+            }
+        }
+        return new FoodWebGraph(Constants.ECOSYSTEM_TYPE, predToPrey, preyToPred);
+    }
+
+    private static void addLink(Map<Integer, List<Integer>> table, Integer from,
+            Integer to) {
+        List<Integer> list = table.get(from);
+        if (list == null) {
+            list = new ArrayList<Integer>();
+            table.put(from, list);
+        }
+        list.add(to);
+    }
+}
@@ -0,0 +1,52 @@
+package atn.test;
+
+import java.util.Random;
+
+import atn.CompiledATNModel;
+
+/*
+ * Synthetic food webs for the ATN tests and benchmarks, compiled directly
+ * into a CompiledATNModel so that no species/database information is needed.
+ * Plants come first; each animal eats at least one plant, and any other
+ * species with probability connectance.
+ */
+final class RandomFoodWeb {
+
+    //probability that an animal in a build() web eats its own species
+    static final double CANNIBALISM = 0.2;
+
+    private RandomFoodWeb() {
+    }
+
+    //node parameters drawn over wide ranges; some animals are cannibals
+    static CompiledATNModel build(Random rand, int speciesCnt, int plantCnt,
+            double q, double b0, double d, double y, double connectance) {
+        CompiledATNModel model = new CompiledATNModel(speciesCnt, q, b0, d, y);
+        for (int i = 0; i < speciesCnt; i++) {
+            boolean plant = i < plantCnt;
+            model.setNodeParams(i, 0.05 + rand.nextDouble(),
+                    plant ? 0.5 + rand.nextDouble() : -1.0,
+                    plant ? 500.0 + 2000.0 * rand.nextDouble() : -1.0,
+                    plant, 0.3 + 0.7 * rand.nextDouble());
+        }
+        addLinks(model, rand, speciesCnt, plantCnt, connectance, CANNIBALISM);
+        return model;
+    }
+
+    /*
+     Link the animals of a model whose node parameters are already set.  With
+     cannibalism 0 no random number is drawn for an animal's own species.
+     */
+    static void addLinks(CompiledATNModel model, Random rand, int speciesCnt,
+            int plantCnt, double connectance, double cannibalism) {
+        for (int i = plantCnt; i < speciesCnt; i++) {
+            model.addLink(i, rand.nextInt(plantCnt));
+            for (int j = 0; j < speciesCnt; j++) {
+                if (j == i ? cannibalism > 0 && rand.nextDouble() < cannibalism
+                        : rand.nextDouble() < connectance) {
+                    model.addLink(i, j);
+                }
+            }
+        }
+    }
+}
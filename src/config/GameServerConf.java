@@ -19,4 +19,15 @@ public class GameServerConf {
     public int getPortNumber() {
         return Integer.valueOf(confRecords.get("portNumber"));
     }
+
+    /**
+     * How client connections are served: "nio" (default), "threaded" or
+     * "polled".
+     *
+     * @return the network mode name
+     */
+    public String getNetworkMode() {
+        String mode = confRecords.get("networkMode");
+        return mode != null ? mode : "nio";
+    }
 }
\ No newline at end of file
@@ -0,0 +1,286 @@
+package core;
+
+// Java Imports
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Other Imports
+import util.Log;
+
+/**
+ * The ChannelConnection class holds the non-blocking channel of a single
+ * client served by the SelectorServer. Incoming bytes are split into frames,
+ * each a 2-byte little-endian length followed by that many bytes (request ID
+ * and request data), exactly as the client sends them. Frames are handed to
+ * the GameClient on the worker pool one at a time and in order, so a client
+ * never has two requests processed at once, while a slow request only holds
+ * up its own client. Outgoing bytes are written straight away when the
+ * channel can take them and queued for the selector otherwise.
+ */
+public class ChannelConnection {
+
+    // Read buffer starts small and grows to fit the largest frame seen
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final int MAX_FRAME_SIZE = 0xFFFF;
+    // Unsent bytes allowed before a client that stopped reading is dropped
+    private static final int MAX_PENDING_BYTES = 4 * 1024 * 1024;
+    // Tasks run per turn on a worker before other clients get a go
+    private static final int TASKS_PER_TURN = 16;
+
+    private final SelectorServer server;
+    private final SocketChannel channel;
+    private final Executor workers;
+    private GameClient client;
+    // Incoming, selector thread only
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    // Outgoing, guarded by this
+    private final Deque<ByteBuffer> pending = new ArrayDeque<ByteBuffer>();
+    private int pendingBytes;
+    // Client work, run one task at a time
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean isScheduled = new AtomicBoolean();
+    private final AtomicBoolean isClosing = new AtomicBoolean();
+
+    public ChannelConnection(SelectorServer server, SocketChannel channel, Executor workers) {
+        this.server = server;
+        this.channel = channel;
+        this.workers = workers;
+    }
+
+    public GameClient getClient() {
+        return client;
+    }
+
+    void setClient(GameClient client) {
+        this.client = client;
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    public boolean isClosing() {
+        return isClosing.get();
+    }
+
+    /**
+     * Read what the channel has and dispatch every complete frame. Called by
+     * the selector thread when the channel is readable.
+     *
+     * @return false once the client has closed the connection
+     * @throws IOException
+     */
+    boolean read() throws IOException {
+        if (channel.read(readBuffer) < 0) {
+            return false;
+        }
+        readBuffer.flip();
+
+        while (readBuffer.remaining() >= 2) {
+            int size = readBuffer.getShort(readBuffer.position()) & MAX_FRAME_SIZE;
+
+            if (readBuffer.remaining() < 2 + size) {
+                // Frame larger than the buffer, make room for all of it
+                if (2 + size > readBuffer.capacity()) {
+                    ByteBuffer buffer = ByteBuffer.allocate(2 + size).order(ByteOrder.LITTLE_ENDIAN);
+                    buffer.put(readBuffer);
+                    readBuffer = buffer;
+                    return true;
+                }
+                break;
+            }
+
+            readBuffer.getShort();
+            if (size > 0) {
+                byte[] frame = new byte[size];
+                readBuffer.get(frame);
+                dispatch(frame);
+            }
+        }
+
+        readBuffer.compact();
+        return true;
+    }
+
+    private void dispatch(final byte[] frame) {
+        if (isClosing.get()) {
+            return;
+        }
+
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.handle(frame);
+                } catch (IOException ex) {
+                    Log.println_e(ex.getMessage());
+                }
+                // e.g. RequestLogout ended the session
+                if (!client.isAlive()) {
+                    close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Send bytes to the client, queueing whatever the channel cannot take
+     * right now. Safe to call from any thread; the bytes must not change
+     * afterwards.
+     *
+     * @param bytes holds a complete packet
+     * @throws IOException if the connection is closed or the client has
+     * stopped reading
+     */
+    public void write(byte[] bytes) throws IOException {
+        write(ByteBuffer.wrap(bytes), false);
+    }
+
+    /**
+     * Send the remaining bytes of a buffer to the client. Whatever the channel
+     * cannot take right now is copied, so the buffer may be reused once this
+     * returns.
+     *
+     * @param buffer holds complete packets
+     * @throws IOException if the connection is closed or the client has
+     * stopped reading
+     */
+    public void write(ByteBuffer buffer) throws IOException {
+        write(buffer, true);
+    }
+
+    private synchronized void write(ByteBuffer buffer, boolean isBorrowed) throws IOException {
+        if (!channel.isOpen()) {
+            throw new ClosedChannelException();
+        }
+
+        if (pending.isEmpty()) {
+            channel.write(buffer);
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+        }
+
+        if (isBorrowed) {
+            ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+            copy.put(buffer);
+            copy.flip();
+            buffer = copy;
+        }
+
+        pendingBytes += buffer.remaining();
+        if (pendingBytes > MAX_PENDING_BYTES) {
+            throw new IOException(String.format("Client %s is not reading, %d bytes pending", client.getID(), pendingBytes));
+        }
+        pending.add(buffer);
+        if (pending.size() == 1) {
+            server.requestWrite(this);
+        }
+    }
+
+    /**
+     * Write queued bytes. Called by the selector thread when the channel is
+     * writable.
+     *
+     * @return true if nothing is left to write
+     * @throws IOException
+     */
+    synchronized boolean flush() throws IOException {
+        while (!pending.isEmpty()) {
+            ByteBuffer buffer = pending.peek();
+            pendingBytes -= channel.write(buffer);
+
+            if (buffer.hasRemaining()) {
+                return false;
+            }
+            pending.poll();
+        }
+
+        return true;
+    }
+
+    /**
+     * End the connection once the client's queued requests are done: the
+     * client is told and logged out, then the channel is closed. Only the
+     * first call has any effect.
+     */
+    public void close() {
+        if (!isClosing.compareAndSet(false, true)) {
+            return;
+        }
+
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.close();
+                } finally {
+                    try {
+                        flush();
+                        channel.close();
+                    } catch (IOException ex) {
+                        Log.println_e(ex.getMessage());
+                    }
+                    server.removeConnection(ChannelConnection.this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Queue a task on the client's work queue. Tasks run on the worker pool
+     * in order, never two at once.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (isScheduled.compareAndSet(false, true)) {
+            try {
+                workers.execute(drainer);
+            } catch (RejectedExecutionException ex) {
+                // Server shutting down
+                isScheduled.set(false);
+            }
+        }
+    }
+
+    private final Runnable drainer = new Runnable() {
+        @Override
+        public void run() {
+            for (int i = 0; i < TASKS_PER_TURN; i++) {
+                Runnable task = tasks.poll();
+
+                if (task == null) {
+                    isScheduled.set(false);
+                    // A task queued since poll() found nothing would be stranded
+                    if (!tasks.isEmpty()) {
+                        schedule();
+                    }
+                    return;
+                }
+
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    Log.printf_e("Client %s task failed:\n%s", client.getID(), ex);
+                }
+            }
+            // Back of the line, behind other clients
+            isScheduled.set(false);
+            schedule();
+        }
+    };
+}
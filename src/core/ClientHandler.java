@@ -44,20 +44,23 @@ public class ClientHandler implements Runnable {
         lastTime = now;
 
         if (deltaTime >= 1) {
-            Iterator<GameClient> it = activeClients.iterator();
+            // GameServer may add a client meanwhile
+            synchronized (activeClients) {
+                Iterator<GameClient> it = activeClients.iterator();
 
-            while (it.hasNext()) {
-                GameClient client = it.next();
+                while (it.hasNext()) {
+                    GameClient client = it.next();
 
-                for (int i = 0; i < 10; i++) {
-                    client.run();
-                }
+                    for (int i = 0; i < 10; i++) {
+                        client.run();
+                    }
 
-                if (!client.isAlive()) {
-                    it.remove();
-                    GameServer.getInstance().removeActiveClient(client.getID());
+                    if (!client.isAlive()) {
+                        it.remove();
+                        GameServer.getInstance().removeActiveClient(client.getID());
 
-                    Log.printf("Client %s has ended", client.getID());
+                        Log.printf("Client %s has ended", client.getID());
+                    }
                 }
             }
 
@@ -6,24 +6,25 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // Other Imports
 import core.world.WorldController;
 import db.AccountDAO;
 import db.PlayerDAO;
 import db.UserLogDAO;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import lobby.GameRoomManager;
 import metadata.Constants;
 import metadata.GameRequestTable;
 import model.Account;
 import model.Player;
 import net.request.GameRequest;
+import net.response.EncodedResponse;
 import net.response.GameResponse;
 import net.response.ResponseHeartbeat;
 import net.response.ResponseLogout;
@@ -32,6 +33,7 @@ import util.DataReader;
 import util.GameTimer;
 import util.Log;
 import util.NetworkFunctions;
+import util.PacketBuffer;
 
 /**
  * The GameClient class is an extension of the Thread class that represents an
@@ -39,15 +41,23 @@ import util.NetworkFunctions;
  * client and server, it is also in charge of managing the connection to
  * actively receive incoming requests and send outgoing responses. This thread
  * lasts as long as the connection is alive.
+ *
+ * The connection is either a blocking socket polled through run() or read by
+ * a thread of its own in serve(), or a ChannelConnection that hands each
+ * complete request to handle().
  */
 public class GameClient {
 
+    // How often a blocked read in serve() checks whether the client is alive
+    private static final int READ_TIMEOUT_MILLISECONDS = 1000;
+
     // Variables
     private String session_id;
     private Socket clientSocket;
     private DataInputStream inputStream; // For use with incoming requests
     private OutputStream outputStream; // For use with outgoing responses
-    private boolean isAlive = true;
+    private ChannelConnection connection; // Replaces all three when served by the SelectorServer
+    private volatile boolean isAlive = true;
     private short type;
     private String version;
     // Responses
@@ -57,7 +67,8 @@ public class GameClient {
     private Player player;
     private GameTimer saveTimer = new GameTimer();
     private long lastSave = System.currentTimeMillis(); // Last time saved to the database
-    private long lastActivity = System.currentTimeMillis();
+    private volatile long lastActivity = System.currentTimeMillis();
+    private final AtomicInteger heavyRequests = new AtomicInteger(); // Queued or running on the HeavyRequestExecutor
 
     /**
      * Initialize the GameClient using the client socket and creating both input
@@ -75,12 +86,24 @@ public class GameClient {
         outputStream = clientSocket.getOutputStream();
     }
 
+    /**
+     * Initialize the GameClient using a non-blocking connection.
+     *
+     * @param session_id holds the unique identifier of this session
+     * @param connection holds reference of the connection being used
+     */
+    public GameClient(String session_id, ChannelConnection connection) {
+        this.session_id = session_id;
+        this.connection = connection;
+    }
+
     public String getID() {
         return session_id;
     }
 
     public String getIP() {
-        return clientSocket.getInetAddress().getHostAddress();
+        Socket socket = connection != null ? connection.getChannel().socket() : clientSocket;
+        return socket.getInetAddress().getHostAddress();
     }
 
     /**
@@ -111,9 +134,7 @@ public class GameClient {
                     counter++;
 		}
 		while(bytesRead < size);
-                DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(buffer));
-                // Extract the request identifier
-                short request_id = DataReader.readShort(dataInput);
+                short request_id = handle(buffer);
 		if (counter > 1) {
                     Log.printf (
 			"Note, network latency issue identified, wait count = %d, protocol ID = %d", 
@@ -121,32 +142,128 @@ public class GameClient {
 			request_id
                     );
 		}
-                //output packet to screen for packet level debugging purposes
-                //DebugPacket (buffer, (int) request_id, false);
-                
-                // Determine the type of request
-                GameRequest request = GameRequestTable.get(request_id);
-                // If the request exists, process like following:
-                if (request != null) {
-                    request.setGameClient(this);
-
-                    try {
-                        // Parse the input stream
-                        request.parse(dataInput);
-                        // Interpret the data
-                        request.process();
-                        // Send responses to client, if any
-                        send();
-                    } catch (Exception ex) {
-                        Log.printf_e("Request [%d] Error:\n%s", request_id, ex.getMessage());
+            }
+        } catch (IOException ex) {
+            Log.println_e(ex.getMessage());
+        }
+
+        if (!checkAlive()) {
+            close();
+        }
+    }
+
+    /**
+     * Read and process requests with blocking reads until the connection
+     * ends, the client times out or is ended. Used when the client has a
+     * thread of its own, which a slow request then holds up alone.
+     */
+    public void serve() {
+        byte[] header = new byte[2];
+
+        try {
+            clientSocket.setSoTimeout(READ_TIMEOUT_MILLISECONDS);
+
+            while (readFully(header)) {
+                // Size of the package, little-endian
+                int size = (header[0] & 0xFF) | (header[1] & 0xFF) << 8;
+
+                if (size > 0) {
+                    byte[] buffer = new byte[size];
+                    if (!readFully(buffer)) {
+                        break;
                     }
+                    handle(buffer);
                 }
             }
         } catch (IOException ex) {
             Log.println_e(ex.getMessage());
         }
 
-        // If there was no activity for the last moments
+        close();
+    }
+
+    /*
+     Fill the buffer from the socket, waiting as long as it takes. Returns
+     false at the end of the stream, or once the client is no longer alive.
+     */
+    private boolean readFully(byte[] buffer) throws IOException {
+        int bytesRead = 0;
+
+        while (bytesRead < buffer.length) {
+            if (!checkAlive()) {
+                return false;
+            }
+            try {
+                int count = inputStream.read(buffer, bytesRead, buffer.length - bytesRead);
+                if (count < 0) {
+                    return false;
+                }
+                bytesRead += count;
+            } catch (SocketTimeoutException ex) {
+                // Nothing yet, check again
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Process one complete request: its identifier followed by the request
+     * data. Queued up responses are sent once the request is processed.
+     * Heavy requests are handed to the HeavyRequestExecutor instead, and may
+     * complete after requests that arrive later.
+     *
+     * @param buffer holds the request, without the size prefix
+     * @return the request identifier
+     * @throws IOException
+     */
+    public short handle(byte[] buffer) throws IOException {
+        lastActivity = System.currentTimeMillis();
+
+        DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(buffer));
+        // Extract the request identifier
+        short request_id = DataReader.readShort(dataInput);
+        //output packet to screen for packet level debugging purposes
+        //DebugPacket (buffer, (int) request_id, false);
+
+        // Determine the type of request
+        GameRequest request = GameRequestTable.get(request_id);
+        // If the request exists, process like following:
+        if (request != null) {
+            request.setGameClient(this);
+
+            try {
+                // Parse the input stream
+                request.parse(dataInput);
+                if (request.isHeavy()) {
+                    HeavyRequestExecutor executor = HeavyRequestExecutor.getInstance();
+                    // Processed and answered later, off this thread
+                    if (!executor.submit(this, request)) {
+                        Log.printf_e("Request [%d] rejected for client %s, %s", request_id, session_id, executor);
+                        request.reject();
+                        send();
+                    }
+                } else {
+                    // Interpret the data
+                    request.process();
+                    // Send responses to client, if any
+                    send();
+                }
+            } catch (Exception ex) {
+                Log.printf_e("Request [%d] Error:\n%s", request_id, ex.getMessage());
+            }
+        }
+
+        return request_id;
+    }
+
+    /**
+     * Check whether the client is still alive, ending it if there was no
+     * activity for the last moments.
+     *
+     * @return false once the client should be closed
+     */
+    boolean checkAlive() {
         if (isAlive) {
             isAlive = System.currentTimeMillis() - lastActivity < Constants.TIMEOUT_MILLISECONDS;
             if (!isAlive) {
@@ -155,17 +272,27 @@ public class GameClient {
             }
         }
 
-        if (!isAlive) {            
-            ResponseHeartbeat lostConnection = new ResponseHeartbeat();
-            lostConnection.setStatus(ResponseHeartbeat.LOST_CONNECTION);
-            try {
-                outputStream.write(lostConnection.getBytes());
-            } catch (IOException ex) {
-                Logger.getLogger(GameClient.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            
-            shutdown();
+        return isAlive;
+    }
+
+    /**
+     * Tell the client its connection is lost and log it out.
+     */
+    void close() {
+        isAlive = false;
+
+        ResponseHeartbeat lostConnection = new ResponseHeartbeat();
+        lostConnection.setStatus(ResponseHeartbeat.LOST_CONNECTION);
+        try {
+            write(lostConnection.getBytes());
+        } catch (IOException ex) {
+            // Usually the client has hung up already
+            Log.printf_e("Client %s connection lost", session_id);
         }
+
+        shutdown();
+        // Release the timer's thread
+        saveTimer.cancel();
     }
 
     private void shutdown() {
@@ -254,6 +381,10 @@ public class GameClient {
         return isAlive;
     }
 
+    AtomicInteger getHeavyRequests() {
+        return heavyRequests;
+    }
+
     public Account getAccount() {
         return account;
     }
@@ -268,23 +399,74 @@ public class GameClient {
         }
     }
 
+    /**
+     * Encode the pending responses one after another into a pooled buffer
+     * and write them to the client at once. Encoded responses, shared by
+     * many clients, are written as they are instead of being copied in.
+     */
     public void send() {
         synchronized (responses) {
+            if (responses.isEmpty()) {
+                return;
+            }
+
+            // A SocketChannel writes a direct buffer without copying it
+            PacketBuffer buffer = connection != null ? PacketBuffer.acquireDirect() : PacketBuffer.acquire();
             try {
-                while (!responses.isEmpty()) {
-                    GameResponse response = responses.get(0);
-                    outputStream.write(response.getBytes());
+                for (GameResponse response : responses) {
+                    if (response instanceof EncodedResponse) {
+                        // Keep the order: send what is buffered first
+                        flush(buffer);
+                        write(response.getBytes());
+                    } else {
+                        response.write(buffer);
+                    }
                     //output packet to screen for packet level debugging purposes
                     //DebugPacket (response.getBytes(), response.getID(), true);
-                    responses.remove(0);
                 }
+                responses.clear();
+
+                flush(buffer);
             } catch (IOException ex) {
                 Log.printf_e("Client %s connection lost", session_id);
                 isAlive = false;
+            } finally {
+                buffer.release();
             }
         }
     }
 
+    void closeSocket() {
+        try {
+            clientSocket.close();
+        } catch (IOException ex) {
+            Log.println_e(ex.getMessage());
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (connection != null) {
+            connection.write(bytes);
+        } else {
+            outputStream.write(bytes);
+        }
+    }
+
+    private void flush(PacketBuffer buffer) throws IOException {
+        if (buffer.size() > 0) {
+            write(buffer);
+            buffer.clear();
+        }
+    }
+
+    private void write(PacketBuffer buffer) throws IOException {
+        if (connection != null) {
+            connection.write(buffer.flip());
+        } else {
+            buffer.writeTo(outputStream);
+        }
+    }
+
     private void DebugPacket(byte[] bytes, int id, boolean outbound) {
         int limit = 20;
         Log.printf(
@@ -4,12 +4,13 @@ package core;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 // Other Imports
 import config.GameServerConf;
@@ -21,6 +22,7 @@ import metadata.Constants;
 import metadata.GameRequestTable;
 import model.Account;
 import model.Player;
+import simulation.simjob.FoodWebGraph;
 import util.ConfFileParser;
 import util.ConfigureException;
 import util.ExpTable;
@@ -34,18 +36,42 @@ import util.Log;
  */
 public class GameServer {
 
+    /**
+     * How client connections are served. NIO multiplexes them on a single
+     * selector thread and processes requests on a worker pool (see
+     * SelectorServer). THREADED gives each client a (virtual, if available)
+     * thread of its own (see ThreadPerClientServer). POLLED gives each
+     * ClientHandler a share of blocking sockets to poll every tick.
+     */
+    public enum NetworkMode {
+
+        NIO, THREADED, POLLED;
+
+        public static NetworkMode fromName(String name) {
+            for (NetworkMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name)) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("Unknown network mode " + name);
+        }
+    }
+
     // Singleton Instance
     private static GameServer server;
     // Configuration Variables
     private final int port;
     private final int num_threads;
+    private final NetworkMode networkMode;
     // Objects
-    private final ServerSocket serverSocket;
+    private final ServerSocket serverSocket; // POLLED only
+    private final SelectorServer selectorServer; // NIO only
+    private final ThreadPerClientServer threadPerClientServer; // THREADED only
     private final List<ClientHandler> clientHandlerThreads = Collections.synchronizedList(new ArrayList<ClientHandler>());
     // Lookup Tables
-    private final Map<String, GameClient> activeClients = new HashMap<String, GameClient>(); // Session ID -> Client
-    private final Map<Integer, Account> activeAccounts = new HashMap<Integer, Account>(); // Account ID -> Account
-    private final Map<Integer, Player> activePlayers = new HashMap<Integer, Player>(); // Player ID -> Player
+    private final Map<String, GameClient> activeClients = new ConcurrentHashMap<String, GameClient>(); // Session ID -> Client
+    private final Map<Integer, Account> activeAccounts = new ConcurrentHashMap<Integer, Account>(); // Account ID -> Account
+    private final Map<Integer, Player> activePlayers = new ConcurrentHashMap<Integer, Player>(); // Player ID -> Player
     // Other
     private boolean isActive = true; // Server Loop Flag
 
@@ -55,13 +81,19 @@ public class GameServer {
      *
      * @param port
      * @param num_threads
+     * @param networkMode
      * @throws IOException
      */
-    public GameServer(int port, int num_threads) throws IOException {
+    public GameServer(int port, int num_threads, NetworkMode networkMode) throws IOException {
         this.port = port;
         this.num_threads = num_threads;
+        this.networkMode = networkMode;
 
-        serverSocket = new ServerSocket(port);
+        serverSocket = networkMode == NetworkMode.POLLED ? new ServerSocket(port) : null;
+        selectorServer = networkMode == NetworkMode.NIO ? new SelectorServer(this, port, num_threads) : null;
+        threadPerClientServer = networkMode == NetworkMode.THREADED ? new ThreadPerClientServer(this, port) : null;
+
+        server = this;
     }
 
     public static GameServer getInstance() {
@@ -75,6 +107,12 @@ public class GameServer {
     public void configure() throws ConfigureException {
         // Initialize tables for global use
         ServerResources.init();
+        try {
+            // Food web shared by all simulations (reload after consume changes)
+            FoodWebGraph.get(Constants.ECOSYSTEM_TYPE);
+        } catch (SQLException ex) {
+            throw new ConfigureException("Food web retrieval failure");
+        }
         GameRequestTable.init(); // Contains request codes and classes
         ExpTable.init(); // Contains experience required per level
         // Update Badge Thresholds
@@ -87,8 +125,16 @@ public class GameServer {
      * Establishes each connection and stores it into a GameClient to manage
      * incoming and outgoing activity.
      */
-    private void run() {
+    public void run() {
         Log.consoleln("Now accepting connections...");
+        if (networkMode == NetworkMode.NIO) {
+            selectorServer.run();
+            return;
+        }
+        if (networkMode == NetworkMode.THREADED) {
+            threadPerClientServer.run();
+            return;
+        }
         // Loop indefinitely to establish multiple connections
         while (isActive) {
             try {
@@ -123,6 +169,13 @@ public class GameServer {
             for (GameClient client : activeClients.values()) {
                 client.end();
             }
+            if (selectorServer != null) {
+                selectorServer.shutdown();
+            }
+            if (threadPerClientServer != null) {
+                threadPerClientServer.shutdown();
+            }
+            HeavyRequestExecutor.getInstance().shutdown();
         }
     }
 
@@ -134,6 +187,10 @@ public class GameServer {
         return num_threads;
     }
 
+    public NetworkMode getNetworkMode() {
+        return networkMode;
+    }
+
     public void removeClientHandler(ClientHandler handler) {
         synchronized (clientHandlerThreads) {
             clientHandlerThreads.remove(handler);
@@ -214,7 +271,8 @@ public class GameServer {
             GameServerConf config = new GameServerConf(new ConfFileParser("conf/gameServer.conf").parse());
             Log.println("Done!");
 
-            server = new GameServer(config.getPortNumber(), Constants.MAX_CLIENT_THREADS);
+            server = new GameServer(config.getPortNumber(), Constants.MAX_CLIENT_THREADS,
+                    NetworkMode.fromName(config.getNetworkMode()));
             server.configure();
             
             MiniGameServers.getInstance().runServers();
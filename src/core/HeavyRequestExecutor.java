@@ -0,0 +1,133 @@
+package core;
+
+// Java Imports
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Other Imports
+import metadata.Constants;
+import net.request.GameRequest;
+import util.Log;
+
+/**
+ * The HeavyRequestExecutor class processes heavy requests (see
+ * GameRequest.isHeavy), such as ones that run a whole simulation, away from
+ * the threads serving client connections. It has a fixed number of threads
+ * and a bounded queue, and each client may only have a few heavy requests
+ * queued or running at once, so one player cannot monopolize it. Responses
+ * are sent to the client as soon as a request completes.
+ */
+public class HeavyRequestExecutor {
+
+    // Singleton Instance
+    private static HeavyRequestExecutor executor;
+
+    private final ThreadPoolExecutor pool;
+    private final int maxPerClient;
+    // Metrics
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param num_threads requests processed at once
+     * @param maxQueued requests waiting for a thread
+     * @param maxPerClient requests queued or running per client
+     */
+    public HeavyRequestExecutor(int num_threads, int maxQueued, int maxPerClient) {
+        this.maxPerClient = maxPerClient;
+
+        pool = new ThreadPoolExecutor(num_threads, num_threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(maxQueued));
+    }
+
+    public static synchronized HeavyRequestExecutor getInstance() {
+        return executor == null ? executor = new HeavyRequestExecutor(Constants.HEAVY_REQUEST_THREADS,
+                Constants.MAX_QUEUED_HEAVY_REQUESTS, Constants.MAX_HEAVY_REQUESTS_PER_CLIENT) : executor;
+    }
+
+    /**
+     * Queue a parsed request for processing.
+     *
+     * @param client holds the client that sent the request
+     * @param request holds the parsed request
+     * @return false if the client has too many heavy requests in flight or
+     * the queue is full; the request is not processed
+     */
+    public boolean submit(final GameClient client, final GameRequest request) {
+        final AtomicInteger inFlight = client.getHeavyRequests();
+
+        if (inFlight.incrementAndGet() > maxPerClient) {
+            inFlight.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+
+        try {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        request.process();
+                    } catch (Exception ex) {
+                        Log.printf_e("Request [%d] Error:\n%s", request.getID(), ex.getMessage());
+                    } finally {
+                        inFlight.decrementAndGet();
+                        completedCount.incrementAndGet();
+                    }
+                    // Send responses to client, if any
+                    client.send();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            inFlight.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+
+        int depth = pool.getQueue().size();
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+            max = maxQueueDepth.get();
+        }
+
+        return true;
+    }
+
+    // Requests waiting for a thread
+    public int getQueueDepth() {
+        return pool.getQueue().size();
+    }
+
+    // Highest queue depth seen
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    // Requests being processed
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("heavy requests: %d running, %d queued (max %d), %d completed, %d rejected",
+                getActiveCount(), getQueueDepth(), getMaxQueueDepth(), getCompletedCount(), getRejectedCount());
+    }
+}
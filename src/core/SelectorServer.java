@@ -0,0 +1,209 @@
+package core;
+
+// Java Imports
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Other Imports
+import util.Log;
+
+/**
+ * The SelectorServer class serves every client connection from one selector
+ * thread. Connections are accepted, read and written without blocking, and
+ * each complete request is processed on a fixed pool of worker threads (see
+ * ChannelConnection). Idle clients cost nothing until they send something,
+ * and a request is picked up as soon as it arrives rather than on the next
+ * tick.
+ */
+public class SelectorServer {
+
+    // How often clients are checked for inactivity
+    private static final long CHECK_INTERVAL_MILLISECONDS = 1000;
+    // How long queued requests get to finish on shutdown
+    private static final long SHUTDOWN_SECONDS = 10;
+
+    private final GameServer server;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers;
+    // Connections with queued output, waiting for OP_WRITE
+    private final Queue<ChannelConnection> writeRequests = new ConcurrentLinkedQueue<ChannelConnection>();
+    private volatile boolean isActive = true;
+
+    /**
+     * Bind the server port.
+     *
+     * @param server holds the active client table
+     * @param port
+     * @param num_threads number of worker threads processing requests
+     * @throws IOException if the port cannot be bound
+     */
+    public SelectorServer(GameServer server, int port, int num_threads) throws IOException {
+        this.server = server;
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        workers = Executors.newFixedThreadPool(num_threads);
+    }
+
+    /**
+     * Run the selector loop until shutdown.
+     */
+    public void run() {
+        long lastCheck = System.currentTimeMillis();
+
+        while (isActive) {
+            try {
+                selector.select(CHECK_INTERVAL_MILLISECONDS);
+
+                ChannelConnection connection;
+                while ((connection = writeRequests.poll()) != null) {
+                    SelectionKey key = connection.getChannel().keyFor(selector);
+                    if (key != null && key.isValid()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        process(key);
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastCheck >= CHECK_INTERVAL_MILLISECONDS) {
+                    checkClients();
+                    lastCheck = now;
+                }
+            } catch (IOException ex) {
+                Log.println_e(ex.getMessage());
+            }
+        }
+
+        close();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+
+        while ((channel = serverChannel.accept()) != null) {
+            Log.printf("%s is connecting...", channel.socket().getInetAddress().getHostAddress());
+            channel.configureBlocking(false);
+
+            ChannelConnection connection = new ChannelConnection(this, channel, workers);
+            // "Random" ID
+            String session_id = UUID.randomUUID().toString();
+            GameClient client = new GameClient(session_id, connection);
+            connection.setClient(client);
+
+            server.setActiveClient(client);
+            channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    private void process(SelectionKey key) {
+        ChannelConnection connection = (ChannelConnection) key.attachment();
+
+        try {
+            if (key.isReadable() && !connection.read()) {
+                // Client hung up
+                key.cancel();
+                connection.close();
+                return;
+            }
+            if (key.isValid() && key.isWritable() && connection.flush()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        } catch (CancelledKeyException ex) {
+            // Closed by a worker meanwhile
+        } catch (IOException ex) {
+            Log.printf_e("Client %s connection lost", connection.getClient().getID());
+            key.cancel();
+            connection.close();
+        }
+    }
+
+    // Drop clients that timed out or were ended
+    private void checkClients() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof ChannelConnection) {
+                ChannelConnection connection = (ChannelConnection) key.attachment();
+
+                if (!connection.isClosing() && !connection.getClient().checkAlive()) {
+                    key.cancel();
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Have the selector write the connection's queued output when the channel
+     * is ready for it.
+     */
+    void requestWrite(ChannelConnection connection) {
+        writeRequests.add(connection);
+        selector.wakeup();
+    }
+
+    void removeConnection(ChannelConnection connection) {
+        GameClient client = connection.getClient();
+        server.removeActiveClient(client.getID());
+
+        Log.printf("Client %s has ended", client.getID());
+    }
+
+    public void shutdown() {
+        isActive = false;
+        selector.wakeup();
+    }
+
+    // Log out everyone still connected and release the port
+    private void close() {
+        for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+            if (key.attachment() instanceof ChannelConnection) {
+                ((ChannelConnection) key.attachment()).close();
+            }
+        }
+
+        workers.shutdown();
+        try {
+            workers.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            selector.close();
+            serverChannel.close();
+        } catch (IOException ex) {
+            Log.println_e(ex.getMessage());
+        }
+    }
+}
@@ -7,11 +7,13 @@ import util.Log;
 
 public class ServerResources {
 
-    private static SpeciesTable speciesTable;
+    private static volatile SpeciesTable speciesTable;
 
-    public static void init() throws ConfigureException {
-        speciesTable = new SpeciesTable();
-        speciesTable.initialize();
+    // Calling again reloads species in place (see SpeciesTable)
+    public static synchronized void init() throws ConfigureException {
+        SpeciesTable table = speciesTable == null ? new SpeciesTable() : speciesTable;
+        table.initialize();
+        speciesTable = table;
     }
 
     public static SpeciesTable getSpeciesTable() {
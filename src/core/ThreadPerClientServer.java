@@ -0,0 +1,125 @@
+package core;
+
+// Java Imports
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Other Imports
+import util.Log;
+
+/**
+ * The ThreadPerClientServer class gives every client connection a thread of
+ * its own, which reads the socket with blocking reads (see GameClient.serve).
+ * A slow request then only holds up the client that sent it. Virtual threads
+ * are used when the runtime has them (Java 21 or later), so idle clients stay
+ * cheap; otherwise each client gets a platform thread.
+ */
+public class ThreadPerClientServer {
+
+    // How long clients get to log out on shutdown
+    private static final long SHUTDOWN_SECONDS = 10;
+
+    private final GameServer server;
+    private final ServerSocket serverSocket;
+    private final ExecutorService clientThreads;
+    private final boolean isVirtual;
+    private volatile boolean isActive = true;
+
+    /**
+     * Bind the server port.
+     *
+     * @param server holds the active client table
+     * @param port
+     * @throws IOException if the port cannot be bound
+     */
+    public ThreadPerClientServer(GameServer server, int port) throws IOException {
+        this.server = server;
+
+        serverSocket = new ServerSocket(port);
+
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+        isVirtual = virtualThreads != null;
+        clientThreads = isVirtual ? virtualThreads : Executors.newCachedThreadPool();
+    }
+
+    /*
+     Executors.newVirtualThreadPerTaskExecutor() if this runtime has it. The
+     server is built for Java 8, hence reflection.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            // Not available (before Java 21, or preview not enabled)
+            return null;
+        }
+    }
+
+    public boolean isVirtual() {
+        return isVirtual;
+    }
+
+    /**
+     * Accept connections until shutdown.
+     */
+    public void run() {
+        Log.printf("Each client runs on its own %s thread", isVirtual ? "virtual" : "platform");
+
+        while (isActive) {
+            try {
+                // Accept the incoming connection from client
+                Socket clientSocket = serverSocket.accept();
+                Log.printf("%s is connecting...", clientSocket.getInetAddress().getHostAddress());
+                // "Random" ID
+                String session_id = UUID.randomUUID().toString();
+                final GameClient client = new GameClient(session_id, clientSocket);
+                server.setActiveClient(client);
+
+                clientThreads.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(client);
+                    }
+                });
+            } catch (IOException ex) {
+                // Closing the server socket ends accept() on shutdown
+                if (isActive) {
+                    Log.println_e(ex.getMessage());
+                }
+            }
+        }
+
+        clientThreads.shutdown();
+        try {
+            clientThreads.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serve(GameClient client) {
+        try {
+            client.serve();
+        } finally {
+            client.closeSocket();
+            server.removeActiveClient(client.getID());
+
+            Log.printf("Client %s has ended", client.getID());
+        }
+    }
+
+    public void shutdown() {
+        isActive = false;
+
+        try {
+            serverSocket.close();
+        } catch (IOException ex) {
+            Log.println_e(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package core.test;
+
+// Java Imports
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Other Imports
+import core.GameClient;
+import core.HeavyRequestExecutor;
+import metadata.NetworkCode;
+import net.request.GameRequest;
+import net.response.ResponseClient;
+
+/*
+ * Checks HeavyRequestExecutor with requests that block until released:
+ *  - a client cannot have more than its limit queued or running, while other
+ *    clients still can
+ *  - requests beyond the queue are turned away, and the queue depth metric
+ *    shows the waiting ones
+ *  - a completed request's response reaches the client without it sending
+ *    anything else, and frees its slot.
+ *
+ * Run main(); exits with status 1 on any failure.
+ */
+public class HeavyRequestExecutorTest {
+
+    private static final int READ_TIMEOUT_MILLISECONDS = 5000;
+    private static int failures = 0;
+
+    /*
+     Heavy request that waits for its latch, then answers with a
+     ResponseClient.
+     */
+    private static class BlockingRequest extends GameRequest {
+
+        private final CountDownLatch release;
+
+        BlockingRequest(GameClient client, CountDownLatch release) {
+            this.release = release;
+            setGameClient(client);
+        }
+
+        @Override
+        public void parse(DataInputStream dataInput) throws IOException {
+        }
+
+        @Override
+        public boolean isHeavy() {
+            return true;
+        }
+
+        @Override
+        public void process() throws Exception {
+            release.await();
+
+            ResponseClient response = new ResponseClient();
+            response.setStatus(ResponseClient.FAIL);
+            client.add(response);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            checkPerClientLimit(serverSocket);
+            checkQueueLimit(serverSocket);
+        }
+
+        if (failures > 0) {
+            System.out.printf("FAILED: %d checks\n", failures);
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+        // Each GameClient's save timer thread would keep the JVM alive
+        System.exit(0);
+    }
+
+    private static void checkPerClientLimit(ServerSocket serverSocket) throws Exception {
+        HeavyRequestExecutor executor = new HeavyRequestExecutor(4, 8, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        Socket[] peers = new Socket[2];
+        GameClient[] clients = new GameClient[2];
+        for (int c = 0; c < 2; c++) {
+            peers[c] = connect(serverSocket);
+            clients[c] = new GameClient("client" + c, serverSocket.accept());
+        }
+
+        check(executor.submit(clients[0], new BlockingRequest(clients[0], release)), "per client: 1st refused");
+        check(executor.submit(clients[0], new BlockingRequest(clients[0], release)), "per client: 2nd refused");
+        check(!executor.submit(clients[0], new BlockingRequest(clients[0], release)), "per client: 3rd accepted");
+        check(executor.submit(clients[1], new BlockingRequest(clients[1], release)),
+                "per client: other client refused");
+        check(executor.getRejectedCount() == 1, "per client: %d rejected", executor.getRejectedCount());
+
+        release.countDown();
+        readResponse(peers[0]);
+        readResponse(peers[0]);
+        readResponse(peers[1]);
+        waitForCompleted(executor, 3);
+        check(executor.getCompletedCount() == 3, "per client: %d completed", executor.getCompletedCount());
+
+        // Slots are free again
+        CountDownLatch done = new CountDownLatch(0);
+        check(executor.submit(clients[0], new BlockingRequest(clients[0], done)), "per client: slot not freed");
+        readResponse(peers[0]);
+
+        executor.shutdown();
+        for (Socket peer : peers) {
+            peer.close();
+        }
+    }
+
+    private static void checkQueueLimit(ServerSocket serverSocket) throws Exception {
+        HeavyRequestExecutor executor = new HeavyRequestExecutor(1, 2, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Socket> peers = new ArrayList<Socket>();
+        List<GameClient> clients = new ArrayList<GameClient>();
+        for (int c = 0; c < 4; c++) {
+            peers.add(connect(serverSocket));
+            clients.add(new GameClient("client" + c, serverSocket.accept()));
+        }
+
+        // One running, two waiting, no room for the fourth
+        for (int c = 0; c < 3; c++) {
+            check(executor.submit(clients.get(c), new BlockingRequest(clients.get(c), release)),
+                    "queue: request %d refused", c);
+        }
+        check(!executor.submit(clients.get(3), new BlockingRequest(clients.get(3), release)),
+                "queue: request beyond the queue accepted");
+        check(executor.getQueueDepth() == 2 && executor.getMaxQueueDepth() == 2,
+                "queue: depth %d, max %d", executor.getQueueDepth(), executor.getMaxQueueDepth());
+
+        release.countDown();
+        for (int c = 0; c < 3; c++) {
+            readResponse(peers.get(c));
+        }
+        waitForCompleted(executor, 3);
+        check(executor.getQueueDepth() == 0, "queue: depth %d after completion", executor.getQueueDepth());
+        check(executor.getMaxQueueDepth() == 2, "queue: max depth %d", executor.getMaxQueueDepth());
+
+        executor.shutdown();
+        for (Socket peer : peers) {
+            peer.close();
+        }
+    }
+
+    private static Socket connect(ServerSocket serverSocket) throws IOException {
+        Socket socket = new Socket("localhost", serverSocket.getLocalPort());
+        socket.setSoTimeout(READ_TIMEOUT_MILLISECONDS);
+        return socket;
+    }
+
+    private static void waitForCompleted(HeavyRequestExecutor executor, long count) throws InterruptedException {
+        for (int i = 0; i < 100 && executor.getCompletedCount() < count; i++) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+
+    // Read one response from the client's side of the connection
+    private static void readResponse(Socket peer) throws IOException {
+        DataInputStream in = new DataInputStream(peer.getInputStream());
+        byte[] data = new byte[Short.reverseBytes(in.readShort()) & 0xFFFF];
+        in.readFully(data);
+
+        short response_id = (short) ((data[0] & 0xFF) | (data[1] & 0xFF) << 8);
+        check(response_id == NetworkCode.CLIENT, "response %d, expected %d", response_id, NetworkCode.CLIENT);
+    }
+
+    private static void check(boolean ok, String format, Object... args) {
+        if (!ok) {
+            System.out.printf(format + "\n", args);
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package core.test;
+
+// Java Imports
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Other Imports
+import model.Species;
+import model.SpeciesGroup;
+import model.SpeciesType;
+import net.response.GameResponse;
+import net.response.ResponseChart;
+import net.response.ResponsePrediction;
+import net.response.ResponseSpeciesCreate;
+import util.PacketBuffer;
+import util.Vector3;
+
+/*
+ * Compares encoding ResponseChart, ResponseSpeciesCreate and
+ * ResponsePrediction three ways:
+ *  - legacy: the former GamePacketStream encoder, a ByteArrayOutputStream
+ *    that allocates a byte[] per number and copies the packet again to fill
+ *    in its length
+ *  - getBytes: GameResponse.getBytes(), encoded in a pooled PacketBuffer and
+ *    copied out once
+ *  - send: GameResponse.write() into a pooled direct PacketBuffer, as
+ *    GameClient.send does for a SelectorServer client
+ * Prints the median ns and bytes allocated per response over several timed
+ * rounds (after warm-up rounds). Also checks that all three give the same
+ * bytes, and that strings are UTF-8 with a byte count.
+ *
+ * Run main(); optional args: iterations per round (default 100000), rounds (7).
+ * Exits with status 1 if the encodings differ.
+ */
+public class PacketEncoderBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int CHART_SPECIES = 30;
+    private static final int CHART_TIMESTEPS = 100;
+    private static final int PREDICTION_SPECIES = 40;
+
+    private static final com.sun.management.ThreadMXBean threadBean
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static int failures = 0;
+    // Keeps results alive so the work is not optimized away
+    private static long sink;
+
+    /*
+     One way of encoding a response.
+     */
+    private interface Encoder {
+
+        void encode();
+    }
+
+    /*
+     The encoder GamePacket used before PacketBuffer, kept here for comparison.
+     */
+    private static class LegacyPacket extends ByteArrayOutputStream {
+
+        LegacyPacket(short packet_id) {
+            write(0xff);
+            write(0xff);
+            addShort16(packet_id);
+        }
+
+        void addShort16(short value) {
+            byte[] bytes = new byte[2];
+            bytes[0] = (byte) (value);
+            bytes[1] = (byte) (value >> 8);
+            write(bytes, 0, bytes.length);
+        }
+
+        void addInt32(int value) {
+            byte[] bytes = new byte[4];
+            bytes[0] = (byte) (value);
+            bytes[1] = (byte) (value >> 8);
+            bytes[2] = (byte) (value >> 16);
+            bytes[3] = (byte) (value >> 24);
+            write(bytes, 0, bytes.length);
+        }
+
+        void addFloat(float value) {
+            addInt32(Float.floatToIntBits(value));
+        }
+
+        void addString(String str) {
+            addShort16((short) str.length());
+            byte[] bytes = str.getBytes();
+            write(bytes, 0, bytes.length);
+        }
+
+        byte[] getBytes() {
+            byte[] bytes = toByteArray();
+            bytes[0] = (byte) ((size() - 2) & 0xff);
+            bytes[1] = (byte) ((size() - 2) >> 8);
+            return bytes;
+        }
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+
+        Random random = new Random(1);
+        final String csv = chartCSV(random);
+        final ResponseChart chart = new ResponseChart();
+        chart.setType(1);
+        chart.setCSV(csv);
+
+        SpeciesType speciesType = new SpeciesType("Bat-Eared Fox");
+        final SpeciesGroup group = new SpeciesGroup(new Species(42, speciesType), 7, 1500,
+                new Vector3<Integer>(12, 0, 34));
+        final ResponseSpeciesCreate speciesCreate = new ResponseSpeciesCreate((short) 0, 3, group);
+
+        final Map<Integer, Integer> results = new LinkedHashMap<Integer, Integer>();
+        for (int i = 0; i < PREDICTION_SPECIES; i++) {
+            results.put(1000 + i, random.nextInt(100000));
+        }
+        final ResponsePrediction prediction = new ResponsePrediction();
+        prediction.setStatus((short) 0);
+        prediction.setResults(results);
+
+        checkSame("ResponseChart", legacyChart(csv), chart);
+        checkSame("ResponseSpeciesCreate", legacySpeciesCreate(group), speciesCreate);
+        checkSame("ResponsePrediction", legacyPrediction(results), prediction);
+        checkUTF8();
+
+        System.out.printf("%-22s %-9s %7s %10s %12s\n", "response", "encoder", "bytes", "ns/op", "alloc B/op");
+        run("ResponseChart", chart.getBytes().length, iterations / 10, rounds, new Encoder() {
+            @Override
+            public void encode() {
+                sink += legacyChart(csv).length;
+            }
+        }, chart);
+        run("ResponseSpeciesCreate", speciesCreate.getBytes().length, iterations, rounds, new Encoder() {
+            @Override
+            public void encode() {
+                sink += legacySpeciesCreate(group).length;
+            }
+        }, speciesCreate);
+        run("ResponsePrediction", prediction.getBytes().length, iterations, rounds, new Encoder() {
+            @Override
+            public void encode() {
+                sink += legacyPrediction(results).length;
+            }
+        }, prediction);
+
+        if (failures > 0) {
+            System.out.printf("FAILED: %d checks\n", failures);
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    private static void run(String name, int size, int iterations, int rounds, Encoder legacy,
+            final GameResponse response) {
+        Encoder getBytes = new Encoder() {
+            @Override
+            public void encode() {
+                sink += response.getBytes().length;
+            }
+        };
+        Encoder send = new Encoder() {
+            @Override
+            public void encode() {
+                PacketBuffer buffer = PacketBuffer.acquireDirect();
+                response.write(buffer);
+                sink += buffer.flip().remaining();
+                buffer.release();
+            }
+        };
+
+        print(name, "legacy", size, measure(legacy, iterations, rounds));
+        print(name, "getBytes", size, measure(getBytes, iterations, rounds));
+        print(name, "send", size, measure(send, iterations, rounds));
+    }
+
+    private static void print(String name, String encoder, int size, double[] result) {
+        System.out.printf("%-22s %-9s %7d %10.1f %12.1f\n", name, encoder, size, result[0], result[1]);
+    }
+
+    // Median ns and bytes allocated per call over the timed rounds
+    private static double[] measure(Encoder encoder, int iterations, int rounds) {
+        long threadId = Thread.currentThread().getId();
+        double[] nanos = new double[rounds];
+        double[] bytes = new double[rounds];
+
+        for (int r = -WARMUP_ROUNDS; r < rounds; r++) {
+            long allocated = threadBean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                encoder.encode();
+            }
+            long elapsed = System.nanoTime() - start;
+            allocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            if (r >= 0) {
+                nanos[r] = (double) elapsed / iterations;
+                bytes[r] = (double) allocated / iterations;
+            }
+        }
+
+        return new double[]{median(nanos), median(bytes)};
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static void checkSame(String name, byte[] legacy, GameResponse response) {
+        byte[] bytes = response.getBytes();
+        check(Arrays.equals(legacy, bytes), "%s: getBytes differs from legacy", name);
+
+        PacketBuffer buffer = PacketBuffer.acquireDirect();
+        response.write(buffer);
+        response.write(buffer);
+        ByteBuffer written = buffer.flip();
+        byte[] twice = new byte[written.remaining()];
+        written.get(twice);
+        buffer.release();
+
+        byte[] expected = Arrays.copyOf(legacy, 2 * legacy.length);
+        System.arraycopy(legacy, 0, expected, legacy.length, legacy.length);
+        check(Arrays.equals(expected, twice), "%s: write differs from legacy", name);
+    }
+
+    // Byte count, not char count, then UTF-8
+    private static void checkUTF8() {
+        PacketBuffer buffer = new PacketBuffer(4, false);
+        buffer.addString("a\u00e9\u4e2d");
+        byte[] bytes = buffer.toByteArray();
+
+        byte[] expected = {6, 0, 'a', (byte) 0xc3, (byte) 0xa9, (byte) 0xe4, (byte) 0xb8, (byte) 0xad};
+        check(Arrays.equals(expected, bytes), "UTF-8 string: %s", Arrays.toString(bytes));
+    }
+
+    private static byte[] legacyChart(String csv) {
+        LegacyPacket packet = new LegacyPacket(new ResponseChart().getID());
+        packet.addShort16((short) 1);
+        packet.addString(csv);
+        return packet.getBytes();
+    }
+
+    private static byte[] legacySpeciesCreate(SpeciesGroup group) {
+        LegacyPacket packet = new LegacyPacket(new ResponseSpeciesCreate((short) 0, 0, group).getID());
+        packet.addShort16((short) 0);
+        packet.addInt32(3);
+        packet.addInt32(group.getID());
+        packet.addInt32(group.getSpecies().getID());
+        packet.addString(group.getSpecies().getSpeciesType().getName());
+        packet.addInt32(group.getSpecies().getSpeciesType().getModelID());
+        packet.addInt32(group.getBiomass());
+        packet.addFloat(group.getPosition().getX());
+        packet.addFloat(group.getPosition().getY());
+        packet.addFloat(group.getPosition().getZ());
+        packet.addInt32(group.getUserID());
+        return packet.getBytes();
+    }
+
+    private static byte[] legacyPrediction(Map<Integer, Integer> results) {
+        LegacyPacket packet = new LegacyPacket(new ResponsePrediction().getID());
+        packet.addShort16((short) 0);
+        packet.addShort16((short) results.size());
+        for (Map.Entry<Integer, Integer> entry : results.entrySet()) {
+            packet.addInt32(entry.getKey());
+            packet.addInt32(entry.getValue());
+        }
+        return packet.getBytes();
+    }
+
+    // Biomass of each species per timestep, as Ecosystem sends it
+    private static String chartCSV(Random random) {
+        StringBuilder csv = new StringBuilder("Species");
+        for (int t = 1; t <= CHART_TIMESTEPS; t++) {
+            csv.append(',').append(t);
+        }
+        for (int s = 0; s < CHART_SPECIES; s++) {
+            csv.append("\nSpecies ").append(s);
+            for (int t = 0; t < CHART_TIMESTEPS; t++) {
+                csv.append(',').append(random.nextInt(5000));
+            }
+        }
+        return csv.toString();
+    }
+
+    private static void check(boolean ok, String format, Object... args) {
+        if (!ok) {
+            System.out.printf(format + "\n", args);
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package core.test;
+
+// Java Imports
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Other Imports
+import core.GameClient;
+import core.GameServer;
+import metadata.Constants;
+import metadata.GameRequestTable;
+import metadata.NetworkCode;
+import net.response.ResponseClient;
+
+/*
+ * Runs a GameServer in NIO mode on a free local port and talks to it over
+ * plain sockets with RequestClient / ResponseClient, which need no database:
+ *  - a request split across several writes, with pauses in between, is put
+ *    back together
+ *  - several requests in one write are answered separately and in order
+ *  - many clients at once each get exactly their own responses
+ *  - a client that hangs up is removed from the active clients.
+ *
+ * Run main(); exits with status 1 on any failure.
+ */
+public class SelectorServerTest {
+
+    private static final int CLIENTS = 20;
+    private static final int ROUND_TRIPS = 50;
+    private static final int READ_TIMEOUT_MILLISECONDS = 5000;
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        GameRequestTable.init();
+
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        final GameServer server = new GameServer(port, 4, GameServer.NetworkMode.NIO);
+        Thread serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.run();
+            }
+        });
+        // A hung check fails through its read timeout
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        try {
+            checkSplitFrame(server, port);
+            checkCoalescedFrames(port);
+            checkConcurrentClients(port);
+            checkHangUp(server, port);
+        } catch (IOException | ExecutionException ex) {
+            check(false, "%s", ex);
+        }
+
+        server.shutdown();
+        serverThread.join(15000);
+        check(!serverThread.isAlive(), "server did not shut down");
+
+        if (failures > 0) {
+            System.out.printf("FAILED: %d checks\n", failures);
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    private static void checkSplitFrame(GameServer server, int port) throws Exception {
+        try (Socket socket = connect(port)) {
+            byte[] frame = requestClient(Constants.CLIENT_VERSION);
+            OutputStream out = socket.getOutputStream();
+            // Size split in half, then the rest in pieces, the last one byte
+            int[] cuts = {1, 5, frame.length - 1, frame.length};
+            int from = 0;
+            for (int cut : cuts) {
+                out.write(frame, from, cut - from);
+                out.flush();
+                Thread.sleep(50);
+                from = cut;
+            }
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            String session_id = readResponseClient(in, ResponseClient.SUCCESS);
+            boolean known = false;
+            for (GameClient client : server.getActiveClients()) {
+                known |= client.getID().equals(session_id);
+            }
+            check(known, "split frame: session %s is not an active client", session_id);
+        }
+    }
+
+    private static void checkCoalescedFrames(int port) throws Exception {
+        try (Socket socket = connect(port)) {
+            ByteArrayOutputStream frames = new ByteArrayOutputStream();
+            frames.write(requestClient("0.01"));
+            frames.write(requestClient(Constants.CLIENT_VERSION));
+            frames.write(requestClient("0.02"));
+            socket.getOutputStream().write(frames.toByteArray());
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            readResponseClient(in, ResponseClient.FAIL);
+            readResponseClient(in, ResponseClient.SUCCESS);
+            readResponseClient(in, ResponseClient.FAIL);
+        }
+    }
+
+    private static void checkConcurrentClients(final int port) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<String>> sessions = new ArrayList<Future<String>>();
+        for (int c = 0; c < CLIENTS; c++) {
+            sessions.add(clients.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    try (Socket socket = connect(port)) {
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        String session_id = null;
+                        for (int i = 0; i < ROUND_TRIPS; i++) {
+                            socket.getOutputStream().write(requestClient(Constants.CLIENT_VERSION));
+                            String id = readResponseClient(in, ResponseClient.SUCCESS);
+                            check(session_id == null || session_id.equals(id),
+                                    "concurrent clients: session changed from %s to %s", session_id, id);
+                            session_id = id;
+                        }
+                        return session_id;
+                    }
+                }
+            }));
+        }
+
+        List<String> seen = new ArrayList<String>();
+        for (Future<String> session : sessions) {
+            String session_id = session.get();
+            check(!seen.contains(session_id), "concurrent clients: session %s shared", session_id);
+            seen.add(session_id);
+        }
+        clients.shutdown();
+    }
+
+    private static void checkHangUp(GameServer server, int port) throws Exception {
+        // Clients of earlier checks may still be on their way out
+        waitForClients(server, 0);
+
+        Socket socket = connect(port);
+        socket.getOutputStream().write(requestClient(Constants.CLIENT_VERSION));
+        readResponseClient(new DataInputStream(socket.getInputStream()), ResponseClient.SUCCESS);
+        check(server.getActiveClients().size() == 1, "hang up: %d active clients",
+                server.getActiveClients().size());
+
+        socket.close();
+        check(waitForClients(server, 0), "hang up: client still active");
+    }
+
+    private static Socket connect(int port) throws IOException {
+        Socket socket = new Socket("localhost", port);
+        socket.setSoTimeout(READ_TIMEOUT_MILLISECONDS);
+        return socket;
+    }
+
+    private static boolean waitForClients(GameServer server, int count) throws InterruptedException {
+        for (int i = 0; i < 100 && server.getActiveClients().size() != count; i++) {
+            Thread.sleep(20);
+        }
+        return server.getActiveClients().size() == count;
+    }
+
+    // Size, request ID and RequestClient data, little-endian as the client sends them
+    private static byte[] requestClient(String version) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        writeShort(data, NetworkCode.CLIENT);
+        writeString(data, version);
+        writeString(data, "");
+
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        writeShort(frame, data.size());
+        frame.write(data.toByteArray(), 0, data.size());
+        return frame.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String str) {
+        writeShort(out, str.length());
+        byte[] bytes = str.getBytes();
+        out.write(bytes, 0, bytes.length);
+    }
+
+    // Read one ResponseClient and return its session ID (null on FAIL)
+    private static String readResponseClient(DataInputStream in, short status) throws IOException {
+        int size = readShort(in);
+        byte[] data = new byte[size];
+        in.readFully(data);
+
+        DataInputStream dataIn = new DataInputStream(new ByteArrayInputStream(data));
+        int response_id = readShort(dataIn);
+        int actual = readShort(dataIn);
+        check(response_id == NetworkCode.CLIENT, "response %d, expected %d", response_id, NetworkCode.CLIENT);
+        check(actual == status, "status %d, expected %d", actual, status);
+        if (actual != ResponseClient.SUCCESS) {
+            check(size == 4, "FAIL response of %d bytes", size);
+            return null;
+        }
+
+        byte[] session_id = new byte[readShort(dataIn)];
+        dataIn.readFully(session_id);
+        check(dataIn.available() == 0, "%d bytes after the session ID", dataIn.available());
+        return new String(session_id);
+    }
+
+    private static int readShort(DataInputStream in) throws IOException {
+        return Short.reverseBytes(in.readShort()) & 0xFFFF;
+    }
+
+    private static synchronized void check(boolean ok, String format, Object... args) {
+        if (!ok) {
+            System.out.printf(format + "\n", args);
+            failures++;
+        }
+    }
+}
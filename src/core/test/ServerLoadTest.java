@@ -0,0 +1,213 @@
+package core.test;
+
+// Java Imports
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Other Imports
+import core.GameServer;
+import metadata.Constants;
+import metadata.GameRequestTable;
+import metadata.NetworkCode;
+import net.request.GameRequest;
+import net.response.ResponseClient;
+
+/*
+ * Compares request latency of the network modes. For each mode a GameServer
+ * with MAX_CLIENT_THREADS threads runs on a free local port. Fast clients make
+ * RequestClient round trips, pausing briefly between them, while a few slow
+ * clients keep sending a request that takes a while to process (standing in
+ * for RequestConvergeNewAttempt running a simulation inline). Prints the p50,
+ * p99 and max round trip of the fast clients, and their throughput.
+ *
+ * Run main(); optional args: fast clients (default 40), round trips per
+ * client (100), slow clients (2), slow request ms (200), modes
+ * (polled,threaded,nio).
+ */
+public class ServerLoadTest {
+
+    // Unused request code for SlowRequest
+    private static final short SLOW_REQUEST = 30000;
+    private static final int THINK_MILLISECONDS = 10;
+    private static final int READ_TIMEOUT_MILLISECONDS = 30000;
+    private static volatile int slowMillis;
+
+    /*
+     Takes slowMillis to process and answers with a ResponseClient FAIL.
+     */
+    public static class SlowRequest extends GameRequest {
+
+        @Override
+        public void parse(DataInputStream dataInput) throws IOException {
+        }
+
+        @Override
+        public void process() throws Exception {
+            Thread.sleep(slowMillis);
+
+            ResponseClient response = new ResponseClient();
+            response.setStatus(ResponseClient.FAIL);
+            client.add(response);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int roundTrips = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int slowClients = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        slowMillis = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        String modes = args.length > 4 ? args[4] : "polled,threaded,nio";
+
+        GameRequestTable.init();
+        GameRequestTable.add(SLOW_REQUEST, SlowRequest.class);
+
+        List<String> results = new ArrayList<String>();
+        for (String mode : modes.split(",")) {
+            results.add(run(GameServer.NetworkMode.fromName(mode), clients, roundTrips, slowClients));
+        }
+
+        System.out.printf("\n%d fast clients x %d round trips, %d slow clients (%d ms), %d server threads\n",
+                clients, roundTrips, slowClients, slowMillis, Constants.MAX_CLIENT_THREADS);
+        System.out.printf("%-9s %9s %9s %9s %11s\n", "mode", "p50 ms", "p99 ms", "max ms", "requests/s");
+        for (String result : results) {
+            System.out.println(result);
+        }
+    }
+
+    private static String run(GameServer.NetworkMode mode, int clients, final int roundTrips,
+            int slowClients) throws Exception {
+        final int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        final GameServer server = new GameServer(port, Constants.MAX_CLIENT_THREADS, mode);
+        Thread serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.run();
+            }
+        });
+        // POLLED never returns from accept()
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        ExecutorService threads = Executors.newCachedThreadPool();
+        final AtomicBoolean isRunning = new AtomicBoolean(true);
+        List<Future<?>> slow = new ArrayList<Future<?>>();
+        for (int c = 0; c < slowClients; c++) {
+            slow.add(threads.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    try (Socket socket = connect(port)) {
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        while (isRunning.get()) {
+                            socket.getOutputStream().write(frame(SLOW_REQUEST));
+                            readResponse(in);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        // Let the slow requests get going
+        Thread.sleep(100);
+
+        long start = System.nanoTime();
+        List<Future<long[]>> fast = new ArrayList<Future<long[]>>();
+        for (int c = 0; c < clients; c++) {
+            fast.add(threads.submit(new Callable<long[]>() {
+                @Override
+                public long[] call() throws Exception {
+                    long[] nanos = new long[roundTrips];
+                    try (Socket socket = connect(port)) {
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        byte[] request = frame(NetworkCode.CLIENT, Constants.CLIENT_VERSION, "");
+                        for (int i = 0; i < roundTrips; i++) {
+                            long sent = System.nanoTime();
+                            socket.getOutputStream().write(request);
+                            readResponse(in);
+                            nanos[i] = System.nanoTime() - sent;
+                            Thread.sleep(THINK_MILLISECONDS);
+                        }
+                    }
+                    return nanos;
+                }
+            }));
+        }
+
+        long[] all = new long[clients * roundTrips];
+        int n = 0;
+        for (Future<long[]> future : fast) {
+            long[] nanos = future.get();
+            System.arraycopy(nanos, 0, all, n, nanos.length);
+            n += nanos.length;
+        }
+        double seconds = (System.nanoTime() - start) / 1.0E9;
+
+        isRunning.set(false);
+        for (Future<?> future : slow) {
+            future.get();
+        }
+        threads.shutdown();
+        server.shutdown();
+
+        Arrays.sort(all);
+        return String.format("%-9s %9.2f %9.2f %9.2f %11.0f", mode.name().toLowerCase(),
+                percentile(all, 0.50), percentile(all, 0.99), all[all.length - 1] / 1.0E6, all.length / seconds);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1.0E6;
+    }
+
+    private static Socket connect(int port) throws IOException {
+        Socket socket = new Socket("localhost", port);
+        socket.setSoTimeout(READ_TIMEOUT_MILLISECONDS);
+        return socket;
+    }
+
+    // Size, request ID and string arguments, little-endian as the client sends them
+    private static byte[] frame(short request_id, String... strings) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        writeShort(data, request_id);
+        for (String str : strings) {
+            writeShort(data, str.length());
+            byte[] bytes = str.getBytes();
+            data.write(bytes, 0, bytes.length);
+        }
+
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        writeShort(frame, data.size());
+        frame.write(data.toByteArray(), 0, data.size());
+        return frame.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+
+    // Read one response, checking it is a ResponseClient
+    private static void readResponse(DataInputStream in) throws IOException {
+        byte[] data = new byte[Short.reverseBytes(in.readShort()) & 0xFFFF];
+        in.readFully(data);
+
+        DataInputStream dataIn = new DataInputStream(new ByteArrayInputStream(data));
+        short response_id = Short.reverseBytes(dataIn.readShort());
+        if (response_id != NetworkCode.CLIENT) {
+            throw new IOException("Unexpected response " + response_id);
+        }
+    }
+}
@@ -278,6 +278,113 @@ public final class SimJobDAO {
         }
         return jobIdList;
     }
+
+    /**
+     * Claim an unprocessed job for a batch runner by stamping manip_timestamp
+     * (which stays unset until a job is run).  Succeeds only if the job is
+     * still unprocessed and is not claimed, or its claim is older than
+     * staleBefore (the runner that held it is presumed dead), so concurrent
+     * runners never run the same job and a crashed run can be resumed.
+     * @param job_id
+     * @param now claim time, "yyyy-MM-dd HH:mm:ss"
+     * @param staleBefore claims before this time may be taken over
+     * @return true if claimed
+     * @throws SQLException
+     */
+    public static boolean claimJob(int job_id, String now, String staleBefore)
+            throws SQLException {
+        String query = ""
+                + "UPDATE `sim_job` SET `manip_timestamp` = ? "
+                + "WHERE `job_id` = ? "
+                + "AND (`manipulation_id` = '' OR `manipulation_id` IS NULL) "
+                + "AND (`manip_timestamp` IS NULL OR `manip_timestamp` < ?)";
+
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        int cnt;
+
+        try {
+            connection = GameDB.getConnection();
+            pstmt = connection.prepareStatement(query);
+            pstmt.setString(1, now);
+            pstmt.setInt(2, job_id);
+            pstmt.setString(3, staleBefore);
+            cnt = pstmt.executeUpdate();
+            pstmt.close();
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+        return cnt == 1;
+    }
+
+    /**
+     * Release the claim on a job that is still unprocessed (e.g. its run
+     * threw), so that it can be claimed again straight away.
+     * @param job_id
+     * @throws SQLException
+     */
+    public static void releaseJob(int job_id) throws SQLException {
+        String query = ""
+                + "UPDATE `sim_job` SET `manip_timestamp` = NULL "
+                + "WHERE `job_id` = ? "
+                + "AND (`manipulation_id` = '' OR `manipulation_id` IS NULL)";
+
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            connection = GameDB.getConnection();
+            pstmt = connection.prepareStatement(query);
+            pstmt.setInt(1, job_id);
+            pstmt.executeUpdate();
+            pstmt.close();
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Obtain the stored node_config strings, most recent jobs first (e.g. to
+     * benchmark the node_config parser, see atn.test.NodeConfigBenchmark).
+     * @param maxCnt max number of configs returned
+     * @return List<String> node configs
+     * @throws SQLException
+     */
+    public static List<String> getNodeConfigs(int maxCnt) throws SQLException {
+        List<String> configList = new ArrayList<String>();
+        String query = ""
+                + "SELECT `node_config` FROM `sim_job` "
+                + "ORDER BY `job_id` DESC LIMIT ?";
+
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            connection = GameDB.getConnection();
+            pstmt = connection.prepareStatement(query);
+            pstmt.setInt(1, maxCnt);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                String config = rs.getString("node_config");
+                if (config != null) {
+                    configList.add(config);
+                }
+            }
+
+            rs.close();
+            pstmt.close();
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+        return configList;
+    }
     
     /**
      * Obtain list of unprocessed job IDs.
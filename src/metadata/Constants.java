@@ -71,6 +71,9 @@ public class Constants {
     public final static String CSV_SAVE_PATH = "src/log/sim/";
     public final static String ATN_CSV_SAVE_PATH = "src/log/atn/";
     public final static int MAX_CLIENT_THREADS = 10;
+    public final static int HEAVY_REQUEST_THREADS = 4;
+    public final static int MAX_QUEUED_HEAVY_REQUESTS = 32;
+    public final static int MAX_HEAVY_REQUESTS_PER_CLIENT = 2;
     public final static int ECOSYSTEM_TYPE = 1;
     public final static int TICK_RATE = 30;
     public final static int TICK_NANOSECOND = 1000000000 / TICK_RATE;
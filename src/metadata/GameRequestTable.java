@@ -102,16 +102,27 @@ public class GameRequestTable {
      */
     public static void add(short request_id, String name) {
         try {
-            if (!requestTable.containsKey(request_id)) {
-                requestTable.put(request_id, Class.forName("net.request." + name));
-            } else {
-                Log.printf_e("Request ID [%d] already exists! Ignored '%s'\n", request_id, name);
-            }
+            add(request_id, Class.forName("net.request." + name).asSubclass(GameRequest.class));
         } catch (ClassNotFoundException ex) {
             Log.printf_e("%s not found", ex.getMessage());
         }
     }
 
+    /**
+     * Map the request code number with a request class that may live outside
+     * net.request.
+     *
+     * @param request_id a value that uniquely identifies the request type
+     * @param requestClass the request class, with a no-argument constructor
+     */
+    public static void add(short request_id, Class<? extends GameRequest> requestClass) {
+        if (!requestTable.containsKey(request_id)) {
+            requestTable.put(request_id, requestClass);
+        } else {
+            Log.printf_e("Request ID [%d] already exists! Ignored '%s'\n", request_id, requestClass.getName());
+        }
+    }
+
     /**
      * Get the instance of the request class by the given request code.
      *
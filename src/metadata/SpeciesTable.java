@@ -16,68 +16,127 @@ import util.Comparators;
 import util.ConfigureException;
 import util.Log;
 
+/**
+ * Species loaded from the database, with indexes by species ID, node ID, name
+ * and category.  The table is an immutable snapshot, replaced as a whole by
+ * initialize(), so a reload never exposes a half-built table to readers.
+ * Lists returned are unmodifiable and in species ID order.
+ */
 public class SpeciesTable {
 
-    private final Map<Integer, SpeciesType> speciesTypes = new HashMap<Integer, SpeciesType>();
-    private final Map<Integer, AnimalType> animalTypes = new HashMap<Integer, AnimalType>(); // Species ID -> Animal
-    private final Map<Integer, PlantType> plantTypes = new HashMap<Integer, PlantType>(); // Species ID -> Plant
+    private static final class Snapshot {
+
+        private final Map<Integer, SpeciesType> speciesTypes = new HashMap<Integer, SpeciesType>();
+        private final List<SpeciesType> speciesList;
+        private final List<AnimalType> animalList;
+        private final List<PlantType> plantList;
+        private final Map<String, SpeciesType> byName = new HashMap<String, SpeciesType>(); // Lower case name -> Species
+        private final Map<String, List<SpeciesType>> byCategory = new HashMap<String, List<SpeciesType>>();
+        private final Map<Integer, List<SpeciesType>> byNode = new HashMap<Integer, List<SpeciesType>>(); // Node ID -> Species using node
+
+        private Snapshot(List<SpeciesType> species) {
+            List<SpeciesType> sorted = new ArrayList<SpeciesType>(species);
+            Collections.sort(sorted, Comparators.SpeciesIDComparator);
+            List<AnimalType> animals = new ArrayList<AnimalType>();
+            List<PlantType> plants = new ArrayList<PlantType>();
+
+            for (SpeciesType type : sorted) {
+                speciesTypes.put(type.getID(), type);
+
+                switch (type.getOrganismType()) {
+                    case Constants.ORGANISM_TYPE_ANIMAL:
+                        animals.add((AnimalType) type);
+                        break;
+                    case Constants.ORGANISM_TYPE_PLANT:
+                        plants.add((PlantType) type);
+                        break;
+                }
+
+                // First (lowest ID) species wins duplicate names
+                if (type.getName() != null && !byName.containsKey(type.getName().toLowerCase())) {
+                    byName.put(type.getName().toLowerCase(), type);
+                }
+                if (type.getCategory() != null) {
+                    addToIndex(byCategory, type.getCategory(), type);
+                }
+                for (int node_id : type.getNodeIDs()) {
+                    addToIndex(byNode, node_id, type);
+                }
+            }
+
+            speciesList = Collections.unmodifiableList(sorted);
+            animalList = Collections.unmodifiableList(animals);
+            plantList = Collections.unmodifiableList(plants);
+        }
+
+        private static <K> void addToIndex(Map<K, List<SpeciesType>> index, K key, SpeciesType type) {
+            List<SpeciesType> list = index.get(key);
+            if (list == null) {
+                list = new ArrayList<SpeciesType>();
+                index.put(key, list);
+            }
+            list.add(type);
+        }
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.<SpeciesType>emptyList());
 
     public SpeciesTable() {
     }
 
+    /**
+     * Load species from the database, replacing the current table once the
+     * new one is complete.  May be called again to reload.
+     *
+     * @throws ConfigureException
+     */
     public void initialize() throws ConfigureException {
         Log.console("Loading Species...");
 
-		List<SpeciesType> speciesList = SpeciesDAO.getSpecies();
+        List<SpeciesType> speciesList = SpeciesDAO.getSpecies();
         if (speciesList.isEmpty()) {
             throw new ConfigureException("Species retrieval failure");
         }
 
-        for (SpeciesType type : speciesList) {
-            speciesTypes.put(type.getID(), type);
-
-            switch (type.getOrganismType()) {
-                case Constants.ORGANISM_TYPE_ANIMAL:
-                    animalTypes.put(type.getID(), (AnimalType) type);
-                    break;
-                case Constants.ORGANISM_TYPE_PLANT:
-                    plantTypes.put(type.getID(), (PlantType) type);
-                    break;
-            }
+        snapshot = new Snapshot(speciesList);
 
-            //type.setBiomass(500); // Temporary Override
-        }
-        
-        System.out.println(speciesTypes.get(13).getBiomass());
-        System.out.println(speciesTypes.get(20).getBiomass());
-        System.out.println(speciesTypes.get(31).getBiomass());
-     
         Log.println("Done!");
     }
 
     public List<SpeciesType> getSpecies() {
-        return new ArrayList<SpeciesType>(speciesTypes.values());
+        return snapshot.speciesList;
     }
 
     public SpeciesType getSpecies(int species_id) {
-        return speciesTypes.containsKey(species_id) ? speciesTypes.get(species_id) : null;
+        return snapshot.speciesTypes.get(species_id);
     }
 
+    // Case-insensitive
     public SpeciesType getSpecies(String name) {
-        List<SpeciesType> speciesList = new ArrayList<SpeciesType>(speciesTypes.values());
-        int index = Collections.binarySearch(speciesList, new SpeciesType(name), Comparators.SpeciesNameComparator);
+        return name == null ? null : snapshot.byName.get(name.toLowerCase());
+    }
 
-        return index < 0 ? null : speciesList.get(index);
+    public List<SpeciesType> getSpeciesByCategory(String category) {
+        List<SpeciesType> list = snapshot.byCategory.get(category);
+        return list == null ? Collections.<SpeciesType>emptyList() : Collections.unmodifiableList(list);
     }
 
+    // Species whose node list is exactly {node_id}
     public SpeciesType getSpeciesTypeByNodeID(int node_id) {
         return getSpeciesTypeByNodeList(new int[]{node_id});
     }
 
+    // Species whose node list is exactly nodeList (any order); lowest ID if several
     public SpeciesType getSpeciesTypeByNodeList(int[] nodeList) {
-        for (SpeciesType speciesType : speciesTypes.values()) {
-            if (speciesType.equalsNodeList(nodeList)) {
-                return speciesType;
+        if (nodeList.length == 0) {
+            return null;
+        }
+        List<SpeciesType> candidates = snapshot.byNode.get(nodeList[0]);
+        if (candidates != null) {
+            for (SpeciesType speciesType : candidates) {
+                if (speciesType.equalsNodeList(nodeList)) {
+                    return speciesType;
+                }
             }
         }
 
@@ -85,10 +144,10 @@ public class SpeciesTable {
     }
 
     public List<AnimalType> getAnimals() {
-        return new ArrayList<AnimalType>(animalTypes.values());
+        return snapshot.animalList;
     }
 
     public List<PlantType> getPlants() {
-        return new ArrayList<PlantType>(plantTypes.values());
+        return snapshot.plantList;
     }
 }
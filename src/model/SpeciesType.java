@@ -3,6 +3,7 @@ package model;
 // Java Imports
 import core.ServerResources;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +34,7 @@ public class SpeciesType {
     protected int[] preyList = new int[0];
     protected int[] predatorList = new int[0];
     protected Map<Integer, Float> nodeDistribution = new HashMap<Integer, Float>();
+    protected int[] nodeIDs = new int[0]; // nodeDistribution keys, ascending
     /* 4/21/14, JTC, new parameter lists needed for testing simulations
      only loaded for simulations run from SimJobMenu; added here due to
      similarity to nodeDistribution setup */
@@ -127,17 +129,30 @@ public class SpeciesType {
     }
 
     public List<Integer> getNodeList() {
-        return new ArrayList<Integer>(nodeDistribution.keySet());
+        List<Integer> nodeList = new ArrayList<Integer>(nodeIDs.length);
+        for (int node_id : nodeIDs) {
+            nodeList.add(node_id);
+        }
+        return nodeList;
+    }
+
+    /**
+     * Node IDs of this species, ascending, without copying; do not modify.
+     *
+     * @return int[] node IDs
+     */
+    public int[] getNodeIDs() {
+        return nodeIDs;
     }
 
     public boolean hasNodeID(int node_id) {
-        return nodeDistribution.containsKey(node_id);
+        return Arrays.binarySearch(nodeIDs, node_id) >= 0;
     }
 
     public boolean equalsNodeList(int[] nodeList) {
-        if (nodeList.length == nodeDistribution.size()) {
+        if (nodeList.length == nodeIDs.length) {
             for (int node_id : nodeList) {
-                if (!nodeDistribution.containsKey(node_id)) {
+                if (Arrays.binarySearch(nodeIDs, node_id) < 0) {
                     return false;
                 }
             }
@@ -157,6 +172,12 @@ public class SpeciesType {
     }
 
     public Map<Integer, Float> setNodeDistribution(Map<Integer, Float> nodeDistribution) {
+        nodeIDs = new int[nodeDistribution.size()];
+        int i = 0;
+        for (int node_id : nodeDistribution.keySet()) {
+            nodeIDs[i++] = node_id;
+        }
+        Arrays.sort(nodeIDs);
         return this.nodeDistribution = nodeDistribution;
     }
 
@@ -214,8 +235,8 @@ public class SpeciesType {
         for (Integer speciesId : predatorList) {
             //pred species won't actually have multiple node IDs, so this would
             //return a list of one
-            List<Integer> spNodeList = ServerResources.getSpeciesTable().
-                        getSpecies(speciesId).getNodeList();
+            int[] spNodeList = ServerResources.getSpeciesTable().
+                        getSpecies(speciesId).getNodeIDs();
             for (int nodeId : spNodeList) {
                 if (nodeList.indexOf(nodeId) == -1) {
                     nodeList.add(nodeId);
@@ -239,8 +260,8 @@ public class SpeciesType {
 
         for (Integer speciesId : preyList) {
             //prey species may have multiple node IDs
-            List<Integer> spNodeList = ServerResources.getSpeciesTable().
-                        getSpecies(speciesId).getNodeList();
+            int[] spNodeList = ServerResources.getSpeciesTable().
+                        getSpecies(speciesId).getNodeIDs();
             for (int nodeId : spNodeList) {
                 if (nodeList.indexOf(nodeId) == -1) {
                     nodeList.add(nodeId);
@@ -2,6 +2,7 @@ package model;
 
 import java.util.HashMap;
 import java.util.Map;
+import atn.ATNPredictionState;
 import metadata.Constants;
 import simulation.SpeciesZoneType;
 import simulation.SpeciesZoneType.SpeciesTypeEnum;
@@ -29,6 +30,8 @@ public class ZoneNodes {
     private Map<Integer, SpeciesZoneType> plantNodes = new HashMap<Integer, SpeciesZoneType>();
     private Ecosystem zone;
     private double k = 10000, kPerNode = 10000;
+    //ATN integrator state carried between predictions; null until first run
+    private ATNPredictionState predictionState = null;
 
     /**
      * Constructor creates empty HashMaps.
@@ -45,6 +48,25 @@ public class ZoneNodes {
         return (Map) nodes;
     }
 
+    /**
+     * getter for predictionState.
+     *
+     * @return ATN integrator state from the last prediction, or null
+     */
+    public ATNPredictionState getPredictionState() {
+        return predictionState;
+    }
+
+    /**
+     * setter for predictionState; null discards the state, so that the next
+     * prediction recompiles the model.
+     *
+     * @param predictionState
+     */
+    public void setPredictionState(ATNPredictionState predictionState) {
+        this.predictionState = predictionState;
+    }
+
     /**
      * set carrying capacity for plants. Needs to be called every time a plant
      * is added or removed or the carrying capacity is updated..
@@ -49,6 +49,25 @@ public abstract class GameRequest {
      */
     public abstract void process() throws Exception;
 
+    /**
+     * Heavy requests, such as ones running a simulation, are processed on the
+     * HeavyRequestExecutor rather than the thread serving the connection, and
+     * their responses are sent when they complete.
+     *
+     * @return true if the request is too slow for a network thread
+     */
+    public boolean isHeavy() {
+        return false;
+    }
+
+    /**
+     * Answer a heavy request that was turned away because the client already
+     * has too many in flight or the executor is full. Sends nothing by
+     * default.
+     */
+    public void reject() {
+    }
+
     @Override
     public String toString() {
         String str = "";
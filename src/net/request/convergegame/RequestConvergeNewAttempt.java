@@ -46,6 +46,18 @@ public class RequestConvergeNewAttempt extends GameRequest {
         startTime = System.nanoTime();
     }
 
+    @Override
+    public boolean isHeavy() {
+        return true;
+    }
+
+    @Override
+    public void reject() {
+        Log.printf("Simulation request of player %d turned away, too many running", playerId);
+        //unsuccessful attempt: no attempt ID, no results
+        client.add(new ResponseConvergeNewAttempt(playerId, ecosystemId, allowHints, hintId, config));
+    }
+
     @Override
     public void process() throws Exception {
         String user_id = PlayerDAO.getPlayerByPlayerId(playerId).getName();
@@ -0,0 +1,35 @@
+package net.response;
+
+/**
+ * The EncodedResponse class holds a response already converted into bytes.
+ * It is used when one response goes to many clients: the response is
+ * encoded once, and every client writes the same bytes. The bytes must not
+ * be changed once encoded. GameClient writes them to each client as they
+ * are, without copying them into its outbound buffer.
+ */
+public final class EncodedResponse extends GameResponse {
+
+    private EncodedResponse(GameResponse response) {
+        response_id = response.getID();
+        bytes = response.getBytes();
+    }
+
+    /**
+     * Encode a response, unless it already is.
+     *
+     * @param response is the instance containing the response information
+     * @return the encoded response
+     */
+    public static EncodedResponse of(GameResponse response) {
+        if (response instanceof EncodedResponse) {
+            return (EncodedResponse) response;
+        }
+
+        return new EncodedResponse(response);
+    }
+
+    @Override
+    public byte[] getBytes() {
+        return bytes;
+    }
+}
@@ -1,5 +1,8 @@
 package net.response;
 
+// Other Imports
+import util.PacketBuffer;
+
 /**
  * The GameResponse class is an abstract class used as a basis for storing
  * response information.
@@ -19,4 +22,31 @@ public abstract class GameResponse {
      * @return the response as bytes
      */
     public abstract byte[] getBytes();
+
+    /**
+     * Add the response to a buffer holding packets to send, such as a
+     * client's outbound buffer. By default the bytes from getBytes() are
+     * copied in; large or frequent responses add their fields directly.
+     *
+     * @param buffer holds the packets to send
+     */
+    public void write(PacketBuffer buffer) {
+        buffer.addBytes(getBytes());
+    }
+
+    /**
+     * Convert the response into bytes format with write(), for responses
+     * that override it.
+     *
+     * @return the response as bytes
+     */
+    protected byte[] encode() {
+        PacketBuffer buffer = PacketBuffer.acquire();
+        try {
+            write(buffer);
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
 }
\ No newline at end of file
@@ -2,7 +2,7 @@ package net.response;
 
 // Other Imports
 import metadata.NetworkCode;
-import util.GamePacket;
+import util.PacketBuffer;
 
 public class ResponseChart extends GameResponse {
 
@@ -15,11 +15,15 @@ public class ResponseChart extends GameResponse {
 
     @Override
     public byte[] getBytes() {
-        GamePacket packet = new GamePacket(response_id);
-        packet.addShort16(type);
-        packet.addString(csv);
+        return encode();
+    }
 
-        return packet.getBytes();
+    @Override
+    public void write(PacketBuffer buffer) {
+        buffer.begin(response_id);
+        buffer.addShort16(type);
+        buffer.addString(csv);
+        buffer.end();
     }
 
     public void setCSV(String csv) {
@@ -6,7 +6,7 @@ import java.util.Map.Entry;
 
 // Other Imports
 import metadata.NetworkCode;
-import util.GamePacket;
+import util.PacketBuffer;
 
 public class ResponsePrediction extends GameResponse {
 
@@ -19,16 +19,20 @@ public class ResponsePrediction extends GameResponse {
 
     @Override
     public byte[] getBytes() {
-        GamePacket packet = new GamePacket(response_id);
-        packet.addShort16(status);
-        packet.addShort16((short) results.size());
+        return encode();
+    }
+
+    @Override
+    public void write(PacketBuffer buffer) {
+        buffer.begin(response_id);
+        buffer.addShort16(status);
+        buffer.addShort16((short) results.size());
 
         for (Entry<Integer, Integer> entry : results.entrySet()) {
-            packet.addInt32(entry.getKey());
-            packet.addInt32(entry.getValue());
+            buffer.addInt32(entry.getKey());
+            buffer.addInt32(entry.getValue());
         }
-
-        return packet.getBytes();
+        buffer.end();
     }
     
     public void setStatus(short status) {
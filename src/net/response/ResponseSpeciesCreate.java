@@ -3,7 +3,7 @@ package net.response;
 // Other Imports
 import model.SpeciesGroup;
 import metadata.NetworkCode;
-import util.GamePacket;
+import util.PacketBuffer;
 
 public class ResponseSpeciesCreate extends GameResponse {
 
@@ -21,19 +21,23 @@ public class ResponseSpeciesCreate extends GameResponse {
 
     @Override
     public byte[] getBytes() {
-        GamePacket packet = new GamePacket(response_id);
-        packet.addShort16(status);
-        packet.addInt32(eco_id);
-        packet.addInt32(group.getID());
-        packet.addInt32(group.getSpecies().getID());
-        packet.addString(group.getSpecies().getSpeciesType().getName());
-        packet.addInt32(group.getSpecies().getSpeciesType().getModelID());
-        packet.addInt32(group.getBiomass());
-        packet.addFloat(group.getPosition().getX());
-        packet.addFloat(group.getPosition().getY());
-        packet.addFloat(group.getPosition().getZ());
-        packet.addInt32(group.getUserID());
+        return encode();
+    }
 
-        return packet.getBytes();
+    @Override
+    public void write(PacketBuffer buffer) {
+        buffer.begin(response_id);
+        buffer.addShort16(status);
+        buffer.addInt32(eco_id);
+        buffer.addInt32(group.getID());
+        buffer.addInt32(group.getSpecies().getID());
+        buffer.addString(group.getSpecies().getSpeciesType().getName());
+        buffer.addInt32(group.getSpecies().getSpeciesType().getModelID());
+        buffer.addInt32(group.getBiomass());
+        buffer.addFloat(group.getPosition().getX());
+        buffer.addFloat(group.getPosition().getY());
+        buffer.addFloat(group.getPosition().getZ());
+        buffer.addInt32(group.getUserID());
+        buffer.end();
     }
 }
@@ -0,0 +1,99 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import simulation.SpeciesZoneType.LinkParam;
+
+/**
+ * Link parameter values of one predator, one row per prey node: prey IDs in
+ * order of first use, and a flat array of values indexed by prey row and
+ * LinkParam.  NaN marks a parameter not set for that prey.  Predators have
+ * few prey, so lookups by prey ID scan the row list.
+ */
+final class LinkParamTable {
+
+    private static final int PARAM_CNT = LinkParam.values().length;
+
+    private int[] prey = new int[4];
+    private double[] values = new double[4 * PARAM_CNT];
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    //prey node ID of row i
+    int getPrey(int i) {
+        return prey[i];
+    }
+
+    //value of param for row i; NaN if not set
+    double get(int i, LinkParam param) {
+        return values[i * PARAM_CNT + param.ordinal()];
+    }
+
+    //row of preyIdx, -1 if none
+    int indexOf(int preyIdx) {
+        for (int i = 0; i < size; i++) {
+            if (prey[i] == preyIdx) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //set value of param for preyIdx, replacing any previous value
+    void set(int preyIdx, LinkParam param, double value) {
+        int i = indexOf(preyIdx);
+        if (i < 0) {
+            if (size == prey.length) {
+                prey = Arrays.copyOf(prey, 2 * size);
+                values = Arrays.copyOf(values, 2 * size * PARAM_CNT);
+            }
+            i = size++;
+            prey[i] = preyIdx;
+            Arrays.fill(values, i * PARAM_CNT, (i + 1) * PARAM_CNT, Double.NaN);
+        }
+        values[i * PARAM_CNT + param.ordinal()] = value;
+    }
+
+    //unset param for every prey
+    void clear(LinkParam param) {
+        for (int i = 0; i < size; i++) {
+            values[i * PARAM_CNT + param.ordinal()] = Double.NaN;
+        }
+    }
+
+    //value of param for preyIdx as a ParamValue; null if not set
+    ParamValue getParamValue(int preyIdx, LinkParam param) {
+        int i = indexOf(preyIdx);
+        if (i < 0 || Double.isNaN(get(i, param))) {
+            return null;
+        }
+        return new ParamValue(preyIdx, get(i, param));
+    }
+
+    //values set for param, in prey row order (a copy)
+    List<ParamValue> toList(LinkParam param) {
+        List<ParamValue> list = new ArrayList<ParamValue>();
+        for (int i = 0; i < size; i++) {
+            double value = get(i, param);
+            if (!Double.isNaN(value)) {
+                list.add(new ParamValue(prey[i], value));
+            }
+        }
+        return list;
+    }
+
+    //replace values of param with those in list
+    void setAll(LinkParam param, List<ParamValue> list) {
+        clear(param);
+        if (list != null) {
+            for (ParamValue pv : list) {
+                set(pv.getPreyIdx(), param, pv.getParamValue());
+            }
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package simulation;
 
 // Java Imports
-import java.util.ArrayList;
 import java.util.List;
 
 
@@ -27,6 +26,18 @@ public class SpeciesZoneType {
         ANIMAL, PLANT, UNKNOWN
     };
 
+    //node parameters: carrying capacity, growth rate (plants only), metabolic rate
+    public enum NodeParam {
+
+        K, R, X
+    };
+
+    //link parameters, per prey (animals only)
+    public enum LinkParam {
+
+        A, B0, D, E, Q, Y
+    };
+
     protected String name;
     public int nodeIndex;
     protected List<Integer> lPreyIndex;
@@ -45,28 +56,17 @@ public class SpeciesZoneType {
     //4/14, JTC, replaced hard-coded "-1" assignments with Constants.PARAM_INITVALUE.
     // parameter k, r, x can't have negative value. if they have negative value, 
     //it means that data is not assigned yet.
-    protected double paramK = Constants.PARAM_INITVALUE;  // carrying capacity (plants only)
-    protected double paramR = Constants.PARAM_INITVALUE;  // growth rate (plants only)
-    protected double paramX = Constants.PARAM_INITVALUE;  // metabolic rate      
-    //link parameters are animal only
-    protected List<ParamValue> paramE = new ArrayList<ParamValue>();
-    ;  // assimilation efficiency
-    protected List<ParamValue> paramD = new ArrayList<ParamValue>();
-    ;  // predator interference     
-    protected List<ParamValue> paramQ = new ArrayList<ParamValue>();
-    ;  // functional response control parameter      
-    protected List<ParamValue> paramA = new ArrayList<ParamValue>();
-    ;  // functional response control parameter      
-    protected List<ParamValue> paramB0 = new ArrayList<ParamValue>();
-    ;  // relative half saturation density
-    //Y, added by JTC
-    protected List<ParamValue> paramY = new ArrayList<ParamValue>();
-    ;  // max ingestion rate
+    //indexed by NodeParam ordinal: K carrying capacity (plants only), R growth
+    //rate (plants only), X metabolic rate
+    protected final double[] nodeParams = {Constants.PARAM_INITVALUE,
+        Constants.PARAM_INITVALUE, Constants.PARAM_INITVALUE};
+    //link parameters are animal only: A, B0 relative half saturation density,
+    //D predator interference, E assimilation efficiency, Q functional response
+    //control parameter, Y (added by JTC) max ingestion rate
+    protected LinkParamTable linkParams = new LinkParamTable();
 
     //10/28/14, jtc, added default node param fields to simplify retrieval
-    protected double dfltK;
-    protected double dfltR;
-    protected double dfltX;
+    protected final double[] dfltNodeParams = new double[NodeParam.values().length];
     
     /**
      * @param name
@@ -103,19 +103,17 @@ public class SpeciesZoneType {
                 ? SpeciesTypeEnum.ANIMAL : SpeciesTypeEnum.PLANT;
         //5/6/14, JTC, previously only set for animals, but used by plants too
         //if (this.type == SpeciesTypeEnum.ANIMAL) {
-        this.paramX = speciesType.getMetabolism();
+        setParamX(speciesType.getMetabolism());
         //}
         //5/6/14, JTC, added
         if (this.type == SpeciesTypeEnum.PLANT) {
             //JTC, not valid in current game environment as paramK controlled by 
             //zone carrying capacity.
             //JTC, 12/1/14, need this set for simulation experiments!!
-            this.paramK = speciesType.getCarryingCapacity();
-            this.paramR = speciesType.getGrowthRate();
+            setParamK(speciesType.getCarryingCapacity());
+            setParamR(speciesType.getGrowthRate());
         }
-        this.dfltK = paramK;
-        this.dfltR = paramR;
-        this.dfltX = paramX;
+        System.arraycopy(nodeParams, 0, dfltNodeParams, 0, nodeParams.length);
 
         this.speciesCount = calcSpeciesCount();
     }
@@ -138,19 +136,10 @@ public class SpeciesZoneType {
         this.biomassUpdated = sourceSZT.biomassUpdated;
         this.paramUpdated = sourceSZT.paramUpdated;
         this.speciesType = sourceSZT.speciesType;
-        this.paramK = sourceSZT.paramK;  // carrying capacity (plants only)
-        this.paramR = sourceSZT.paramR;  // growth rate (plants only)
-        this.paramX = sourceSZT.paramX;  // metabolic rate   
-    /* not currently used
-         this.paramE = new ArrayList<ParamValue>();;  // assimilation efficiency
-         this.paramD = new ArrayList<ParamValue>();;  // predator interference     
-         this.paramQ = new ArrayList<ParamValue>();;  // functional response control parameter      
-         this.paramA = new ArrayList<ParamValue>();;  // relative half saturation density
-         this.paramY = new ArrayList<ParamValue>();;  // max ingestion rate
-         */
-        this.dfltK = sourceSZT.dfltK;
-        this.dfltR = sourceSZT.dfltR;
-        this.dfltX = sourceSZT.dfltX;
+        System.arraycopy(sourceSZT.nodeParams, 0, nodeParams, 0, nodeParams.length);
+        //link parameters not currently used (not copied)
+        System.arraycopy(sourceSZT.dfltNodeParams, 0, dfltNodeParams, 0,
+                dfltNodeParams.length);
     }
 
     /**
@@ -335,11 +324,11 @@ public class SpeciesZoneType {
     }
 
     public double getParamK() {
-        return paramK;
+        return nodeParams[NodeParam.K.ordinal()];
     }
 
     public void setParamK(double paramK) {
-        this.paramK = paramK;
+        nodeParams[NodeParam.K.ordinal()] = paramK;
     }
 
     /**
@@ -349,20 +338,20 @@ public class SpeciesZoneType {
      */
     public void resetParamK() {
         if (type == SpeciesTypeEnum.PLANT) {
-            paramK = speciesType.getCarryingCapacity();
+            setParamK(speciesType.getCarryingCapacity());
         } else {
-            paramK = Constants.PARAM_INITVALUE;
+            setParamK(Constants.PARAM_INITVALUE);
         }
     }
 
     public double getParamR() {
-        return paramR;
+        return nodeParams[NodeParam.R.ordinal()];
     }
 
     //5/6/14, JTC, added check for validity
     public void setParamR(double paramR) {
 //        if (paramR <= 1.0) {   //9/29/14, JTC, commented out; not normalized
-        this.paramR = paramR;
+        nodeParams[NodeParam.R.ordinal()] = paramR;
 //        }
     }
 
@@ -371,20 +360,20 @@ public class SpeciesZoneType {
      */
     public void resetParamR() {
         if (type == SpeciesTypeEnum.PLANT) {
-            paramR = speciesType.getGrowthRate();
+            setParamR(speciesType.getGrowthRate());
         } else {
-            paramR = Constants.PARAM_INITVALUE;
+            setParamR(Constants.PARAM_INITVALUE);
         }
     }
 
     public double getParamX() {
-        return paramX;
+        return nodeParams[NodeParam.X.ordinal()];
     }
 
     //5/6/14, JTC, added check for validity
     public void setParamX(double paramX) {
 //        if (paramX <= 1.0) {   //9/29/14, JTC, commented out; not normalized??
-        this.paramX = paramX;
+        nodeParams[NodeParam.X.ordinal()] = paramX;
 //        }
     }
 
@@ -392,194 +381,149 @@ public class SpeciesZoneType {
      * Resets paramX to value stored in Species table. 5/6/14, JTC
      */
     public void resetParamX() {
-        paramX = speciesType.getMetabolism();
+        setParamX(speciesType.getMetabolism());
+    }
+
+    /**
+     * get value of node parameter; Constants.PARAM_INITVALUE if not assigned.
+     *
+     * @param param
+     * @return parameter value
+     */
+    public double getParam(NodeParam param) {
+        return nodeParams[param.ordinal()];
+    }
+
+    public void setParam(NodeParam param, double value) {
+        nodeParams[param.ordinal()] = value;
     }
 
+    //value of node parameter when created (from species table)
+    public double getDfltParam(NodeParam param) {
+        return dfltNodeParams[param.ordinal()];
+    }
+
+    /*
+     Link parameters.  getParamX() returns a copy of the values set for X and
+     setParamX(list) replaces them; setParamX(pv) sets the value for one prey
+     (replacing any earlier one), and getParamX(preyIdx) returns null if none
+     is set.  4/5/2014, JTC (table storage replaces the per-parameter lists).
+     */
     public List<ParamValue> getParamA() {
-        return paramA;
+        return linkParams.toList(LinkParam.A);
     }
 
     public void setParamA(List<ParamValue> paramA) {
-        this.paramA = paramA;
+        linkParams.setAll(LinkParam.A, paramA);
     }
 
     public ParamValue getParamA(int preyIdx) {
-        if (paramA == null) {
-            return null;
-        }
+        return linkParams.getParamValue(preyIdx, LinkParam.A);
+    }
 
-        for (ParamValue val : paramA) {
-            if (val.getPreyIdx() == preyIdx) {
-                return val;
-            }
-        }
-        return null;
+    public void setParamA(ParamValue pv) {
+        linkParams.set(pv.getPreyIdx(), LinkParam.A, pv.getParamValue());
     }
 
     public List<ParamValue> getParamD() {
-        return paramD;
+        return linkParams.toList(LinkParam.D);
     }
 
     public void setParamD(List<ParamValue> paramD) {
-        this.paramD = paramD;
+        linkParams.setAll(LinkParam.D, paramD);
     }
 
     public ParamValue getParamD(int preyIdx) {
-        if (paramD == null) {
-            return null;
-        }
+        return linkParams.getParamValue(preyIdx, LinkParam.D);
+    }
 
-        for (ParamValue val : paramD) {
-            if (val.getPreyIdx() == preyIdx) {
-                return val;
-            }
-        }
-        return null;
+    public void setParamD(ParamValue pv) {
+        linkParams.set(pv.getPreyIdx(), LinkParam.D, pv.getParamValue());
     }
-    
+
     public List<ParamValue> getParamB0() {
-        return paramB0;
+        return linkParams.toList(LinkParam.B0);
     }
 
     public void setParamB0(List<ParamValue> paramB0) {
-        this.paramB0 = paramB0;
+        linkParams.setAll(LinkParam.B0, paramB0);
     }
-    
+
     public ParamValue getParamB0(int preyIdx) {
-        if (paramB0 == null) {
-            return null;
-        }
+        return linkParams.getParamValue(preyIdx, LinkParam.B0);
+    }
 
-        for (ParamValue val : paramB0) {
-            if (val.getPreyIdx() == preyIdx) {
-                return val;
-            }
-        }
-        return null;
+    public void setParamB0(ParamValue pv) {
+        linkParams.set(pv.getPreyIdx(), LinkParam.B0, pv.getParamValue());
     }
 
     public List<ParamValue> getParamE() {
-        return paramE;
+        return linkParams.toList(LinkParam.E);
     }
 
-    public ParamValue getParamE(int preyIdx) {
-        if (paramE == null) {
-            return null;
-        }
+    public void setParamE(List<ParamValue> paramE) {
+        linkParams.setAll(LinkParam.E, paramE);
+    }
 
-        for (ParamValue val : paramE) {
-            if (val.getPreyIdx() == preyIdx) {
-                return val;
-            }
-        }
-        return null;
+    public ParamValue getParamE(int preyIdx) {
+        return linkParams.getParamValue(preyIdx, LinkParam.E);
     }
 
-    public void setParamE(List<ParamValue> paramE) {
-        this.paramE = paramE;
+    public void setParamE(ParamValue pv) {
+        linkParams.set(pv.getPreyIdx(), LinkParam.E, pv.getParamValue());
     }
 
     public List<ParamValue> getParamQ() {
-        return paramQ;
+        return linkParams.toList(LinkParam.Q);
     }
 
     public void setParamQ(List<ParamValue> paramQ) {
-        this.paramQ = paramQ;
+        linkParams.setAll(LinkParam.Q, paramQ);
     }
 
     public ParamValue getParamQ(int preyIdx) {
-        if (paramQ == null) {
-            return null;
-        }
-
-        for (ParamValue val : paramQ) {
-            if (val.getPreyIdx() == preyIdx) {
-                return val;
-            }
-        }
-        return null;
+        return linkParams.getParamValue(preyIdx, LinkParam.Q);
     }
 
-    /**
-     * Add individual element to paramE list. 4/5/2014, JTC.
-     *
-     * @param pv
-     */
-    public void setParamE(ParamValue pv) {
-        this.paramE.add(pv);
+    public void setParamQ(ParamValue pv) {
+        linkParams.set(pv.getPreyIdx(), LinkParam.Q, pv.getParamValue());
     }
 
-    /**
-     * Add individual element to paramD list. 4/5/2014, JTC.
-     *
-     * @param pv
-     */
-    public void setParamD(ParamValue pv) {
-        this.paramD.add(pv);
+    public List<ParamValue> getParamY() {
+        return linkParams.toList(LinkParam.Y);
     }
 
-    /**
-     * Add individual element to paramB0 list. HJR
-     *
-     * @param pv
-     */
-    public void setParamB0(ParamValue pv) {
-        this.paramB0.add(pv);
-    }
-    
-    /**
-     * Add individual element to paramQ list. 4/5/2014, JTC.
-     *
-     * @param pv
-     */
-    public void setParamQ(ParamValue pv) {
-        this.paramQ.add(pv);
+    public void setParamY(List<ParamValue> paramY) {
+        linkParams.setAll(LinkParam.Y, paramY);
     }
 
-    /**
-     * Add individual element to paramA list. 4/5/2014, JTC.
-     *
-     * @param pv
-     */
-    public void setParamA(ParamValue pv) {
-        this.paramA.add(pv);
+    public ParamValue getParamY(int preyIdx) {
+        return linkParams.getParamValue(preyIdx, LinkParam.Y);
     }
 
-    /**
-     * Add individual element to paramY list. 4/5/2014, JTC.
-     *
-     * @param pv
-     */
     public void setParamY(ParamValue pv) {
-        this.paramY.add(pv);
+        linkParams.set(pv.getPreyIdx(), LinkParam.Y, pv.getParamValue());
     }
 
-    /**
-     * Getter for ParamY. 4/5/2014, JTC
-     *
-     * @return list of ParamValue objects
+    /*
+     Link parameters by row, without building ParamValue lists: prey rows are
+     numbered 0 to getLinkPreyCnt() - 1, in order of first use.
      */
-    public List<ParamValue> getParamY() {
-        return paramY;
+    public int getLinkPreyCnt() {
+        return linkParams.size();
     }
 
-    /**
-     * Getter for ParamY for particular prey species. 4/5/2014, JTC
-     *
-     * @param preyIdx
-     * @return
-     */
-    public ParamValue getParamY(int preyIdx) {
-        if (paramY == null) {
-            return null;
-        }
+    public int getLinkPrey(int row) {
+        return linkParams.getPrey(row);
+    }
 
-        for (ParamValue val : paramY) {
-            if (val.getPreyIdx() == preyIdx) {
-                return val;
-            }
-        }
-        return null;
+    //value of param for prey row; NaN if not set
+    public double getLinkParam(int row, LinkParam param) {
+        return linkParams.get(row, param);
+    }
+
+    public void setLinkParam(int preyIdx, LinkParam param, double value) {
+        linkParams.set(preyIdx, param, value);
     }
 
     /**
@@ -606,84 +550,18 @@ public class SpeciesZoneType {
         return speciesType.getID();
     }
     
-    /**
-     * get parameter value for specified node parameter field. Created to
-     * facilitate getting of multiple node parameter types. 4/22/14, JTC Used in
-     * Sim_Job environment.
-     *
-     * @param fldName
-     * @return parameter value (double)
-     * @throws NoSuchFieldException
-     * @throws IllegalArgumentException
-     * @throws IllegalAccessException
-     */
-    public double getParamValue(String fldName)
-            throws NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
-        return (Double) SpeciesZoneType.class.getDeclaredField(fldName).get(this);
-    }
-
-    /**
-     * set parameter value for specified node parameter field. Created to
-     * facilitate setting of multiple node parameter types. 4/22/14, JTC Used in
-     * Sim_Job environment.
-     *
-     * @param fldName
-     * @param value
-     * @throws NoSuchFieldException
-     * @throws IllegalArgumentException
-     * @throws IllegalAccessException
-     */
-    public void setParamValue(String fldName, double value)
-            throws NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
-        SpeciesZoneType.class.getDeclaredField(fldName).set(this, value);
-    }
-
-    /**
-     * get parameter value list for specified link parameter field. Created to
-     * facilitate getting of multiple link parameter types. 4/22/14, JTC Used in
-     * Sim_Job environment.
-     *
-     * @param fldName
-     * @return List of ParamValue objects
-     * @throws NoSuchFieldException
-     * @throws IllegalArgumentException
-     * @throws IllegalAccessException
-     */
-    public List<ParamValue> getParamList(String fldName)
-            throws NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
-        return (List<ParamValue>) SpeciesZoneType.class.getDeclaredField(fldName).get(this);
-    }
-
-    /**
-     * add parameter list entry to specified link parameter field. Created to
-     * facilitate setting of multiple link parameter types. 4/22/14, JTC Used in
-     * Sim_Job environment.
-     *
-     * @param fldName
-     * @param paramValue
-     * @throws NoSuchFieldException
-     * @throws IllegalArgumentException
-     * @throws IllegalAccessException
-     */
-    public void addParamListEntry(String fldName, ParamValue paramValue)
-            throws NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
-        List<ParamValue> listPtr;
-        listPtr = (List<ParamValue>) SpeciesZoneType.class.getDeclaredField(fldName).get(this);
-        boolean add = listPtr.add(paramValue);
-    }
-
     //getter for dfltK
     public double getDfltK() {
-        return dfltK;
+        return getDfltParam(NodeParam.K);
     }
 
     //getter for dfltR
     public double getDfltR() {
-        return dfltR;
+        return getDfltParam(NodeParam.R);
     }
 
     //getter for dfltX
     public double getDfltX() {
-        return dfltX;
+        return getDfltParam(NodeParam.X);
     }
 }
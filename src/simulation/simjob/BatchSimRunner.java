@@ -0,0 +1,426 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package simulation.simjob;
+
+import core.GameServer;
+import db.SimJobDAO;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import metadata.Constants;
+import model.SpeciesType;
+
+/**
+ * Headless runner for batches of sim_job entries (the work FormBatchSim used
+ * to do one job at a time on the Swing thread).  Job IDs are shared by a
+ * pool of worker threads; each worker owns its SimJobManager, and with it
+ * its ATNEngine, for the whole batch, so engines are never shared between
+ * threads.  Topology (TopologyCache), the food web and species data are
+ * shared read only.
+ *
+ * Before running a job a worker claims it in sim_job (SimJobDAO.claimJob),
+ * so several runners, on one or more hosts, can work through the same job
+ * list.  A job only counts as processed once its results are saved, so
+ * after a crash the same command simply picks up the jobs that are left;
+ * claims held by the crashed run expire after the lease time (or are
+ * ignored with --reclaim).
+ *
+ * Command line:
+ *   BatchSimRunner [--all | --range start end | --jobs id,id,...]
+ *                  [--threads n] [--lease-minutes m] [--reclaim]
+ *                  [--progress-seconds s]
+ * Exits with status 1 if any job failed or was left unstarted by a shutdown.
+ */
+public class BatchSimRunner {
+
+    public static final int DFLT_LEASE_MINUTES = 60;
+    public static final int DFLT_PROGRESS_SECONDS = 30;
+    private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss";
+    //later than any claim
+    private static final String MAX_TIMESTAMP = "9999-12-31 23:59:59";
+
+    /**
+     * Outcome of a batch.  Job ID lists are in completion order.
+     */
+    public static final class Result {
+
+        private final List<Integer> processed;
+        private final List<Integer> failed;
+        private final List<Integer> skipped;
+        private final List<Integer> unstarted;
+        private final long elapsedMillis;
+
+        private Result(List<Integer> processed, List<Integer> failed,
+                List<Integer> skipped, List<Integer> unstarted, long elapsedMillis) {
+            this.processed = Collections.unmodifiableList(processed);
+            this.failed = Collections.unmodifiableList(failed);
+            this.skipped = Collections.unmodifiableList(skipped);
+            this.unstarted = Collections.unmodifiableList(unstarted);
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public List<Integer> getProcessed() {
+            return processed;
+        }
+
+        public List<Integer> getFailed() {
+            return failed;
+        }
+
+        //claimed by another runner, or already processed
+        public List<Integer> getSkipped() {
+            return skipped;
+        }
+
+        //not run because of shutdown(); still unprocessed and unclaimed
+        public List<Integer> getUnstarted() {
+            return unstarted;
+        }
+
+        //every job was processed, failed or skipped
+        public boolean isComplete() {
+            return unstarted.isEmpty();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        //processed jobs per minute
+        public double getThroughput() {
+            return elapsedMillis == 0 ? 0.0
+                    : processed.size() * 60000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d processed, %d failed, %d skipped, %d unstarted "
+                    + "in %.1f s (%.1f jobs/min)", processed.size(), failed.size(),
+                    skipped.size(), unstarted.size(), elapsedMillis / 1000.0,
+                    getThroughput());
+        }
+    }
+
+    private final int threads;
+    private int leaseMinutes = DFLT_LEASE_MINUTES;
+    private boolean reclaim = false;
+    private int progressSeconds = DFLT_PROGRESS_SECONDS;
+
+    private final AtomicBoolean stopping = new AtomicBoolean(false);
+
+    /**
+     * @param threads number of worker threads; 0 for one per processor
+     */
+    public BatchSimRunner(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Negative thread count " + threads);
+        }
+        this.threads = threads == 0
+                ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    //claims older than this are taken over; should exceed the longest job
+    public void setLeaseMinutes(int leaseMinutes) {
+        this.leaseMinutes = leaseMinutes;
+    }
+
+    //ignore existing claims (e.g. restarting the only runner after a crash)
+    public void setReclaim(boolean reclaim) {
+        this.reclaim = reclaim;
+    }
+
+    //0 disables progress reports
+    public void setProgressSeconds(int progressSeconds) {
+        this.progressSeconds = progressSeconds;
+    }
+
+    /**
+     * Run the unprocessed jobs selected as by SimJobDAO.getUnprocessedJobIds.
+     */
+    public Result runUnprocessed(boolean all, int start, int end,
+            String providedList) throws SQLException {
+        return run(SimJobDAO.getUnprocessedJobIds(all, start, end, providedList));
+    }
+
+    /**
+     * Run the given jobs and wait for them to finish (or for shutdown()).
+     *
+     * @param jobIds sim_job IDs, in the order they should be started
+     * @return Result
+     */
+    public Result run(List<Integer> jobIds) {
+        final ConcurrentLinkedQueue<Integer> queue
+                = new ConcurrentLinkedQueue<Integer>(jobIds);
+        final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> failed = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> skipped = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> unstarted = Collections.synchronizedList(new ArrayList<Integer>());
+        final int total = jobIds.size();
+        final long start = System.currentTimeMillis();
+        stopping.set(false);
+
+        System.out.printf("Batch simulations: %d jobs, %d threads\n", total, threads);
+        ExecutorService workers = Executors.newFixedThreadPool(threads,
+                namedThreads("batch-sim"));
+        ScheduledExecutorService reporter = null;
+        if (progressSeconds > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(namedThreads("batch-sim-progress"));
+            reporter.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    printProgress(total, processed.size(), failed.size(),
+                            skipped.size(), System.currentTimeMillis() - start);
+                }
+            }, progressSeconds, progressSeconds, TimeUnit.SECONDS);
+        }
+
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(workers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    work(queue, processed, failed, skipped, unstarted);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception ex) {
+                Logger.getLogger(BatchSimRunner.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        workers.shutdown();
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        //left in the queue by shutdown()
+        Integer jobId;
+        while ((jobId = queue.poll()) != null) {
+            unstarted.add(jobId);
+        }
+
+        Result result = new Result(new ArrayList<Integer>(processed),
+                new ArrayList<Integer>(failed), new ArrayList<Integer>(skipped),
+                new ArrayList<Integer>(unstarted), System.currentTimeMillis() - start);
+        System.out.printf("Batch simulations: %s\n", result);
+        return result;
+    }
+
+    /**
+     * Stop starting jobs.  Jobs already running are not interrupted and keep
+     * their claims until they finish, so no other runner can start them
+     * meanwhile; a job claimed but not yet started is released by its
+     * worker.  If the process exits before running jobs finish, their
+     * claims expire after the lease time.
+     */
+    public void shutdown() {
+        stopping.set(true);
+    }
+
+    //worker loop; the SimJobManager (and its engines) never leave this thread
+    private void work(ConcurrentLinkedQueue<Integer> queue, List<Integer> processed,
+            List<Integer> failed, List<Integer> skipped, List<Integer> unstarted) {
+        SimJobManager jobMgr = null;
+        Integer jobId;
+        while (!stopping.get() && (jobId = queue.poll()) != null) {
+            try {
+                if (!claim(jobId)) {
+                    skipped.add(jobId);
+                    continue;
+                }
+            } catch (SQLException ex) {
+                Logger.getLogger(BatchSimRunner.class.getName()).log(Level.SEVERE,
+                        "Job " + jobId + " could not be claimed", ex);
+                failed.add(jobId);
+                continue;
+            }
+            if (stopping.get()) {
+                //shut down while claiming; hand the job back unstarted
+                try {
+                    release(jobId);
+                } catch (SQLException ex) {
+                    Logger.getLogger(BatchSimRunner.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                unstarted.add(jobId);
+                break;
+            }
+
+            boolean success = false;
+            try {
+                if (jobMgr == null) {
+                    jobMgr = new SimJobManager();
+                } else if (Constants.useSimEngine) {
+                    //9/25/14, JTC, unpredictable problems if new engine is not
+                    //created for each run
+                    jobMgr.newSimEngine();
+                }
+                success = runJob(jobMgr, jobId);
+            } catch (Exception ex) {
+                Logger.getLogger(BatchSimRunner.class.getName()).log(Level.SEVERE,
+                        "Job " + jobId + " failed", ex);
+            }
+
+            if (success) {
+                processed.add(jobId);
+            } else {
+                failed.add(jobId);
+                //a failed run saves the job unprocessed; make sure it is unclaimed
+                try {
+                    release(jobId);
+                } catch (SQLException ex) {
+                    Logger.getLogger(BatchSimRunner.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Load and run one claimed job.
+     *
+     * @return true if the job ran and was saved with its results
+     */
+    protected boolean runJob(SimJobManager jobMgr, int jobId) throws Exception {
+        boolean saveAsNew = false;  //want to load job with existing ID
+        SimJob job = SimJobDAO.loadJobNoHistory(jobId, saveAsNew);
+        if (job == null) {
+            return false;
+        }
+        jobMgr.setSimJob(job);
+        jobMgr.setStatus(Constants.STATUS_FAILURE);
+        jobMgr.runSimJob();
+        return jobMgr.getStatus() == Constants.STATUS_SUCCESS;
+    }
+
+    protected boolean claim(int jobId) throws SQLException {
+        SimpleDateFormat format = new SimpleDateFormat(TIMESTAMP_FORMAT);
+        long now = System.currentTimeMillis();
+        String staleBefore = reclaim ? MAX_TIMESTAMP
+                : format.format(new Date(now - leaseMinutes * 60000L));
+        return SimJobDAO.claimJob(jobId, format.format(new Date(now)), staleBefore);
+    }
+
+    protected void release(int jobId) throws SQLException {
+        SimJobDAO.releaseJob(jobId);
+    }
+
+    private static void printProgress(int total, int processed, int failed,
+            int skipped, long elapsedMillis) {
+        int done = processed + failed + skipped;
+        double perMinute = elapsedMillis == 0 ? 0.0 : done * 60000.0 / elapsedMillis;
+        String eta = perMinute == 0 ? "?"
+                : String.format("%.1f min", (total - done) / perMinute);
+        System.out.printf("Batch simulations: %d/%d done (%d failed, %d skipped), "
+                + "%.1f jobs/min, ETA %s\n", done, total, failed, skipped,
+                perMinute, eta);
+    }
+
+    private static ThreadFactory namedThreads(final String prefix) {
+        final AtomicInteger cnt = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + "-" + cnt.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    public static void main(String[] args) {
+        boolean all = false;
+        int start = -1, end = -1, threads = 0;
+        String jobList = "";
+        final BatchSimRunner runner;
+        int leaseMinutes = DFLT_LEASE_MINUTES, progressSeconds = DFLT_PROGRESS_SECONDS;
+        boolean reclaim = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--all")) {
+                    all = true;
+                } else if (args[i].equals("--range")) {
+                    start = Integer.parseInt(args[++i]);
+                    end = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--jobs")) {
+                    jobList = args[++i].trim();
+                } else if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--lease-minutes")) {
+                    leaseMinutes = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--progress-seconds")) {
+                    progressSeconds = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--reclaim")) {
+                    reclaim = true;
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException ex) {
+            System.err.println("Usage: BatchSimRunner [--all | --range start end | "
+                    + "--jobs id,id,...] [--threads n] [--lease-minutes m] "
+                    + "[--reclaim] [--progress-seconds s]");
+            System.exit(2);
+        }
+        if (!all && jobList.isEmpty() && (start <= 0 || end <= 0)) {
+            all = true;
+        }
+
+        GameServer.getInstance();  //load species information
+        /* read in experimental variables only used for running simulation jobs*/
+        SpeciesType.loadSimTestNodeParams(Constants.ECOSYSTEM_TYPE);
+        SpeciesType.loadSimTestLinkParams(Constants.ECOSYSTEM_TYPE);
+
+        runner = new BatchSimRunner(threads);
+        runner.setLeaseMinutes(leaseMinutes);
+        runner.setReclaim(reclaim);
+        runner.setProgressSeconds(progressSeconds);
+        //on Ctrl-C/kill, start no more jobs; claims on jobs cut short expire
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                runner.shutdown();
+            }
+        });
+
+        Result result;
+        try {
+            result = runner.runUnprocessed(all, start, end, jobList);
+        } catch (SQLException ex) {
+            Logger.getLogger(BatchSimRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+            return;
+        }
+        if (!result.getUnstarted().isEmpty()) {
+            System.out.println("Unstarted job ID(s): " + result.getUnstarted());
+        }
+        if (!result.getFailed().isEmpty()) {
+            System.out.println("Failed job ID(s): " + result.getFailed());
+        }
+        if (!result.getFailed().isEmpty() || !result.isComplete()) {
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+}
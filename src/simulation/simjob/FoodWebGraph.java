@@ -0,0 +1,197 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package simulation.simjob;
+
+import core.ServerResources;
+import db.ConsumeDAO;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import model.SpeciesType;
+
+/**
+ * Node-level predator/prey graph for one eco_type, built from the consume
+ * table and shared process-wide.  ConsumeMap is a view of the subgraph
+ * induced by an ecosystem's nodes, so individual simulations no longer
+ * query the consume table.
+ *
+ * Graphs are immutable and loaded once per eco_type on first use (the server
+ * preloads Constants.ECOSYSTEM_TYPE at startup); call reload() after the
+ * consume table changes.  As with the two ConsumeDAO queries, the prey
+ * lists only contain links whose prey belongs to the eco_type, and the
+ * predator lists only links whose predator does.
+ *
+ * @author justinacotter
+ */
+public final class FoodWebGraph {
+
+    private static final Map<Integer, FoodWebGraph> graphs
+            = new HashMap<Integer, FoodWebGraph>();
+
+    private final int ecoType;
+    private final int[] nodeIds;                //ascending
+    private final Map<Integer, Integer> nodeIdx;  //node ID -> index
+    private final BitSet[] prey;                //by index: prey of node
+    private final BitSet[] pred;                //by index: predators of node
+
+    /**
+     * Build a graph from node-level tables (no DB access).
+     *
+     * @param ecoType eco_type the tables belong to
+     * @param predToPrey predator node ID -> prey node IDs
+     * @param preyToPred prey node ID -> predator node IDs
+     */
+    public FoodWebGraph(int ecoType,
+            Map<Integer, ? extends Collection<Integer>> predToPrey,
+            Map<Integer, ? extends Collection<Integer>> preyToPred) {
+        this.ecoType = ecoType;
+
+        //every node mentioned in either table, in ID order
+        TreeSet<Integer> allNodes = new TreeSet<Integer>();
+        addNodes(allNodes, predToPrey);
+        addNodes(allNodes, preyToPred);
+        nodeIds = new int[allNodes.size()];
+        nodeIdx = new HashMap<Integer, Integer>();
+        int i = 0;
+        for (Integer nodeId : allNodes) {
+            nodeIds[i] = nodeId;
+            nodeIdx.put(nodeId, i);
+            i++;
+        }
+
+        prey = buildAdjacency(predToPrey);
+        pred = buildAdjacency(preyToPred);
+    }
+
+    private static void addNodes(TreeSet<Integer> allNodes,
+            Map<Integer, ? extends Collection<Integer>> table) {
+        for (Map.Entry<Integer, ? extends Collection<Integer>> entry : table.entrySet()) {
+            allNodes.add(entry.getKey());
+            allNodes.addAll(entry.getValue());
+        }
+    }
+
+    private BitSet[] buildAdjacency(Map<Integer, ? extends Collection<Integer>> table) {
+        BitSet[] adj = new BitSet[nodeIds.length];
+        for (int i = 0; i < adj.length; i++) {
+            adj[i] = new BitSet(nodeIds.length);
+        }
+        for (Map.Entry<Integer, ? extends Collection<Integer>> entry : table.entrySet()) {
+            BitSet row = adj[nodeIdx.get(entry.getKey())];
+            for (Integer connId : entry.getValue()) {
+                row.set(nodeIdx.get(connId));
+            }
+        }
+        return adj;
+    }
+
+    /**
+     * Shared graph for eco_type, loaded from the consume table on first use.
+     *
+     * @param ecoType
+     * @return FoodWebGraph
+     * @throws SQLException
+     */
+    public static synchronized FoodWebGraph get(int ecoType) throws SQLException {
+        FoodWebGraph graph = graphs.get(ecoType);
+        if (graph == null) {
+            graph = load(ecoType);
+            graphs.put(ecoType, graph);
+        }
+        return graph;
+    }
+
+    /**
+     * Replace the shared graph for eco_type with a fresh copy of the consume
+     * table.  ConsumeMaps already created keep the graph they were built on.
+     *
+     * @param ecoType
+     * @return FoodWebGraph
+     * @throws SQLException
+     */
+    public static synchronized FoodWebGraph reload(int ecoType) throws SQLException {
+        FoodWebGraph graph = load(ecoType);
+        graphs.put(ecoType, graph);
+        return graph;
+    }
+
+    private static FoodWebGraph load(int ecoType) throws SQLException {
+        return new FoodWebGraph(ecoType,
+                convertSpeciesToNodes(ConsumeDAO.getPredatorToPreyTable(ecoType)),
+                convertSpeciesToNodes(ConsumeDAO.getPreyToPredatorTable(ecoType)));
+    }
+
+    /*
+     Given map of species and list of connected species, convert to map of nodes
+     and connected nodes.  SpeciesType.getNodeIDs() should return a single
+     node for species in the consume table (see ConsumeMap history); if
+     several species share a node, their connections are merged.
+     */
+    private static Map<Integer, TreeSet<Integer>> convertSpeciesToNodes(
+            Map<Integer, List<Integer>> speciesTable) {
+        Map<Integer, TreeSet<Integer>> nodeTable = new HashMap<Integer, TreeSet<Integer>>();
+
+        for (Map.Entry<Integer, List<Integer>> speciesEntry : speciesTable.entrySet()) {
+            SpeciesType idxST = ServerResources.getSpeciesTable().getSpecies(speciesEntry.getKey());
+
+            //build set of connected nodes from list of connected species
+            TreeSet<Integer> connNodes = new TreeSet<Integer>();
+            for (Integer connSpeciesId : speciesEntry.getValue()) {
+                SpeciesType connST = ServerResources.getSpeciesTable().getSpecies(connSpeciesId);
+                for (int nodeId : connST.getNodeIDs()) {
+                    connNodes.add(nodeId);
+                }
+            }
+
+            for (int nodeId : idxST.getNodeIDs()) {
+                TreeSet<Integer> nodeConns = nodeTable.get(nodeId);
+                if (nodeConns == null) {
+                    nodeTable.put(nodeId, new TreeSet<Integer>(connNodes));
+                } else {
+                    nodeConns.addAll(connNodes);
+                }
+            }
+        }
+
+        return nodeTable;
+    }
+
+    public int getEcoType() {
+        return ecoType;
+    }
+
+    public int getNodeCnt() {
+        return nodeIds.length;
+    }
+
+    //index of node in graph; -1 if node has no predator/prey links at all
+    public int getNodeIndex(int nodeId) {
+        Integer idx = nodeIdx.get(nodeId);
+        return idx == null ? -1 : idx;
+    }
+
+    public int getNodeId(int idx) {
+        return nodeIds[idx];
+    }
+
+    public int[] getNodeIds() {
+        return Arrays.copyOf(nodeIds, nodeIds.length);
+    }
+
+    //prey/predators of node at idx, as graph indices; not to be modified
+    BitSet getPrey(int idx) {
+        return prey[idx];
+    }
+
+    BitSet getPred(int idx) {
+        return pred[idx];
+    }
+}
@@ -5,13 +5,13 @@
  */
 package simulation.simjob;
 
-import db.SimJobDAO;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JOptionPane;
-import simulation.SimulationException;
+import javax.swing.SwingWorker;
 
 /**
  *
@@ -226,77 +226,66 @@ public class FormBatchSim extends javax.swing.JDialog {
     private void jButton1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton1ActionPerformed
         // TODO add your handling code here:
         System.out.println("You pressed Continue in Run Batch Simulations");
-        List<Integer> jobIds = null;
-        String processedJobs = "";
-        String failedJobs = "";
         setVisible(false);
 
-        try {
-            //determine scope of batch job
-            int start = jTextField1.getText().isEmpty() ? -1
-                    : Integer.parseInt(jTextField1.getText().trim());
-            int end = jTextField2.getText().isEmpty() ? -1
-                    : Integer.parseInt(jTextField2.getText().trim());
-            jobIds = SimJobDAO.getUnprocessedJobIds(jRadioButton1.isSelected(),
-                    start, end, jTextArea2.getText().trim());   //fld3 = List of job IDs
-            if (jobIds.size() > 0) {
-                int lastJob = jobIds.get(jobIds.size() - 1);
-
-                //process jobs
-                boolean saveAsNew = false;  //want to load job with existing ID
-                for (Integer job_id : jobIds) {
-                    SimJobManager jobMgr = new SimJobManager();
-                    SimJob currJob = SimJobDAO.loadJobNoHistory(job_id, saveAsNew);
-                    jobMgr.setSimJob(currJob);
-
-                    try {
-                        jobMgr.runSimJob();
-                        processedJobs = processedJobs.concat(String.format("%s%d",
-                                (processedJobs.isEmpty() ? "" : ", "), job_id));
-                    } catch (SimulationException ex) {
-                        failedJobs = failedJobs.concat(String.format("%s%d",
-                                (failedJobs.isEmpty() ? "" : ", "), job_id));
-                    }
-                    if (job_id != lastJob) {
-
-                        /*
-                         try {
-                         Thread.sleep(60000);
-                         } catch (InterruptedException ex) {
-                         Logger.getLogger(SimJobManager.class.getName()).log(Level.SEVERE, null, ex);
-                         }
-                         */
-                    //9/25/14, JTC, unpredictable problems if new engine is not
-                        //created for each run
-                        jobMgr.newSimEngine();
+        //determine scope of batch job
+        final boolean all = jRadioButton1.isSelected();
+        final int start = jTextField1.getText().isEmpty() ? -1
+                : Integer.parseInt(jTextField1.getText().trim());
+        final int end = jTextField2.getText().isEmpty() ? -1
+                : Integer.parseInt(jTextField2.getText().trim());
+        final String jobList = jTextArea2.getText().trim();   //fld3 = List of job IDs
+
+        //process jobs in parallel, off the event dispatch thread
+        new SwingWorker<BatchSimRunner.Result, Void>() {
+            @Override
+            protected BatchSimRunner.Result doInBackground() throws SQLException {
+                return new BatchSimRunner(0).runUnprocessed(all, start, end, jobList);
+            }
+
+            @Override
+            protected void done() {
+                String results = "";
+                try {
+                    BatchSimRunner.Result result = get();
+                    if (result.getProcessed().isEmpty() && result.getFailed().isEmpty()
+                            && result.getSkipped().isEmpty() && result.isComplete()) {
+                        results = "No simulations jobs found to process.";
+                    } else {
+                        if (!result.getFailed().isEmpty()) {
+                            results = "Batch simulations failed for job ID(s): "
+                                    + joinIds(result.getFailed()) + ".";
+                        }
+                        if (!result.getProcessed().isEmpty()) {
+                            results = results.concat(
+                                    "  Batch simulations completed for job ID(s): "
+                                    + joinIds(result.getProcessed()) + ".");
+                        }
+                        results = results.concat("  (" + result + ")");
                     }
+                } catch (InterruptedException | ExecutionException ex) {
+                    Logger.getLogger(FormBatchSim.class.getName()).log(Level.SEVERE, null, ex);
+                    results = "Batch simulations could not be run: " + ex.getMessage();
                 }
-            }
-        } catch (SQLException ex) {
-            Logger.getLogger(FormBatchSim.class.getName()).log(Level.SEVERE, null, ex);
-        }
 
-        String results = "";
-        if (jobIds.isEmpty()) {
-            results = "No simulations jobs found to process.";
-        } else {
-            if (!failedJobs.isEmpty()) {
-                results = "Batch simulations failed for job ID(s): " + failedJobs + ".";
+                System.out.println(results);
+                JOptionPane.showMessageDialog(null, results,
+                        "Batch Simulations", JOptionPane.INFORMATION_MESSAGE);
+                dispose();
             }
-            if (!processedJobs.isEmpty()) {
-                results = results.concat(
-                        "  Batch simulations completed for job ID(s): "
-                        + processedJobs + ".");
-            }
-        }
-
-        System.out.println(results);
-        JOptionPane.showMessageDialog(null, results,
-                "Batch Simulations", JOptionPane.INFORMATION_MESSAGE);
-        dispose();
+        }.execute();
 
     }//GEN-LAST:event_jButton1ActionPerformed
 
+    //"1, 2, 3"
+    private static String joinIds(List<Integer> jobIds) {
+        StringBuilder sb = new StringBuilder();
+        for (Integer jobId : jobIds) {
+            sb.append(sb.length() == 0 ? "" : ", ").append(jobId);
+        }
+        return sb.toString();
+    }
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.ButtonGroup buttonGroup1;
     private javax.swing.JButton jButton1;
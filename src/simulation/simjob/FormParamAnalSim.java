@@ -5,14 +5,19 @@
  */
 package simulation.simjob;
 
+import atn.ParamSweep;
 import db.SimJobDAO;
+import java.io.File;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
 import metadata.Constants;
 import simulation.SpeciesZoneType;
+import simulation.SpeciesZoneType.NodeParam;
 
 /**
  * CustomSimForm is a JFrame form created by NetBeans GUI builder. It Allows a
@@ -32,6 +37,8 @@ public class FormParamAnalSim extends javax.swing.JFrame {
     private final SimJobManager jobMgr;
     private String jobStr;
     private int firstJob = SimJob.NO_ID;
+    //variations are run in memory if set, else saved as sim_jobs
+    private ParamSweep sweep = null;
 
     public FormParamAnalSim() {
         jobMgr = new SimJobManager();
@@ -627,6 +634,9 @@ public class FormParamAnalSim extends javax.swing.JFrame {
             updateJobFromFields(job);
             repaint();
 
+            if (!chooseSweep()) {
+                return;
+            }
             setVisible(false);
 
             try {
@@ -742,6 +752,47 @@ public class FormParamAnalSim extends javax.swing.JFrame {
         }
     }
 
+    /*
+     Ask whether to save a sim_job per variation or to run them in memory
+     (ParamSweep) and save only a summary job.  Returns false if cancelled.
+     */
+    private boolean chooseSweep() {
+        Object[] options = {"Save Sim Jobs", "Run Sweep"};
+        int choice = JOptionPane.showOptionDialog(null,
+                "\nSave a sim job for each variation, or run the variations now\n"
+                + "and save a single summary job?\n",
+                "Parameter Analysis Simulation", JOptionPane.DEFAULT_OPTION,
+                JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+        if (choice < 0) {
+            return false;
+        }
+        sweep = null;
+        if (choice == 0) {
+            return true;
+        }
+
+        ParamSweep.Sampling sampling = (ParamSweep.Sampling) JOptionPane.showInputDialog(
+                null, "\nHow should variations be chosen?\n", "Parameter Sweep",
+                JOptionPane.QUESTION_MESSAGE, null, ParamSweep.Sampling.values(),
+                ParamSweep.Sampling.ONE_AT_A_TIME);
+        if (sampling == null) {
+            return false;
+        }
+        sweep = new ParamSweep(sampling, 0);
+        if (sampling == ParamSweep.Sampling.RANDOM
+                || sampling == ParamSweep.Sampling.LATIN_HYPERCUBE) {
+            String samples = JOptionPane.showInputDialog(null,
+                    "\nNumber of variations:\n", ParamSweep.DFLT_SAMPLES);
+            if (samples == null) {
+                return false;
+            }
+            if (!samples.trim().isEmpty()) {
+                sweep.setSamples(Integer.parseInt(samples.trim()));
+            }
+        }
+        return true;
+    }
+
     private void createParamAnalSimJobs(SimJob job) throws SQLException {
         List<SpeciesZoneType> sztList = job.getSpeciesZoneList();
         int jobId = SimJob.NO_ID;
@@ -825,7 +876,9 @@ public class FormParamAnalSim extends javax.swing.JFrame {
                 }
             }
         }
-        if (jobId != SimJob.NO_ID) {
+        if (sweep != null) {
+            runSweep(job);
+        } else if (jobId != SimJob.NO_ID) {
             int jobCnt = jobId - firstJob + 1;
             System.out.printf("Parameter Analysis Simulations - created job IDs %d-%d (%d jobs)\n", 
                     firstJob, jobId, jobCnt);
@@ -835,34 +888,63 @@ public class FormParamAnalSim extends javax.swing.JFrame {
         }
     }
 
+    //run the sweep's variations off the event dispatch thread; results go to
+    //a CSV file, and only a summary job is saved
+    private void runSweep(final SimJob sourceJob) {
+        final ParamSweep paramSweep = sweep;
+        final File resultsFile = new File(Constants.ATN_CSV_SAVE_PATH, String.format(
+                "sweep_%s_%d.csv", jobStr.trim(), System.currentTimeMillis()));
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() throws SQLException {
+                ParamSweep.Summary summary = paramSweep.run(sourceJob, resultsFile);
+                int jobId = ParamSweep.saveSummaryJob(sourceJob, summary);
+                return summary + ".  Results in " + resultsFile.getPath()
+                        + (jobId == SimJob.NO_ID ? "; no summary job saved."
+                                : "; summary job ID " + jobId + ".");
+            }
+
+            @Override
+            protected void done() {
+                String results;
+                try {
+                    results = get();
+                } catch (InterruptedException | ExecutionException ex) {
+                    Logger.getLogger(FormParamAnalSim.class.getName()).log(Level.SEVERE, null, ex);
+                    results = "Parameter sweep could not be run: " + ex.getMessage();
+                }
+                System.out.println(results);
+                JOptionPane.showMessageDialog(null, results,
+                        "Parameter Sweep", JOptionPane.INFORMATION_MESSAGE);
+            }
+        }.execute();
+    }
+
     //for given node/parameter, create multiple simulation jobs that vary parameter
-    //value from min to max by intvl.
+    //value from min to max by intvl (or add the variation to the sweep).
     private int createJobs(SimJob sourceJob, int paramNode, String paramID,
             double paramMin, double paramMax, String paramIntvlStr) throws SQLException {
         int lastJob = SimJob.NO_ID;
 
+        if (sweep != null) {
+            if (!paramIntvlStr.isEmpty() && paramMin <= paramMax) {
+                sweep.addDimension(paramNode, NodeParam.valueOf(paramID), paramMin,
+                        paramMax, Double.valueOf(paramIntvlStr));
+            }
+            return lastJob;
+        }
+
         //don't process if no interval or min or max are specified.
         if (!paramIntvlStr.isEmpty()) {
             double paramIntvl = Double.valueOf(paramIntvlStr);
-            String paramFldName = SimJob.FLD_PREFIX + paramID;
-            String dfltFldName = SimJob.FLD_PREFIX_DFLT + paramID;
+            NodeParam param = NodeParam.valueOf(paramID);
 
             //obtain data about this species' dflt parameter settings.
             SimJobSZT szt = sourceJob.getSpeciesZoneByNodeId(paramNode);
-            double dfltVal = 0.0;
-            try {
-                dfltVal = szt.getParamValue(dfltFldName);;
-            } catch (Exception ex) {
-                Logger.getLogger(FormParamAnalSim.class.getName()).log(Level.SEVERE, null, ex);
-            }
+            double dfltVal = szt.getDfltParam(param);
 
             //goal is based on source job configuration
-            double goalVal = dfltVal;
-            try {
-                goalVal = szt.getParamValue(paramFldName);
-            } catch (Exception ex) {
-                Logger.getLogger(FormParamAnalSim.class.getName()).log(Level.SEVERE, null, ex);
-            }
+            double goalVal = szt.getParam(param);
 
             //loop through all requested values of the parameter, creating unique 
             //sim jobs for each
@@ -878,11 +960,7 @@ public class FormParamAnalSim extends javax.swing.JFrame {
                 newJob.setJob_Descript(String.format("%s,%s,%s,%.3f,%.3f,%.3f,%.3f,%.3f,%d",
                         sourceJob.getJob_Descript(), paramNode, paramID, paramMin,
                         paramMax, paramIntvl, dfltVal, goalVal, iteration));
-                try {
-                    szt.setParamValue(paramFldName, val);
-                } catch (Exception ex) {
-                    Logger.getLogger(FormParamAnalSim.class.getName()).log(Level.SEVERE, null, ex);
-                }
+                szt.setParam(param, val);
 
                 //rebuild node configuration with updated szt value
                 try {
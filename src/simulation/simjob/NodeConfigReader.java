@@ -0,0 +1,266 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package simulation.simjob;
+
+/**
+ * Single-pass parser for the node_config field of sim_job (syntax: see
+ * SimJob).  A cursor walks the CharSequence once and numbers are parsed in
+ * place, so parsing is linear in the length of the config; the config is
+ * never cut into substrings except to hand an unusual number (exponent,
+ * more than 15 significant digits, ...) to Double.parseDouble.  Values are
+ * identical to Double.valueOf/Integer.valueOf of the corresponding token.
+ *
+ * Tolerates the same truncated configs as the previous substring parser: a
+ * config that ends after a node's per-unit biomass ends the node list, and
+ * a missing link parameter count counts as 0.  Malformed tokens throw
+ * NumberFormatException (an IllegalArgumentException, as are the other
+ * syntax errors).
+ */
+public class NodeConfigReader {
+
+    /**
+     * Receives the contents of a node_config, in order.  Parameter IDs are
+     * upper case; known IDs are passed as the constant used by SimJob.
+     */
+    public interface Handler {
+
+        void node(int nodeId, double biomass, double perUnitBiomass);
+
+        void nodeParam(String paramID, double value);
+
+        void linkParam(int preyId, String paramID, double value);
+    }
+
+    private static final SimJob.DfltParams[] PARAMS = SimJob.DfltParams.values();
+    //10^0..10^22 are exact doubles
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1.0;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10.0;
+        }
+    }
+
+    private final CharSequence config;
+    private final int len;
+    private int pos = 0;
+
+    public NodeConfigReader(CharSequence config) {
+        this.config = config;
+        this.len = config.length();
+    }
+
+    /**
+     * Parse the whole config.
+     *
+     * @return number of nodes read
+     */
+    public int parse(Handler handler) {
+        if (len == 0) {
+            return 0;
+        }
+        //"nodeCnt,"
+        int nodeCnt = nextInt();
+        int i = 0;
+        for (; i < nodeCnt; i++) {
+            //"[node_Id(i)],biomass(i),perUnitBiomass(i),"
+            int nodeId = nextBracketedInt();
+            double biomass = nextDouble();
+            double perUnitBiomass = nextDouble();
+            handler.node(nodeId, biomass, perUnitBiomass);
+            if (pos >= len) {
+                i++;
+                break;
+            }
+            //"paramCnt,paramID(j)=value(j),..."
+            int paramCnt = nextInt();
+            for (int j = 0; j < paramCnt; j++) {
+                String paramID = nextParamID();
+                handler.nodeParam(paramID, nextDouble());
+            }
+            //"linkParamCnt,[prey_Id(j)],paramID(j)=value(j),..."
+            int linkParamCnt = hasComma() ? nextInt() : skipToEnd();
+            for (int j = 0; j < linkParamCnt; j++) {
+                int preyId = nextBracketedInt();
+                String paramID = nextParamID();
+                handler.linkParam(preyId, paramID, nextDouble());
+            }
+        }
+        return i;
+    }
+
+    public boolean hasMore() {
+        return pos < len;
+    }
+
+    public int getPosition() {
+        return pos;
+    }
+
+    /**
+     * Integer up to the next comma (or the end), as Integer.valueOf; the
+     * comma is consumed.
+     */
+    public int nextInt() {
+        int start = pos;
+        int end = tokenEnd();
+        pos = end < len ? end + 1 : len;
+        return parseInt(start, end);
+    }
+
+    /**
+     * Double up to the next comma (or the end), as Double.valueOf; the comma
+     * is consumed.  Plain decimals ([sign]digits[.digits]) with at most 15
+     * significant digits are computed directly as mantissa / 10^n, which is
+     * correctly rounded since both operands are exact doubles; anything else
+     * goes to Double.parseDouble.
+     */
+    public double nextDouble() {
+        int start = pos;
+        int end = tokenEnd();
+        pos = end < len ? end + 1 : len;
+
+        int i = start;
+        boolean neg = false;
+        if (i < end && (config.charAt(i) == '-' || config.charAt(i) == '+')) {
+            neg = config.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fracDigits = 0;
+        boolean anyDigit = false;
+        boolean point = false;
+        for (; i < end; i++) {
+            char c = config.charAt(i);
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                //leading zeros don't count towards the 15
+                if (mantissa > 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (point) {
+                    fracDigits++;
+                }
+                if (digits > 15 || fracDigits >= POW10.length) {
+                    return Double.parseDouble(token(start, end));
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                return Double.parseDouble(token(start, end));
+            }
+        }
+        if (!anyDigit) {
+            return Double.parseDouble(token(start, end));
+        }
+        double value = fracDigits == 0 ? (double) mantissa : mantissa / POW10[fracDigits];
+        return neg ? -value : value;
+    }
+
+    /**
+     * Skip to the next '[' and read the integer up to ']'; the comma that
+     * follows is consumed.
+     */
+    public int nextBracketedInt() {
+        int open = indexOf('[', pos);
+        if (open < 0) {
+            throw syntaxError("'['", pos);
+        }
+        int close = indexOf(']', open + 1);
+        if (close < 0) {
+            throw syntaxError("']'", open + 1);
+        }
+        int comma = indexOf(',', close + 1);
+        pos = comma < 0 ? len : comma + 1;
+        return parseInt(open + 1, close);
+    }
+
+    /**
+     * Parameter ID up to the next '=', upper case; the '=' is consumed.  A
+     * known ID is returned as the DfltParams constant, without copying.
+     */
+    public String nextParamID() {
+        int eq = indexOf('=', pos);
+        if (eq < 0) {
+            throw syntaxError("'='", pos);
+        }
+        int start = pos;
+        pos = eq + 1;
+        for (SimJob.DfltParams p : PARAMS) {
+            String id = p.getParamID();
+            if (id.length() == eq - start && regionMatchesIgnoreCase(start, id)) {
+                return id;
+            }
+        }
+        return token(start, eq).toUpperCase();
+    }
+
+    private boolean regionMatchesIgnoreCase(int start, String id) {
+        for (int k = 0; k < id.length(); k++) {
+            if (Character.toUpperCase(config.charAt(start + k)) != id.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasComma() {
+        return indexOf(',', pos) >= 0;
+    }
+
+    private int skipToEnd() {
+        pos = len;
+        return 0;
+    }
+
+    private int tokenEnd() {
+        int end = indexOf(',', pos);
+        return end < 0 ? len : end;
+    }
+
+    private int indexOf(char c, int from) {
+        for (int i = from; i < len; i++) {
+            if (config.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //Integer.parseInt of the token; up to 9 digits cannot overflow
+    private int parseInt(int start, int end) {
+        int i = start;
+        boolean neg = false;
+        if (i < end && (config.charAt(i) == '-' || config.charAt(i) == '+')) {
+            neg = config.charAt(i) == '-';
+            i++;
+        }
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(token(start, end));
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int d = config.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return Integer.parseInt(token(start, end));
+            }
+            value = value * 10 + d;
+        }
+        return neg ? -value : value;
+    }
+
+    private String token(int start, int end) {
+        return config.subSequence(start, end).toString();
+    }
+
+    private IllegalArgumentException syntaxError(String expected, int at) {
+        return new IllegalArgumentException("node_config: expected " + expected
+                + " after position " + at);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package simulation.simjob;
+
+import java.util.Formatter;
+import java.util.Locale;
+
+/**
+ * Builds a node_config string (syntax: see SimJob) in a single StringBuilder.
+ * Output is character for character what SimJob.buildNodeConfig produced
+ * with String.format ("%d", "%.0f", "%.3f"), and is read back to the same
+ * values by NodeConfigReader.  Counts must be written before the entries
+ * they count; every token is followed by a comma, which toString() drops
+ * from the end.
+ *
+ * Values that are exact to the requested number of decimals (as rounded
+ * biomass and parameters are) are written directly from their scaled long
+ * value; anything else goes through Formatter.
+ */
+public class NodeConfigWriter {
+
+    private static final long[] POW10 = {1L, 10L, 100L, 1000L, 10000L,
+        100000L, 1000000L};
+    //below this, %.nf of a value exact to n decimals is its scaled value
+    private static final double MAX_DIRECT = 1.0E9;
+
+    private final StringBuilder sb;
+
+    public NodeConfigWriter() {
+        this(new StringBuilder(256));
+    }
+
+    public NodeConfigWriter(StringBuilder sb) {
+        this.sb = sb;
+    }
+
+    //"cnt," - node count, node parameter count or link parameter count
+    public NodeConfigWriter count(int cnt) {
+        sb.append(cnt).append(',');
+        return this;
+    }
+
+    //"[nodeId],biomass,perUnitBiomass,"; biomass to 0, per-unit to 3 decimals
+    public NodeConfigWriter node(int nodeId, double biomass, double perUnitBiomass) {
+        sb.append('[').append(nodeId).append("],");
+        appendFixed(sb, biomass, 0).append(',');
+        appendFixed(sb, perUnitBiomass, 3).append(',');
+        return this;
+    }
+
+    //"paramID=value,"
+    public NodeConfigWriter nodeParam(String paramID, double value) {
+        sb.append(paramID).append('=');
+        appendFixed(sb, value, 3).append(',');
+        return this;
+    }
+
+    //"[preyId],paramID=value,"
+    public NodeConfigWriter linkParam(int preyId, String paramID, double value) {
+        sb.append('[').append(preyId).append("],");
+        return nodeParam(paramID, value);
+    }
+
+    public int length() {
+        return sb.length();
+    }
+
+    //config so far, excluding the trailing comma
+    @Override
+    public String toString() {
+        int len = sb.length();
+        if (len > 0 && sb.charAt(len - 1) == ',') {
+            len--;
+        }
+        return sb.substring(0, len);
+    }
+
+    /**
+     * Append value as String.format(Locale.ROOT, "%.[decimals]f", value).
+     *
+     * @param decimals 0 to 6
+     * @return sb
+     */
+    public static StringBuilder appendFixed(StringBuilder sb, double value, int decimals) {
+        long scale = POW10[decimals];
+        if (Math.abs(value) < MAX_DIRECT) {
+            long scaled = Math.round(value * scale);
+            //exact to the given decimals, and not -0.0
+            if ((double) scaled / scale == value
+                    && (scaled != 0 || Double.doubleToRawLongBits(value) == 0L)) {
+                if (scaled < 0) {
+                    sb.append('-');
+                    scaled = -scaled;
+                }
+                sb.append(scaled / scale);
+                if (decimals > 0) {
+                    sb.append('.');
+                    long frac = scaled % scale;
+                    for (long p = scale / 10; p > frac && p > 1; p /= 10) {
+                        sb.append('0');
+                    }
+                    sb.append(frac);
+                }
+                return sb;
+            }
+        }
+        new Formatter(sb, Locale.ROOT).format("%." + decimals + "f", value);
+        return sb;
+    }
+}
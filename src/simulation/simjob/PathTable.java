@@ -7,7 +7,10 @@ package simulation.simjob;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import metadata.Constants;
 
 /**
@@ -18,283 +21,655 @@ import metadata.Constants;
  * [59], path(5,59) = 'y' Simple: [5] is prey of [59], which is predator of [3],
  * path [5,3] = 'yd'.
  *
+ * Paths are limited to maxDepth links (default DFLT_MAX_DEPTH).  For each
+ * root node, a breadth-first search gives the minimum distance and closest
+ * path to every other node.  Path counts (paths that visit no node twice)
+ * come from dynamic programming over the links for up to WALK_MAX_DEPTH
+ * links, so no individual paths are stored; cost is
+ * O(nodes * links * maxDepth).  Deeper tables count paths by depth-first
+ * search, whose cost grows with the number of paths.  Where several closest
+ * paths exist, the one taken is the first in search order: prey before
+ * predators, each in ConsumeMap list order.
+ *
+ * A table can be updated in place as species are added to or removed from
+ * the ecosystem (addNode, removeNode).  Only rows whose root reaches the
+ * changed node within maxDepth links can change, so only those are
+ * recomputed; the result is the same as building the table afresh for the
+ * new node list.  Links come from the ConsumeMap's FoodWebGraph, whose lists
+ * are in node ID order, so search order does not depend on row order.  A
+ * table can be made read only (setReadOnly), e.g. to be shared between jobs;
+ * a copy of it (PathTable(PathTable)) can be updated again.
+ *
  * @author justinacotter
  */
 public class PathTable {
 
+    private final FoodWebGraph graph;
+    private final boolean ppOnly;
+    private final int maxDepth;
     private List<Integer> nodeList;
+    private Map<Integer, Integer> nodeIdx;   //node ID -> index in nodeList
+    private boolean readOnly = false;
 
     //what are pred/prey paths (connections, relationships) btwn nodes?
-    private PathList[][] pathArray;  //strings of all paths btwn two nodes
     private String[][] minPath;          //closest path
-    private Integer[][] minDist;            //minimum distance between two nodes
-    private Integer[] linkCnt;               //number of nodes that index node is connected to
-    private long timer;
+    private int[][] minDist;            //minimum distance between two nodes
+    private int[][] pathCnt;            //number of paths between two nodes
+    private int[] linkCnt;               //number of nodes that index node is connected to
     public static final String IS_CANNIBAL = "c";
     public static final String IS_PREY = "y";
     public static final String IS_PREDATOR = "d";
     public static final String IS_BOTH = "b";
     public static final boolean PP_ONLY = true;
-    private static final int DEPTH_THRESHOLD = 4;  //need to restrict due to time complexity
+    public static final int DFLT_MAX_DEPTH = 3;  //links per path (prev 4 nodes)
+    public static final String MAX_DEPTH_PROPERTY = "pathTableMaxDepth";
+    //deepest table whose path counts can come from counting walks
+    private static final int WALK_MAX_DEPTH = 3;
+
+    //links from each node, in search order (prey, then predators), as
+    //ranges of linkNode/linkReln; self links (cannibals) are kept separately
+    private int[] linkPtr;
+    private int[] linkNode;
+    private String[] linkReln;
+    //for link u->v, the (up to 2) links v->u; -1 if none
+    private int[] revLink1;
+    private int[] revLink2;
+    private boolean[] cannibal;
 
     public PathTable(ConsumeMap consumeMap, int[] nodeArray, boolean ppOnly)
             throws SQLException {
+        this(consumeMap, nodeArray, ppOnly, DFLT_MAX_DEPTH);
+    }
+
+    /**
+     * @param consumeMap predator/prey lists for nodes in nodeArray
+     * @param nodeArray node IDs; table rows/columns are in this order
+     * @param ppOnly only compute paths from the primary producer
+     * @param maxDepth maximum number of links in a path
+     */
+    public PathTable(ConsumeMap consumeMap, int[] nodeArray, boolean ppOnly,
+            int maxDepth) throws SQLException {
+        this.graph = consumeMap.getGraph();
+        this.ppOnly = ppOnly;
+        this.maxDepth = maxDepth;
         int nodeCnt = nodeArray.length;
-        nodeList = new ArrayList<Integer>();
-        pathArray = new PathList[nodeCnt][nodeCnt];
+        nodeList = new ArrayList<Integer>(nodeCnt);
         minPath = new String[nodeCnt][nodeCnt];
-        minDist = new Integer[nodeCnt][nodeCnt];
-        linkCnt = new Integer[nodeCnt];
-        timer = System.currentTimeMillis() / 60000;
+        minDist = new int[nodeCnt][nodeCnt];
+        pathCnt = new int[nodeCnt][nodeCnt];
+        linkCnt = new int[nodeCnt];
 
-        //initialize nodeList and pathArray
+        //initialize nodeList and minPath
         for (int i = 0; i < nodeCnt; i++) {
             nodeList.add(nodeArray[i]);
-            linkCnt[i] = 0;
-            for (int j = 0; j < nodeCnt; j++) {
-                pathArray[i][j] = new PathList();
-                minDist[i][j] = 0;
-                minPath[i][j] = "";
+            Arrays.fill(minPath[i], "");
+        }
+        indexNodes();
+        buildLinks(consumeMap);
+
+        boolean[] roots = new boolean[nodeCnt];
+        Arrays.fill(roots, true);
+        computeRows(roots);
+    }
+
+    /**
+     * Copy of a table, for updating without changing the original (e.g. one
+     * shared through TopologyCache).  The copy is never read only.
+     *
+     * @param other table to copy
+     */
+    public PathTable(PathTable other) {
+        graph = other.graph;
+        ppOnly = other.ppOnly;
+        maxDepth = other.maxDepth;
+        nodeList = new ArrayList<Integer>(other.nodeList);
+        nodeIdx = new HashMap<Integer, Integer>(other.nodeIdx);
+        int nodeCnt = nodeList.size();
+        minPath = new String[nodeCnt][];
+        minDist = new int[nodeCnt][];
+        pathCnt = new int[nodeCnt][];
+        for (int i = 0; i < nodeCnt; i++) {
+            minPath[i] = other.minPath[i].clone();
+            minDist[i] = other.minDist[i].clone();
+            pathCnt[i] = other.pathCnt[i].clone();
+        }
+        linkCnt = other.linkCnt.clone();
+        //link arrays are replaced, never modified, by updates
+        linkPtr = other.linkPtr;
+        linkNode = other.linkNode;
+        linkReln = other.linkReln;
+        revLink1 = other.revLink1;
+        revLink2 = other.revLink2;
+        cannibal = other.cannibal;
+    }
+
+    /**
+     * Add a node as the last row/column.
+     *
+     * @param nodeId node to add; must not already be in the table
+     */
+    public void addNode(int nodeId) {
+        addNode(nodeId, nodeList.size());
+    }
+
+    /**
+     * Add a node, recomputing only rows whose root reaches it.
+     *
+     * @param nodeId node to add; must not already be in the table
+     * @param index row/column of the new node
+     */
+    public void addNode(int nodeId, int index) {
+        checkWritable();
+        if (nodeIdx.containsKey(nodeId)) {
+            throw new IllegalArgumentException("Node " + nodeId
+                    + " already in path table");
+        }
+        nodeList.add(index, nodeId);
+        indexNodes();
+        int nodeCnt = nodeList.size();
+        minPath = insertRowCol(minPath, index);
+        minDist = insertRowCol(minDist, index);
+        pathCnt = insertRowCol(pathCnt, index);
+        int[] newLinkCnt = new int[nodeCnt];
+        System.arraycopy(linkCnt, 0, newLinkCnt, 0, index);
+        System.arraycopy(linkCnt, index, newLinkCnt, index + 1, nodeCnt - 1 - index);
+        linkCnt = newLinkCnt;
+
+        buildLinks(new ConsumeMap(getNodeArray(), graph));
+        computeRows(reachingRoots(index));
+    }
+
+    /**
+     * Remove a node, recomputing only rows whose root reached it.
+     *
+     * @param nodeId node to remove; must be in the table
+     */
+    public void removeNode(int nodeId) {
+        checkWritable();
+        Integer index = nodeIdx.get(nodeId);
+        if (index == null) {
+            throw new IllegalArgumentException("Node " + nodeId
+                    + " not in path table");
+        }
+        //rows affected, found before the node's links are dropped
+        boolean[] roots = reachingRoots(index);
+        int nodeCnt = nodeList.size() - 1;
+        boolean[] newRoots = new boolean[nodeCnt];
+        System.arraycopy(roots, 0, newRoots, 0, index);
+        System.arraycopy(roots, index + 1, newRoots, index, nodeCnt - index);
+
+        nodeList.remove(index.intValue());
+        indexNodes();
+        minPath = removeRowCol(minPath, index);
+        minDist = removeRowCol(minDist, index);
+        pathCnt = removeRowCol(pathCnt, index);
+        int[] newLinkCnt = new int[nodeCnt];
+        System.arraycopy(linkCnt, 0, newLinkCnt, 0, index);
+        System.arraycopy(linkCnt, index + 1, newLinkCnt, index, nodeCnt - index);
+        linkCnt = newLinkCnt;
+
+        buildLinks(new ConsumeMap(getNodeArray(), graph));
+        computeRows(newRoots);
+    }
+
+    /**
+     * Make this table read only: addNode and removeNode throw
+     * UnsupportedOperationException from now on.
+     */
+    public void setReadOnly() {
+        readOnly = true;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Path table is read only");
+        }
+    }
+
+    private void indexNodes() {
+        nodeIdx = new HashMap<Integer, Integer>();
+        for (int i = 0; i < nodeList.size(); i++) {
+            nodeIdx.put(nodeList.get(i), i);
+        }
+    }
+
+    //copy of matrix with an empty row and column at index
+    private static int[][] insertRowCol(int[][] matrix, int index) {
+        int nodeCnt = matrix.length + 1;
+        int[][] dest = new int[nodeCnt][nodeCnt];
+        for (int i = 0; i < nodeCnt; i++) {
+            if (i != index) {
+                int[] row = matrix[i < index ? i : i - 1];
+                System.arraycopy(row, 0, dest[i], 0, index);
+                System.arraycopy(row, index, dest[i], index + 1, row.length - index);
             }
         }
+        return dest;
+    }
+
+    private static String[][] insertRowCol(String[][] matrix, int index) {
+        int nodeCnt = matrix.length + 1;
+        String[][] dest = new String[nodeCnt][nodeCnt];
+        for (int i = 0; i < nodeCnt; i++) {
+            if (i == index) {
+                Arrays.fill(dest[i], "");
+            } else {
+                String[] row = matrix[i < index ? i : i - 1];
+                System.arraycopy(row, 0, dest[i], 0, index);
+                System.arraycopy(row, index, dest[i], index + 1, row.length - index);
+                dest[i][index] = "";
+            }
+        }
+        return dest;
+    }
+
+    //copy of matrix without the row and column at index
+    private static int[][] removeRowCol(int[][] matrix, int index) {
+        int nodeCnt = matrix.length - 1;
+        int[][] dest = new int[nodeCnt][nodeCnt];
+        for (int i = 0; i < nodeCnt; i++) {
+            int[] row = matrix[i < index ? i : i + 1];
+            System.arraycopy(row, 0, dest[i], 0, index);
+            System.arraycopy(row, index + 1, dest[i], index, nodeCnt - index);
+        }
+        return dest;
+    }
 
-        //build paths for this node via recursive method findPaths
-        for (Integer rootId : nodeList) {
+    private static String[][] removeRowCol(String[][] matrix, int index) {
+        int nodeCnt = matrix.length - 1;
+        String[][] dest = new String[nodeCnt][nodeCnt];
+        for (int i = 0; i < nodeCnt; i++) {
+            String[] row = matrix[i < index ? i : i + 1];
+            System.arraycopy(row, 0, dest[i], 0, index);
+            System.arraycopy(row, index + 1, dest[i], index, nodeCnt - index);
+        }
+        return dest;
+    }
+
+    /*
+     Roots whose row may depend on node target: those with a path of at most
+     maxDepth links to it (including target itself), found by walking links
+     backwards from target.
+     */
+    private boolean[] reachingRoots(int target) {
+        int nodeCnt = nodeList.size();
+        boolean[] reached = new boolean[nodeCnt];
+        reached[target] = true;
+        boolean[] frontier = reached.clone();
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            boolean[] next = new boolean[nodeCnt];
+            boolean any = false;
+            for (int u = 0; u < nodeCnt; u++) {
+                if (reached[u]) {
+                    continue;
+                }
+                for (int k = linkPtr[u]; k < linkPtr[u + 1]; k++) {
+                    if (frontier[linkNode[k]]) {
+                        next[u] = true;
+                        reached[u] = true;
+                        any = true;
+                        break;
+                    }
+                }
+            }
+            if (!any) {
+                break;
+            }
+            frontier = next;
+        }
+        return reached;
+    }
+
+    //(re)compute min paths, path counts and link count of the given rows
+    private void computeRows(boolean[] roots) {
+        int nodeCnt = nodeList.size();
+
+        //workspace, reused for each root
+        int[] dist = new int[nodeCnt];
+        int[] queue = new int[nodeCnt];
+        String[] path = new String[nodeCnt];
+        int linkTotal = linkPtr[nodeCnt];
+        long[] walks = new long[linkTotal];
+        long[] nextWalks = new long[linkTotal];
+        long[] nodeWalks = new long[nodeCnt];
+        long[] totals = new long[nodeCnt];
+        boolean[] onPath = new boolean[nodeCnt];
+
+        for (int root = 0; root < nodeCnt; root++) {
             //if specified, only process primary producer
-            if (ppOnly && rootId != Constants.PP_NODE_ID) {
+            if (!roots[root]
+                    || (ppOnly && nodeList.get(root) != Constants.PP_NODE_ID)) {
                 continue;
             }
+            Arrays.fill(minPath[root], "");
+            Arrays.fill(minDist[root], 0);
+            findMinPaths(root, maxDepth, dist, queue, path);
+            if (maxDepth <= WALK_MAX_DEPTH) {
+                countPaths(root, maxDepth, walks, nextWalks, nodeWalks, totals);
+            } else {
+                countSimplePaths(root, maxDepth, onPath, totals);
+            }
 
-            //add current node to list of visited nodes to prevent looping
-            List<Integer> visited = new ArrayList<Integer>();
-            int rootIdx = nodeList.indexOf(rootId);
-            visited.add(rootId);
+            //determine link counts; self always has the empty path
+            linkCnt[root] = 0;
+            for (int j = 0; j < nodeCnt; j++) {
+                if (pathCnt[root][j] > 0) {
+                    linkCnt[root]++;
+                }
+            }
+        }
+    }
 
-            findPaths(rootIdx, rootId, visited, consumeMap);
+    //compile ConsumeMap lists into link arrays over node indices
+    private void buildLinks(ConsumeMap consumeMap) {
+        int nodeCnt = nodeList.size();
+        List<Integer> nodes = new ArrayList<Integer>();
+        List<String> relns = new ArrayList<String>();
+        linkPtr = new int[nodeCnt + 1];
+        cannibal = new boolean[nodeCnt];
+        for (int i = 0; i < nodeCnt; i++) {
+            int nodeId = nodeList.get(i);
+            linkPtr[i] = nodes.size();
+            addLinks(i, consumeMap.getPreyList(nodeId), IS_PREDATOR, nodes, relns);
+            addLinks(i, consumeMap.getPredList(nodeId), IS_PREY, nodes, relns);
+        }
+        linkPtr[nodeCnt] = nodes.size();
 
-            //adjust cannibal relationship
-            if (!pathArray[rootIdx][rootIdx].getPathList().isEmpty()
-                    && pathArray[rootIdx][rootIdx].getPathI(0).toString().equals(IS_PREDATOR)) {
-                pathArray[rootIdx][rootIdx].getPathI(0).setPath(IS_CANNIBAL);
+        int linkTotal = nodes.size();
+        linkNode = new int[linkTotal];
+        linkReln = relns.toArray(new String[linkTotal]);
+        for (int k = 0; k < linkTotal; k++) {
+            linkNode[k] = nodes.get(k);
+        }
+
+        //reverse links, for excluding immediate returns when counting paths
+        revLink1 = new int[linkTotal];
+        revLink2 = new int[linkTotal];
+        Arrays.fill(revLink1, -1);
+        Arrays.fill(revLink2, -1);
+        for (int u = 0; u < nodeCnt; u++) {
+            for (int k = linkPtr[u]; k < linkPtr[u + 1]; k++) {
+                int v = linkNode[k];
+                for (int r = linkPtr[v]; r < linkPtr[v + 1]; r++) {
+                    if (linkNode[r] != u) {
+                        continue;
+                    }
+                    if (revLink1[k] == -1) {
+                        revLink1[k] = r;
+                    } else {
+                        revLink2[k] = r;
+                    }
+                }
             }
+        }
+    }
 
+    private void addLinks(int i, List<Integer> connNodes, String relnType,
+            List<Integer> nodes, List<String> relns) {
+        if (connNodes == null) {
+            return;
+        }
+        for (Integer connId : connNodes) {
+            Integer j = nodeIdx.get(connId);
+            if (j == null) {
+                continue;
+            }
+            if (j == i) {
+                //only recorded once, as predator of itself
+                if (relnType.equals(IS_PREDATOR)) {
+                    cannibal[i] = true;
+                }
+                continue;
+            }
+            nodes.add(j);
+            relns.add(relnType);
         }
+    }
 
-        //determine link counts, min distances, minPath
-        for (int i = 0; i < nodeCnt; i++) {
-            for (int j = 0; j < nodeCnt; j++) {
-                List<Path> pList = pathArray[i][j].getPathList();
-                if (pList.isEmpty()) {
+    /*
+     Breadth-first search from root: minimum distance and closest path to each
+     node within maxDepth.  Nodes are reached in search order, so the path
+     recorded is the first closest path.
+     */
+    private void findMinPaths(int root, int maxDepth, int[] dist, int[] queue,
+            String[] path) {
+        Arrays.fill(dist, -1);
+        dist[root] = 0;
+        path[root] = "";
+        int head = 0, tail = 0;
+        queue[tail++] = root;
+        while (head < tail) {
+            int u = queue[head++];
+            if (dist[u] >= maxDepth) {
+                continue;
+            }
+            for (int k = linkPtr[u]; k < linkPtr[u + 1]; k++) {
+                int v = linkNode[k];
+                if (dist[v] != -1) {
                     continue;
                 }
-                linkCnt[i]++;
-                for (Path path : pList) {
-                    //record min distance between the two nodes (i and j) and
-                    //minimum path
-                    String pathStr = path.toString();
-                    int len = pathStr.length();
-                    if (len == 0) {
+                dist[v] = dist[u] + 1;
+                path[v] = path[u].concat(linkReln[k]);
+                queue[tail++] = v;
+            }
+        }
+
+        for (int j = 0; j < tail; j++) {
+            int v = queue[j];
+            minDist[root][v] = dist[v];
+            minPath[root][v] = path[v];
+        }
+        //if both immediate predator AND prey, flag as "BOTH"
+        for (int k = linkPtr[root]; k < linkPtr[root + 1]; k++) {
+            int v = linkNode[k];
+            if (!minPath[root][v].equals(linkReln[k])) {
+                minPath[root][v] = IS_BOTH;
+            }
+        }
+        //self: distance 0, "c" for cannibals, otherwise blank
+        minDist[root][root] = 0;
+        minPath[root][root] = cannibal[root] ? IS_CANNIBAL : "";
+    }
+
+    /*
+     Count paths from root of up to maxDepth links, by number of walks ending
+     with each link.  A walk may not return to the root or to the node it
+     just left, which for maxDepth <= WALK_MAX_DEPTH is exactly the set of
+     paths that visit no node twice (deeper walks could close longer
+     cycles; see countSimplePaths).  The root counts the empty path, plus
+     its cannibal link.
+     */
+    private void countPaths(int root, int maxDepth, long[] walks,
+            long[] nextWalks, long[] nodeWalks, long[] totals) {
+        int nodeCnt = nodeList.size();
+        Arrays.fill(totals, 0);
+        Arrays.fill(nodeWalks, 0);
+        nodeWalks[root] = 1;
+        totals[root] = cannibal[root] ? 2 : 1;
+        Arrays.fill(walks, 0);
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            //extend walks ending at u by each link u->v
+            for (int u = 0; u < nodeCnt; u++) {
+                for (int k = linkPtr[u]; k < linkPtr[u + 1]; k++) {
+                    int v = linkNode[k];
+                    if (v == root || nodeWalks[u] == 0) {
+                        nextWalks[k] = 0;
                         continue;
                     }
-                    //choose is shorter path than prev
-                    if (minDist[i][j] == 0 || minDist[i][j] > len) {
-                        minDist[i][j] = len;
-                        minPath[i][j] = pathStr;
-                        //if both immediate predator AND prey, flag as "BOTH"
-                    } else if (len == 1 && minDist[i][j] == 1
-                            && !minPath[i][j].equals(pathStr)) {
-
-                        minPath[i][j] = IS_BOTH;
+                    long cnt = nodeWalks[u];
+                    //remove walks that just arrived at u from v
+                    if (revLink1[k] != -1) {
+                        cnt -= walks[revLink1[k]];
                     }
-                    //otherwise: if same size, whichever was selected 1st remains
-                    
-                } //end for path
-
-                //adjust path length for "self".  Implementation leaves blank
-                //entry, which is not used.  (Also adjusts cannibal dist to 0)
-                if (i == j) {
-                    minDist[i][j] = 0;
+                    if (revLink2[k] != -1) {
+                        cnt -= walks[revLink2[k]];
+                    }
+                    nextWalks[k] = cnt;
+                }
+            }
+            long[] tmp = walks;
+            walks = nextWalks;
+            nextWalks = tmp;
+
+            Arrays.fill(nodeWalks, 0);
+            boolean any = false;
+            for (int k = 0; k < walks.length; k++) {
+                if (walks[k] != 0) {
+                    nodeWalks[linkNode[k]] += walks[k];
+                    any = true;
                 }
-            }  //end for j
-        } //end for i
+            }
+            for (int v = 0; v < nodeCnt; v++) {
+                totals[v] += nodeWalks[v];
+            }
+            if (!any) {
+                break;
+            }
+        }
+        for (int v = 0; v < nodeCnt; v++) {
+            pathCnt[root][v] = (int) Math.min(totals[v], Integer.MAX_VALUE);
+        }
     }
 
-    /*recursive function to find all paths - drill down until no pred/prey
-     are found (depth-first search).
+    /*
+     countPaths for any depth: depth-first search over paths from root that
+     visit no node twice, as the original PathTable did.
      */
-    private List<Path> findPaths(
-            int rootIdx,
-            int nodeId,
-            List<Integer> visited,
-            ConsumeMap consumeMap
-    ) {
-        //loop through nodes of predators and prey to find all paths
-        List<Path> newPaths = new ArrayList<Path>();
-
-        //do not look for paths longer than this threshold
-        if (visited.size() > DEPTH_THRESHOLD) {
-            return newPaths;
-        }
-
-        if ((System.currentTimeMillis() / 60000) != timer) {
-            System.out.println("visited: " + visited.toString());
-            timer = System.currentTimeMillis() / 60000;
-        }
-
-        //discover direct and indirect paths through direct predator and prey 
-        //relationships
-        if (!consumeMap.getPreyList(nodeId).isEmpty()) {
-            newPaths.addAll(setSubPaths(
-                    rootIdx,
-                    nodeId,
-                    visited,
-                    consumeMap.getPreyList(nodeId),
-                    IS_PREDATOR,
-                    consumeMap
-            ));
-        }
-        if (!consumeMap.getPredList(nodeId).isEmpty()) {
-            newPaths.addAll(setSubPaths(
-                    rootIdx,
-                    nodeId,
-                    visited,
-                    consumeMap.getPredList(nodeId),
-                    IS_PREY,
-                    consumeMap
-            ));
-        }
-
-        //Create new path specifying current node as end node in a relationship.
-        //Empty string acts as placeholder.
-        //As recursion 'retreats', path information will be prepended to this string
-        //to build path between this node and rooting node.
-        Path newPath = new Path("");
-        int nodeIdx = nodeList.indexOf(nodeId);
-        pathArray[rootIdx][nodeIdx].addPath(newPath);
-        newPaths.add(newPath);
-        return (newPaths);
+    private void countSimplePaths(int root, int maxDepth, boolean[] onPath,
+            long[] totals) {
+        int nodeCnt = nodeList.size();
+        Arrays.fill(totals, 0);
+        totals[root] = cannibal[root] ? 2 : 1;
+        onPath[root] = true;
+        extendPaths(root, maxDepth, onPath, totals);
+        onPath[root] = false;
+        for (int v = 0; v < nodeCnt; v++) {
+            pathCnt[root][v] = (int) Math.min(totals[v], Integer.MAX_VALUE);
+        }
     }
 
-    //find paths from current node via list of directly connected nodes
-    private List<Path> setSubPaths(
-            int rootIdx,
-            int nodeId,
-            List<Integer> visited,
-            List<Integer> connNodes,
-            String relnType,
-            ConsumeMap consumeMap
-    ) {
-        List<Path> subPaths = new ArrayList<Path>();
-
-        //loop through list of connected nodes
-        for (Integer connId : connNodes) {
-            if (visited.contains(connId)) {  //cycle
-                //check for cannibal exception (only do it for relnType = pred,
-                //so that it doesn't create dup for redundant relnType = prey
-                //only relevant at top level (visited == 1), otherwise a dead end
-                //if already visited
-                if (visited.size() == 1
-                        && nodeId == connId //=rootIdx
-                        && relnType.equals(IS_PREDATOR)) {
-                    Path newPath = new Path("");
-                    int nodeIdx = nodeList.indexOf(nodeId);
-                    pathArray[nodeIdx][nodeIdx].addPath(newPath);
-                    subPaths.add(newPath);
-                }
-
+    //count each extension of the current path (ending at u) by one link
+    private void extendPaths(int u, int linksLeft, boolean[] onPath,
+            long[] totals) {
+        for (int k = linkPtr[u]; k < linkPtr[u + 1]; k++) {
+            int v = linkNode[k];
+            if (onPath[v]) {
                 continue;
             }
+            totals[v]++;
+            if (linksLeft > 1) {
+                onPath[v] = true;
+                extendPaths(v, linksLeft - 1, onPath, totals);
+                onPath[v] = false;
+            }
+        }
+    }
 
-            //identify paths for child node (recursive call)
-            visited.add(connId);
-            //System.out.println("visited: " + visited.toString());
-            subPaths.addAll(
-                    findPaths(rootIdx, connId, visited, consumeMap));
-            visited.remove(connId);
+    public int getLinkCntI(int nodeId) {
+        int i = nodeIdx.get(nodeId);
+        return linkCnt[i];
+    }
+
+    //number of paths from nodeId1 to nodeId2; 0 if not connected
+    public int getPathCntIJ(int nodeId1, int nodeId2) {
+        int i = nodeIdx.get(nodeId1);
+        int j = nodeIdx.get(nodeId2);
+        return pathCnt[i][j];
+    }
+
+    /*
+     The following return copies of the tables, in row/column order of
+     getNodeArray(), so that callers (e.g. ATNEngine) can read relationships
+     without rendering and re-parsing the CSV (toString()).  Copies, as a
+     table may be shared between jobs through TopologyCache.
+     */
+    public int[] getNodeArray() {
+        int[] nodeArray = new int[nodeList.size()];
+        for (int i = 0; i < nodeArray.length; i++) {
+            nodeArray[i] = nodeList.get(i);
         }
+        return nodeArray;
+    }
 
-        //Add relationship from curr node to child node for all paths that
-        //have been created so far
-        int pathCnt = subPaths.size();
-        for (int i = 0; i < pathCnt; i++) {
-            subPaths.get(i).setPath(relnType + subPaths.get(i).toString());
+    //closest path from row node to column node: IS_PREDATOR, IS_PREY,
+    //IS_BOTH, IS_CANNIBAL or a longer path; "" if none
+    public String[][] getMinPathMatrix() {
+        String[][] copy = new String[minPath.length][];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = minPath[i].clone();
         }
+        return copy;
+    }
 
-        return subPaths;
+    //length of closest path; 0 if none (or self)
+    public int[][] getMinDistMatrix() {
+        return copyOf(minDist);
     }
 
-    public int getLinkCntI(int nodeId) {
-        int i = nodeList.indexOf(nodeId);
-        return linkCnt[i];
+    public int[][] getPathCntMatrix() {
+        return copyOf(pathCnt);
     }
 
-    public PathList getPathArrayIJ(int nodeId1, int nodeId2) {
-        int i = nodeList.indexOf(nodeId1);
-        int j = nodeList.indexOf(nodeId2);
-        return pathArray[i][j];
+    private static int[][] copyOf(int[][] matrix) {
+        int[][] copy = new int[matrix.length][];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = matrix[i].clone();
+        }
+        return copy;
     }
 
     @Override
     public String toString() {
+        int nodeCnt = nodeList.size();
+        StringBuilder sb = new StringBuilder(32 * (nodeCnt + 2) * (nodeCnt + 1));
+
         //create headers (2 lines)
-        //
-        String stringRep = ",,";
-        stringRep = stringRep.concat("shortest path");
-        for (Integer nodeList1 : nodeList) {
-            stringRep = stringRep.concat(",");
+        sb.append(",,shortest path");
+        for (int i = 0; i < nodeCnt; i++) {
+            sb.append(',');
         }
-        stringRep = stringRep.concat("path length");
-        for (Integer nodeList1 : nodeList) {
-            stringRep = stringRep.concat(",");
+        sb.append("path length");
+        for (int i = 0; i < nodeCnt; i++) {
+            sb.append(',');
         }
-        stringRep = stringRep.concat("# paths");
-        for (Integer nodeList1 : nodeList) {
-            stringRep = stringRep.concat(",");
+        sb.append("# paths");
+        for (int i = 0; i < nodeCnt; i++) {
+            sb.append(',');
         }
-        stringRep = stringRep.concat("\n");
+        sb.append('\n');
 
-        stringRep = stringRep.concat("node,#links,");
         //need nodeList 3x: once for min path, once for min distance, once for # paths
-        String nodeListStr = "";
-        for (Integer nodeId : nodeList) {
-            nodeListStr = nodeListStr.concat(String.format("%d,", nodeId));
-        }
-        //add 3 instances
-        for (int i = 0; i < 3; i++) {
-            stringRep = stringRep.concat(nodeListStr);
+        sb.append("node,#links");
+        for (int k = 0; k < 3; k++) {
+            for (Integer nodeId : nodeList) {
+                sb.append(',').append(nodeId.intValue());
+            }
         }
-        //remove trailing comma and add line return
-        stringRep = stringRep.substring(0, stringRep.length() - 1).concat("\n");
+        sb.append('\n');
 
         //create rows and columns of output table
-        for (Integer rowId : nodeList) {
+        for (int i = 0; i < nodeCnt; i++) {
             // root with row node and link count
-            stringRep = stringRep.concat(String.format("%d,%d,", rowId,
-                    linkCnt[nodeList.indexOf(rowId)]));
-
-            //add shorted paths
-            for (Integer colId : nodeList) {
-                stringRep = stringRep.concat(String.format("%s,",
-                        minPath[nodeList.indexOf(rowId)][nodeList.indexOf(colId)]));
+            sb.append(nodeList.get(i).intValue()).append(',').append(linkCnt[i]);
+            //add shortest paths
+            for (int j = 0; j < nodeCnt; j++) {
+                sb.append(',').append(minPath[i][j]);
             }
-
             //add shortest distances
-            for (Integer colId : nodeList) {
-                stringRep = stringRep.concat(String.format("%d,",
-                        minDist[nodeList.indexOf(rowId)][nodeList.indexOf(colId)]));
+            for (int j = 0; j < nodeCnt; j++) {
+                sb.append(',').append(minDist[i][j]);
             }
-
             //add # of paths
-            for (Integer colId : nodeList) {
-                int pathCnt = pathArray[nodeList.indexOf(rowId)][nodeList.indexOf(colId)].
-                        getPathList().size();
-                stringRep = stringRep.concat(String.format("%d,", pathCnt));
+            for (int j = 0; j < nodeCnt; j++) {
+                sb.append(',').append(pathCnt[i][j]);
             }
-
-            //replace terminal comma with a line return
-            stringRep = stringRep.substring(0, stringRep.length() - 1).concat("\n");
+            sb.append('\n');
         }
 
-        return (stringRep);
+        return sb.toString();
     }
 }
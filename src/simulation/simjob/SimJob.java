@@ -9,15 +9,18 @@ import static java.lang.Math.ceil;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import metadata.Constants;
-import simulation.ParamValue;
 import simulation.SpeciesZoneType;
+import simulation.SpeciesZoneType.LinkParam;
+import simulation.SpeciesZoneType.NodeParam;
 import util.Log;
 import db.SimJobDAO;
 
@@ -50,7 +53,6 @@ public class SimJob {
 
     // 4/5/2014 these default values currently duplicate SimulationEngineConfig.properties
     //storing locally to provide more flexibility for simulation experimentation
-    static final String FLD_PREFIX = "param", FLD_PREFIX_DFLT = "dflt";
     //PP = PRIMARY PRODUCER (AKA GRASS)
     public static final double DFLT_PP_TOTAL_BIOMASS = 1000.0;   //2000.0;
     public static final double DFLT_PP_PER_UNIT_BIOMASS = 1;
@@ -83,12 +85,29 @@ public class SimJob {
         protected final String paramID;
         protected final double dfltValue;
         protected final ParamType ptype;
+        //storage in SpeciesZoneType, by type
+        protected final NodeParam nodeParam;
+        protected final LinkParam linkParam;
+        private static final Map<String, DfltParams> byParamID = new HashMap<>();
+
+        static {
+            for (DfltParams p : DfltParams.values()) {
+                byParamID.put(p.paramID, p);
+            }
+        }
 
         private DfltParams(String paramID, double dfltValue,
                 ParamType ptype) {
             this.paramID = paramID;
             this.dfltValue = dfltValue;
             this.ptype = ptype;
+            this.nodeParam = ptype == ParamType.NODE ? NodeParam.valueOf(paramID) : null;
+            this.linkParam = ptype == ParamType.LINK ? LinkParam.valueOf(paramID) : null;
+        }
+
+        //parameter with given ID (upper case), null if none
+        static DfltParams fromParamID(String paramID) {
+            return byParamID.get(paramID);
         }
 
         String getParamID() {
@@ -101,11 +120,10 @@ public class SimJob {
 
         //10/28/14, jtc, revised method to acquire new dfltK/R/X field value
         //prev was just using static defaults entered above - inaccurate.
-        double getDfltValue(SimJobSZT szt) throws NoSuchFieldException, 
-                IllegalArgumentException, IllegalAccessException {
+        double getDfltValue(SimJobSZT szt) {
             double dflt;
             if (ptype == ParamType.NODE) {
-                dflt = szt.getParamValue(FLD_PREFIX_DFLT + this.paramID);
+                dflt = szt.getDfltParam(nodeParam);
             } else {
                 dflt = dfltValue;
             }
@@ -127,21 +145,19 @@ public class SimJob {
         }
 
         //see if actual value equals default value - NODE
-        boolean equalsDefault(SimJobSZT sjSzt)
-                throws NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
+        boolean equalsDefault(SimJobSZT sjSzt) {
             double actualVal = getActualValue(sjSzt);
             if (actualVal == Constants.PARAM_INITVALUE) {
                 return true;
             }
-            return (double) getActualValue(sjSzt) == this.getDfltValue(sjSzt);
+            return actualVal == this.getDfltValue(sjSzt);
         }
 
-        double getActualValue(SimJobSZT sjSzt)
-                throws NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
+        double getActualValue(SimJobSZT sjSzt) {
             if (this.ptype != ParamType.NODE) {
                 return 0.0;  //only used for node parameters
             }
-            return sjSzt.getParamValue(FLD_PREFIX + this.paramID);
+            return sjSzt.getParam(nodeParam);
         }
     }
 
@@ -159,6 +175,12 @@ public class SimJob {
 	private ConsumeMap consumeMap;
 	private PathTable pathTable;
 	private String biomassCSV;
+	//consume map and path table still to be appended to biomassCSV
+	private boolean biomassCSVTablesPending = false;
+	//ODE solver for the ATN engine (see atn.OdeSolverType); null = config dflt
+	private String odeSolver = null;
+	//species contribution tracking (see atn.ContributionTracker); null = config dflt
+	private String contribTracking = null;
 
     //adding the following parameters to SZT:
     //double paramY;  //link level
@@ -187,6 +209,8 @@ public class SimJob {
         this.job_Descript = srcJob.job_Descript;
         this.timesteps = srcJob.timesteps;
         this.node_Config = srcJob.node_Config;
+        this.odeSolver = srcJob.odeSolver;
+        this.contribTracking = srcJob.contribTracking;
 
         //copy SZTs
         this.speciesZoneList = new ArrayList<SpeciesZoneType>();
@@ -222,6 +246,39 @@ public class SimJob {
         parseNodeConfig();
     }
 
+    /**
+     * Set the species list directly from in-memory SpeciesZoneType objects,
+     * as an alternative to setNode_Config() that skips building and parsing
+     * a node_config string.  Yields the same SimJobSZTs as parsing the
+     * output of ATNEngine.addMultipleSpeciesType(): biomass truncated to an
+     * int, per-unit biomass rounded to three digits, SimTestNode overrides
+     * applied, then K (plants) or X (animals) rounded to three digits.  Unset
+     * (negative) K or X values are skipped, leaving the SimTestNode/species
+     * values in place.  node_Config is only built if requested (e.g. to save
+     * the job).
+     *
+     * @param speciesZones
+     */
+    public void setSpeciesZones(Collection<SpeciesZoneType> speciesZones) {
+        speciesZoneList = new ArrayList<SpeciesZoneType>(speciesZones.size());
+        for (SpeciesZoneType szt : speciesZones) {
+            SimJobSZT sjSzt = new SimJobSZT("", szt.getNodeIndex(), 0,
+                    roundToThreeDigits(szt.getPerSpeciesBiomass()),
+                    (int) szt.getCurrentBiomass(), null, useSimTestNodeVals);
+            if (szt.getType() == SpeciesZoneType.SpeciesTypeEnum.PLANT) {
+                if (szt.getParamK() >= 0) {
+                    sjSzt.setParamK(roundToThreeDigits(szt.getParamK()));
+                }
+            } else if (szt.getType() == SpeciesZoneType.SpeciesTypeEnum.ANIMAL) {
+                if (szt.getParamX() >= 0) {
+                    sjSzt.setParamX(roundToThreeDigits(szt.getParamX()));
+                }
+            }
+            speciesZoneList.add(sjSzt);
+        }
+        node_Config = null;
+    }
+
     public void setCsv(String csv) {
         this.csv = csv;
         String str = String.format("csv for %d %s", job_Id, csv);
@@ -257,6 +314,10 @@ public class SimJob {
     }
 
     public String getNode_Config() {
+        //species set through setSpeciesZones(); build string on demand
+        if (node_Config == null) {
+            buildNodeConfig();
+        }
         return node_Config;
     }
 
@@ -297,109 +358,44 @@ public class SimJob {
     protected void parseNodeConfig() {
         //reset species list
         speciesZoneList = new ArrayList<SpeciesZoneType>();
-        SimJobSZT sjSzt = null;
-        String remainder = node_Config, paramID;
-        int nodeCnt = 0, paramCnt, nextNode_Id;
-        double biomass, perUnitBiomass, value;
 
         //sequence is nodeCnt,[node0],biomass0,perunitbiomass0,paramCnt0,(if any)paramID0,value0,paramID1,value1,...
         //[node1],biomass1,perunitbiomass1,paramCnt1,...,[nodeN],biomassN,...
-        if (!remainder.isEmpty()) {
-            //"nodeCnt,"
-            nodeCnt = Integer.valueOf(remainder.substring(0, remainder.indexOf(",")));
-        }
-        for (int i = 0; i < nodeCnt; i++) {
-            //"[node_Id(i)],biomass(i),"
-            remainder = trim(remainder, "[");
-            nextNode_Id = Integer.valueOf(remainder.substring(0, remainder.indexOf("]")));
-            remainder = trim(remainder, ",");
-            biomass = Double.valueOf(remainder.substring(0, endIndex(remainder, ",")));
-            remainder = trim(remainder, ",");
-            perUnitBiomass = Double.valueOf(remainder.substring(0, endIndex(remainder, ",")));
-            remainder = trim(remainder, ",");
-            //create entry in szt list
-            sjSzt = new SimJobSZT("", nextNode_Id, 0, perUnitBiomass, biomass, null, useSimTestNodeVals);
-            speciesZoneList.add(sjSzt);
-
-            if (remainder.isEmpty()) {
-                break;
+        new NodeConfigReader(node_Config).parse(new NodeConfigReader.Handler() {
+            SimJobSZT sjSzt = null;
+
+            @Override
+            public void node(int nodeId, double biomass, double perUnitBiomass) {
+                //create entry in szt list
+                sjSzt = new SimJobSZT("", nodeId, 0, perUnitBiomass, biomass, null,
+                        useSimTestNodeVals);
+                speciesZoneList.add(sjSzt);
             }
-            //get counts of node parameters for current node
-            paramCnt = Integer.valueOf(remainder.substring(0, remainder.indexOf(",")));
-
-            //get node parameters
-            for (int j = 0; j < paramCnt; j++) {
-                //"paramID(j)=value(j),"
-                remainder = trim(remainder, ",");
-                paramID = remainder.substring(0, remainder.indexOf("=")).toUpperCase();
-                remainder = trim(remainder, "=");
-                value = Double.valueOf(remainder.substring(0, endIndex(remainder, ",")));
-                try {
-                    //set node parameter for species object
-                    sjSzt.setParamValue(FLD_PREFIX + paramID, value);
-                } catch (Exception ex) {
-                    Logger.getLogger(SimJob.class.getName()).log(Level.SEVERE, null, ex);
+
+            @Override
+            public void nodeParam(String paramID, double value) {
+                //set node parameter for species object
+                DfltParams p = DfltParams.fromParamID(paramID);
+                if (p != null && p.getParamType() == ParamType.NODE) {
+                    sjSzt.setParam(p.nodeParam, value);
+                } else {
+                    Logger.getLogger(SimJob.class.getName()).log(Level.SEVERE,
+                            "Unknown node parameter {0}", paramID);
                 }
             }
-            //get link parameters
-            remainder = trim(remainder, ",");
-            remainder = parseLinkParams(remainder, sjSzt);
-        }
-    }
 
-    protected String parseLinkParams(String remainder, SimJobSZT sjSzt) {
-        String paramID;
-        int linkParamCnt = 0, prey_Id;
-        double value;
-        ParamValue paramValue;
-        List<ParamValue> linkParam;
-
-        // sequence is linkParamCnt,[prey_Id0],paramID0=value0,[prey_Id1],paramID1=value1,...[prey_IdN],paramIDN=valueN
-        if (remainder.indexOf(",") != -1) {
-            //get count of link params
-            //"linkParamCnt,"
-            linkParamCnt = Integer.valueOf(remainder.substring(0, remainder.indexOf(",")));
-        } else {
-            linkParamCnt = 0;
-        }
-        //get link parameters
-        for (int i = 0; i < linkParamCnt; i++) {
-            //"[prey_Id(i)],paramID(i)=value(i),"
-            remainder = trim(remainder, "[");
-            prey_Id = Integer.valueOf(remainder.substring(0, remainder.indexOf("]")));
-            remainder = trim(remainder, ",");
-            paramID = remainder.substring(0, remainder.indexOf("=")).toUpperCase();
-            remainder = trim(remainder, "=");
-            int commaIdx = remainder.indexOf(",");
-            value = Double.valueOf(remainder.substring(0,
-                    (commaIdx == -1 ? remainder.length() : commaIdx)));
-            paramValue = new ParamValue(prey_Id, value);
-            try {
+            @Override
+            public void linkParam(int preyId, String paramID, double value) {
                 //set link parameter for species object
-                sjSzt.addParamListEntry(FLD_PREFIX + paramID, paramValue);
-            } catch (Exception ex) {
-                Logger.getLogger(SimJob.class.getName()).log(Level.SEVERE, null, ex);
+                DfltParams p = DfltParams.fromParamID(paramID);
+                if (p != null && p.getParamType() == ParamType.LINK) {
+                    sjSzt.setLinkParam(preyId, p.linkParam, value);
+                } else {
+                    Logger.getLogger(SimJob.class.getName()).log(Level.SEVERE,
+                            "Unknown link parameter {0}", paramID);
+                }
             }
-        }
-        return remainder.indexOf(",") == -1 ? "" : trim(remainder, ",");
-    }
-
-    protected String trim(String superString, String cutoff) {
-        int idx = superString.indexOf(cutoff);
-        if (idx < 0) {
-            return "";
-        }
-        return superString.substring(idx + 1);
-    }
-
-    //get endindex for substring where may be a comma or may be end of string
-    //note: assumes that startindex is 0
-    protected int endIndex(String superString, String cutoff) {
-        if (superString.indexOf(cutoff) < 0) {
-            return superString.length();
-        } else {
-            return superString.indexOf(cutoff);
-        }
+        });
     }
 
     public void setSpeciesZoneList(List<SpeciesZoneType> list){
@@ -412,109 +408,87 @@ public class SimJob {
 //        }  
     }
     /* 4/21/14, JTC, added per species biomass */
-    public String buildNodeConfig() throws IllegalArgumentException, IllegalAccessException, NoSuchFieldException {
-        String configStr;
+    public String buildNodeConfig() {
+        NodeConfigWriter config = new NodeConfigWriter();
         SimJobSZT sjSzt;
         int paramCnt;
 
         //sequence is nodeCnt,[node0],biomass0,per-unit-biomass0,paramCnt0,(if any)paramID0,value0,paramID1,value1,...
         //"nodeCnt,"
-        configStr = String.format("%d,", speciesZoneList.size());
+        config.count(speciesZoneList.size());
         //sort for easier (human) review of configuration
         Collections.sort(speciesZoneList, new SZTComparator());
         for (SpeciesZoneType szt : speciesZoneList) {
         	sjSzt = (SimJobSZT) szt;
-            //"[node_Id],biomass,"
-            configStr = configStr.concat(String.format("[%d],", sjSzt.getNodeIndex()));
-
-            configStr = configStr.concat(String.format("%.0f,", ceil(sjSzt.getCurrentBiomass())));
-            configStr = configStr.concat(String.format("%.3f,",
-                    roundToThreeDigits(sjSzt.getPerSpeciesBiomass())));
-            try {
-                //paramCnt,
-                paramCnt = 0;
-                for (DfltParams p : DfltParams.values()) {
-                    if (p.getParamType() != ParamType.NODE) {
-                        continue;
-                    }
-                    if (!p.equalsDefault(sjSzt)) {
-                        paramCnt++;
-                    }
+            //"[node_Id],biomass,per-unit-biomass,"
+            config.node(sjSzt.getNodeIndex(), ceil(sjSzt.getCurrentBiomass()),
+                    roundToThreeDigits(sjSzt.getPerSpeciesBiomass()));
+            //paramCnt,
+            paramCnt = 0;
+            for (DfltParams p : DfltParams.values()) {
+                if (p.getParamType() != ParamType.NODE) {
+                    continue;
                 }
-                configStr = configStr.concat(String.format("%d,", paramCnt));
-                //"paramID(p)=value(p),"
-                for (DfltParams p : DfltParams.values()) {
-                    if (p.getParamType() != ParamType.NODE) {
-                        continue;
-                    }
-                    if (!p.equalsDefault(sjSzt)) {
-                        configStr = configStr.concat(p.getParamID() + "=");
-                        try {
-                            configStr = configStr.concat(String.format("%.3f,",
-                                    roundToThreeDigits(p.getActualValue(sjSzt))));
-                        } catch (Exception ex) {
-                            Logger.getLogger(SimJob.class.getName()).log(Level.SEVERE, null, ex);
-                        }
-                    }
+                if (!p.equalsDefault(sjSzt)) {
+                    paramCnt++;
+                }
+            }
+            config.count(paramCnt);
+            //"paramID(p)=value(p),"
+            for (DfltParams p : DfltParams.values()) {
+                if (p.getParamType() != ParamType.NODE) {
+                    continue;
+                }
+                if (!p.equalsDefault(sjSzt)) {
+                    config.nodeParam(p.getParamID(),
+                            roundToThreeDigits(p.getActualValue(sjSzt)));
                 }
-            } catch (Exception ex) {
-                Logger.getLogger(SimJob.class.getName()).log(Level.SEVERE, null, ex);
             }
-            configStr = configStr.concat(buildLinkParams(sjSzt));
+            buildLinkParams(sjSzt, config);
         }
         //set node_Config field and return string; exclude trailing comma
-        return (node_Config = configStr.substring(0, configStr.length() - 1));
+        return (node_Config = config.toString());
     }
 
-    protected String buildLinkParams(SimJobSZT sjSzt)
-            throws NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
-        String paramStr;
-        int paramCnt = 0, paramNum;
-        List<ParamValue> fullList, changedList, lParamValue;
-        List<List<ParamValue>> llParamValue = new ArrayList<List<ParamValue>>();
+    protected void buildLinkParams(SimJobSZT sjSzt, NodeConfigWriter config) {
+        int paramCnt = 0;
+        int preyCnt = sjSzt.getLinkPreyCnt();
 
-        //create list of parameter lists that differ from defaults; keep count of # of entries
-        //loop through parameters (which for links are lists)
+        //count link parameter values that differ from defaults
         for (DfltParams p : DfltParams.values()) {
             if (p.getParamType() != ParamType.LINK) {
                 continue;
             }
-            fullList = sjSzt.getParamList(FLD_PREFIX + p.paramID);
-            changedList = new ArrayList<ParamValue>();
-            //loop through each list, checking for non default values; add to changedList
-            //and increment count
-            for (ParamValue paramValue : fullList) {
-                if (p.getDfltValue() != paramValue.getParamValue()) {
-                    changedList.add(paramValue);
+            for (int row = 0; row < preyCnt; row++) {
+                if (isNonDefaultLink(sjSzt, row, p)) {
                     paramCnt++;
                 }
             }
-            //this should be added even if it's empty; need one entry per parameter
-            llParamValue.add(changedList);
         }
         //"paramCnt,"
-        paramStr = String.format("%d,", paramCnt);
-        //loop through list of parameter lists; adding prey id and param value to string
+        config.count(paramCnt);
+        //add prey id and param value to string, one parameter type at a time
         if (paramCnt > 0) {
-            paramNum = 0;
             for (DfltParams p : DfltParams.values()) {
                 if (p.getParamType() != ParamType.LINK) {
                     continue;
                 }
-                lParamValue = llParamValue.get(paramNum++);
-                //loop through list of non-default values for this param type
-                for (ParamValue paramValue : lParamValue) {
+                for (int row = 0; row < preyCnt; row++) {
+                    if (!isNonDefaultLink(sjSzt, row, p)) {
+                        continue;
+                    }
                     //"[prey_Id(i)],param_Id(i)=param_val(i),"
-                    paramStr = paramStr.concat(String.format("[%d],", paramValue.getPreyIdx()));
-                    paramStr = paramStr.concat(p.getParamID() + "=");
-                    paramStr = paramStr.concat(
-                            String.format("%.3f,",
-                                    roundToThreeDigits(paramValue.getParamValue())));
+                    config.linkParam(sjSzt.getLinkPrey(row), p.getParamID(),
+                            roundToThreeDigits(sjSzt.getLinkParam(row, p.linkParam)));
                 }
             }
         }
+    }
 
-        return paramStr;
+    //link parameter set for prey row and not equal to its default
+    private boolean isNonDefaultLink(SimJobSZT sjSzt, int row, DfltParams p) {
+        double value = sjSzt.getLinkParam(row, p.linkParam);
+        return !Double.isNaN(value) && value != p.getDfltValue();
     }
 
     public void addSimJobSZT(SimJobSZT sjSzt) {
@@ -773,11 +747,25 @@ public class SimJob {
 
 	public void setBiomassCsv(String biomassCSV) {
 		this.biomassCSV = biomassCSV;
+		biomassCSVTablesPending = false;
         String str = String.format("biomassCSV for %d %s", job_Id, biomassCSV);
         Log.consoleln(str);
 	}
+
+	/* Set the biomass (timestep) section only; the consume map and path
+	table sections are rendered and appended on the first getBiomassCSV(),
+	so jobs whose CSV is never read don't pay for them. */
+	public void setBiomassCsvWithTables(String biomassCSV) {
+		this.biomassCSV = biomassCSV;
+		biomassCSVTablesPending = consumeMap != null && pathTable != null;
+	}
 	
 	public String getBiomassCSV(){
+		if (biomassCSVTablesPending) {
+			biomassCSV = biomassCSV + "\n\n" + consumeMap.toString() + "\n\n"
+					+ pathTable.toString();
+			biomassCSVTablesPending = false;
+		}
 		return biomassCSV;
 	}
 
@@ -788,4 +776,20 @@ public class SimJob {
 	public String getATNManipulationId(){
 		return manipulation_Id;
 	}
+
+	public void setOdeSolver(String odeSolver) {
+		this.odeSolver = odeSolver;
+	}
+
+	public String getOdeSolver() {
+		return odeSolver;
+	}
+
+	public void setContribTracking(String contribTracking) {
+		this.contribTracking = contribTracking;
+	}
+
+	public String getContribTracking() {
+		return contribTracking;
+	}
 }
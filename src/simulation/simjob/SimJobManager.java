@@ -9,6 +9,7 @@ import java.sql.SQLException;
 
 import atn.ATN;
 import atn.ATNEngine;
+import atn.TopologyCache;
 import metadata.Constants;
 import db.ManipulationIdDAO;
 import db.SimJobDAO;
@@ -124,16 +125,15 @@ public final class SimJobManager {
 
 	            //save job with biomass information and job ID info
 	            job.setManipulation_Id(manipId);
-	            ConsumeMap consumeMap = new ConsumeMap(job.getSpeciesNodeList(),
-	                Constants.ECOSYSTEM_TYPE);
-	            PathTable pathTable = new PathTable(consumeMap, 
-	                    job.getSpeciesNodeList(), !PathTable.PP_ONLY);
-//	            Log.consoleln("consumeMap " + consumeMap.toString());
-//	            Log.consoleln("pathTable " + pathTable.toString());
+	            TopologyCache.Topology topology = TopologyCache.getInstance().get(
+	                    job.getSpeciesNodeList(), Constants.ECOSYSTEM_TYPE,
+	                    ATNEngine.getPathTableMaxDepth());
+//	            Log.consoleln("consumeMap " + topology.getConsumeMap().toString());
+//	            Log.consoleln("pathTable " + topology.getPathTable().toString());
 	            job.setCsv("Manipulation_id: " + manipId + "\n\n"
 	                    + simEngine.getBiomassCSVString(manipId) + "\n\n" 
-	                    + consumeMap.toString() + "\n\n"
-	                    + pathTable.toString());
+	                    + topology.getConsumeMap().toString() + "\n\n"
+	                    + topology.getPathTable().toString());
             }
             if(Constants.useAtnEngine){
                 String atnManipId = UUID.randomUUID().toString();
@@ -304,8 +304,8 @@ public class SimJobRandom extends SimJob {
                 }
                 //check for paths between the two.  If empty, remove node
                 //ignore "secondary" plant nodes: 2,3,4 (and 5 - the primary producer
-                if ((nodeId > 5 || nodeId < 2) && pathTable.getPathArrayIJ(Constants.PP_NODE_ID, nodeId).
-                        getPathList().isEmpty()) {
+                if ((nodeId > 5 || nodeId < 2)
+                        && pathTable.getPathCntIJ(Constants.PP_NODE_ID, nodeId) == 0) {
                     SubNodes subNodes = subNodeMap.get(getSpeciesZoneByNodeId(nodeId).getSpeciesIndex());
                     if (subNodes != null) {                
                         for (int i = 0; i < subNodes.nodeIds.size(); i++) {
@@ -52,17 +52,17 @@ public final class SimJobSZT extends SpeciesZoneType {
             //defaults; commenting out.
             testVal = simTestNode.getParamK();
             if (testVal != Constants.PARAM_INITVALUE) {
-                this.paramK = testVal;
+                setParamK(testVal);
                 //this.dfltK = paramK;
             }
             testVal = simTestNode.getParamR();
             if (testVal != Constants.PARAM_INITVALUE) {
-                this.paramR = testVal;
+                setParamR(testVal);
                 //this.dfltR = paramR;
             }
             testVal = simTestNode.getParamX();
             if (testVal != Constants.PARAM_INITVALUE) {
-                this.paramX = testVal;
+                setParamX(testVal);
                 //this.dfltX = paramX;
             }
             testVal = simTestNode.getAR();
@@ -26,6 +26,13 @@ public class Comparators {
 //        }
 //    };
 
+    public static Comparator<SpeciesType> SpeciesIDComparator = new Comparator<SpeciesType>() {
+        @Override
+        public int compare(SpeciesType o1, SpeciesType o2) {
+            return Integer.compare(o1.getID(), o2.getID());
+        }
+    };
+
     public static Comparator<SpeciesType> SpeciesNameComparator = new Comparator<SpeciesType>() {
         @Override
         public int compare(SpeciesType o1, SpeciesType o2) {
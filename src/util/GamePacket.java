@@ -2,7 +2,8 @@ package util;
 
 /**
  * GamePacket sent by the server.
- * BigEndian conversion is done within GamePacketStream.
+ * Encoding is done by a pooled PacketBuffer, which is returned to its pool
+ * by getBytes(); nothing may be added afterwards.
  *
  * Method names are mostly matched with PyDatagram
  *
@@ -23,10 +24,12 @@ package util;
 public final class GamePacket {
 
     private final short packet_id;
-    private final GamePacketStream buffer = new GamePacketStream();
+    private PacketBuffer buffer = PacketBuffer.acquire();
+    private byte[] bytes;
 
     public GamePacket(short packet_id) {
-        addShort16(this.packet_id = packet_id);
+        this.packet_id = packet_id;
+        buffer.begin(packet_id);
     }
 
     public short getID() {
@@ -34,37 +37,41 @@ public final class GamePacket {
     }
 
     public void addShort16(short value) {
-        buffer.add(value);
+        buffer.addShort16(value);
     }
 
     public void addInt32(int value) {
-        buffer.add(value);
+        buffer.addInt32(value);
     }
 
     public void addBoolean(boolean b) {
-        byte[] bytes = new byte[1];
-        bytes[0] = (byte) (b ? 1 : 0);
-        addBytes(bytes);
+        buffer.addBoolean(b);
     }
 
     public void addBytes(byte[] bytes) {
-        buffer.add(bytes);
+        buffer.addBytes(bytes);
     }
 
     public void addString(String str) {
-        buffer.add((short) str.length());
-        buffer.add(str.getBytes());
+        buffer.addString(str);
     }
 
     public void addFloat(float float_val) {
-        addInt32(Float.floatToIntBits(float_val));
+        buffer.addFloat(float_val);
     }
 
     public int size() {
-        return buffer.size();
+        return bytes != null ? bytes.length : buffer.size();
     }
 
     public byte[] getBytes() {
-        return buffer.toByteArray();
+        if (bytes == null) {
+            buffer.end();
+            bytes = buffer.toByteArray();
+            buffer.release();
+            buffer = null;
+        }
+
+        return bytes;
     }
 }
\ No newline at end of file
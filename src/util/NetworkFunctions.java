@@ -2,7 +2,6 @@ package util;
 
 // Java Imports
 import java.util.Arrays;
-import java.util.List;
 
 // Other Imports
 import core.GameServer;
@@ -12,6 +11,7 @@ import core.world.World;
 import core.world.WorldController;
 import model.Account;
 import model.Player;
+import net.response.EncodedResponse;
 import net.response.GameResponse;
 
 public class NetworkFunctions {
@@ -46,60 +46,89 @@ public class NetworkFunctions {
     }
 
     /**
-     * Push a pending response to all users' queue except one user.
+     * Push a pending response to all users' queue except one user. The
+     * response is encoded once and shared by every recipient.
      *
      * @param response is the instance containing the response information
      * @param exclude_id holds the excluding player ID
      */
-    public static void sendToGlobal(GameResponse response, Integer... exclude_id) {
-        List<Integer> exclude = Arrays.asList(exclude_id);
+    public static void sendToGlobal(GameResponse response, int... exclude_id) {
+        int[] exclude = toExcludeSet(exclude_id);
+        GameResponse encoded = null;
 
         for (Player player : GameServer.getInstance().getActivePlayers()) {
-            if (player != null && !exclude.contains(player.getID())) {
-                player.getClient().add(response);
+            if (player != null && !isExcluded(exclude, player.getID())) {
+                if (encoded == null) {
+                    encoded = EncodedResponse.of(response);
+                }
+                player.getClient().add(encoded);
             }
         }
     }
 
     /**
-     * Push a pending response to all users' queue in the same world.
+     * Push a pending response to all users' queue in the same world. The
+     * response is encoded once and shared by every recipient.
      *
      * @param response is the instance containing the response information
      * @param world_id holds the world ID
      * @param exclude_id
      */
-    public static void sendToWorld(GameResponse response, int world_id, Integer... exclude_id) {
+    public static void sendToWorld(GameResponse response, int world_id, int... exclude_id) {
         World world = WorldController.getInstance().get(world_id);
 
         if (world != null) {
-            List<Integer> exclude = Arrays.asList(exclude_id);
+            int[] exclude = toExcludeSet(exclude_id);
+            GameResponse encoded = null;
 
             for (Player player : world.getPlayers().values()) {
-                if (!exclude.contains(player.getID())) {
-                    player.getClient().add(response);
+                if (!isExcluded(exclude, player.getID())) {
+                    if (encoded == null) {
+                        encoded = EncodedResponse.of(response);
+                    }
+                    player.getClient().add(encoded);
                 }
             }
         }
     }
 
     /**
-     * Push a response to all user's queue in the given lobby.
+     * Push a response to all user's queue in the given lobby. The response is
+     * encoded once and shared by every recipient.
      *
      * @param response
      * @param lobby_id
      * @param exclude_id
      */
-    public static void sendToLobby(GameResponse response, int lobby_id, Integer... exclude_id) {
+    public static void sendToLobby(GameResponse response, int lobby_id, int... exclude_id) {
         Lobby lobby = LobbyController.getInstance().get(lobby_id);
 
         if (lobby != null) {
-            List<Integer> exclude = Arrays.asList(exclude_id);
+            int[] exclude = toExcludeSet(exclude_id);
+            GameResponse encoded = null;
 
             for (Player player : lobby.getPlayers()) {
-                if (!exclude.contains(player.getID())) {
-                    player.getClient().add(response);
+                if (!isExcluded(exclude, player.getID())) {
+                    if (encoded == null) {
+                        encoded = EncodedResponse.of(response);
+                    }
+                    player.getClient().add(encoded);
                 }
             }
         }
     }
+
+    /*
+     Sorted copy of the excluded IDs, searched with isExcluded. Usually empty
+     or a single ID.
+     */
+    private static int[] toExcludeSet(int[] exclude_id) {
+        int[] exclude = exclude_id.clone();
+        Arrays.sort(exclude);
+        return exclude;
+    }
+
+    private static boolean isExcluded(int[] exclude, int id) {
+        return exclude.length > 0 && Arrays.binarySearch(exclude, id) >= 0;
+    }
 }
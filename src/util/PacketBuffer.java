@@ -0,0 +1,257 @@
+package util;
+
+// Java Imports
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The PacketBuffer class encodes packets sent by the server into a growable
+ * ByteBuffer, heap or direct. It holds any number of packets back to back,
+ * each framed the way the client expects:
+ *
+ *      byte[0] = Lo of Packet Length (not counting these two bytes)
+ *      byte[1] = Hi of Packet Length
+ *      byte[2] = Lo of Packet ID
+ *      byte[3] = Hi of Packet ID
+ *      ...     = packet data
+ *
+ * Numbers are little-endian. Strings are a short byte count followed by the
+ * UTF-8 bytes.
+ *
+ * Buffers are pooled: acquire() one, and release() it once its bytes have
+ * been written or copied. A buffer is used by one thread at a time.
+ *
+ * Example:
+ *      PacketBuffer buffer = PacketBuffer.acquire();
+ *      buffer.begin(NetworkCode.CHART);
+ *      buffer.addShort16(type);
+ *      buffer.addString(csv);
+ *      buffer.end();
+ *      ...
+ *      buffer.release();
+ */
+public final class PacketBuffer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // Buffers grown past this are left to the garbage collector
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+    // Idle buffers kept per pool
+    private static final int MAX_POOLED = 64;
+
+    private static final Pool heapPool = new Pool(false);
+    private static final Pool directPool = new Pool(true);
+
+    private final boolean isDirect;
+    private ByteBuffer buffer;
+    // Position of the open packet's length, -1 if none
+    private int packetStart = -1;
+
+    /**
+     * Create an unpooled buffer.
+     *
+     * @param capacity initial size in bytes; grows as needed
+     * @param isDirect true for a direct buffer, which a SocketChannel can
+     * write without copying
+     */
+    public PacketBuffer(int capacity, boolean isDirect) {
+        this.isDirect = isDirect;
+        buffer = allocate(capacity);
+    }
+
+    /**
+     * Take a heap buffer from the pool.
+     */
+    public static PacketBuffer acquire() {
+        return heapPool.acquire();
+    }
+
+    /**
+     * Take a direct buffer from the pool.
+     */
+    public static PacketBuffer acquireDirect() {
+        return directPool.acquire();
+    }
+
+    /**
+     * Empty the buffer and return it to its pool. The buffer must not be used
+     * afterwards.
+     */
+    public void release() {
+        clear();
+        (isDirect ? directPool : heapPool).release(this);
+    }
+
+    public boolean isDirect() {
+        return isDirect;
+    }
+
+    public void clear() {
+        buffer.clear();
+        packetStart = -1;
+    }
+
+    /**
+     * Start a packet: reserve its length and add its ID.
+     *
+     * @param packet_id holds the response ID
+     */
+    public void begin(short packet_id) {
+        ensure(4);
+        packetStart = buffer.position();
+        buffer.putShort((short) 0);
+        buffer.putShort(packet_id);
+    }
+
+    /**
+     * Finish the packet started by begin() by filling in its length.
+     */
+    public void end() {
+        if (packetStart < 0) {
+            throw new IllegalStateException("No packet started");
+        }
+
+        buffer.putShort(packetStart, (short) (buffer.position() - packetStart - 2));
+        packetStart = -1;
+    }
+
+    public void addShort16(short value) {
+        ensure(2);
+        buffer.putShort(value);
+    }
+
+    public void addInt32(int value) {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    public void addFloat(float value) {
+        ensure(4);
+        buffer.putFloat(value);
+    }
+
+    public void addBoolean(boolean b) {
+        ensure(1);
+        buffer.put((byte) (b ? 1 : 0));
+    }
+
+    public void addBytes(byte[] bytes) {
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Add a string as its UTF-8 byte count and bytes.
+     *
+     * @param str holds the string
+     */
+    public void addString(String str) {
+        // String.getBytes copies plain ASCII in bulk, far faster than
+        // encoding char by char into the buffer
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        ensure(2 + bytes.length);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * @return bytes added so far
+     */
+    public int size() {
+        return buffer.position();
+    }
+
+    /**
+     * Copy the bytes added so far.
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[buffer.position()];
+        ByteBuffer view = buffer.duplicate();
+        view.flip();
+        view.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Get the bytes added so far, ready to be written to a channel. Further
+     * adds are not allowed until clear().
+     */
+    public ByteBuffer flip() {
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Write the bytes added so far to a stream.
+     *
+     * @param out references the output stream
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+        } else {
+            out.write(toByteArray());
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            int capacity = buffer.capacity();
+            while (capacity - buffer.position() < bytes) {
+                capacity *= 2;
+            }
+
+            ByteBuffer grown = allocate(capacity);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        ByteBuffer buffer = isDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /*
+     Idle buffers of one kind.
+     */
+    private static class Pool {
+
+        private final boolean isDirect;
+        private final Queue<PacketBuffer> idle = new ConcurrentLinkedQueue<PacketBuffer>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        Pool(boolean isDirect) {
+            this.isDirect = isDirect;
+        }
+
+        PacketBuffer acquire() {
+            PacketBuffer buffer = idle.poll();
+            if (buffer == null) {
+                return new PacketBuffer(INITIAL_CAPACITY, isDirect);
+            }
+
+            idleCount.decrementAndGet();
+            return buffer;
+        }
+
+        void release(PacketBuffer buffer) {
+            if (buffer.buffer.capacity() > MAX_POOLED_CAPACITY) {
+                return;
+            }
+
+            if (idleCount.incrementAndGet() > MAX_POOLED) {
+                idleCount.decrementAndGet();
+                return;
+            }
+            idle.add(buffer);
+        }
+    }
+}